@@ -0,0 +1,231 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import common.GateManager;
+import common.sim.Gate;
+import common.sim.GateComponent;
+import common.sim.Pin;
+import common.sim.Simulation;
+import common.sim.Wire;
+
+/**
+ * Builds synthetic circuits into a Simulation for benchmarking. Gates are laid out left to right in
+ * rows so that none of them overlap, and Wires are connected directly rather than by hit-testing.
+ */
+public class CircuitGenerator {
+	/**
+	 * The space given to each Gate, larger than any built-in GateComponent
+	 */
+	private static final int CELL = 60;
+	
+	/**
+	 * The number of Gates placed in a row before starting the next
+	 */
+	private static final int COLUMNS = 256;
+	
+	/**
+	 * The Simulation circuits are built into
+	 */
+	private final Simulation simulation_;
+	
+	private final GateComponent switch_;
+	private final GateComponent led_;
+	private final GateComponent not_;
+	private final GateComponent and_;
+	private final GateComponent or_;
+	private final GateComponent xor_;
+	
+	/**
+	 * The number of Gates placed so far, used to work out where the next one goes
+	 */
+	private int placed_;
+	
+	/**
+	 * @param simulation {@link CircuitGenerator#simulation_}
+	 * @param gateManager Where the built-in GateComponents are looked up
+	 */
+	public CircuitGenerator(Simulation simulation, GateManager gateManager) {
+		simulation_ = simulation;
+		switch_ = gateManager.find("Switch");
+		led_ = gateManager.find("LED");
+		not_ = gateManager.find("NOT");
+		and_ = gateManager.find("AND");
+		or_ = gateManager.find("OR");
+		xor_ = gateManager.find("XOR");
+		placed_ = 0;
+	}
+	
+	/**
+	 * Adds a Gate in the next free cell
+	 * @param component The GateComponent of the Gate
+	 * @return The new Gate
+	 */
+	public Gate place(GateComponent component) {
+		Gate gate = new Gate(simulation_, component, (placed_ % COLUMNS) * CELL, (placed_ / COLUMNS) * CELL);
+		simulation_.addGate(gate);
+		++placed_;
+		return gate;
+	}
+	
+	/**
+	 * Connects two Pins with a new Wire
+	 * @param from The output Pin
+	 * @param to The input Pin
+	 */
+	public void connect(Pin from, Pin to) {
+		Wire wire = new Wire(simulation_, from.getPosition(), to.getPosition());
+		if(wire.connect(from, to))
+			simulation_.addWire(wire);
+	}
+	
+	/**
+	 * A Switch driving a chain of NOT gates ending in an LED
+	 * @param length The number of NOT gates
+	 * @return The Switch
+	 */
+	public Gate inverterChain(int length) {
+		Gate input = place(switch_);
+		Pin previous = input.getPins()[0];
+		for(int i = 0; i < length; ++i) {
+			Gate not = place(not_);
+			connect(previous, not.getPins()[0]);
+			previous = not.getPins()[1];
+		}
+		connect(previous, place(led_).getPins()[0]);
+		return input;
+	}
+	
+	/**
+	 * Switches reduced to a single LED through a balanced tree of AND gates
+	 * @param width The number of Switches
+	 * @return The Switches
+	 */
+	public List<Gate> fanInTree(int width) {
+		List<Gate> inputs = new ArrayList<>(width);
+		List<Pin> level = new ArrayList<>(width);
+		for(int i = 0; i < width; ++i) {
+			Gate input = place(switch_);
+			inputs.add(input);
+			level.add(input.getPins()[0]);
+		}
+		
+		while(level.size() > 1) {
+			List<Pin> next = new ArrayList<>((level.size() + 1) / 2);
+			for(int i = 0; i + 1 < level.size(); i += 2) {
+				Gate and = place(and_);
+				connect(level.get(i), and.getPins()[0]);
+				connect(level.get(i + 1), and.getPins()[1]);
+				next.add(and.getPins()[2]);
+			}
+			if(level.size() % 2 != 0)
+				next.add(level.get(level.size() - 1));
+			level = next;
+		}
+		
+		if(!level.isEmpty())
+			connect(level.get(0), place(led_).getPins()[0]);
+		return inputs;
+	}
+	
+	/**
+	 * A loop of NOT gates that oscillates on its own once placed
+	 * @param length The number of NOT gates, rounded up to an odd number
+	 */
+	public void ringOscillator(int length) {
+		if(length % 2 == 0)
+			++length;
+		
+		Gate first = place(not_);
+		Pin previous = first.getPins()[1];
+		for(int i = 1; i < length; ++i) {
+			Gate not = place(not_);
+			connect(previous, not.getPins()[0]);
+			previous = not.getPins()[1];
+		}
+		connect(previous, first.getPins()[0]);
+	}
+	
+	/**
+	 * An adder built from a chain of full adders, each of which uses its operand bits and incoming
+	 * carry twice. Every sum bit and the final carry drive an LED.
+	 * @param bits The width of the operands, the adder has 5 logic gates per bit
+	 * @return The Switches, the bits of the first operand from least significant, then the bits of
+	 * the second, then the carry in
+	 */
+	public List<Gate> rippleCarryAdder(int bits) {
+		List<Gate> inputs = new ArrayList<>(2 * bits + 1);
+		for(int i = 0; i < 2 * bits + 1; ++i)
+			inputs.add(place(switch_));
+		
+		Pin carry = inputs.get(2 * bits).getPins()[0];
+		for(int i = 0; i < bits; ++i) {
+			Pin a = inputs.get(i).getPins()[0];
+			Pin b = inputs.get(bits + i).getPins()[0];
+			
+			Gate half = place(xor_);
+			connect(a, half.getPins()[0]);
+			connect(b, half.getPins()[1]);
+			
+			Gate sum = place(xor_);
+			connect(half.getPins()[2], sum.getPins()[0]);
+			connect(carry, sum.getPins()[1]);
+			connect(sum.getPins()[2], place(led_).getPins()[0]);
+			
+			Gate generate = place(and_);
+			connect(a, generate.getPins()[0]);
+			connect(b, generate.getPins()[1]);
+			
+			Gate propagate = place(and_);
+			connect(half.getPins()[2], propagate.getPins()[0]);
+			connect(carry, propagate.getPins()[1]);
+			
+			Gate carryOut = place(or_);
+			connect(generate.getPins()[2], carryOut.getPins()[0]);
+			connect(propagate.getPins()[2], carryOut.getPins()[1]);
+			carry = carryOut.getPins()[2];
+		}
+		
+		connect(carry, place(led_).getPins()[0]);
+		return inputs;
+	}
+	
+	/**
+	 * A random acyclic circuit of two-input gates. Each gate input is fed either by the output of an
+	 * earlier gate, which may already drive others, or by a new Switch. Outputs nothing reads drive
+	 * an LED.
+	 * @param gates The number of logic gates
+	 * @param seed The seed for the random layout
+	 * @return The Switches
+	 */
+	public List<Gate> randomDag(int gates, long seed) {
+		Random random = new Random(seed);
+		GateComponent[] components = { and_, or_, xor_ };
+		List<Gate> inputs = new ArrayList<>();
+		List<Pin> outputs = new ArrayList<>(gates);
+		
+		for(int i = 0; i < gates; ++i) {
+			Gate gate = place(components[random.nextInt(components.length)]);
+			for(int p = 0; p < 2; ++p) {
+				Pin source;
+				if(!outputs.isEmpty() && random.nextInt(4) != 0)
+					source = outputs.get(random.nextInt(outputs.size()));
+				else {
+					Gate input = place(switch_);
+					inputs.add(input);
+					source = input.getPins()[0];
+				}
+				connect(source, gate.getPins()[p]);
+			}
+			outputs.add(gate.getPins()[2]);
+		}
+		
+		for(Pin pin : outputs) {
+			if(pin.getNet() == null || pin.getNet().size() == 0)
+				connect(pin, place(led_).getPins()[0]);
+		}
+		return inputs;
+	}
+}
@@ -0,0 +1,115 @@
+package bench;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.util.concurrent.ForkJoinPool;
+
+import common.DefaultGates;
+import common.GateManager;
+import common.sim.Gate;
+import common.sim.GateComponent;
+import common.sim.Pin;
+import common.sim.PinComponent;
+import common.sim.PinType;
+import common.sim.Simulation;
+
+/**
+ * Checks that a Gate is evaluated at most once per tick however many of its inputs change in that
+ * tick, by counting the calls to performLogic on a wide fan-in Gate driven by one Switch per input.
+ * Exits with a non-zero status if any engine evaluates it more often.
+ */
+public class EvaluationCountCheck
+{
+	/**
+	 * The number of inputs of the fan-in Gate
+	 */
+	private static final int WIDTH = 64;
+	
+	/**
+	 * The number of ticks in which every input is flipped
+	 */
+	private static final int TICKS = 100;
+	
+	/**
+	 * Entry point
+	 * @param args Unused
+	 */
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+		GateManager gateManager = DefaultGates.createGateManager();
+		ForkJoinPool pool = new ForkJoinPool(2);
+		
+		boolean passed = check("object", new Simulation(), gateManager);
+		
+		Simulation simulation = new Simulation();
+		simulation.setCompiled(true);
+		passed &= check("compiled", simulation, gateManager);
+		
+		simulation = new Simulation();
+		simulation.setCompiled(true);
+		simulation.setParallel(true);
+		simulation.setParallelThreshold(1);
+		simulation.setForkJoinPool(pool);
+		passed &= check("parallel", simulation, gateManager);
+		
+		pool.shutdown();
+		if(!passed)
+			System.exit(1);
+	}
+	
+	/**
+	 * Builds the fan-in circuit into a Simulation, flips every Switch at once each tick and counts how
+	 * often the fan-in Gate is evaluated
+	 * @param engine The name of the engine the Simulation is set up for, used in the report
+	 * @param simulation The Simulation to build into
+	 * @param gateManager Where the Switch GateComponent is looked up
+	 * @return True if the Gate was evaluated once in every tick its inputs changed and never otherwise
+	 */
+	private static boolean check(String engine, Simulation simulation, GateManager gateManager) {
+		final int[] calls = { 0 };
+		PinComponent[] pins = new PinComponent[WIDTH + 1];
+		for(int i = 0; i < WIDTH; ++i)
+			pins[i] = new PinComponent("I" + i, PinType.INPUT, true, new Point(0, 10 + i * 10));
+		pins[WIDTH] = new PinComponent("O", PinType.OUTPUT, false, new Point(40, 10 + WIDTH * 5));
+		GateComponent wideOr = new GateComponent("Wide OR", null, new Dimension(40, 20 + WIDTH * 10), pins) {
+			@Override
+			public void performLogic(Pin[] pins) {
+				++calls[0];
+				boolean state = false;
+				for(int i = 0; i < WIDTH; ++i)
+					state |= pins[i].getState();
+				pins[WIDTH].setState(state);
+			}
+		};
+		
+		CircuitGenerator generator = new CircuitGenerator(simulation, gateManager);
+		GateComponent switchComponent = gateManager.find("Switch");
+		Pin[] switches = new Pin[WIDTH];
+		Gate gate = generator.place(wideOr);
+		for(int i = 0; i < WIDTH; ++i) {
+			switches[i] = generator.place(switchComponent).getPins()[0];
+			generator.connect(switches[i], gate.getPins()[i]);
+		}
+		simulation.settle(16);
+		
+		int wrong = 0;
+		int idle = 0;
+		for(int tick = 0; tick < TICKS; ++tick) {
+			for(Pin pin : switches)
+				pin.setState(!pin.getState());
+			calls[0] = 0;
+			simulation.tick();
+			if(calls[0] != 1)
+				++wrong;
+			
+			calls[0] = 0;
+			simulation.tick();
+			idle += calls[0];
+		}
+		
+		boolean passed = wrong == 0 && idle == 0;
+		System.out.printf("%-9s %d inputs: %d of %d ticks not evaluated exactly once, %d evaluations in idle ticks %s%n", engine, WIDTH, wrong, TICKS, idle, passed ? "ok" : "FAILED");
+		return passed;
+	}
+}
@@ -0,0 +1,201 @@
+package bench;
+
+import java.util.List;
+import java.util.Random;
+
+import common.DefaultGates;
+import common.GateManager;
+import common.sim.CompiledNetlist;
+import common.sim.Gate;
+import common.sim.Pin;
+import common.sim.PinType;
+import common.sim.Simulation;
+
+/**
+ * Checks that a compiled netlist patched in place by Gate and Wire edits, undo and redo ticks the
+ * same as one built from scratch and as the object engine. The same random edits are made to three
+ * Simulations, one keeping its netlist, one made to rebuild it after every edit and one on the
+ * object engine, and every Pin is compared after each round of ticks.
+ * Exits with a non-zero status if any Pin differs.
+ */
+public class NetlistPatchCheck
+{
+	/**
+	 * The number of logic gates in the random circuit each run starts from
+	 */
+	private static final int GATES = 40;
+	
+	/**
+	 * The number of rounds of edits made in each run
+	 */
+	private static final int ROUNDS = 200;
+	
+	/**
+	 * The number of ticks run between rounds
+	 */
+	private static final int TICKS = 8;
+	
+	/**
+	 * The number of runs, each from its own seed
+	 */
+	private static final int RUNS = 20;
+	
+	/**
+	 * The names of the GateComponents new Gates are made from
+	 */
+	private static final String[] COMPONENTS = { "AND", "OR", "XOR", "NOT", "NAND", "NOR", "XNOR", "Diode", "Switch", "LED" };
+	
+	/**
+	 * Entry point
+	 * @param args Unused
+	 */
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+		GateManager gateManager = DefaultGates.createGateManager();
+		
+		int failed = 0;
+		int edits = 0;
+		int rebuilds = 0;
+		for(long seed = 0; seed < RUNS; ++seed) {
+			Simulation object = new Simulation();
+			Simulation patched = new Simulation();
+			patched.setCompiled(true);
+			Simulation rebuilt = new Simulation();
+			rebuilt.setCompiled(true);
+			Simulation[] simulations = { object, patched, rebuilt };
+			
+			CircuitGenerator[] generators = new CircuitGenerator[simulations.length];
+			Random[] randoms = new Random[simulations.length];
+			for(int i = 0; i < simulations.length; ++i) {
+				generators[i] = new CircuitGenerator(simulations[i], gateManager);
+				generators[i].randomDag(GATES, seed);
+				randoms[i] = new Random(seed);
+			}
+			
+			int round = 0;
+			for(; round < ROUNDS; ++round) {
+				for(int i = 0; i < simulations.length; ++i) {
+					CompiledNetlist before = simulations[i].getCompiledNetlist();
+					edit(simulations[i], generators[i], gateManager, randoms[i]);
+					if(simulations[i] == patched) {
+						++edits;
+						if(before != null && patched.getCompiledNetlist() != before)
+							++rebuilds;
+					}
+				}
+				rebuilt.setCompiled(false);
+				rebuilt.setCompiled(true);
+				
+				for(int tick = 0; tick < TICKS; ++tick) {
+					for(Simulation simulation : simulations)
+						simulation.tick();
+				}
+				
+				String expected = states(object);
+				if(!states(patched).equals(expected) || !states(rebuilt).equals(expected))
+					break;
+			}
+			
+			if(round < ROUNDS) {
+				++failed;
+				System.out.printf("seed %d: patched %s, rebuilt %s the object engine after round %d FAILED%n", seed, states(patched).equals(states(object)) ? "matches" : "differs from", states(rebuilt).equals(states(object)) ? "matches" : "differs from", round);
+			}
+		}
+		
+		System.out.printf("%d runs of %d rounds: %d failed, %d of %d edits fell back to a rebuild %s%n", RUNS, ROUNDS, failed, rebuilds, edits, failed == 0 ? "ok" : "FAILED");
+		if(failed > 0)
+			System.exit(1);
+	}
+	
+	/**
+	 * Makes one random edit. Every choice is drawn from the given Random and the Simulation's own
+	 * lists, so Simulations edited alike with Randoms seeded alike stay identical.
+	 * @param simulation The Simulation to edit
+	 * @param generator Where new Gates are placed
+	 * @param gateManager Where new Gates' GateComponents are looked up
+	 * @param random The source of the choices
+	 */
+	private static void edit(Simulation simulation, CircuitGenerator generator, GateManager gateManager, Random random) {
+		List<Gate> gates = simulation.getGates();
+		int op = random.nextInt(10);
+		if(op < 2 || gates.size() < 4)
+			generator.place(gateManager.find(COMPONENTS[random.nextInt(COMPONENTS.length)]));
+		else if(op < 4)
+			connect(generator, gates, random);
+		else if(op < 5)
+			gates.get(random.nextInt(gates.size())).remove();
+		else if(op < 6) {
+			if(!simulation.getWires().isEmpty())
+				simulation.getWires().get(random.nextInt(simulation.getWires().size())).remove();
+		}
+		else if(op < 7) {
+			//Several edits undone and redone as one step
+			simulation.beginEdit();
+			try {
+				generator.place(gateManager.find(COMPONENTS[random.nextInt(COMPONENTS.length)]));
+				connect(generator, gates, random);
+				gates.get(random.nextInt(gates.size())).remove();
+			} finally {
+				simulation.endEdit();
+			}
+		}
+		else if(op < 8) {
+			Gate gate = gates.get(random.nextInt(gates.size()));
+			int x = random.nextInt(64) * 60;
+			int y = 6000 + random.nextInt(64) * 60;
+			if(simulation.findGateOverlapping(x, y, gate.getWidth(), gate.getHeight(), gate) == null)
+				simulation.moveGate(gate, x, y);
+		}
+		else if(op < 9) {
+			int steps = 1 + random.nextInt(3);
+			for(int i = 0; i < steps; ++i)
+				simulation.undo();
+		}
+		else {
+			int steps = 1 + random.nextInt(3);
+			for(int i = 0; i < steps; ++i)
+				simulation.redo();
+		}
+		
+		//Flip a Switch so there is something to propagate through the edited circuit
+		Gate gate = gates.get(random.nextInt(gates.size()));
+		if(gate.getGateComponent().getName().equals("Switch"))
+			gate.getPins()[0].setState(!gate.getPins()[0].getState());
+	}
+	
+	/**
+	 * Wires an output to a free input, trying a few random pairs of Gates
+	 * @param generator Where the Wire is connected
+	 * @param gates The Gates to choose from
+	 * @param random The source of the choices
+	 */
+	private static void connect(CircuitGenerator generator, List<Gate> gates, Random random) {
+		for(int attempt = 0; attempt < 16; ++attempt) {
+			Pin from = null;
+			for(Pin pin : gates.get(random.nextInt(gates.size())).getPins()) {
+				if(pin.getType() == PinType.OUTPUT)
+					from = pin;
+			}
+			Pin[] pins = gates.get(random.nextInt(gates.size())).getPins();
+			Pin to = pins[random.nextInt(pins.length)];
+			if(from != null && to.getType() == PinType.INPUT && to.getWire() == null) {
+				generator.connect(from, to);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * @param simulation The Simulation to read
+	 * @return The state of every Pin of every Gate in order, as a string of 0s and 1s
+	 */
+	private static String states(Simulation simulation) {
+		StringBuilder states = new StringBuilder();
+		for(Gate gate : simulation.getGates()) {
+			for(Pin pin : gate.getPins())
+				states.append(pin.getState() ? '1' : '0');
+		}
+		return states.toString();
+	}
+}
@@ -0,0 +1,366 @@
+package bench;
+
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+import common.DefaultGates;
+import common.GateManager;
+import common.sim.Gate;
+import common.sim.GridKey;
+import common.sim.Pin;
+import common.sim.SettleResult;
+import common.sim.Simulation;
+import window.JLogicPanel;
+
+/**
+ * Measures tick throughput, time to settle, allocation per tick, hit-testing latency and allocation
+ * per mouse event while dragging on generated circuits of increasing size, so the numbers can be
+ * compared across releases
+ */
+public class SimulationBenchmark
+{
+	/**
+	 * How long each measurement runs for after warming up
+	 */
+	private static final long MEASURE_NANOS = 1000000000L;
+	
+	/**
+	 * How long each measurement warms up for
+	 */
+	private static final long WARMUP_NANOS = 500000000L;
+	
+	/**
+	 * The engines a circuit is ticked with
+	 */
+	private enum Engine
+	{
+		OBJECT,
+		COMPILED,
+		PARALLEL,
+		COLLAPSED,
+		OPTIMIZED
+	}
+	
+	/**
+	 * The shapes of circuit generated
+	 */
+	private enum Shape
+	{
+		INVERTER_CHAIN,
+		FAN_IN_TREE,
+		RING_OSCILLATOR,
+		RANDOM_DAG,
+		RIPPLE_ADDER
+	}
+	
+	/**
+	 * The GateComponents circuits are built from
+	 */
+	private static GateManager gateManager;
+	
+	/**
+	 * Entry point
+	 * @param args The gate counts to benchmark, defaults to 1000 10000 100000
+	 */
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+		gateManager = DefaultGates.createGateManager();
+		
+		int[] sizes = { 1000, 10000, 100000 };
+		if(args.length > 0) {
+			sizes = new int[args.length];
+			for(int i = 0; i < args.length; ++i)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+		
+		System.out.printf("%-16s %-9s %8s %14s %14s %12s %12s%n", "circuit", "engine", "gates", "ticks/s", "settle us", "settle ticks", "bytes/tick");
+		for(int size : sizes) {
+			for(Shape shape : Shape.values()) {
+				for(Engine engine : Engine.values())
+					benchmarkTicks(shape, engine, size);
+			}
+		}
+		
+		System.out.println();
+		System.out.printf("%-8s %14s %14s %14s%n", "gates", "findGateAt ns", "findPinAt ns", "findWireAt ns");
+		for(int size : sizes)
+			benchmarkHitTesting(size);
+		
+		System.out.println();
+		System.out.printf("%-8s %14s %14s %14s%n", "gates", "hover B/event", "wire B/event", "move B/event");
+		for(int size : sizes)
+			benchmarkDrag(size);
+	}
+	
+	/**
+	 * Builds a circuit of a given shape
+	 * @param simulation The Simulation to build into
+	 * @param shape The shape of the circuit
+	 * @param size The approximate number of logic gates
+	 * @return The Switches that drive it, which may be empty
+	 */
+	private static Gate[] build(Simulation simulation, Shape shape, int size) {
+		CircuitGenerator generator = new CircuitGenerator(simulation, gateManager);
+		List<Gate> inputs;
+		switch(shape) {
+			case INVERTER_CHAIN:
+				return new Gate[] { generator.inverterChain(size) };
+			case FAN_IN_TREE:
+				inputs = generator.fanInTree(size);
+				break;
+			case RING_OSCILLATOR:
+				generator.ringOscillator(size);
+				return new Gate[0];
+			case RIPPLE_ADDER:
+				inputs = generator.rippleCarryAdder(Math.max(1, size / 5));
+				break;
+			default:
+				inputs = generator.randomDag(size, size);
+				break;
+		}
+		return inputs.toArray(new Gate[inputs.size()]);
+	}
+	
+	/**
+	 * Measures tick throughput and allocation while toggling an input every tick, then the time for
+	 * a single input change to settle
+	 */
+	private static void benchmarkTicks(Shape shape, Engine engine, int size) {
+		Simulation simulation = new Simulation();
+		simulation.setCompiled(engine != Engine.OBJECT);
+		simulation.setParallel(engine == Engine.PARALLEL);
+		simulation.setCollapseClusters(engine == Engine.COLLAPSED);
+		simulation.setOptimizing(engine == Engine.OPTIMIZED);
+		Gate[] inputs = build(simulation, shape, size);
+		Random random = new Random(0);
+		
+		long end = System.nanoTime() + WARMUP_NANOS;
+		while(System.nanoTime() < end)
+			stimulateAndTick(simulation, inputs, random);
+		
+		long allocated = allocatedBytes();
+		long start = System.nanoTime();
+		long ticks = 0;
+		end = start + MEASURE_NANOS;
+		do {
+			for(int i = 0; i < 100; ++i)
+				stimulateAndTick(simulation, inputs, random);
+			ticks += 100;
+		} while(System.nanoTime() < end);
+		long elapsed = System.nanoTime() - start;
+		allocated = allocatedBytes() - allocated;
+		
+		String settleTime = "-";
+		String settleTicks = "-";
+		if(inputs.length > 0) {
+			int limit = size * 4 + 16;
+			simulation.settle(limit);
+			
+			long settleNanos = 0;
+			long settleCount = 0;
+			int runs = 0;
+			end = System.nanoTime() + MEASURE_NANOS;
+			while(System.nanoTime() < end) {
+				Gate input = inputs[random.nextInt(inputs.length)];
+				input.getPins()[0].setState(!input.getPins()[0].getState());
+				
+				long settleStart = System.nanoTime();
+				SettleResult result = simulation.settle(limit);
+				settleNanos += System.nanoTime() - settleStart;
+				settleCount += result.getTicks();
+				++runs;
+				if(!result.isStable())
+					break;
+			}
+			
+			if(runs > 0) {
+				settleTime = String.format("%.1f", settleNanos / 1e3 / runs);
+				settleTicks = String.format("%.1f", (double)settleCount / runs);
+			}
+		}
+		
+		System.out.printf("%-16s %-9s %8d %14.0f %14s %12s %12s%n", shape.name().toLowerCase(), engine.name().toLowerCase(), simulation.getGates().size(),
+				ticks * 1e9 / elapsed, settleTime, settleTicks, allocated < 0 ? "n/a" : String.format("%.1f", (double)allocated / ticks));
+	}
+	
+	/**
+	 * Toggles one random input, if there are any, and ticks once
+	 */
+	private static void stimulateAndTick(Simulation simulation, Gate[] inputs, Random random) {
+		if(inputs.length > 0) {
+			Gate input = inputs[random.nextInt(inputs.length)];
+			input.getPins()[0].setState(!input.getPins()[0].getState());
+		}
+		simulation.tick();
+	}
+	
+	/**
+	 * Measures the average latency of the hit-testing functions at random grid points over the
+	 * area covered by a random circuit
+	 */
+	private static void benchmarkHitTesting(int size) {
+		Simulation simulation = new Simulation();
+		build(simulation, Shape.RANDOM_DAG, size);
+		long extent = extent(simulation);
+		int maxX = GridKey.x(extent);
+		int maxY = GridKey.y(extent);
+		
+		Random random = new Random(0);
+		long[] points = new long[4096];
+		for(int i = 0; i < points.length; ++i)
+			points[i] = GridKey.pack(random.nextInt(maxX / 10 + 1) * 10, random.nextInt(maxY / 10 + 1) * 10);
+		
+		double gateNanos = timeHitTest(simulation, points, 0);
+		double pinNanos = timeHitTest(simulation, points, 1);
+		double wireNanos = timeHitTest(simulation, points, 2);
+		System.out.printf("%-8d %14.1f %14.1f %14.1f%n", simulation.getGates().size(), gateNanos, pinNanos, wireNanos);
+	}
+	
+	/**
+	 * @param kind 0 for findGateAt, 1 for findPinAt, 2 for findWireAt
+	 * @return The average nanoseconds per call
+	 */
+	private static double timeHitTest(Simulation simulation, long[] points, int kind) {
+		int found = 0;
+		long calls = 0;
+		long start = 0;
+		for(int pass = 0; pass < 2; ++pass) {
+			long end = System.nanoTime() + (pass == 0 ? WARMUP_NANOS : MEASURE_NANOS);
+			start = System.nanoTime();
+			calls = 0;
+			do {
+				for(long p : points) {
+					switch(kind) {
+						case 0:
+							found += simulation.findGateAt(p) != null ? 1 : 0;
+							break;
+						case 1:
+							found += simulation.findPinAt(p) != null ? 1 : 0;
+							break;
+						default:
+							found += simulation.findWireAt(p) != null ? 1 : 0;
+							break;
+					}
+				}
+				calls += points.length;
+			} while(System.nanoTime() < end);
+		}
+		
+		if(found == 42)
+			System.out.print("");
+		return (System.nanoTime() - start) / (double)calls;
+	}
+	
+	/**
+	 * Measures the bytes allocated per mouse event by the editor while a scripted drag sweeps back and
+	 * forth across a random circuit: hovering, dragging out a Wire from a Pin and moving a Gate with Ctrl
+	 * held. The events are made up front and fed straight to the panel's listeners, so only the
+	 * editor's own handling is counted.
+	 */
+	private static void benchmarkDrag(int size) {
+		Simulation simulation = new Simulation();
+		build(simulation, Shape.RANDOM_DAG, size);
+		JLogicPanel panel = new JLogicPanel(simulation);
+		MouseListener mouse = panel.getMouseListeners()[0];
+		MouseMotionListener motion = panel.getMouseMotionListeners()[0];
+		
+		//The panel hit-tests the published snapshot, so publish one the way a first frame would
+		simulation.getSnapshot();
+		simulation.runCommands();
+		
+		long extent = extent(simulation);
+		int maxX = GridKey.x(extent);
+		int maxY = GridKey.y(extent);
+		
+		//Sweep rows a little under a grid square apart so most events land between grid points
+		int rows = 64;
+		int columns = 64;
+		MouseEvent[] moves = new MouseEvent[rows * columns];
+		MouseEvent[] drags = new MouseEvent[rows * columns];
+		MouseEvent[] ctrlDrags = new MouseEvent[rows * columns];
+		for(int r = 0; r < rows; ++r) {
+			for(int c = 0; c < columns; ++c) {
+				int x = (r % 2 == 0 ? c : columns - 1 - c) * maxX / columns;
+				int y = r * maxY / rows;
+				int i = r * columns + c;
+				moves[i] = new MouseEvent(panel, MouseEvent.MOUSE_MOVED, 0, 0, x, y, 0, false);
+				drags[i] = new MouseEvent(panel, MouseEvent.MOUSE_DRAGGED, 0, InputEvent.BUTTON1_DOWN_MASK, x, y, 0, false);
+				ctrlDrags[i] = new MouseEvent(panel, MouseEvent.MOUSE_DRAGGED, 0, InputEvent.BUTTON1_DOWN_MASK | InputEvent.CTRL_DOWN_MASK, x, y, 0, false);
+			}
+		}
+		
+		double hover = measureDrag(motion, moves, false);
+		
+		Gate first = simulation.getGates().get(0);
+		Pin pin = first.getPins()[0];
+		motion.mouseMoved(new MouseEvent(panel, MouseEvent.MOUSE_MOVED, 0, 0, pin.getX(), pin.getY(), 0, false));
+		mouse.mousePressed(new MouseEvent(panel, MouseEvent.MOUSE_PRESSED, 0, InputEvent.BUTTON1_DOWN_MASK, pin.getX(), pin.getY(), 1, false, MouseEvent.BUTTON1));
+		double wire = measureDrag(motion, drags, true);
+		mouse.mouseReleased(new MouseEvent(panel, MouseEvent.MOUSE_RELEASED, 0, 0, maxX + 100, maxY + 100, 1, false, MouseEvent.BUTTON1));
+		
+		int x = first.getX() + first.getWidth() / 2;
+		int y = first.getY() + first.getHeight() / 2;
+		motion.mouseMoved(new MouseEvent(panel, MouseEvent.MOUSE_MOVED, 0, 0, x, y, 0, false));
+		mouse.mousePressed(new MouseEvent(panel, MouseEvent.MOUSE_PRESSED, 0, InputEvent.BUTTON1_DOWN_MASK | InputEvent.CTRL_DOWN_MASK, x, y, 1, false, MouseEvent.BUTTON1));
+		double move = measureDrag(motion, ctrlDrags, true);
+		
+		System.out.printf("%-8d %14.1f %14.1f %14.1f%n", simulation.getGates().size(), hover, wire, move);
+	}
+	
+	/**
+	 * Feeds a scripted sweep of events to a panel, once to warm up and then for the measurement
+	 * @param dragged True to send them as drags, false as moves
+	 * @return The average bytes allocated per event, or -1 if the JVM can't tell
+	 */
+	private static double measureDrag(MouseMotionListener motion, MouseEvent[] events, boolean dragged) {
+		long allocated = 0;
+		long count = 0;
+		for(int pass = 0; pass < 2; ++pass) {
+			long end = System.nanoTime() + (pass == 0 ? WARMUP_NANOS : MEASURE_NANOS);
+			allocated = allocatedBytes();
+			count = 0;
+			do {
+				for(MouseEvent e : events) {
+					if(dragged)
+						motion.mouseDragged(e);
+					else
+						motion.mouseMoved(e);
+				}
+				count += events.length;
+			} while(System.nanoTime() < end);
+		}
+		
+		if(allocated < 0)
+			return -1;
+		return (allocatedBytes() - allocated) / (double)count;
+	}
+	
+	/**
+	 * @return The right and bottom edges of the area covered by a Simulation's Gates, packed by {@link GridKey}
+	 */
+	private static long extent(Simulation simulation) {
+		int maxX = 0;
+		int maxY = 0;
+		for(Gate gate : simulation.getGates()) {
+			maxX = Math.max(maxX, gate.getX() + gate.getWidth());
+			maxY = Math.max(maxY, gate.getY() + gate.getHeight());
+		}
+		return GridKey.pack(maxX, maxY);
+	}
+	
+	/**
+	 * @return The bytes allocated by the current thread so far, or -1 if the JVM can't tell
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+}
@@ -0,0 +1,291 @@
+package common;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import common.sim.Gate;
+import common.sim.GateComponent;
+import common.sim.Pin;
+import common.sim.PinType;
+import common.sim.Simulation;
+import common.sim.Wire;
+
+/**
+ * Reads and writes circuits in a compact binary format. All numbers are big-endian:
+ * <pre>
+ * int    magic 'JLGC'
+ * int    version
+ * int    string count, then per string: unsigned short byte length, UTF-8 bytes
+ * int    gate count, then per gate: int component (string table index), int x, int y, byte flags,
+ *        then if flags has {@link CircuitFile#FLAG_FIXED}: int pin states, bit i for pin i
+ * int    wire count, then per wire: int output gate, short output pin, int input gate, short input pin
+ * </pre>
+ * where gate indices refer to the order Gates are stored in and pin indices to the order of
+ * {@link Gate#getPins()}. Version 1 files have no gate flags. Files are memory-mapped when loaded so
+ * no per-element buffers are allocated.
+ */
+public class CircuitFile
+{
+	/**
+	 * The first four bytes of every circuit file
+	 */
+	public static final int MAGIC = 0x4A4C4743;
+	
+	/**
+	 * The version written by {@link CircuitFile#save(Simulation, Path)}
+	 */
+	public static final int VERSION = 2;
+	
+	/**
+	 * The gate flag set for a fixed Gate, see {@link Gate#isFixed()}
+	 */
+	private static final int FLAG_FIXED = 1;
+	
+	/**
+	 * The file extension circuit files are saved with
+	 */
+	public static final String EXTENSION = "jlc";
+	
+	/**
+	 * Loads a circuit file, adding its Gates and Wires to a Simulation
+	 * @param path The file to load
+	 * @param gateManager Where GateComponents are looked up by name
+	 * @param simulation The Simulation to add the Gates and Wires to
+	 * @return The loaded Gates in file order
+	 * @throws IOException If the file can't be read or is not a valid circuit file
+	 */
+	public static Gate[] load(Path path, GateManager gateManager, Simulation simulation) throws IOException {
+		MappedByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		
+		try {
+			return load(buffer, gateManager, simulation);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated circuit file", e);
+		}
+	}
+	
+	/**
+	 * Loads a circuit from a buffer in the format written by {@link CircuitFile#save(Simulation, Path)}
+	 * @param buffer The circuit's bytes, read from its current position
+	 * @param gateManager Where GateComponents are looked up by name
+	 * @param simulation The Simulation to add the Gates and Wires to
+	 * @return The loaded Gates in file order
+	 * @throws IOException If the buffer does not hold a valid circuit
+	 */
+	public static Gate[] load(ByteBuffer buffer, GateManager gateManager, Simulation simulation) throws IOException {
+		if(buffer.getInt() != MAGIC)
+			throw new IOException("Not a circuit file");
+		int version = buffer.getInt();
+		if(version < 1 || version > VERSION)
+			throw new IOException("Unsupported circuit file version " + version);
+		
+		GateComponent[] components = new GateComponent[readCount(buffer, 2)];
+		for(int i = 0; i < components.length; ++i) {
+			byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+			buffer.get(bytes);
+			String name = new String(bytes, StandardCharsets.UTF_8);
+			components[i] = gateManager.find(name);
+			if(components[i] == null)
+				throw new IOException("Unknown component " + name);
+		}
+		
+		Gate[] gates = new Gate[readCount(buffer, version == 1 ? 12 : 13)];
+		int[] fixedStates = null;
+		for(int i = 0; i < gates.length; ++i) {
+			int component = buffer.getInt();
+			if(component < 0 || component >= components.length)
+				throw new IOException("Gate " + i + " has an invalid component " + component);
+			
+			gates[i] = new Gate(simulation, components[component], buffer.getInt(), buffer.getInt());
+			if(version > 1 && (buffer.get() & FLAG_FIXED) != 0) {
+				if(!gates[i].canBeFixed())
+					throw new IOException("Gate " + i + " can't be fixed");
+				if(fixedStates == null)
+					fixedStates = new int[gates.length];
+				fixedStates[i] = buffer.getInt() | Integer.MIN_VALUE;
+			}
+		}
+		
+		Wire[] wires = new Wire[readCount(buffer, 12)];
+		for(int i = 0; i < wires.length; ++i) {
+			Pin output = readPin(buffer, gates);
+			Pin input = readPin(buffer, gates);
+			if(output.getType() != PinType.OUTPUT || input.getType() != PinType.INPUT)
+				throw new IOException("Wire " + i + " does not run from an output pin to an input pin");
+			if(input.getWire() != null)
+				throw new IOException("Wire " + i + " drives a pin that already has a wire");
+			
+			wires[i] = new Wire(simulation, output.getPosition());
+			wires[i].connect(output, input);
+		}
+		
+		simulation.addAll(gates, wires);
+		if(fixedStates != null) {
+			for(int i = 0; i < gates.length; ++i) {
+				if(fixedStates[i] == 0)
+					continue;
+				Pin[] pins = gates[i].getPins();
+				for(int p = 0; p < pins.length && p < 31; ++p)
+					pins[p].setState(((fixedStates[i] >>> p) & 1) != 0);
+				gates[i].setFixed(true);
+			}
+		}
+		return gates;
+	}
+	
+	/**
+	 * Saves every Gate and Wire in a Simulation
+	 * @param simulation The Simulation to save
+	 * @param path The file to write
+	 * @throws IOException If the file can't be written
+	 */
+	public static void save(Simulation simulation, Path path) throws IOException {
+		Vector<Gate> gates = simulation.getGates();
+		Vector<Wire> wires = simulation.getWires();
+		
+		Map<String, Integer> strings = new HashMap<>();
+		List<String> stringTable = new ArrayList<>();
+		Map<Gate, Integer> gateIndices = new IdentityHashMap<>(gates.size() * 2);
+		int[] componentIds = new int[gates.size()];
+		for(int i = 0; i < gates.size(); ++i) {
+			String name = gates.get(i).getGateComponent().getName();
+			Integer id = strings.get(name);
+			if(id == null) {
+				id = stringTable.size();
+				strings.put(name, id);
+				stringTable.add(name);
+			}
+			componentIds[i] = id;
+			gateIndices.put(gates.get(i), i);
+		}
+		
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer out = ByteBuffer.allocate(1 << 16);
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			
+			out.putInt(stringTable.size());
+			for(String name : stringTable) {
+				byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+				if(bytes.length > 0xFFFF)
+					throw new IOException("Component name too long: " + name);
+				out = reserve(channel, out, 2 + bytes.length);
+				out.putShort((short)bytes.length);
+				out.put(bytes);
+			}
+			
+			out = reserve(channel, out, 4);
+			out.putInt(gates.size());
+			for(int i = 0; i < gates.size(); ++i) {
+				Gate gate = gates.get(i);
+				out = reserve(channel, out, 17);
+				out.putInt(componentIds[i]);
+				out.putInt(gate.getX());
+				out.putInt(gate.getY());
+				if(gate.isFixed()) {
+					int states = 0;
+					Pin[] pins = gate.getPins();
+					for(int p = 0; p < pins.length && p < 31; ++p) {
+						if(pins[p].getState())
+							states |= 1 << p;
+					}
+					out.put((byte)FLAG_FIXED);
+					out.putInt(states);
+				}
+				else {
+					out.put((byte)0);
+				}
+			}
+			
+			int wireCount = 0;
+			for(Wire wire : wires) {
+				if(wire.getOutputPin() != null && wire.getInputPin() != null)
+					++wireCount;
+			}
+			
+			out = reserve(channel, out, 4);
+			out.putInt(wireCount);
+			for(Wire wire : wires) {
+				if(wire.getOutputPin() != null && wire.getInputPin() != null) {
+					out = reserve(channel, out, 12);
+					putPin(out, wire.getOutputPin(), gateIndices);
+					putPin(out, wire.getInputPin(), gateIndices);
+				}
+			}
+			flush(channel, out);
+		}
+	}
+	
+	/**
+	 * Makes room in the write buffer, flushing it to the channel if it is too full
+	 * @param channel The channel being written
+	 * @param out The write buffer
+	 * @param bytes The number of bytes about to be put
+	 * @return The buffer to put them in, which is only reallocated if it can never hold them
+	 * @throws IOException If the channel can't be written
+	 */
+	private static ByteBuffer reserve(FileChannel channel, ByteBuffer out, int bytes) throws IOException {
+		if(out.remaining() >= bytes)
+			return out;
+		
+		flush(channel, out);
+		return out.capacity() >= bytes ? out : ByteBuffer.allocate(bytes);
+	}
+	
+	/**
+	 * Writes and empties the write buffer
+	 */
+	private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+		out.flip();
+		while(out.hasRemaining())
+			channel.write(out);
+		out.clear();
+	}
+	
+	/**
+	 * Reads an element count and checks the buffer is big enough to hold that many elements
+	 * @param buffer The buffer to read from
+	 * @param elementSize The smallest number of bytes each element takes
+	 * @return The count
+	 * @throws IOException If the count is negative or runs past the end of the buffer
+	 */
+	private static int readCount(ByteBuffer buffer, int elementSize) throws IOException {
+		int count = buffer.getInt();
+		if(count < 0 || (long)count * elementSize > buffer.remaining())
+			throw new IOException("Invalid element count " + count);
+		return count;
+	}
+	
+	private static Pin readPin(ByteBuffer buffer, Gate[] gates) throws IOException {
+		int gate = buffer.getInt();
+		int pin = buffer.getShort();
+		if(gate < 0 || gate >= gates.length || pin < 0 || pin >= gates[gate].getPins().length)
+			throw new IOException("Invalid pin " + gate + "." + pin);
+		return gates[gate].getPins()[pin];
+	}
+	
+	private static void putPin(ByteBuffer out, Pin pin, Map<Gate, Integer> gateIndices) {
+		Gate gate = pin.getGate();
+		Pin[] pins = gate.getPins();
+		int index = 0;
+		while(pins[index] != pin)
+			++index;
+		out.putInt(gateIndices.get(gate));
+		out.putShort((short)index);
+	}
+}
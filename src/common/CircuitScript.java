@@ -0,0 +1,229 @@
+package common;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import common.sim.Gate;
+import common.sim.GateComponent;
+import common.sim.Pin;
+import common.sim.Simulation;
+import common.sim.Wire;
+
+/**
+ * Builds a circuit into a Simulation from a plain text description and holds the input schedule
+ * that drives it. Each non-blank line that doesn't start with # is one of:
+ * <pre>
+ * gate &lt;name&gt; &lt;component&gt; &lt;x&gt; &lt;y&gt;
+ * wire &lt;gate&gt;.&lt;pin&gt; &lt;gate&gt;.&lt;pin&gt;
+ * set &lt;tick&gt; &lt;gate&gt;.&lt;pin&gt; &lt;0|1&gt;
+ * fix &lt;gate&gt;.&lt;pin&gt; &lt;0|1&gt;
+ * observe &lt;gate&gt;.&lt;pin&gt;
+ * </pre>
+ * where component is a GateComponent name such as AND, pin is a PinComponent label and a set line
+ * changes an output pin (such as a Switch's) just before the given tick runs. A fix line sets an
+ * output pin and marks its Gate as fixed, and an observe line keeps a pin up to date when the
+ * netlist is optimized, see {@link Simulation#setOptimizing(boolean)}.
+ */
+public class CircuitScript {
+	/**
+	 * The Gates created by the script, by name in the order they were declared
+	 */
+	private final Map<String, Gate> gates_;
+	
+	/**
+	 * Scheduled input changes, sorted by tick
+	 */
+	private final List<ScheduledInput> schedule_;
+	
+	/**
+	 * The position in {@link CircuitScript#schedule_} of the next input to apply
+	 */
+	private int nextInput_;
+	
+	private CircuitScript() {
+		gates_ = new LinkedHashMap<>();
+		schedule_ = new ArrayList<>();
+		nextInput_ = 0;
+	}
+	
+	/**
+	 * Reads a script and builds its circuit into a Simulation
+	 * @param reader The script to read
+	 * @param gateManager Where GateComponents are looked up by name
+	 * @param simulation The Simulation to add the Gates and Wires to
+	 * @return The loaded script
+	 * @throws IOException If the script can't be read or has an error
+	 */
+	public static CircuitScript load(Reader reader, GateManager gateManager, Simulation simulation) throws IOException {
+		CircuitScript script = new CircuitScript();
+		BufferedReader in = new BufferedReader(reader);
+		
+		String line;
+		int lineNumber = 0;
+		while((line = in.readLine()) != null) {
+			++lineNumber;
+			line = line.trim();
+			if(line.isEmpty() || line.startsWith("#"))
+				continue;
+			
+			String[] tokens = line.split("\\s+");
+			try {
+				switch(tokens[0]) {
+					case "gate":
+						script.parseGate(tokens, gateManager, simulation);
+						break;
+					case "wire":
+						script.parseWire(tokens, simulation);
+						break;
+					case "set":
+						script.parseSet(tokens);
+						break;
+					case "fix":
+						script.parseFix(tokens);
+						break;
+					case "observe":
+						expectTokens(tokens, 2);
+						script.findPin(tokens[1]).setObserved(true);
+						break;
+					default:
+						throw new IllegalArgumentException("unknown command " + tokens[0]);
+				}
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+			}
+		}
+		
+		Collections.sort(script.schedule_, new Comparator<ScheduledInput>() {
+			@Override
+			public int compare(ScheduledInput a, ScheduledInput b) {
+				return Integer.compare(a.tick_, b.tick_);
+			}
+		});
+		return script;
+	}
+	
+	/**
+	 * @return {@link CircuitScript#gates_}
+	 */
+	public Map<String, Gate> getGates() {
+		return gates_;
+	}
+	
+	/**
+	 * @return The tick of the last scheduled input, or -1 if there are none
+	 */
+	public int getLastScheduledTick() {
+		return schedule_.isEmpty() ? -1 : schedule_.get(schedule_.size() - 1).tick_;
+	}
+	
+	/**
+	 * Applies every scheduled input due at or before a tick that has not been applied yet
+	 * @param tick The tick about to run
+	 */
+	public void applyInputs(int tick) {
+		while(nextInput_ < schedule_.size() && schedule_.get(nextInput_).tick_ <= tick) {
+			ScheduledInput input = schedule_.get(nextInput_++);
+			input.pin_.setState(input.state_);
+		}
+	}
+	
+	private void parseGate(String[] tokens, GateManager gateManager, Simulation simulation) {
+		expectTokens(tokens, 5);
+		if(gates_.containsKey(tokens[1]))
+			throw new IllegalArgumentException("duplicate gate " + tokens[1]);
+		
+		GateComponent component = gateManager.find(tokens[2]);
+		if(component == null)
+			throw new IllegalArgumentException("unknown component " + tokens[2]);
+		
+		Gate gate = new Gate(simulation, component, Integer.parseInt(tokens[3]), Integer.parseInt(tokens[4]));
+		simulation.addGate(gate);
+		gates_.put(tokens[1], gate);
+	}
+	
+	private void parseWire(String[] tokens, Simulation simulation) {
+		expectTokens(tokens, 3);
+		Pin start = findPin(tokens[1]);
+		Pin end = findPin(tokens[2]);
+		Wire wire = new Wire(simulation, start.getPosition(), end.getPosition());
+		if(!wire.connect(start, end))
+			throw new IllegalArgumentException("can't connect " + tokens[1] + " to " + tokens[2]);
+		simulation.addWire(wire);
+	}
+	
+	private void parseSet(String[] tokens) {
+		expectTokens(tokens, 4);
+		int tick = Integer.parseInt(tokens[1]);
+		schedule_.add(new ScheduledInput(tick, findPin(tokens[2]), parseState(tokens[3])));
+	}
+	
+	private void parseFix(String[] tokens) {
+		expectTokens(tokens, 3);
+		Pin pin = findPin(tokens[1]);
+		if(!pin.getGate().canBeFixed())
+			throw new IllegalArgumentException("can't fix " + tokens[1] + ", its gate has inputs or logic");
+		
+		pin.setState(parseState(tokens[2]));
+		pin.getGate().setFixed(true);
+	}
+	
+	/**
+	 * @param token The token holding a state
+	 * @return True for 1, false for 0
+	 */
+	private static boolean parseState(String token) {
+		if(token.equals("1"))
+			return true;
+		if(token.equals("0"))
+			return false;
+		throw new IllegalArgumentException("state must be 0 or 1: " + token);
+	}
+	
+	/**
+	 * @param reference A pin reference of the form gate.pin
+	 * @return The referenced Pin
+	 */
+	private Pin findPin(String reference) {
+		int dot = reference.lastIndexOf('.');
+		if(dot < 0)
+			throw new IllegalArgumentException("expected gate.pin: " + reference);
+		
+		Gate gate = gates_.get(reference.substring(0, dot));
+		if(gate == null)
+			throw new IllegalArgumentException("unknown gate " + reference.substring(0, dot));
+		
+		String label = reference.substring(dot + 1);
+		for(Pin pin : gate.getPins()) {
+			if(pin.getPinComponent().getLabel().equals(label))
+				return pin;
+		}
+		throw new IllegalArgumentException("unknown pin " + reference);
+	}
+	
+	private static void expectTokens(String[] tokens, int count) {
+		if(tokens.length != count)
+			throw new IllegalArgumentException(tokens[0] + " takes " + (count - 1) + " arguments");
+	}
+	
+	/**
+	 * A change to an output pin applied before a given tick
+	 */
+	private static class ScheduledInput {
+		private final int tick_;
+		private final Pin pin_;
+		private final boolean state_;
+		
+		ScheduledInput(int tick, Pin pin, boolean state) {
+			tick_ = tick;
+			pin_ = pin;
+			state_ = state;
+		}
+	}
+}
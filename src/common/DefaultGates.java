@@ -0,0 +1,181 @@
+package common;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.event.MouseEvent;
+
+import common.sim.GateComponent;
+import common.sim.LogicOp;
+import common.sim.LutComponent;
+import common.sim.Pin;
+import common.sim.PinComponent;
+import common.sim.PinType;
+
+/**
+ * The built-in GateComponents, kept separate from the UI so they can be used without a window
+ */
+public class DefaultGates
+{
+	/**
+	 * Creates all of the built-in GateComponents
+	 * @return A GateManager with the "Inputs", "Outputs" and "Gates" containers filled in
+	 */
+	public static GateManager createGateManager()
+	{
+		GateManager gateManager = new GateManager();
+		gateManager.addContainer("Inputs");
+		gateManager.addContainer("Outputs");
+		gateManager.addContainer("Gates");
+		
+		PinComponent[] inputGates = { new PinComponent("A", PinType.OUTPUT, false, new Point(20, 10)) };
+		PinComponent[] outputGates = { new PinComponent("A", PinType.INPUT, true, new Point(10, 20)) };
+		
+		PinComponent[] threePinGates = {
+				new PinComponent("A", PinType.INPUT, true, new Point(0, 30)),
+				new PinComponent("B", PinType.INPUT, true, new Point(0, 10)),
+				new PinComponent("C", PinType.OUTPUT, false, new Point(50, 20))
+		};
+		
+		PinComponent[] twoPinGates = {
+				new PinComponent("A", PinType.INPUT, true, new Point(0, 20)),
+				new PinComponent("B", PinType.OUTPUT, false, new Point(40, 20))
+		};
+		
+		PinComponent[] twoPinNOTGates = {
+				new PinComponent("A", PinType.INPUT, true, new Point(0, 20)),
+				new PinComponent("B", PinType.OUTPUT, false, new Point(50, 20))
+		};
+		
+		gateManager.add("Inputs", new GateComponent("Switch", null, new Dimension(20, 20), inputGates) {
+			@Override
+			public LogicOp getLogicOp() {
+				return LogicOp.NONE;
+			}
+			
+			@Override
+			public void draw(Graphics g, boolean[] states) {
+				g.drawRect(0, 0, 20, 20);
+				
+				if(states != null && states[0])
+					g.setColor(Color.GREEN);
+				g.fillRect(3, 3, 17, 17);
+				g.setColor(Color.BLACK);
+			}
+			
+			@Override
+			public void onMouseClicked(MouseEvent e, Pin[] pins) {
+				pins[0].setState(!pins[0].getState());
+			}
+		});
+		
+		gateManager.add("Inputs", new GateComponent("Button", null, new Dimension(20, 20), inputGates) {
+			@Override
+			public LogicOp getLogicOp() {
+				return LogicOp.NONE;
+			}
+			
+			@Override
+			public void draw(Graphics g, boolean[] states) {
+				if(states != null)
+					g.setColor(states[0] ? Color.GREEN : Color.BLACK);
+				g.fillRect(0, 0, 20, 20);
+				g.setColor(Color.BLACK);
+			}
+			
+			@Override
+			public void onMousePressed(MouseEvent e, Pin[] pins) {
+				pins[0].setState(true);
+			}
+			
+			@Override
+			public void onMouseReleased(MouseEvent e, Pin[] pins) {
+				pins[0].setState(false);
+			}
+		});
+		
+		gateManager.add("Outputs", new GateComponent("LED", null, new Dimension(20, 20), outputGates) {
+			@Override
+			public LogicOp getLogicOp() {
+				return LogicOp.NONE;
+			}
+			
+			@Override
+			public void draw(Graphics g, boolean[] states) {
+				if(states != null && states[0])
+					g.setColor(Color.RED);
+				g.fillOval(0, 0, 20, 20);
+				
+				g.setColor(Color.BLACK);
+				g.drawRect(0, 0, 20, 20);
+			}
+		});
+		
+		gateManager.add("Gates", new GateComponent("Diode", null, "/resources/gates/Diode.png", twoPinGates) {
+			@Override
+			public LogicOp getLogicOp() {
+				return LogicOp.BUFFER;
+			}
+			
+			@Override
+			public void performLogic(Pin[] pins) {
+				pins[1].setState(pins[0].getState());
+			}
+		});
+		
+		gateManager.add("Gates", new GateComponent("NOT", null, "/resources/gates/NOT.png", twoPinNOTGates) {
+			@Override
+			public LogicOp getLogicOp() {
+				return LogicOp.NOT;
+			}
+			
+			@Override
+			public void performLogic(Pin[] pins) {
+				pins[1].setState(!pins[0].getState());
+			}
+		});
+		
+		gateManager.add("Gates", new GateComponent("AND", null, "/resources/gates/AND.png", threePinGates) {
+			@Override
+			public LogicOp getLogicOp() {
+				return LogicOp.AND;
+			}
+			
+			@Override
+			public void performLogic(Pin[] pins) {
+				pins[2].setState(pins[0].getState() && pins[1].getState());
+			}
+		});
+		
+		gateManager.add("Gates", new GateComponent("OR", null, "/resources/gates/OR.png", threePinGates) {
+			@Override
+			public LogicOp getLogicOp() {
+				return LogicOp.OR;
+			}
+			
+			@Override
+			public void performLogic(Pin[] pins) {
+				pins[2].setState(pins[0].getState() || pins[1].getState());
+			}
+		});
+		
+		gateManager.add("Gates", new GateComponent("XOR", null, "/resources/gates/XOR.png", threePinGates) {
+			@Override
+			public LogicOp getLogicOp() {
+				return LogicOp.XOR;
+			}
+			
+			@Override
+			public void performLogic(Pin[] pins) {
+				pins[2].setState(pins[0].getState() ^ pins[1].getState());
+			}
+		});
+		
+		gateManager.add("Gates", new LutComponent("NAND", null, 2, 0x7));
+		gateManager.add("Gates", new LutComponent("NOR", null, 2, 0x1));
+		gateManager.add("Gates", new LutComponent("XNOR", null, 2, 0x9));
+		
+		return gateManager;
+	}
+}
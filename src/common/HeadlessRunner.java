@@ -0,0 +1,271 @@
+package common;
+
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.JMException;
+
+import common.sim.Gate;
+import common.sim.LogicOp;
+import common.sim.Pin;
+import common.sim.PinType;
+import common.sim.SettleResult;
+import common.sim.Simulation;
+import common.sim.SimulationMetrics;
+import common.sim.WaveformRecorder;
+
+/**
+ * Runs a circuit from a {@link CircuitScript} or {@link CircuitFile} without creating a window, as
+ * fast as the CPU allows, and prints the resulting output pin values and timing
+ */
+public class HeadlessRunner
+{
+	/**
+	 * Entry point
+	 * @param args Command-line arguments, see {@link HeadlessRunner#printUsage()}
+	 */
+	public static void main(String[] args)
+	{
+		System.setProperty("java.awt.headless", "true");
+		
+		String path = null;
+		String savePath = null;
+		String vcdPath = null;
+		Set<String> traced = null;
+		int ticks = -1;
+		int maxTicks = 1000000;
+		boolean compiled = false;
+		boolean parallel = false;
+		boolean collapse = false;
+		boolean optimize = false;
+		boolean metered = false;
+		
+		try {
+			for(int i = 0; i < args.length; ++i) {
+				switch(args[i]) {
+					case "-ticks":
+						ticks = Integer.parseInt(args[++i]);
+						break;
+					case "-settle":
+						maxTicks = Integer.parseInt(args[++i]);
+						break;
+					case "-save":
+						savePath = args[++i];
+						break;
+					case "-vcd":
+						vcdPath = args[++i];
+						break;
+					case "-trace":
+						traced = new HashSet<>(Arrays.asList(args[++i].split(",")));
+						break;
+					case "-compiled":
+						compiled = true;
+						break;
+					case "-parallel":
+						compiled = true;
+						parallel = true;
+						break;
+					case "-collapse":
+						compiled = true;
+						collapse = true;
+						break;
+					case "-optimize":
+						compiled = true;
+						optimize = true;
+						break;
+					case "-metrics":
+						metered = true;
+						break;
+					default:
+						if(path != null || args[i].startsWith("-"))
+							throw new IllegalArgumentException(args[i]);
+						path = args[i];
+						break;
+				}
+			}
+		} catch (RuntimeException e) {
+			printUsage();
+			System.exit(2);
+		}
+		
+		if(path == null) {
+			printUsage();
+			System.exit(2);
+		}
+		
+		Simulation simulation = new Simulation();
+		simulation.setCompiled(compiled);
+		simulation.setParallel(parallel);
+		simulation.setCollapseClusters(collapse);
+		simulation.setOptimizing(optimize);
+		
+		SimulationMetrics metrics = null;
+		if(metered) {
+			metrics = new SimulationMetrics();
+			simulation.setMetrics(metrics);
+			try {
+				metrics.register(Paths.get(path).getFileName().toString());
+			} catch (JMException e) {
+				System.err.println("metrics not published over JMX: " + e.getMessage());
+			}
+		}
+		
+		CircuitScript script = null;
+		Map<String, Gate> gates;
+		long loadStart = System.nanoTime();
+		try {
+			if(path.endsWith("." + CircuitFile.EXTENSION)) {
+				Gate[] loaded = CircuitFile.load(Paths.get(path), DefaultGates.createGateManager(), simulation);
+				gates = new LinkedHashMap<>();
+				for(int i = 0; i < loaded.length; ++i)
+					gates.put("g" + i, loaded[i]);
+			}
+			else {
+				try(Reader reader = new FileReader(path)) {
+					script = CircuitScript.load(reader, DefaultGates.createGateManager(), simulation);
+				}
+				gates = script.getGates();
+			}
+		} catch (IOException e) {
+			System.err.println(path + ": " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		long loadElapsed = System.nanoTime() - loadStart;
+		
+		if(savePath != null) {
+			try {
+				CircuitFile.save(simulation, Paths.get(savePath));
+			} catch (IOException e) {
+				System.err.println(savePath + ": " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		
+		WaveformRecorder recorder = null;
+		if(vcdPath != null) {
+			recorder = new WaveformRecorder(1 << 20);
+			for(Map.Entry<String, Gate> entry : gates.entrySet()) {
+				for(Pin pin : entry.getValue().getPins()) {
+					String label = pin.getPinComponent().getLabel();
+					if(traced == null || traced.remove(entry.getKey() + "." + label))
+						recorder.trace(pin, entry.getKey(), label);
+				}
+			}
+			if(traced != null && !traced.isEmpty()) {
+				System.err.println("unknown pins to trace: " + traced);
+				System.exit(2);
+			}
+			
+			try {
+				recorder.start(new BufferedWriter(new FileWriter(vcdPath), 1 << 16), simulation.getCurrentTick());
+			} catch (IOException e) {
+				System.err.println(vcdPath + ": " + e.getMessage());
+				System.exit(1);
+			}
+			simulation.setWaveformRecorder(recorder);
+		}
+		
+		long start = System.nanoTime();
+		SettleResult result = run(simulation, script, ticks, maxTicks);
+		long elapsed = System.nanoTime() - start;
+		
+		if(recorder != null) {
+			simulation.setWaveformRecorder(null);
+			try {
+				recorder.close();
+			} catch (IOException e) {
+				System.err.println(vcdPath + ": " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		
+		printOutputs(gates);
+		
+		int ran = simulation.getCurrentTick();
+		System.out.println();
+		System.out.println("gates: " + simulation.getGates().size() + ", wires: " + simulation.getWires().size());
+		System.out.printf("load: %.3f ms%n", loadElapsed / 1e6);
+		if(recorder != null)
+			System.out.println("transitions recorded: " + recorder.getRecordedCount());
+		System.out.println("ticks: " + ran + (result != null ? " (" + result + ")" : ""));
+		System.out.printf("time: %.3f ms, %.0f ticks/s%n", elapsed / 1e6, elapsed > 0 ? ran * 1e9 / elapsed : 0.0);
+		if(metrics != null) {
+			System.out.println();
+			System.out.println(metrics.snapshot());
+		}
+		
+		if(result != null && !result.isStable())
+			System.exit(3);
+	}
+	
+	/**
+	 * Ticks the Simulation while applying the script's inputs
+	 * @param simulation The Simulation to tick
+	 * @param script The script holding the input schedule, or null if there are no inputs
+	 * @param ticks The exact number of ticks to run, or -1 to run until stable
+	 * @param maxTicks The most ticks to run when running until stable
+	 * @return How the circuit settled after its last input, or null if running an exact number of ticks
+	 */
+	private static SettleResult run(Simulation simulation, CircuitScript script, int ticks, int maxTicks) {
+		if(ticks >= 0) {
+			for(int i = 0; i < ticks; ++i) {
+				if(script != null)
+					script.applyInputs(simulation.getCurrentTick());
+				simulation.tick();
+			}
+			return null;
+		}
+		
+		if(script == null)
+			return simulation.settle(maxTicks);
+		
+		int lastInput = script.getLastScheduledTick();
+		while(simulation.getCurrentTick() <= lastInput && simulation.getCurrentTick() < maxTicks) {
+			script.applyInputs(simulation.getCurrentTick());
+			simulation.tick();
+		}
+		return simulation.settle(Math.max(0, maxTicks - simulation.getCurrentTick()));
+	}
+	
+	/**
+	 * Prints the input pins of every Gate without logic of its own, such as LEDs
+	 * @param gates The named Gates of the circuit
+	 */
+	private static void printOutputs(Map<String, Gate> gates) {
+		for(Map.Entry<String, Gate> entry : gates.entrySet()) {
+			Gate gate = entry.getValue();
+			if(gate.getGateComponent().getLogicOp() != LogicOp.NONE)
+				continue;
+			
+			for(Pin pin : gate.getPins()) {
+				if(pin.getType() == PinType.INPUT)
+					System.out.println(entry.getKey() + "." + pin.getPinComponent().getLabel() + " = " + (pin.getState() ? 1 : 0));
+			}
+		}
+	}
+	
+	private static void printUsage() {
+		System.err.println("usage: HeadlessRunner <circuit> [-ticks <n> | -settle <max ticks>] [-compiled] [-parallel] [-collapse] [-optimize] [-metrics] [-save <file>] [-vcd <file> [-trace <gate.pin,...>]]");
+		System.err.println("  <circuit>      a circuit script, or a binary circuit file ending in ." + CircuitFile.EXTENSION);
+		System.err.println("  -ticks <n>     run exactly n ticks");
+		System.err.println("  -settle <max>  run until no Gates or Wires are queued or an oscillation is found (the default, up to 1000000 ticks)");
+		System.err.println("  -compiled      use the compiled engine");
+		System.err.println("  -parallel      use the compiled engine with parallel ticks");
+		System.err.println("  -collapse      use the compiled engine with small clusters of gates collapsed into truth tables");
+		System.err.println("  -optimize      use the compiled engine with constants folded, buffers bypassed and unobserved gates skipped");
+		System.err.println("  -metrics       count the work done each tick, published over JMX while running and printed at the end");
+		System.err.println("  -save <file>   save the loaded circuit as a binary circuit file before running it");
+		System.err.println("  -vcd <file>    record pin transitions to a Value Change Dump");
+		System.err.println("  -trace <pins>  comma separated gate.pin list to record, every pin by default");
+	}
+}
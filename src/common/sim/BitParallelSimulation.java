@@ -0,0 +1,611 @@
+package common.sim;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates a snapshot of a Simulation's circuit with every net carrying a long, so 64 independent
+ * input vectors are settled by one pass over the Gates. Wires are treated as having no delay and
+ * the circuit is evaluated to a steady state rather than ticked, which is what exhaustive input
+ * sweeps and truth tables need. Only Gates whose GateComponent declares a built-in {@link LogicOp}
+ * can be evaluated this way, {@link LogicOp#LUT} Gates are broken down into the two-input operations.
+ */
+public class BitParallelSimulation {
+	/**
+	 * Slot in {@link BitParallelSimulation#values_} read by unconnected input pins
+	 */
+	static final int ZERO = 0;
+	
+	/**
+	 * Lane patterns for the first six inputs of an exhaustive sweep, lane l holds bit i of l
+	 */
+	static final long[] LANE_PATTERNS = {
+		0xAAAAAAAAAAAAAAAAL,
+		0xCCCCCCCCCCCCCCCCL,
+		0xF0F0F0F0F0F0F0F0L,
+		0xFF00FF00FF00FF00L,
+		0xFFFF0000FFFF0000L,
+		0xFFFFFFFF00000000L
+	};
+	
+	/**
+	 * The value slot of each Pin, output pins own a slot and input pins share the slot of the
+	 * output pin driving them
+	 */
+	private final IdentityHashMap<Pin, Integer> slots_;
+	
+	/**
+	 * The 64 lanes of every net, indexed by slot
+	 */
+	private final long[] values_;
+	
+	/**
+	 * The operation of each evaluated gate, in evaluation order
+	 */
+	private final LogicOp[] ops_;
+	
+	/**
+	 * The slots each evaluated gate reads its first and second input from
+	 */
+	private final int[] inputA_;
+	private final int[] inputB_;
+	
+	/**
+	 * The slot each evaluated gate writes its output to
+	 */
+	private final int[] output_;
+	
+	/**
+	 * The number of gates at the start of {@link BitParallelSimulation#ops_} that are in
+	 * topological order, gates after this are part of a feedback loop
+	 */
+	private final int acyclicCount_;
+	
+	/**
+	 * Takes a snapshot of the Gates and Wires currently in a Simulation, later edits to it are not seen.
+	 * {@link SubcircuitComponent} instances are inlined so their bodies are evaluated with the rest
+	 * of the circuit.
+	 * @param simulation The Simulation to snapshot
+	 * @throws IllegalArgumentException If a Gate's logic is {@link LogicOp#CUSTOM}
+	 */
+	public BitParallelSimulation(Simulation simulation) {
+		List<Gate> gates = simulation.getGates();
+		slots_ = new IdentityHashMap<>();
+		
+		//Output pins own a slot, a subcircuit instance owns a range of slots for the nets of its body
+		int slotCount = ZERO + 1;
+		int opCount = 0;
+		int[] bodyBase = new int[gates.size()];
+		for(int i = 0; i < gates.size(); ++i) {
+			Gate gate = gates.get(i);
+			GateComponent component = gate.getGateComponent();
+			if(component instanceof SubcircuitComponent) {
+				BitParallelSimulation body = ((SubcircuitComponent)component).getKernel();
+				bodyBase[i] = slotCount - 1;
+				slotCount += body.values_.length - 1;
+				opCount += body.ops_.length;
+				continue;
+			}
+			
+			LogicOp op = component.getLogicOp();
+			if(op == LogicOp.CUSTOM)
+				throw new IllegalArgumentException(component.getName() + " has custom logic and can't be evaluated bit-parallel");
+			if(op != LogicOp.NONE)
+				++opCount;
+			
+			for(Pin pin : gate.getPins()) {
+				if(pin.getType() == PinType.OUTPUT)
+					slots_.put(pin, slotCount++);
+			}
+		}
+		
+		//An instance's output pins are the body nets its output ports read
+		for(int i = 0; i < gates.size(); ++i) {
+			Gate gate = gates.get(i);
+			if(gate.getGateComponent() instanceof SubcircuitComponent) {
+				SubcircuitComponent component = (SubcircuitComponent)gate.getGateComponent();
+				Pin[] pins = gate.getPins();
+				int inputs = component.getInputCount();
+				for(int o = 0; o < component.getOutputCount(); ++o)
+					slots_.put(pins[inputs + o], inline(bodyBase[i], component.getOutputSlot(o)));
+			}
+		}
+		
+		//Input pins share the slot of their driver, an instance's input ports are merged into the net driving them
+		int[] parent = new int[slotCount];
+		for(int i = 0; i < slotCount; ++i)
+			parent[i] = i;
+		
+		for(int i = 0; i < gates.size(); ++i) {
+			Gate gate = gates.get(i);
+			Pin[] pins = gate.getPins();
+			for(int p = 0; p < pins.length; ++p) {
+				Pin pin = pins[p];
+				if(pin.getType() == PinType.INPUT) {
+					Wire wire = pin.getWire();
+					int slot = wire != null ? slots_.get(wire.getOutputPin()) : ZERO;
+					slots_.put(pin, slot);
+					if(gate.getGateComponent() instanceof SubcircuitComponent)
+						union(parent, inline(bodyBase[i], ((SubcircuitComponent)gate.getGateComponent()).getInputSlot(p)), slot);
+				}
+			}
+		}
+		
+		for(Map.Entry<Pin, Integer> entry : slots_.entrySet())
+			entry.setValue(find(parent, entry.getValue()));
+		
+		OpList list = new OpList(opCount, slotCount);
+		for(int i = 0; i < gates.size(); ++i) {
+			Gate gate = gates.get(i);
+			GateComponent component = gate.getGateComponent();
+			if(component instanceof SubcircuitComponent) {
+				BitParallelSimulation body = ((SubcircuitComponent)component).getKernel();
+				for(int k = 0; k < body.ops_.length; ++k) {
+					list.add(body.ops_[k], find(parent, inline(bodyBase[i], body.inputA_[k])), find(parent, inline(bodyBase[i], body.inputB_[k])),
+							find(parent, inline(bodyBase[i], body.output_[k])));
+				}
+				continue;
+			}
+			
+			LogicOp op = component.getLogicOp();
+			if(op == LogicOp.NONE)
+				continue;
+			
+			Pin[] pins = gate.getPins();
+			if(op == LogicOp.LUT) {
+				int inputs = pins.length - 1;
+				if(inputs < 1 || inputs > LutComponent.MAX_INPUTS)
+					throw new IllegalArgumentException(component.getName() + " does not have the pin layout of " + op);
+				
+				int[] inputSlots = new int[inputs];
+				for(int p = 0; p < inputs; ++p)
+					inputSlots[p] = slots_.get(pins[p]);
+				emitTable(list, component.getTruthTable(), inputSlots, inputs, slots_.get(pins[inputs]));
+				continue;
+			}
+			
+			int expected = op == LogicOp.BUFFER || op == LogicOp.NOT ? 2 : 3;
+			if(pins.length != expected)
+				throw new IllegalArgumentException(component.getName() + " does not have the pin layout of " + op);
+			list.add(op, slots_.get(pins[0]), expected == 3 ? slots_.get(pins[1]) : ZERO, slots_.get(pins[expected - 1]));
+		}
+		
+		//Slots past slotCount hold the intermediate results of broken down truth tables
+		slotCount = list.slotCount_;
+		opCount = list.count_;
+		LogicOp[] ops = list.ops_;
+		int[] inputA = list.inputA_;
+		int[] inputB = list.inputB_;
+		int[] output = list.output_;
+		
+		values_ = new long[slotCount];
+		for(int i = 0; i < gates.size(); ++i) {
+			Gate gate = gates.get(i);
+			if(gate.getGateComponent() instanceof SubcircuitComponent) {
+				BitParallelSimulation body = ((SubcircuitComponent)gate.getGateComponent()).getKernel();
+				for(int s = ZERO + 1; s < body.values_.length; ++s) {
+					if(body.values_[s] != 0)
+						values_[find(parent, inline(bodyBase[i], s))] = body.values_[s];
+				}
+				continue;
+			}
+			for(Pin pin : gate.getPins()) {
+				if(pin.getType() == PinType.OUTPUT)
+					values_[slots_.get(pin)] = pin.getState() ? -1L : 0L;
+			}
+		}
+		
+		//Levelize so each operation is evaluated after the ones driving it, one pass then settles any acyclic circuit
+		int[] pending = new int[opCount];
+		int[] driverOf = new int[slotCount];
+		Arrays.fill(driverOf, -1);
+		for(int k = 0; k < opCount; ++k)
+			driverOf[output[k]] = k;
+		
+		int[][] fanout = new int[opCount][];
+		int[] fanoutCount = new int[opCount];
+		for(int k = 0; k < opCount; ++k) {
+			int inputs = ops[k] == LogicOp.BUFFER || ops[k] == LogicOp.NOT ? 1 : 2;
+			for(int i = 0; i < inputs; ++i) {
+				int driver = driverOf[i == 0 ? inputA[k] : inputB[k]];
+				if(driver >= 0) {
+					if(fanout[driver] == null)
+						fanout[driver] = new int[2];
+					else if(fanoutCount[driver] == fanout[driver].length)
+						fanout[driver] = Arrays.copyOf(fanout[driver], fanoutCount[driver] * 2);
+					fanout[driver][fanoutCount[driver]++] = k;
+					++pending[k];
+				}
+			}
+		}
+		
+		int[] order = new int[opCount];
+		boolean[] placed = new boolean[opCount];
+		int head = 0;
+		int tail = 0;
+		for(int k = 0; k < opCount; ++k) {
+			if(pending[k] == 0)
+				order[tail++] = k;
+		}
+		while(head < tail) {
+			int k = order[head++];
+			placed[k] = true;
+			for(int i = 0; i < fanoutCount[k]; ++i) {
+				if(--pending[fanout[k][i]] == 0)
+					order[tail++] = fanout[k][i];
+			}
+		}
+		acyclicCount_ = tail;
+		for(int k = 0; k < opCount; ++k) {
+			if(!placed[k])
+				order[tail++] = k;
+		}
+		
+		ops_ = new LogicOp[opCount];
+		inputA_ = new int[opCount];
+		inputB_ = new int[opCount];
+		output_ = new int[opCount];
+		for(int i = 0; i < opCount; ++i) {
+			ops_[i] = ops[order[i]];
+			inputA_[i] = inputA[order[i]];
+			inputB_[i] = inputB[order[i]];
+			output_[i] = output[order[i]];
+		}
+	}
+	
+	/**
+	 * Breaks a truth table down into two-input operations by splitting it on its last input until
+	 * what is left is a constant, an input or a simple function of one
+	 * @param list The operations to add to
+	 * @param table Bit r is the result when input i carries bit i of r
+	 * @param inputs The slot of each input
+	 * @param count The number of inputs the table covers
+	 * @param output The slot to write the result to, or -1 for a new slot
+	 * @return The slot holding the result, which may be an input or a constant if output is -1
+	 */
+	private static int emitTable(OpList list, long table, int[] inputs, int count, int output) {
+		long mask = count == LutComponent.MAX_INPUTS ? -1L : (1L << (1 << count)) - 1;
+		table &= mask;
+		if(table == 0)
+			return list.copy(ZERO, output);
+		if(table == mask)
+			return list.copy(list.one(), output);
+		
+		int x = inputs[count - 1];
+		int half = 1 << (count - 1);
+		long halfMask = (1L << half) - 1;
+		long low = table & halfMask;
+		long high = (table >>> half) & halfMask;
+		if(low == high)
+			return emitTable(list, low, inputs, count - 1, output);
+		if(low == 0 && high == halfMask)
+			return list.copy(x, output);
+		if(low == halfMask && high == 0)
+			return list.add(LogicOp.NOT, x, ZERO, output);
+		if(low == 0)
+			return list.add(LogicOp.AND, x, emitTable(list, high, inputs, count - 1, -1), output);
+		if(high == halfMask)
+			return list.add(LogicOp.OR, x, emitTable(list, low, inputs, count - 1, -1), output);
+		if(high == 0)
+			return list.add(LogicOp.AND, list.add(LogicOp.NOT, x, ZERO, -1), emitTable(list, low, inputs, count - 1, -1), output);
+		if(low == halfMask)
+			return list.add(LogicOp.OR, list.add(LogicOp.NOT, x, ZERO, -1), emitTable(list, high, inputs, count - 1, -1), output);
+		if(high == (~low & halfMask))
+			return list.add(LogicOp.XOR, x, emitTable(list, low, inputs, count - 1, -1), output);
+		
+		int whenLow = emitTable(list, low, inputs, count - 1, -1);
+		int whenHigh = emitTable(list, high, inputs, count - 1, -1);
+		int notX = list.add(LogicOp.NOT, x, ZERO, -1);
+		return list.add(LogicOp.OR, list.add(LogicOp.AND, x, whenHigh, -1), list.add(LogicOp.AND, notX, whenLow, -1), output);
+	}
+	
+	/**
+	 * The operations of a snapshot while it is being built, grown as truth tables are broken down
+	 */
+	private static class OpList {
+		private LogicOp[] ops_;
+		private int[] inputA_;
+		private int[] inputB_;
+		private int[] output_;
+		
+		/**
+		 * The number of operations added
+		 */
+		private int count_;
+		
+		/**
+		 * The number of slots, including the ones added for intermediate results
+		 */
+		private int slotCount_;
+		
+		/**
+		 * The slot holding all ones, or -1 until something needs it
+		 */
+		private int one_;
+		
+		/**
+		 * @param capacity The expected number of operations
+		 * @param slotCount {@link OpList#slotCount_}
+		 */
+		OpList(int capacity, int slotCount) {
+			capacity = Math.max(capacity, 1);
+			ops_ = new LogicOp[capacity];
+			inputA_ = new int[capacity];
+			inputB_ = new int[capacity];
+			output_ = new int[capacity];
+			count_ = 0;
+			slotCount_ = slotCount;
+			one_ = -1;
+		}
+		
+		/**
+		 * @param op The operation
+		 * @param a The slot of the first input
+		 * @param b The slot of the second input, {@link BitParallelSimulation#ZERO} for BUFFER and NOT
+		 * @param output The slot to write, or -1 for a new slot
+		 * @return The slot written
+		 */
+		int add(LogicOp op, int a, int b, int output) {
+			if(output < 0)
+				output = slotCount_++;
+			if(count_ == ops_.length) {
+				ops_ = Arrays.copyOf(ops_, count_ * 2);
+				inputA_ = Arrays.copyOf(inputA_, count_ * 2);
+				inputB_ = Arrays.copyOf(inputB_, count_ * 2);
+				output_ = Arrays.copyOf(output_, count_ * 2);
+			}
+			ops_[count_] = op;
+			inputA_[count_] = a;
+			inputB_[count_] = b;
+			output_[count_] = output;
+			++count_;
+			return output;
+		}
+		
+		/**
+		 * @param slot A slot holding a result
+		 * @param output The slot the result is wanted in, or -1 if any slot will do
+		 * @return The slot holding the result
+		 */
+		int copy(int slot, int output) {
+			return output < 0 ? slot : add(LogicOp.BUFFER, slot, ZERO, output);
+		}
+		
+		/**
+		 * @return The slot holding all ones
+		 */
+		int one() {
+			if(one_ < 0)
+				one_ = add(LogicOp.NOT, ZERO, ZERO, -1);
+			return one_;
+		}
+	}
+	
+	/**
+	 * Maps a slot of an inlined body to a slot of this snapshot
+	 * @param base The offset of the instance's range of slots
+	 * @param slot The slot in the body
+	 * @return The slot in this snapshot
+	 */
+	private static int inline(int base, int slot) {
+		return slot == ZERO ? ZERO : base + slot;
+	}
+	
+	/**
+	 * Merges two nets, {@link BitParallelSimulation#ZERO} always stays the representative of its net
+	 * @param parent The union-find forest over slots
+	 */
+	private static void union(int[] parent, int a, int b) {
+		a = find(parent, a);
+		b = find(parent, b);
+		if(a == b)
+			return;
+		if(a == ZERO)
+			parent[b] = ZERO;
+		else
+			parent[a] = b;
+	}
+	
+	/**
+	 * @param parent The union-find forest over slots
+	 * @param slot The slot to look up
+	 * @return The representative slot of the net holding slot
+	 */
+	private static int find(int[] parent, int slot) {
+		while(parent[slot] != slot) {
+			parent[slot] = parent[parent[slot]];
+			slot = parent[slot];
+		}
+		return slot;
+	}
+	
+	/**
+	 * Sets the 64 lanes driven by an output pin, normally the pin of a Switch or Button
+	 * @param pin The output pin to drive
+	 * @param lanes Bit l is the pin's state in input vector l
+	 */
+	public void setInput(Pin pin, long lanes) {
+		if(pin.getType() != PinType.OUTPUT)
+			throw new IllegalArgumentException("Only output pins can be driven");
+		values_[slotOf(pin)] = lanes;
+	}
+	
+	/**
+	 * @param pin Any Pin in the snapshot, input pins report the value of the pin driving them
+	 * @return Bit l is the pin's state in input vector l
+	 */
+	public long getState(Pin pin) {
+		return values_[slotOf(pin)];
+	}
+	
+	/**
+	 * Evaluates every Gate until no output changes
+	 * @param maxPasses The most passes to make over the Gates, a circuit without feedback always
+	 * settles in one
+	 * @return The number of passes made, or -1 if the circuit was still changing after maxPasses
+	 */
+	public int settle(int maxPasses) {
+		return settle(values_, maxPasses);
+	}
+	
+	/**
+	 * Evaluates every Gate over a separate set of nets until no output changes, used to share one
+	 * snapshot between many users that each keep their own values
+	 * @param values The nets to evaluate, laid out like {@link BitParallelSimulation#values_}
+	 * @param maxPasses The most passes to make over the Gates
+	 * @return The number of passes made, or -1 if the circuit was still changing after maxPasses
+	 */
+	int settle(long[] values, int maxPasses) {
+		for(int pass = 1; pass <= maxPasses; ++pass) {
+			boolean changed = evaluate(values, 0, ops_.length);
+			if(acyclicCount_ == ops_.length || !changed)
+				return pass;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Evaluates every combination of the given inputs and records the outputs. Input i supplies bit
+	 * i of the row number, so row r of the result is the outputs when the inputs spell out r.
+	 * @param inputs The output pins to drive, at most 30
+	 * @param outputs The pins to record
+	 * @param maxPasses The most passes {@link BitParallelSimulation#settle(int)} may make per 64 rows
+	 * @return For each output, its value in each row packed 64 rows to a long
+	 * @throws IllegalStateException If some rows did not settle
+	 */
+	public long[][] truthTable(Pin[] inputs, Pin[] outputs, int maxPasses) {
+		if(inputs.length > 30)
+			throw new IllegalArgumentException("Too many inputs for an exhaustive sweep: " + inputs.length);
+		
+		long rows = 1L << inputs.length;
+		int words = (int)Math.max(1, rows >>> 6);
+		long mask = rows >= 64 ? -1L : (1L << rows) - 1;
+		long[][] table = new long[outputs.length][words];
+		
+		for(int word = 0; word < words; ++word) {
+			for(int i = 0; i < inputs.length; ++i) {
+				if(i < LANE_PATTERNS.length)
+					setInput(inputs[i], LANE_PATTERNS[i]);
+				else
+					setInput(inputs[i], ((word >>> (i - LANE_PATTERNS.length)) & 1) != 0 ? -1L : 0L);
+			}
+			
+			if(settle(maxPasses) < 0)
+				throw new IllegalStateException("Circuit did not settle within " + maxPasses + " passes");
+			
+			for(int o = 0; o < outputs.length; ++o)
+				table[o][word] = getState(outputs[o]) & mask;
+		}
+		
+		return table;
+	}
+	
+	/**
+	 * Evaluates a range of gates in order
+	 * @param values The nets to evaluate
+	 * @return True if any output changed
+	 */
+	private boolean evaluate(long[] values, int from, int to) {
+		long changed = 0;
+		long result;
+		for(int i = from; i < to; ++i) {
+			long a = values[inputA_[i]];
+			switch(ops_[i]) {
+				case BUFFER:
+					result = a;
+					break;
+				case NOT:
+					result = ~a;
+					break;
+				case AND:
+					result = a & values[inputB_[i]];
+					break;
+				case OR:
+					result = a | values[inputB_[i]];
+					break;
+				case XOR:
+					result = a ^ values[inputB_[i]];
+					break;
+				default:
+					continue;
+			}
+			changed |= values[output_[i]] ^ result;
+			values[output_[i]] = result;
+		}
+		return changed != 0;
+	}
+	
+	/**
+	 * @return True if the snapshot has no feedback loops, so one pass always settles it and the
+	 * result only depends on the inputs
+	 */
+	boolean isAcyclic() {
+		return acyclicCount_ == ops_.length;
+	}
+	
+	/**
+	 * @return The number of operations in the snapshot
+	 */
+	int getOpCount() {
+		return ops_.length;
+	}
+	
+	/**
+	 * @param k The operation, in evaluation order
+	 * @return The LogicOp it performs
+	 */
+	LogicOp getOp(int k) {
+		return ops_[k];
+	}
+	
+	/**
+	 * @param k The operation, in evaluation order
+	 * @return The slot its first input reads
+	 */
+	int getInputA(int k) {
+		return inputA_[k];
+	}
+	
+	/**
+	 * @param k The operation, in evaluation order
+	 * @return The slot its second input reads, {@link BitParallelSimulation#ZERO} for BUFFER and NOT
+	 */
+	int getInputB(int k) {
+		return inputB_[k];
+	}
+	
+	/**
+	 * @param k The operation, in evaluation order
+	 * @return The slot it writes
+	 */
+	int getOutput(int k) {
+		return output_[k];
+	}
+	
+	/**
+	 * @return The number of slots, including {@link BitParallelSimulation#ZERO}
+	 */
+	int getSlotCount() {
+		return values_.length;
+	}
+	
+	/**
+	 * @return A copy of the values the snapshot was taken with
+	 */
+	long[] createValues() {
+		return values_.clone();
+	}
+	
+	/**
+	 * @param pin The Pin to look up
+	 * @return The Pin's slot in {@link BitParallelSimulation#values_}
+	 */
+	int slotOf(Pin pin) {
+		Integer slot = slots_.get(pin);
+		if(slot == null)
+			throw new IllegalArgumentException("Pin is not part of this snapshot");
+		return slot;
+	}
+}
@@ -0,0 +1,96 @@
+package common.sim;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An unbounded queue of commands that any number of threads may post to and a single thread runs.
+ * Posting swaps the tail in one atomic step and never blocks or retries, and running only follows
+ * links, so neither side ever waits on a lock held by the other.
+ * <p>
+ * A poster links its node after swapping the tail, so for a moment the newest node can be
+ * unreachable. Running stops at such a gap and picks the rest up next time.
+ */
+class CommandQueue {
+	/**
+	 * A posted command and the link to the one posted after it
+	 */
+	private static final class Node {
+		/**
+		 * The command, cleared once it has run so the queue doesn't hold on to it
+		 */
+		private Runnable command_;
+		
+		/**
+		 * The next node, set by the thread that posted it
+		 */
+		private volatile Node next_;
+		
+		Node(Runnable command) {
+			command_ = command;
+		}
+	}
+	
+	/**
+	 * The most recently posted node, swapped in by posting threads
+	 */
+	private final AtomicReference<Node> tail_;
+	
+	/**
+	 * The node of the last command run, only touched by the running thread
+	 */
+	private Node head_;
+	
+	CommandQueue() {
+		head_ = new Node(null);
+		tail_ = new AtomicReference<>(head_);
+	}
+	
+	/**
+	 * Queues a command, safe to call from any thread
+	 * @param command The command to run
+	 */
+	void post(Runnable command) {
+		if(command == null)
+			throw new IllegalArgumentException("Command must not be null");
+		
+		Node node = new Node(command);
+		tail_.getAndSet(node).next_ = node;
+	}
+	
+	/**
+	 * @return True if nothing has been posted since the last command run, only exact on the running
+	 * thread
+	 */
+	boolean isEmpty() {
+		return tail_.get() == head_;
+	}
+	
+	/**
+	 * Runs the commands posted so far in the order they were posted. Commands posted while running
+	 * are left for the next call so a command that posts another can't keep this from returning. A
+	 * command that throws is reported and the rest still run.
+	 * @return The number of commands run
+	 */
+	int runAll() {
+		Node last = tail_.get();
+		Node node = head_;
+		int count = 0;
+		while(node != last) {
+			Node next = node.next_;
+			if(next == null)
+				break;
+			
+			Runnable command = next.command_;
+			next.command_ = null;
+			head_ = next;
+			node = next;
+			++count;
+			try {
+				command.run();
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,2111 @@
+package common.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A flattened, array-based form of the Gates and Wires in the sim that {@link Simulation#tick()} can
+ * run over instead of walking the Gate/Wire/Pin objects. The objects remain the editing model, but
+ * during ticks pin states only live in a bitset. Pin objects are brought up to date from it in bulk,
+ * every tick for the Pins someone is watching and otherwise only once they are read. Each output pin's {@link Net} is
+ * stored as the list of pin indices it drives. A {@link SubcircuitComponent}
+ * instance is either evaluated through its shared kernel, batching up to 64 instances of the same
+ * subcircuit per pass, or expanded into primitive gates whose pins have no Pin objects of their own.
+ * Truth-table gates, and clusters of gates collapsed into one, are evaluated through {@link LutNodes}.
+ * When {@link Simulation#isOptimizing()} is set the nets are simplified by {@link NetlistOptimizer}
+ * first.
+ */
+public class CompiledNetlist {
+	/**
+	 * Opcodes stored in {@link CompiledNetlist#ops_}
+	 */
+	private static final byte OP_CUSTOM = 0;
+	private static final byte OP_NONE = 1;
+	private static final byte OP_BUFFER = 2;
+	private static final byte OP_NOT = 3;
+	private static final byte OP_AND = 4;
+	private static final byte OP_OR = 5;
+	private static final byte OP_XOR = 6;
+	private static final byte OP_SUBCIRCUIT = 7;
+	private static final byte OP_LUT = 8;
+	
+	/**
+	 * The number of queue entries a single fork/join task evaluates without splitting
+	 */
+	private static final int LEAF_SIZE = 1024;
+	
+	/**
+	 * The number of subcircuit instances evaluated by one pass of a kernel
+	 */
+	private static final int LANES = 64;
+	
+	/**
+	 * The Simulation this netlist was compiled from
+	 */
+	private final Simulation simulation_;
+	
+	/**
+	 * The Gates that were compiled, indexed by gate index. The gates a flattened subcircuit instance
+	 * expands to all hold the instance, and the slots of removed Gates hold null.
+	 */
+	private Gate[] gates_;
+	
+	/**
+	 * The Pins of all compiled Gates, indexed by pin index, null for the internal pins of a flattened
+	 * subcircuit instance and the pins of removed Gates
+	 */
+	private Pin[] pins_;
+	
+	/**
+	 * The opcode of each gate
+	 */
+	private byte[] ops_;
+	
+	/**
+	 * The index of each gate's first pin, a gate's pins are stored contiguously
+	 */
+	private int[] pinBase_;
+	
+	/**
+	 * The index of the gate each pin belongs to, or -1 for a subcircuit port no gate reads or drives
+	 */
+	private int[] pinGate_;
+	
+	/**
+	 * The net driven by each pin, or -1 if the pin drives nothing. Nets are numbered densely in
+	 * driver order when compiled so the net queue stays as compact as the pins it covers, nets added
+	 * by later edits reuse the numbers of removed ones first.
+	 */
+	private int[] pinNet_;
+	
+	/**
+	 * The driving pin of each net
+	 */
+	private int[] netDriver_;
+	
+	/**
+	 * The pins driven by each net, net n drives the entries of {@link CompiledNetlist#sinks_} from
+	 * sinkStart_[n] up to sinkEnd_[n] and has room for more up to sinkLimit_[n]. When compiled every
+	 * net is packed, so sinkStart_[n + 1] is also its end, which stops being true once it is edited.
+	 */
+	private int[] sinkStart_;
+	private int[] sinkEnd_;
+	private int[] sinkLimit_;
+	
+	/**
+	 * The input pin indices driven by every net, grouped by net
+	 */
+	private int[] sinks_;
+	
+	/**
+	 * The number of entries of {@link CompiledNetlist#sinks_} handed out to nets
+	 */
+	private int sinkTop_;
+	
+	/**
+	 * The number of entries below {@link CompiledNetlist#sinkTop_} left behind by nets that moved
+	 */
+	private int sinkGarbage_;
+	
+	/**
+	 * The number of gate, pin and net slots handed out, including the free ones
+	 */
+	private int gateTop_;
+	private int pinTop_;
+	private int netTop_;
+	
+	/**
+	 * The number of gates, pins and sinks in use
+	 */
+	private int gateCount_;
+	private int pinCount_;
+	private int sinkCount_;
+	
+	/**
+	 * The free gate slots of each pin count, a gate slot keeps its pins when freed so it can only be
+	 * reused by a Gate with as many Pins
+	 */
+	private int[][] freeGates_;
+	private int[] freeGateCount_;
+	
+	/**
+	 * The free net slots
+	 */
+	private int[] freeNets_;
+	private int freeNetCount_;
+	
+	/**
+	 * Bitset of pins that cause their gate to update when changed
+	 */
+	private long[] updates_;
+	
+	/**
+	 * Bitset of the state of every pin
+	 */
+	private long[] state_;
+	
+	/**
+	 * Bitset of the state each Pin object was last given, a Pin whose bit differs from
+	 * {@link CompiledNetlist#state_} is out of date
+	 */
+	private long[] mirror_;
+	
+	/**
+	 * One bit per word of {@link CompiledNetlist#state_}, set when a pin in the word is changed so
+	 * {@link CompiledNetlist#syncPins(boolean)} only compares the words that may differ
+	 */
+	private long[] dirty_;
+	
+	/**
+	 * Bitset of the pins whose Pin objects are observed or traced
+	 */
+	private long[] observed_;
+	
+	/**
+	 * The {@link Pin#hashKey_} of every pin with a Pin object, 0 for the rest
+	 */
+	private long[] hashKeys_;
+	
+	/**
+	 * Whether pin changes are being hashed into {@link CompiledNetlist#hash_} for {@link Simulation#settle(int)}
+	 */
+	private boolean hashing_;
+	
+	/**
+	 * The hash keys of the pins changed since hashing began, XORed together
+	 */
+	private long hash_;
+	
+	/**
+	 * Gate indices to be evaluated this tick
+	 */
+	private final WorkQueue gateQueue_;
+	
+	/**
+	 * Indices of nets whose driver's state is to be propagated to their sinks next tick
+	 */
+	private final WorkQueue netQueue_;
+	
+	/**
+	 * The number of nets propagated by the last tick
+	 */
+	private int lastNetCount_;
+	
+	/**
+	 * The number of gates evaluated by the last tick
+	 */
+	private int lastGateCount_;
+	
+	/**
+	 * The propagation delay of each gate, or null if every gate has a delay of 1
+	 */
+	private int[] delays_;
+	
+	/**
+	 * The latest tick each gate is scheduled at on {@link CompiledNetlist#gateWheel_}, or null along
+	 * with {@link CompiledNetlist#delays_}
+	 */
+	private int[] dueTicks_;
+	
+	/**
+	 * Gate indices waiting out a propagation delay longer than one tick
+	 */
+	private final TimingWheel gateWheel_;
+	
+	/**
+	 * The distinct combinational subcircuits evaluated through their kernel, or null if there are none
+	 */
+	private final SubcircuitComponent[] kernels_;
+	
+	/**
+	 * The index into {@link CompiledNetlist#kernels_} of each {@link CompiledNetlist#OP_SUBCIRCUIT}
+	 * gate, or null along with {@link CompiledNetlist#kernels_}
+	 */
+	private int[] kernelOf_;
+	
+	/**
+	 * The instances of each kernel waiting to be evaluated in the current gate phase
+	 */
+	private final int[][] pending_;
+	private final int[] pendingCount_;
+	
+	/**
+	 * The lanes of every port for the kernel pass being evaluated
+	 */
+	private final long[] kernelInputs_;
+	private final long[] kernelOutputs_;
+	
+	/**
+	 * The gates evaluated by a truth-table lookup, or null if there are none
+	 */
+	private final LutNodes luts_;
+	
+	/**
+	 * The constants and skipped gates found by {@link Simulation#isOptimizing()}, or null if the
+	 * netlist wasn't optimized
+	 */
+	private final NetlistOptimizer optimizer_;
+	
+	/**
+	 * Bitset of pins that never change while this netlist is active, or null along with
+	 * {@link CompiledNetlist#optimizer_}
+	 */
+	private final long[] constants_;
+	
+	/**
+	 * Whether a pin read by a skipped gate may have changed since the skipped gates were last
+	 * brought up to date
+	 */
+	private boolean skippedStale_;
+	
+	/**
+	 * The queue entries being evaluated by a parallel phase
+	 */
+	private int[] batch_;
+	
+	/**
+	 * The changes found by each leaf task of a parallel phase, indexed by leaf
+	 */
+	private LeafOutput[] leaves_;
+	
+	/**
+	 * Lowers the given Gates and Wires into arrays
+	 * @param simulation {@link CompiledNetlist#simulation_}
+	 * @param gates The Gates to compile
+	 * @param wires The Wires to compile
+	 */
+	CompiledNetlist(Simulation simulation, Gate[] gates, Wire[] wires) {
+		simulation_ = simulation;
+		boolean flatten = simulation.isFlatteningSubcircuits();
+		
+		int gateCount = 0;
+		int pinCount = 0;
+		boolean delayed = false;
+		IdentityHashMap<SubcircuitComponent, Integer> kernelIds = new IdentityHashMap<>();
+		List<SubcircuitComponent> kernels = new ArrayList<>();
+		int maxPorts = 0;
+		for(Gate gate : gates) {
+			SubcircuitComponent body = flattenedBody(gate, flatten);
+			if(body != null) {
+				gateCount += body.getFlatGateCount();
+				pinCount += body.getFlatPinCount();
+			}
+			else {
+				++gateCount;
+				pinCount += gate.getPins().length;
+				if(isKernel(gate) && !kernelIds.containsKey(gate.getGateComponent())) {
+					SubcircuitComponent kernel = (SubcircuitComponent)gate.getGateComponent();
+					kernelIds.put(kernel, kernels.size());
+					kernels.add(kernel);
+					maxPorts = Math.max(maxPorts, Math.max(kernel.getInputCount(), kernel.getOutputCount()));
+				}
+			}
+			delayed |= gate.getGateComponent().getDelay() > 1;
+		}
+		
+		gates_ = new Gate[gateCount];
+		pins_ = new Pin[pinCount];
+		ops_ = new byte[gateCount];
+		pinBase_ = new int[gateCount];
+		pinGate_ = new int[pinCount];
+		updates_ = new long[(pinCount + 63) >>> 6];
+		state_ = new long[(pinCount + 63) >>> 6];
+		mirror_ = new long[state_.length];
+		dirty_ = new long[(state_.length + 63) >>> 6];
+		observed_ = new long[state_.length];
+		hashKeys_ = new long[pinCount];
+		Arrays.fill(pinGate_, -1);
+		
+		if(kernels.isEmpty()) {
+			kernels_ = null;
+			kernelOf_ = null;
+			pending_ = null;
+			pendingCount_ = null;
+			kernelInputs_ = null;
+			kernelOutputs_ = null;
+		}
+		else {
+			kernels_ = kernels.toArray(new SubcircuitComponent[0]);
+			kernelOf_ = new int[gateCount];
+			pending_ = new int[kernels_.length][LANES];
+			pendingCount_ = new int[kernels_.length];
+			kernelInputs_ = new long[maxPorts];
+			kernelOutputs_ = new long[maxPorts];
+		}
+		
+		int g = 0;
+		int p = 0;
+		for(Gate gate : gates) {
+			SubcircuitComponent body = flattenedBody(gate, flatten);
+			if(body != null) {
+				expand(gate, body, g, p);
+				g += body.getFlatGateCount();
+				p += body.getFlatPinCount();
+				continue;
+			}
+			
+			Pin[] pins = gate.getPins();
+			gate.compiledIndex_ = g;
+			gates_[g] = gate;
+			if(isKernel(gate)) {
+				ops_[g] = OP_SUBCIRCUIT;
+				kernelOf_[g] = kernelIds.get(gate.getGateComponent());
+			}
+			else {
+				ops_[g] = opcodeOf(gate.getGateComponent().getLogicOp(), pins.length);
+			}
+			pinBase_[g] = p;
+			
+			for(Pin pin : pins) {
+				pin.compiledIndex_ = p;
+				bindPin(p, pin);
+				pinGate_[p] = g;
+				if(pin.getPinComponent().doesCauseUpdate())
+					updates_[p >>> 6] |= 1L << p;
+				if(pin.getState()) {
+					state_[p >>> 6] |= 1L << p;
+					mirror_[p >>> 6] |= 1L << p;
+				}
+				++p;
+			}
+			++g;
+		}
+		
+		//Count the sinks of every driver, number the drivers that have any and then lay the sinks out
+		//net by net
+		int[] cursor = new int[pinCount];
+		for(Gate gate : gates) {
+			SubcircuitComponent body = flattenedBody(gate, flatten);
+			if(body != null) {
+				int p0 = pinBase_[gate.compiledIndex_];
+				for(int n = 0; n < body.getFlatNetCount(); ++n)
+					cursor[p0 + body.getFlatNetDriver(n)] += body.getFlatNetEnd(n) - body.getFlatNetStart(n);
+			}
+		}
+		for(Wire wire : wires)
+			cursor[wire.getOutputPin().compiledIndex_] += sinkCount(wire.getInputPin(), flatten);
+		
+		int netCount = 0;
+		int[] pinNet = new int[pinCount];
+		for(p = 0; p < pinCount; ++p)
+			pinNet[p] = cursor[p] > 0 ? netCount++ : -1;
+		
+		int[] netDriver = new int[netCount];
+		int[] sinkStart = new int[netCount + 1];
+		for(p = 0; p < pinCount; ++p) {
+			int n = pinNet[p];
+			if(n >= 0) {
+				netDriver[n] = p;
+				sinkStart[n + 1] = sinkStart[n] + cursor[p];
+				cursor[p] = sinkStart[n];
+			}
+		}
+		
+		int[] sinks = new int[sinkStart[netCount]];
+		for(Gate gate : gates) {
+			SubcircuitComponent body = flattenedBody(gate, flatten);
+			if(body != null) {
+				int p0 = pinBase_[gate.compiledIndex_];
+				for(int n = 0; n < body.getFlatNetCount(); ++n) {
+					int driver = p0 + body.getFlatNetDriver(n);
+					for(int i = body.getFlatNetStart(n); i < body.getFlatNetEnd(n); ++i)
+						sinks[cursor[driver]++] = p0 + body.getFlatSink(i);
+				}
+			}
+		}
+		for(Wire wire : wires) {
+			int driver = wire.getOutputPin().compiledIndex_;
+			Pin input = wire.getInputPin();
+			sinks[cursor[driver]++] = input.compiledIndex_;
+			
+			SubcircuitComponent body = flattenedBody(input.getGate(), flatten);
+			if(body != null) {
+				int port = portOf(input);
+				int p0 = pinBase_[input.getGate().compiledIndex_];
+				for(int j = 0; j < body.getFlatPortSinkCount(port); ++j)
+					sinks[cursor[driver]++] = p0 + body.getFlatPortSink(port, j);
+			}
+		}
+		
+		gateQueue_ = new WorkQueue();
+		netQueue_ = new WorkQueue();
+		lastNetCount_ = 0;
+		lastGateCount_ = 0;
+		gateWheel_ = new TimingWheel(simulation.getCurrentTick());
+		if(delayed) {
+			delays_ = new int[gateCount];
+			dueTicks_ = new int[gateCount];
+			for(g = 0; g < gateCount; ++g) {
+				delays_[g] = isExpanded(g) ? 1 : Math.max(1, gates_[g].getGateComponent().getDelay());
+				dueTicks_[g] = -1;
+			}
+		}
+		else {
+			delays_ = null;
+			dueTicks_ = null;
+		}
+		
+		if(simulation.isOptimizing()) {
+			boolean[] simple = new boolean[gateCount];
+			for(g = 0; g < gateCount; ++g)
+				simple[g] = ((ops_[g] >= OP_BUFFER && ops_[g] <= OP_XOR) || ops_[g] == OP_LUT) && !isExpanded(g) && (delays_ == null || delays_[g] == 1);
+			
+			NetlistOptimizer optimizer = new NetlistOptimizer(gates_, pins_, simple, pinBase_, pinGate_, pinNet, netDriver, sinkStart, sinks);
+			pinNet_ = optimizer.pinNet_;
+			netDriver_ = optimizer.netDriver_;
+			sinkStart_ = optimizer.sinkStart_;
+			sinks_ = optimizer.sinks_;
+			optimizer_ = optimizer;
+			constants_ = new long[state_.length];
+		}
+		else {
+			pinNet_ = pinNet;
+			netDriver_ = netDriver;
+			sinkStart_ = sinkStart;
+			sinks_ = sinks;
+			optimizer_ = null;
+			constants_ = null;
+		}
+		
+		gateTop_ = gateCount;
+		pinTop_ = pinCount;
+		netTop_ = netDriver_.length;
+		gateCount_ = gateCount;
+		pinCount_ = pinCount;
+		sinkCount_ = sinks_.length;
+		sinkTop_ = sinks_.length;
+		sinkGarbage_ = 0;
+		sinkEnd_ = Arrays.copyOfRange(sinkStart_, 1, netTop_ + 1);
+		sinkLimit_ = sinkEnd_.clone();
+		freeGates_ = new int[0][];
+		freeGateCount_ = new int[0];
+		freeNets_ = new int[16];
+		freeNetCount_ = 0;
+		
+		if(optimizer_ != null)
+			skipOptimized();
+		skippedStale_ = true;
+		luts_ = findLuts(simulation.isCollapsingClusters());
+		batch_ = new int[0];
+		leaves_ = new LeafOutput[0];
+	}
+	
+	/**
+	 * Takes the gates left out by {@link CompiledNetlist#optimizer_} out of ticks and sets the
+	 * constants it found. Any net whose sinks don't match its driver is queued, which covers the
+	 * constants and the sinks moved over from a bypassed gate.
+	 */
+	private void skipOptimized() {
+		NetlistOptimizer optimizer = optimizer_;
+		for(int g = 0; g < gates_.length; ++g) {
+			if(!optimizer.skipped_[g])
+				continue;
+			
+			ops_[g] = OP_NONE;
+			int end = pinBase_[g] + gates_[g].getPins().length;
+			for(int p = pinBase_[g]; p < end; ++p)
+				updates_[p >>> 6] &= ~(1L << p);
+		}
+		
+		for(int i = 0; i < optimizer.constantPins_.length; ++i) {
+			int p = optimizer.constantPins_[i];
+			constants_[p >>> 6] |= 1L << p;
+			if(get(p) != optimizer.constantStates_[i])
+				set(p, optimizer.constantStates_[i]);
+		}
+		
+		for(int n = 0; n < netTop_; ++n) {
+			if(needsPropagation(n))
+				netQueue_.offer(n);
+		}
+	}
+	
+	/**
+	 * Collapses clusters of gates into truth tables if asked to. The root of each node becomes a
+	 * {@link CompiledNetlist#OP_LUT} gate, the other gates in its cluster are never evaluated and
+	 * their pins queue the root instead. Truth-table gates outside any cluster look their output up
+	 * on their own.
+	 * @param collapse Whether to collapse clusters
+	 * @return The nodes, or null if there are none
+	 */
+	private LutNodes findLuts(boolean collapse) {
+		if(!collapse)
+			return null;
+		
+		int gateCount = gates_.length;
+		boolean[] lut = new boolean[gateCount];
+		boolean[] collapsible = new boolean[gateCount];
+		for(int g = 0; g < gateCount; ++g) {
+			lut[g] = ops_[g] == OP_LUT;
+			collapsible[g] = (lut[g] || (ops_[g] >= OP_BUFFER && ops_[g] <= OP_XOR && !isExpanded(g))) && (delays_ == null || delays_[g] == 1);
+		}
+		
+		LutNodes luts = new LutNodes(gates_, lut, collapsible, pinBase_, pinGate_, pinNet_, netDriver_, sinkStart_, sinks_);
+		if(luts.getCount() == 0)
+			return null;
+		
+		for(int g = 0; g < gateCount; ++g) {
+			int root = luts.rootOf_[g];
+			if(root == g) {
+				ops_[g] = OP_LUT;
+			}
+			else if(root >= 0) {
+				ops_[g] = OP_NONE;
+				int end = pinBase_[g] + gates_[g].getPins().length;
+				for(int p = pinBase_[g]; p < end; ++p)
+					pinGate_[p] = root;
+			}
+		}
+		return luts;
+	}
+	
+	/**
+	 * @param gate The Gate to check
+	 * @param flatten Whether subcircuit instances are being flattened
+	 * @return The Gate's SubcircuitComponent if it is expanded into primitive gates, otherwise null
+	 */
+	private static SubcircuitComponent flattenedBody(Gate gate, boolean flatten) {
+		if(!flatten || !(gate.getGateComponent() instanceof SubcircuitComponent))
+			return null;
+		
+		SubcircuitComponent body = (SubcircuitComponent)gate.getGateComponent();
+		return body.getFlatGateCount() > 0 ? body : null;
+	}
+	
+	/**
+	 * @param pin A Pin of a Gate
+	 * @return The index of the Pin among its Gate's Pins
+	 */
+	private static int portOf(Pin pin) {
+		Pin[] pins = pin.getGate().getPins();
+		int i = 0;
+		while(pins[i] != pin)
+			++i;
+		return i;
+	}
+	
+	/**
+	 * @param input The input Pin at the end of a Wire
+	 * @param flatten Whether subcircuit instances are being flattened
+	 * @return The number of pins the Wire reaches, more than one if it drives an input port of a
+	 * flattened subcircuit instance
+	 */
+	private static int sinkCount(Pin input, boolean flatten) {
+		SubcircuitComponent body = flattenedBody(input.getGate(), flatten);
+		return body != null ? 1 + body.getFlatPortSinkCount(portOf(input)) : 1;
+	}
+	
+	/**
+	 * @param gate A Gate that is not flattened
+	 * @return True if the Gate is evaluated in batches through its subcircuit's kernel, instances of
+	 * subcircuits with feedback keep their own state and are run through performLogic one at a time
+	 */
+	private static boolean isKernel(Gate gate) {
+		return gate.getGateComponent() instanceof SubcircuitComponent && ((SubcircuitComponent)gate.getGateComponent()).isCombinational();
+	}
+	
+	/**
+	 * Lowers a subcircuit instance into primitive gates, starting from the state its body is in. The
+	 * instance's output Pins stand in for the pins of the gates driving them, and Wires into an input
+	 * Pin also reach every pin inside the body that the port connects to, so no extra delay is added.
+	 * @param gate The instance
+	 * @param body The instance's SubcircuitComponent
+	 * @param g0 The index of the first gate to fill in
+	 * @param p0 The index of the first pin to fill in
+	 */
+	private void expand(Gate gate, SubcircuitComponent body, int g0, int p0) {
+		gate.compiledIndex_ = g0;
+		for(int k = 0; k < body.getFlatGateCount(); ++k) {
+			LogicOp op = body.getFlatOp(k);
+			int inputs = op == LogicOp.BUFFER || op == LogicOp.NOT ? 1 : 2;
+			int base = p0 + body.getFlatPinBase(k);
+			gates_[g0 + k] = gate;
+			ops_[g0 + k] = opcodeOf(op, inputs + 1);
+			pinBase_[g0 + k] = base;
+			for(int pin = base; pin <= base + inputs; ++pin)
+				pinGate_[pin] = g0 + k;
+			for(int pin = base; pin < base + inputs; ++pin)
+				updates_[pin >>> 6] |= 1L << pin;
+		}
+		
+		long[] values = body.getValues(gate);
+		for(int p = 0; p < body.getFlatPinCount(); ++p) {
+			int pin = p0 + p;
+			if(values[body.getFlatPinSlot(p)] != 0) {
+				state_[pin >>> 6] |= 1L << pin;
+				mirror_[pin >>> 6] |= 1L << pin;
+			}
+		}
+		
+		Pin[] pins = gate.getPins();
+		for(int i = 0; i < pins.length; ++i) {
+			int pin = p0 + body.getFlatPortPin(i);
+			pins[i].compiledIndex_ = pin;
+			bindPin(pin, pins[i]);
+			syncPin(pin);
+		}
+	}
+	
+	/**
+	 * @param g A gate index
+	 * @return True if the gate is part of a flattened subcircuit instance
+	 */
+	private boolean isExpanded(int g) {
+		return g >= 0 && ops_[g] >= OP_BUFFER && ops_[g] <= OP_XOR && gates_[g].getGateComponent() instanceof SubcircuitComponent;
+	}
+	
+	/**
+	 * @param g A gate index
+	 * @return The number of gates the subcircuit instance starting at g was expanded to, or 0 if g is
+	 * not the first gate of a flattened instance
+	 */
+	private int flatGateCount(int g) {
+		Gate gate = gates_[g];
+		if(gate == null || gate.compiledIndex_ != g || !isExpanded(g))
+			return 0;
+		return ((SubcircuitComponent)gate.getGateComponent()).getFlatGateCount();
+	}
+	
+	/**
+	 * Maps a LogicOp to an opcode, falling back to {@link CompiledNetlist#OP_CUSTOM} if the pin
+	 * layout doesn't match what the opcode expects
+	 * @param op The LogicOp declared by the GateComponent
+	 * @param pinCount The number of pins on the Gate
+	 * @return The opcode to store in {@link CompiledNetlist#ops_}
+	 */
+	private static byte opcodeOf(LogicOp op, int pinCount) {
+		switch(op) {
+			case NONE:
+				return OP_NONE;
+			case BUFFER:
+				return pinCount == 2 ? OP_BUFFER : OP_CUSTOM;
+			case NOT:
+				return pinCount == 2 ? OP_NOT : OP_CUSTOM;
+			case AND:
+				return pinCount == 3 ? OP_AND : OP_CUSTOM;
+			case OR:
+				return pinCount == 3 ? OP_OR : OP_CUSTOM;
+			case XOR:
+				return pinCount == 3 ? OP_XOR : OP_CUSTOM;
+			case LUT:
+				return pinCount >= 2 && pinCount <= LutComponent.MAX_INPUTS + 1 ? OP_LUT : OP_CUSTOM;
+			default:
+				return OP_CUSTOM;
+		}
+	}
+	
+	/**
+	 * @return The number of compiled gates, counting each gate a flattened subcircuit instance was
+	 * expanded to
+	 */
+	public int getGateCount() {
+		return gateCount_;
+	}
+	
+	/**
+	 * @return The number of Gates collapsed into a truth table evaluated by another Gate
+	 */
+	public int getCollapsedGateCount() {
+		return luts_ == null ? 0 : luts_.getCollapsedCount();
+	}
+	
+	/**
+	 * @return The number of Gates folded into constants, bypassed or skipped by the optimizer
+	 */
+	public int getSkippedGateCount() {
+		return optimizer_ == null ? 0 : optimizer_.getSkippedCount();
+	}
+	
+	/**
+	 * @return The number of connections from a driver to an input pin
+	 */
+	public int getSinkCount() {
+		return sinkCount_;
+	}
+	
+	/**
+	 * @return {@link CompiledNetlist#lastNetCount_}
+	 */
+	int getLastNetCount() {
+		return lastNetCount_;
+	}
+	
+	/**
+	 * @return {@link CompiledNetlist#lastGateCount_}
+	 */
+	int getLastGateCount() {
+		return lastGateCount_;
+	}
+	
+	/**
+	 * @return The number of compiled Pins
+	 */
+	public int getPinCount() {
+		return pinCount_;
+	}
+	
+	/**
+	 * @return True if no Gates or Nets are queued
+	 */
+	boolean isIdle() {
+		return gateQueue_.isEmpty() && netQueue_.isEmpty() && gateWheel_.isEmpty();
+	}
+	
+	/**
+	 * @return The current tick if gates or nets are queued, otherwise the earliest tick a delayed
+	 * gate is due at, or -1 if nothing is pending
+	 */
+	int nextDue() {
+		if(!gateQueue_.isEmpty() || !netQueue_.isEmpty())
+			return simulation_.getCurrentTick();
+		return gateWheel_.nextDue();
+	}
+	
+	/**
+	 * @param tick The reference tick
+	 * @return A hash of the delayed gates relative to tick
+	 */
+	long pendingHash(int tick) {
+		return gateWheel_.isEmpty() ? 0 : gateWheel_.relativeHash(tick);
+	}
+	
+	/**
+	 * @param gate A Gate
+	 * @return True if the Gate is part of this netlist
+	 */
+	boolean contains(Gate gate) {
+		int g = gate.compiledIndex_;
+		return g >= 0 && g < gateTop_ && gates_[g] == gate;
+	}
+	
+	/**
+	 * @param pin A Pin
+	 * @return True if the Pin is part of this netlist
+	 */
+	boolean contains(Pin pin) {
+		int p = pin.compiledIndex_;
+		return p >= 0 && p < pinTop_ && pins_[p] == pin;
+	}
+	
+	/**
+	 * @return True if edits can be patched into this netlist. Collapsed clusters and optimized nets
+	 * are worked out over the whole circuit, so those netlists are rebuilt instead.
+	 */
+	private boolean isPatchable() {
+		return luts_ == null && optimizer_ == null;
+	}
+	
+	/**
+	 * Patches a Gate that was just added to the sim into this netlist, reusing the slot of a removed
+	 * Gate with as many Pins if there is one. The Gate isn't queued, its own update goes through the
+	 * Simulation's queues.
+	 * @param gate The Gate
+	 * @return False if the netlist has to be rebuilt instead
+	 */
+	boolean addGate(Gate gate) {
+		if(!isPatchable() || flattenedBody(gate, simulation_.isFlatteningSubcircuits()) != null)
+			return false;
+		
+		byte op;
+		int kernel = -1;
+		if(isKernel(gate)) {
+			for(int k = 0; kernels_ != null && k < kernels_.length; ++k) {
+				if(kernels_[k] == gate.getGateComponent())
+					kernel = k;
+			}
+			if(kernel < 0)
+				return false;
+			op = OP_SUBCIRCUIT;
+		}
+		else {
+			op = opcodeOf(gate.getGateComponent().getLogicOp(), gate.getPins().length);
+		}
+		
+		Pin[] pins = gate.getPins();
+		int g = takeGateSlot(pins.length);
+		gate.compiledIndex_ = g;
+		gates_[g] = gate;
+		ops_[g] = op;
+		if(kernel >= 0)
+			kernelOf_[g] = kernel;
+		
+		int delay = Math.max(1, gate.getGateComponent().getDelay());
+		if(delay > 1 && delays_ == null) {
+			delays_ = new int[gates_.length];
+			dueTicks_ = new int[gates_.length];
+			Arrays.fill(delays_, 1);
+			Arrays.fill(dueTicks_, -1);
+		}
+		if(delays_ != null) {
+			delays_[g] = delay;
+			dueTicks_[g] = -1;
+		}
+		
+		int p = pinBase_[g];
+		for(Pin pin : pins) {
+			pin.compiledIndex_ = p;
+			bindPin(p, pin);
+			pinGate_[p] = g;
+			pinNet_[p] = -1;
+			if(pin.getPinComponent().doesCauseUpdate())
+				updates_[p >>> 6] |= 1L << p;
+			else
+				updates_[p >>> 6] &= ~(1L << p);
+			syncPin(p);
+			++p;
+		}
+		++gateCount_;
+		pinCount_ += pins.length;
+		return true;
+	}
+	
+	/**
+	 * Patches a Gate that was just removed from the sim out of this netlist, its Wires have to be
+	 * removed first. Its slot is freed for the next Gate with as many Pins, any queued entries left
+	 * for it evaluate nothing or whichever Gate takes the slot, which is harmless since gates only
+	 * read their inputs.
+	 * @param gate The Gate
+	 * @return False if the netlist has to be rebuilt instead
+	 */
+	boolean removeGate(Gate gate) {
+		if(!contains(gate))
+			return true;
+		if(!isPatchable() || flatGateCount(gate.compiledIndex_) > 0)
+			return false;
+		
+		Pin[] pins = gate.getPins();
+		for(Pin pin : pins) {
+			int n = pinNet_[pin.compiledIndex_];
+			if(pin.getWire() != null || (n >= 0 && sinkEnd_[n] > sinkStart_[n]))
+				return false;
+		}
+		
+		int g = gate.compiledIndex_;
+		for(Pin pin : pins) {
+			int p = pin.compiledIndex_;
+			if(pinNet_[p] >= 0)
+				freeNet(pinNet_[p]);
+			pin.refreshState(get(p));
+			pins_[p] = null;
+			hashKeys_[p] = 0;
+			pinGate_[p] = -1;
+			updates_[p >>> 6] &= ~(1L << p);
+			state_[p >>> 6] &= ~(1L << p);
+			mirror_[p >>> 6] &= ~(1L << p);
+			observed_[p >>> 6] &= ~(1L << p);
+			pin.compiledIndex_ = -1;
+		}
+		gates_[g] = null;
+		ops_[g] = OP_NONE;
+		gate.compiledIndex_ = -1;
+		
+		if(pins.length >= freeGates_.length) {
+			freeGates_ = Arrays.copyOf(freeGates_, pins.length + 1);
+			freeGateCount_ = Arrays.copyOf(freeGateCount_, pins.length + 1);
+		}
+		int[] free = freeGates_[pins.length];
+		if(free == null || freeGateCount_[pins.length] == free.length)
+			freeGates_[pins.length] = free = free == null ? new int[16] : Arrays.copyOf(free, free.length * 2);
+		free[freeGateCount_[pins.length]++] = g;
+		--gateCount_;
+		pinCount_ -= pins.length;
+		return true;
+	}
+	
+	/**
+	 * Patches a Wire that was just added to the sim into this netlist and queues its net so the
+	 * input picks up the driver's state
+	 * @param wire The connected Wire
+	 * @return False if the netlist has to be rebuilt instead
+	 */
+	boolean addWire(Wire wire) {
+		Pin output = wire.getOutputPin();
+		Pin input = wire.getInputPin();
+		if(output == null || input == null)
+			return true;
+		if(!isPatchable() || !contains(output) || !contains(input) || isFlattened(output) || isFlattened(input))
+			return false;
+		
+		int o = output.compiledIndex_;
+		int n = pinNet_[o];
+		if(n < 0)
+			n = takeNet(o);
+		addSink(n, input.compiledIndex_);
+		syncPin(o);
+		netQueue_.offer(n);
+		return true;
+	}
+	
+	/**
+	 * Patches a Wire that is being removed from the sim out of this netlist, the Wire must still
+	 * hold its Pins
+	 * @param wire The Wire
+	 * @return False if the netlist has to be rebuilt instead
+	 */
+	boolean removeWire(Wire wire) {
+		Pin output = wire.getOutputPin();
+		Pin input = wire.getInputPin();
+		if(output == null || input == null || !contains(output) || !contains(input))
+			return true;
+		if(!isPatchable() || isFlattened(output) || isFlattened(input))
+			return false;
+		
+		int n = pinNet_[output.compiledIndex_];
+		if(n < 0)
+			return true;
+		
+		int target = input.compiledIndex_;
+		int end = sinkEnd_[n];
+		for(int i = sinkStart_[n]; i < end; ++i) {
+			if(sinks_[i] == target) {
+				sinks_[i] = sinks_[end - 1];
+				sinkEnd_[n] = end - 1;
+				--sinkCount_;
+				break;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @param pin A Pin of this netlist
+	 * @return True if the Pin belongs to a flattened subcircuit instance
+	 */
+	private boolean isFlattened(Pin pin) {
+		return flattenedBody(pin.getGate(), simulation_.isFlatteningSubcircuits()) != null;
+	}
+	
+	/**
+	 * @param pinCount The number of pins the gate needs
+	 * @return A free gate slot with that many pins, or a new one at the end
+	 */
+	private int takeGateSlot(int pinCount) {
+		if(pinCount < freeGateCount_.length && freeGateCount_[pinCount] > 0)
+			return freeGates_[pinCount][--freeGateCount_[pinCount]];
+		
+		if(gateTop_ == gates_.length) {
+			int capacity = Math.max(16, gates_.length * 2);
+			gates_ = Arrays.copyOf(gates_, capacity);
+			ops_ = Arrays.copyOf(ops_, capacity);
+			pinBase_ = Arrays.copyOf(pinBase_, capacity);
+			if(kernelOf_ != null)
+				kernelOf_ = Arrays.copyOf(kernelOf_, capacity);
+			if(delays_ != null) {
+				delays_ = Arrays.copyOf(delays_, capacity);
+				dueTicks_ = Arrays.copyOf(dueTicks_, capacity);
+			}
+		}
+		if(pinTop_ + pinCount > pins_.length) {
+			int capacity = Math.max(pinTop_ + pinCount, Math.max(64, pins_.length * 2));
+			pins_ = Arrays.copyOf(pins_, capacity);
+			pinGate_ = Arrays.copyOf(pinGate_, capacity);
+			pinNet_ = Arrays.copyOf(pinNet_, capacity);
+			updates_ = Arrays.copyOf(updates_, (capacity + 63) >>> 6);
+			state_ = Arrays.copyOf(state_, (capacity + 63) >>> 6);
+			mirror_ = Arrays.copyOf(mirror_, state_.length);
+			dirty_ = Arrays.copyOf(dirty_, (state_.length + 63) >>> 6);
+			observed_ = Arrays.copyOf(observed_, state_.length);
+			hashKeys_ = Arrays.copyOf(hashKeys_, capacity);
+		}
+		
+		int g = gateTop_++;
+		pinBase_[g] = pinTop_;
+		pinTop_ += pinCount;
+		return g;
+	}
+	
+	/**
+	 * @param driver The pin driving the new net
+	 * @return A free net slot, or a new one at the end, with no sinks
+	 */
+	private int takeNet(int driver) {
+		int n;
+		if(freeNetCount_ > 0) {
+			n = freeNets_[--freeNetCount_];
+		}
+		else {
+			if(netTop_ == netDriver_.length) {
+				int capacity = Math.max(16, netDriver_.length * 2);
+				netDriver_ = Arrays.copyOf(netDriver_, capacity);
+				sinkStart_ = Arrays.copyOf(sinkStart_, capacity + 1);
+				sinkEnd_ = Arrays.copyOf(sinkEnd_, capacity);
+				sinkLimit_ = Arrays.copyOf(sinkLimit_, capacity);
+			}
+			n = netTop_++;
+			sinkStart_[n] = sinkTop_;
+			sinkEnd_[n] = sinkTop_;
+			sinkLimit_[n] = sinkTop_;
+		}
+		netDriver_[n] = driver;
+		pinNet_[driver] = n;
+		return n;
+	}
+	
+	/**
+	 * Frees a net with no sinks left. Its driver is kept so a queued entry left for it stays harmless.
+	 * @param n The net index
+	 */
+	private void freeNet(int n) {
+		sinkGarbage_ += sinkLimit_[n] - sinkStart_[n];
+		sinkEnd_[n] = sinkStart_[n];
+		sinkLimit_[n] = sinkStart_[n];
+		pinNet_[netDriver_[n]] = -1;
+		if(freeNetCount_ == freeNets_.length)
+			freeNets_ = Arrays.copyOf(freeNets_, freeNets_.length * 2);
+		freeNets_[freeNetCount_++] = n;
+	}
+	
+	/**
+	 * Adds a sink to a net, moving the net's sinks to the end of {@link CompiledNetlist#sinks_} with
+	 * twice the room if it is full
+	 * @param n The net index
+	 * @param pin The pin index of the sink
+	 */
+	private void addSink(int n, int pin) {
+		if(sinkEnd_[n] == sinkLimit_[n]) {
+			if(sinkGarbage_ > sinkTop_ / 2)
+				compactSinks();
+			
+			int count = sinkEnd_[n] - sinkStart_[n];
+			int capacity = Math.max(4, count * 2);
+			if(sinkTop_ + capacity > sinks_.length)
+				sinks_ = Arrays.copyOf(sinks_, Math.max(sinkTop_ + capacity, sinks_.length * 2));
+			System.arraycopy(sinks_, sinkStart_[n], sinks_, sinkTop_, count);
+			sinkGarbage_ += sinkLimit_[n] - sinkStart_[n];
+			sinkStart_[n] = sinkTop_;
+			sinkEnd_[n] = sinkTop_ + count;
+			sinkLimit_[n] = sinkTop_ + capacity;
+			sinkTop_ += capacity;
+		}
+		sinks_[sinkEnd_[n]++] = pin;
+		++sinkCount_;
+	}
+	
+	/**
+	 * Packs the sinks of every net together again once moved nets have left too much unused room
+	 */
+	private void compactSinks() {
+		int[] sinks = new int[sinks_.length];
+		int top = 0;
+		for(int n = 0; n < netTop_; ++n) {
+			int count = sinkEnd_[n] - sinkStart_[n];
+			System.arraycopy(sinks_, sinkStart_[n], sinks, top, count);
+			sinkStart_[n] = top;
+			sinkEnd_[n] = top + count;
+			sinkLimit_[n] = top + count;
+			top += count;
+		}
+		sinks_ = sinks;
+		sinkTop_ = top;
+		sinkGarbage_ = 0;
+	}
+	
+	/**
+	 * Queues a Gate for evaluation if it was compiled into this netlist, first copying its Pin
+	 * states in since they may have been changed from outside the engine
+	 * @param gate The Gate to queue
+	 * @return False if the Gate is not part of this netlist or was folded into a constant
+	 */
+	boolean queueGate(Gate gate) {
+		int g = gate.compiledIndex_;
+		if(g < 0 || g >= gateTop_ || gates_[g] != gate)
+			return false;
+		
+		int count = flatGateCount(g);
+		if(count > 0) {
+			syncPorts(gate);
+			for(int k = 0; k < count; ++k)
+				queueGate(g + k);
+		}
+		else if(optimizer_ != null && optimizer_.skipped_[g]) {
+			if(isConstant(pinBase_[g] + gate.getPins().length - 1))
+				return false;
+			syncGate(g);
+			skippedStale_ = true;
+		}
+		else {
+			syncGate(g);
+			queueGate(rootOf(g));
+		}
+		return true;
+	}
+	
+	/**
+	 * Schedules a Gate on the timing wheel if it was compiled into this netlist
+	 * @param gate The Gate to schedule
+	 * @param due The tick to evaluate it at
+	 * @return False if the Gate is not part of this netlist
+	 */
+	boolean scheduleGate(Gate gate, int due) {
+		int g = gate.compiledIndex_;
+		if(g < 0 || g >= gateTop_ || gates_[g] != gate)
+			return false;
+		
+		int count = flatGateCount(g);
+		if(count > 0) {
+			syncPorts(gate);
+			for(int k = 0; k < count; ++k)
+				scheduleGate(g + k, due);
+		}
+		else {
+			syncGate(g);
+			scheduleGate(rootOf(g), due);
+		}
+		return true;
+	}
+	
+	/**
+	 * @param g A gate index
+	 * @return The gate evaluated in place of g, which is g unless it was collapsed into a cluster
+	 */
+	private int rootOf(int g) {
+		return luts_ == null || luts_.rootOf_[g] < 0 ? g : luts_.rootOf_[g];
+	}
+	
+	/**
+	 * Queues a gate for this tick or puts it on the timing wheel, depending on its delay
+	 * @param g The gate index
+	 */
+	private void queueGate(int g) {
+		if(delays_ == null || delays_[g] == 1)
+			gateQueue_.offer(g);
+		else
+			scheduleGate(g, simulation_.getCurrentTick() + delays_[g] - 1);
+	}
+	
+	/**
+	 * @param g The gate index
+	 * @param due The tick to evaluate it at
+	 */
+	private void scheduleGate(int g, int due) {
+		if(dueTicks_ == null) {
+			gateWheel_.schedule(g, due);
+		}
+		else if(dueTicks_[g] != due) {
+			dueTicks_[g] = due;
+			gateWheel_.schedule(g, due);
+		}
+	}
+	
+	/**
+	 * Queues a Net for propagation if its driver was compiled into this netlist, first copying the
+	 * state of the driver in since it may have been changed from outside the engine
+	 * @param net The Net to queue
+	 * @return False if the Net's driver is not part of this netlist or was taken to be constant
+	 */
+	boolean queueNet(Net net) {
+		Pin driver = net.getDriver();
+		int p = driver.compiledIndex_;
+		if(!contains(driver) || isConstant(p))
+			return false;
+		
+		syncPin(p);
+		if(pinNet_[p] >= 0)
+			netQueue_.offer(pinNet_[p]);
+		return true;
+	}
+	
+	/**
+	 * Hands any pending work back to the Simulation's queues, used once this netlist has been
+	 * discarded. Work inside a flattened subcircuit instance becomes an evaluation of the whole
+	 * instance, instances with feedback keep the state their body was left in and a queued cluster
+	 * becomes an evaluation of every gate in it. Skipped gates and every Pin object are brought up
+	 * to date first so the object engine starts from consistent Pins.
+	 */
+	void drainInto() {
+		refreshSkipped();
+		syncPins(false);
+		for(int count = gateQueue_.beginDrain(); count > 0; --count) {
+			int g = gateQueue_.poll();
+			if(luts_ != null && luts_.nodeOf_[g] >= 0) {
+				int node = luts_.nodeOf_[g];
+				for(int i = luts_.memberStart_[node]; i < luts_.memberStart_[node + 1]; ++i)
+					simulation_.queueGate(gates_[luts_.members_[i]]);
+			}
+			else if(gates_[g] != null) {
+				simulation_.queueGate(gates_[g]);
+			}
+		}
+		
+		for(int count = netQueue_.beginDrain(); count > 0; --count) {
+			int n = netQueue_.poll();
+			int p = netDriver_[n];
+			if(pinNet_[p] != n)
+				continue;
+			if(pins_[p] != null && pins_[p].getNet() != null)
+				simulation_.queueNet(pins_[p].getNet());
+			if(isExpanded(pinGate_[p]))
+				simulation_.queueGate(gates_[pinGate_[p]]);
+		}
+		
+		for(int g = 0; g < gateTop_; ++g) {
+			int count = flatGateCount(g);
+			if(count > 0 && !((SubcircuitComponent)gates_[g].getGateComponent()).isCombinational())
+				saveBody(g, count);
+		}
+		
+		if(!gateWheel_.isEmpty()) {
+			for(long entry : gateWheel_.drain()) {
+				if(gates_[(int)entry] != null)
+					simulation_.scheduleGate(gates_[(int)entry], (int)(entry >>> 32));
+			}
+		}
+	}
+	
+	/**
+	 * Hands the pending work to a {@link TickHistory} keyframe in terms of Gates and Nets, the same
+	 * way {@link CompiledNetlist#drainInto()} hands it back to the Simulation, but leaves it queued.
+	 * Flattened instances hand over the state of every pin inside them and the gates and nets
+	 * queued there, so restoring them later picks up mid-way through the body. Skipped gates and
+	 * the bodies of flattened instances with feedback are brought up to date first.
+	 * @param history The history taking the keyframe
+	 */
+	void collectPending(TickHistory history) {
+		refreshSkipped();
+		for(int i = 0; i < gateQueue_.size(); ++i) {
+			int g = gateQueue_.peek(i);
+			if(luts_ != null && luts_.nodeOf_[g] >= 0) {
+				int node = luts_.nodeOf_[g];
+				for(int j = luts_.memberStart_[node]; j < luts_.memberStart_[node + 1]; ++j)
+					history.addPendingGate(gates_[luts_.members_[j]]);
+			}
+			else if(isExpanded(g)) {
+				Gate gate = gates_[g];
+				history.addPendingFlatGate(gate, g - gate.compiledIndex_);
+			}
+			else if(gates_[g] != null) {
+				history.addPendingGate(gates_[g]);
+			}
+		}
+		
+		for(int i = 0; i < netQueue_.size(); ++i) {
+			int n = netQueue_.peek(i);
+			int p = netDriver_[n];
+			if(pinNet_[p] != n)
+				continue;
+			if(pins_[p] != null && pins_[p].getNet() != null)
+				history.addPendingNet(pins_[p].getNet());
+			if(isExpanded(pinGate_[p])) {
+				Gate gate = gates_[pinGate_[p]];
+				history.addPendingFlatNet(gate, p - firstFlatPin(gate.compiledIndex_));
+			}
+		}
+		
+		for(int g = 0; g < gateTop_; ++g) {
+			int count = flatGateCount(g);
+			if(count == 0)
+				continue;
+			
+			SubcircuitComponent body = (SubcircuitComponent)gates_[g].getGateComponent();
+			if(!body.isCombinational())
+				saveBody(g, count);
+			int p0 = firstFlatPin(g);
+			long[] pins = new long[(body.getFlatPinCount() + 63) >>> 6];
+			for(int p = 0; p < body.getFlatPinCount(); ++p) {
+				if(get(p0 + p))
+					pins[p >>> 6] |= 1L << p;
+			}
+			history.addFlatPins(gates_[g], pins);
+		}
+		
+		if(!gateWheel_.isEmpty()) {
+			for(long entry : gateWheel_.entries()) {
+				if(gates_[(int)entry] != null)
+					history.addDelayedGate(gates_[(int)entry], (int)(entry >>> 32));
+			}
+		}
+	}
+	
+	/**
+	 * Puts a flattened instance back the way {@link CompiledNetlist#collectPending(TickHistory)}
+	 * found it
+	 * @param gate The instance
+	 * @param pins The state of every pin inside it
+	 * @param gates The gates inside it to queue, relative to its first gate
+	 * @param nets The pins inside it driving nets to queue, relative to its first pin
+	 * @return False if the instance isn't flattened in this netlist
+	 */
+	boolean restoreFlat(Gate gate, long[] pins, int[] gates, int[] nets) {
+		int g0 = gate.compiledIndex_;
+		if(g0 < 0 || g0 >= gateTop_ || gates_[g0] != gate || flatGateCount(g0) == 0)
+			return false;
+		
+		int p0 = firstFlatPin(g0);
+		int pinCount = ((SubcircuitComponent)gate.getGateComponent()).getFlatPinCount();
+		for(int p = 0; p < pinCount; ++p)
+			set(p0 + p, (pins[p >>> 6] & (1L << p)) != 0);
+		for(int k : gates)
+			queueGate(g0 + k);
+		for(int p : nets) {
+			int n = pinNet_[p0 + p];
+			if(n >= 0)
+				netQueue_.offer(n);
+		}
+		return true;
+	}
+	
+	/**
+	 * @param g The first gate of a flattened instance
+	 * @return The index of the first pin it was expanded to
+	 */
+	private int firstFlatPin(int g) {
+		return pinBase_[g] - ((SubcircuitComponent)gates_[g].getGateComponent()).getFlatPinBase(0);
+	}
+	
+	/**
+	 * Copies the state of a flattened instance's body back into its Gate
+	 * @param g The first gate of the instance
+	 * @param count The number of gates it was expanded to
+	 */
+	private void saveBody(int g, int count) {
+		Gate gate = gates_[g];
+		SubcircuitComponent body = (SubcircuitComponent)gate.getGateComponent();
+		long[] values = body.getValues(gate);
+		for(int k = 0; k < count; ++k) {
+			int out = pinBase_[g + k] + (ops_[g + k] <= OP_NOT ? 1 : 2);
+			values[body.getFlatPinSlot(out - pinBase_[g])] = get(out) ? -1L : 0L;
+		}
+	}
+	
+	/**
+	 * Brings the Pins of gates left out of ticks by the optimizer up to date with the pins they read,
+	 * if any of those changed. Each gate is evaluated after the gates it reads and its output is
+	 * copied straight to its sinks, which only belong to other skipped or folded gates.
+	 */
+	void refreshSkipped() {
+		NetlistOptimizer optimizer = optimizer_;
+		if(optimizer == null || !skippedStale_)
+			return;
+		
+		skippedStale_ = false;
+		int[] lazy = optimizer.lazy_;
+		for(int i = 0; i < lazy.length; ++i) {
+			int g = lazy[i];
+			int base = pinBase_[g];
+			int out = base + gates_[g].getPins().length - 1;
+			int row = 0;
+			for(int p = base; p < out; ++p) {
+				if(get(p))
+					row |= 1 << (p - base);
+			}
+			
+			boolean state = ((optimizer.lazyTables_[i] >>> row) & 1) != 0;
+			if(get(out) == state)
+				continue;
+			
+			set(out, state);
+			int n = pinNet_[out];
+			if(n < 0)
+				continue;
+			for(int j = sinkStart_[n]; j < sinkEnd_[n]; ++j) {
+				if(get(sinks_[j]) != state)
+					set(sinks_[j], state);
+			}
+		}
+	}
+	
+	/**
+	 * @param pin A pin index
+	 * @return True if the optimizer took the pin's state to be constant
+	 */
+	private boolean isConstant(int pin) {
+		return constants_ != null && (constants_[pin >>> 6] & (1L << pin)) != 0;
+	}
+	
+	/**
+	 * Propagates all queued Nets and then evaluates all queued Gates and any delayed Gates due this
+	 * tick, with the same semantics as the object-based tick
+	 * @param pool The pool to evaluate large phases on, or null to stay on the calling thread. A
+	 * pool with a single worker is not used since splitting would only add overhead.
+	 * @param threshold The number of queued entries below which a phase runs on the calling thread
+	 * @param hashing True to hash the pins changed from now until {@link CompiledNetlist#takeHash()}
+	 */
+	void tick(ForkJoinPool pool, int threshold, boolean hashing) {
+		hashing_ = hashing;
+		int count = netQueue_.beginDrain();
+		lastNetCount_ = count;
+		if(pool != null && pool.getParallelism() > 1 && count >= threshold)
+			propagateParallel(pool, count);
+		else
+			propagate(count);
+		
+		if(!gateWheel_.isEmpty())
+			gateWheel_.pollDue(simulation_.getCurrentTick(), gateQueue_);
+		
+		count = gateQueue_.beginDrain();
+		lastGateCount_ = count;
+		if(pool != null && pool.getParallelism() > 1 && count >= threshold)
+			evaluateParallel(pool, count);
+		else
+			evaluate(count);
+	}
+	
+	/**
+	 * Propagates queued Nets on the calling thread
+	 * @param count The number of Nets to poll from {@link CompiledNetlist#netQueue_}
+	 */
+	private void propagate(int count) {
+		for(; count > 0; --count)
+			propagateNet(netQueue_.poll());
+	}
+	
+	/**
+	 * Copies the state of a net's driver to every pin it drives
+	 * @param net The net index
+	 */
+	private void propagateNet(int net) {
+		boolean state = get(netDriver_[net]);
+		int end = sinkEnd_[net];
+		for(int i = sinkStart_[net]; i < end; ++i) {
+			int target = sinks_[i];
+			if(get(target) != state) {
+				set(target, state);
+				if((updates_[target >>> 6] & (1L << target)) != 0)
+					queueGate(pinGate_[target]);
+				else
+					skippedStale_ = true;
+			}
+		}
+	}
+	
+	/**
+	 * Evaluates queued Gates on the calling thread
+	 * @param count The number of Gates to poll from {@link CompiledNetlist#gateQueue_}
+	 */
+	private void evaluate(int count) {
+		for(; count > 0; --count) {
+			int g = gateQueue_.poll();
+			int base = pinBase_[g];
+			switch(ops_[g]) {
+				case OP_NONE:
+					break;
+				case OP_BUFFER:
+					drive(base + 1, get(base));
+					break;
+				case OP_NOT:
+					drive(base + 1, !get(base));
+					break;
+				case OP_AND:
+					drive(base + 2, get(base) & get(base + 1));
+					break;
+				case OP_OR:
+					drive(base + 2, get(base) | get(base + 1));
+					break;
+				case OP_XOR:
+					drive(base + 2, get(base) ^ get(base + 1));
+					break;
+				case OP_SUBCIRCUIT:
+					defer(g);
+					break;
+				case OP_LUT:
+					evaluateLut(g);
+					break;
+				default:
+					runCustom(g);
+					break;
+			}
+		}
+		
+		if(kernels_ != null)
+			flushKernels();
+	}
+	
+	/**
+	 * Runs a gate through performLogic, which works on its Pin objects, so they are brought up to
+	 * date first and copied back afterwards
+	 * @param g The gate index
+	 */
+	private void runCustom(int g) {
+		Gate gate = gates_[g];
+		int base = pinBase_[g];
+		int end = base + gate.getPins().length;
+		for(int p = base; p < end; ++p)
+			syncObject(p);
+		gate.getGateComponent().performLogic(gate.getPins());
+		syncGate(g);
+	}
+	
+	/**
+	 * Looks the output of a truth-table gate up from its inputs and sets every other pin of its
+	 * cluster to match
+	 * @param g The gate index
+	 */
+	private void evaluateLut(int g) {
+		LutNodes luts = luts_;
+		int node = luts == null ? -1 : luts.nodeOf_[g];
+		int row = 0;
+		if(node < 0) {
+			int base = pinBase_[g];
+			int out = base + gates_[g].getPins().length - 1;
+			for(int p = base; p < out; ++p) {
+				if(get(p))
+					row |= 1 << (p - base);
+			}
+			drive(out, ((gates_[g].getGateComponent().getTruthTable() >>> row) & 1) != 0);
+			return;
+		}
+		
+		int start = luts.inputStart_[node];
+		int end = luts.inputStart_[node + 1];
+		for(int i = start; i < end; ++i) {
+			if(get(luts.inputs_[i]))
+				row |= 1 << (i - start);
+		}
+		drive(luts.outputs_[node], ((luts.tables_[node] >>> row) & 1) != 0);
+		
+		end = luts.shadowStart_[node + 1];
+		for(int i = luts.shadowStart_[node]; i < end; ++i) {
+			int pin = luts.shadowPins_[i];
+			boolean state = ((luts.shadowTables_[i] >>> row) & 1) != 0;
+			if(get(pin) != state)
+				set(pin, state);
+		}
+	}
+	
+	/**
+	 * Holds a subcircuit instance back until a full pass of its kernel can be made. Gates only read
+	 * their input pins, which don't change during a gate phase, so evaluating it later in the phase
+	 * gives the same result.
+	 * @param g The gate index
+	 */
+	private void defer(int g) {
+		int k = kernelOf_[g];
+		pending_[k][pendingCount_[k]++] = g;
+		if(pendingCount_[k] == LANES)
+			flushKernel(k);
+	}
+	
+	/**
+	 * Evaluates every deferred subcircuit instance
+	 */
+	private void flushKernels() {
+		for(int k = 0; k < kernels_.length; ++k) {
+			if(pendingCount_[k] > 0)
+				flushKernel(k);
+		}
+	}
+	
+	/**
+	 * Evaluates the deferred instances of one kernel with one instance per lane
+	 * @param k The index into {@link CompiledNetlist#kernels_}
+	 */
+	private void flushKernel(int k) {
+		SubcircuitComponent kernel = kernels_[k];
+		int[] pending = pending_[k];
+		int count = pendingCount_[k];
+		int inputs = kernel.getInputCount();
+		int outputs = kernel.getOutputCount();
+		long[] in = kernelInputs_;
+		long[] out = kernelOutputs_;
+		
+		for(int i = 0; i < inputs; ++i) {
+			long lanes = 0;
+			for(int l = 0; l < count; ++l) {
+				if(get(pinBase_[pending[l]] + i))
+					lanes |= 1L << l;
+			}
+			in[i] = lanes;
+		}
+		
+		kernel.evaluate(in, out);
+		
+		for(int l = 0; l < count; ++l) {
+			int base = pinBase_[pending[l]] + inputs;
+			for(int o = 0; o < outputs; ++o)
+				drive(base + o, ((out[o] >>> l) & 1) != 0);
+		}
+		pendingCount_[k] = 0;
+	}
+	
+	/**
+	 * Propagates queued Nets across the pool. Each leaf task copies drivers to sinks for its share of
+	 * the batch and records the sinks it changed and the Gates they queue, then the records are
+	 * merged in queue order on the calling thread. Nets only read their driver and write their own
+	 * sinks so the result is identical to {@link CompiledNetlist#propagate(int)}.
+	 * @param pool The pool to propagate on
+	 * @param count The number of Nets to poll from {@link CompiledNetlist#netQueue_}
+	 */
+	private void propagateParallel(ForkJoinPool pool, int count) {
+		takeBatch(netQueue_, count);
+		int leaves = prepareLeaves(count);
+		pool.invoke(new PhaseTask(true, count, 0, leaves));
+		mergeLeaves(true, leaves);
+	}
+	
+	/**
+	 * Evaluates queued Gates across the pool. Each leaf task works out the outputs of its share of
+	 * the batch and records the pins that changed and the Nets they queue, then the records are
+	 * merged in queue order on the calling thread. CUSTOM Gates, subcircuit instances and truth
+	 * tables are recorded in place and run during the merge. Gates only read input pins and write
+	 * output pins so the result is identical to {@link CompiledNetlist#evaluate(int)}.
+	 * @param pool The pool to evaluate on
+	 * @param count The number of Gates to poll from {@link CompiledNetlist#gateQueue_}
+	 */
+	private void evaluateParallel(ForkJoinPool pool, int count) {
+		takeBatch(gateQueue_, count);
+		int leaves = prepareLeaves(count);
+		pool.invoke(new PhaseTask(false, count, 0, leaves));
+		mergeLeaves(false, leaves);
+		
+		if(kernels_ != null)
+			flushKernels();
+	}
+	
+	/**
+	 * Polls entries from a queue into {@link CompiledNetlist#batch_}, growing it if needed
+	 * @param queue The queue to poll
+	 * @param count The number of entries to poll
+	 */
+	private void takeBatch(WorkQueue queue, int count) {
+		if(batch_.length < count)
+			batch_ = new int[Math.max(count, batch_.length * 2)];
+		
+		for(int i = 0; i < count; ++i)
+			batch_[i] = queue.poll();
+	}
+	
+	/**
+	 * Makes sure there is a {@link LeafOutput} for every leaf of a batch
+	 * @param count The number of entries in the batch
+	 * @return The number of leaves
+	 */
+	private int prepareLeaves(int count) {
+		int leaves = (count + LEAF_SIZE - 1) / LEAF_SIZE;
+		if(leaves_.length < leaves) {
+			int old = leaves_.length;
+			leaves_ = Arrays.copyOf(leaves_, Math.max(leaves, old * 2));
+			for(int l = old; l < leaves_.length; ++l)
+				leaves_[l] = new LeafOutput();
+		}
+		return leaves;
+	}
+	
+	/**
+	 * Applies the changes recorded by the leaves of a parallel phase in queue order. Every recorded
+	 * pin is known to differ from its new state and no other entry of the phase writes it, so it is
+	 * flipped without being compared again.
+	 * @param nets True if the phase propagated Nets, false if it evaluated Gates
+	 * @param leaves The number of leaves
+	 */
+	private void mergeLeaves(boolean nets, int leaves) {
+		long[] state = state_;
+		long[] dirty = dirty_;
+		for(int l = 0; l < leaves; ++l) {
+			LeafOutput leaf = leaves_[l];
+			int[] pins = leaf.pins_;
+			int[] queued = leaf.queued_;
+			for(int i = 0; i < leaf.count_; ++i) {
+				int pin = pins[i];
+				if(pin < 0) {
+					runSerial(-1 - pin);
+					continue;
+				}
+				
+				state[pin >>> 6] ^= 1L << pin;
+				dirty[pin >>> 12] |= 1L << (pin >>> 6);
+				if(queued[i] >= 0) {
+					if(nets)
+						queueGate(queued[i]);
+					else
+						netQueue_.offer(queued[i]);
+				}
+			}
+			
+			if(hashing_)
+				hash_ ^= leaf.hash_;
+			if(leaf.skippedStale_)
+				skippedStale_ = true;
+		}
+	}
+	
+	/**
+	 * Runs a gate a leaf task left for the calling thread
+	 * @param g The gate index
+	 */
+	private void runSerial(int g) {
+		switch(ops_[g]) {
+			case OP_SUBCIRCUIT:
+				defer(g);
+				break;
+			case OP_LUT:
+				evaluateLut(g);
+				break;
+			default:
+				runCustom(g);
+				break;
+		}
+	}
+	
+	/**
+	 * Copies the drivers of a range of {@link CompiledNetlist#batch_} to their sinks into a leaf's
+	 * record, without changing anything
+	 * @param from The first entry of the range
+	 * @param to One past the last entry of the range
+	 * @param leaf The record to fill
+	 */
+	private void propagateLeaf(int from, int to, LeafOutput leaf) {
+		int[] batch = batch_;
+		for(int i = from; i < to; ++i) {
+			int net = batch[i];
+			boolean state = get(netDriver_[net]);
+			int end = sinkEnd_[net];
+			for(int j = sinkStart_[net]; j < end; ++j) {
+				int target = sinks_[j];
+				if(get(target) != state) {
+					if((updates_[target >>> 6] & (1L << target)) != 0) {
+						leaf.add(target, pinGate_[target]);
+					}
+					else {
+						leaf.add(target, -1);
+						leaf.skippedStale_ = true;
+					}
+					leaf.hash_ ^= hashKeys_[target];
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Evaluates the Gates in a range of {@link CompiledNetlist#batch_} into a leaf's record, without
+	 * changing anything. Gates that have to run on the calling thread are recorded as -1 - their index.
+	 * @param from The first entry of the range
+	 * @param to One past the last entry of the range
+	 * @param leaf The record to fill
+	 */
+	private void evaluateLeaf(int from, int to, LeafOutput leaf) {
+		int[] batch = batch_;
+		for(int i = from; i < to; ++i) {
+			int g = batch[i];
+			int base = pinBase_[g];
+			int out = base + 2;
+			boolean state;
+			switch(ops_[g]) {
+				case OP_NONE:
+					continue;
+				case OP_BUFFER:
+					out = base + 1;
+					state = get(base);
+					break;
+				case OP_NOT:
+					out = base + 1;
+					state = !get(base);
+					break;
+				case OP_AND:
+					state = get(base) & get(base + 1);
+					break;
+				case OP_OR:
+					state = get(base) | get(base + 1);
+					break;
+				case OP_XOR:
+					state = get(base) ^ get(base + 1);
+					break;
+				default:
+					leaf.add(-1 - g, -1);
+					continue;
+			}
+			
+			if(get(out) != state) {
+				leaf.add(out, pinNet_[out]);
+				leaf.hash_ ^= hashKeys_[out];
+			}
+		}
+	}
+	
+	/**
+	 * @param net The net index
+	 * @return True if some sink of the net differs from its driver
+	 */
+	private boolean needsPropagation(int net) {
+		boolean state = get(netDriver_[net]);
+		int end = sinkEnd_[net];
+		for(int i = sinkStart_[net]; i < end; ++i) {
+			if(get(sinks_[i]) != state)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * The changes found by one leaf task of a parallel phase, kept between ticks so filling it
+	 * doesn't allocate once it has grown to fit
+	 */
+	private static class LeafOutput {
+		/**
+		 * The pins to flip in the order they were found, or -1 - a gate index for a gate to run on
+		 * the calling thread
+		 */
+		private int[] pins_;
+		
+		/**
+		 * The gate or net each pin in {@link LeafOutput#pins_} queues, or -1 if none
+		 */
+		private int[] queued_;
+		
+		/**
+		 * The number of entries in {@link LeafOutput#pins_}
+		 */
+		private int count_;
+		
+		/**
+		 * The hash keys of the recorded pins XORed together
+		 */
+		private long hash_;
+		
+		/**
+		 * Whether a recorded pin is read by a skipped gate
+		 */
+		private boolean skippedStale_;
+		
+		LeafOutput() {
+			pins_ = new int[16];
+			queued_ = new int[16];
+		}
+		
+		/**
+		 * Empties the record before a leaf fills it
+		 */
+		void clear() {
+			count_ = 0;
+			hash_ = 0;
+			skippedStale_ = false;
+		}
+		
+		/**
+		 * Records a change
+		 * @param pin {@link LeafOutput#pins_}
+		 * @param queued {@link LeafOutput#queued_}
+		 */
+		void add(int pin, int queued) {
+			if(count_ == pins_.length) {
+				pins_ = Arrays.copyOf(pins_, count_ * 2);
+				queued_ = Arrays.copyOf(queued_, count_ * 2);
+			}
+			pins_[count_] = pin;
+			queued_[count_] = queued;
+			++count_;
+		}
+	}
+	
+	/**
+	 * Splits a range of leaves of {@link CompiledNetlist#batch_} across the pool, each leaf covering
+	 * {@link CompiledNetlist#LEAF_SIZE} entries and recording its changes in {@link CompiledNetlist#leaves_}
+	 */
+	@SuppressWarnings("serial")
+	private class PhaseTask extends RecursiveAction {
+		/**
+		 * True if the batch holds net indices, false if it holds gate indices
+		 */
+		private final boolean nets_;
+		
+		/**
+		 * The number of entries in the batch
+		 */
+		private final int count_;
+		
+		/**
+		 * The first leaf of the range
+		 */
+		private final int from_;
+		
+		/**
+		 * One past the last leaf of the range
+		 */
+		private final int to_;
+		
+		/**
+		 * @param nets {@link PhaseTask#nets_}
+		 * @param count {@link PhaseTask#count_}
+		 * @param from {@link PhaseTask#from_}
+		 * @param to {@link PhaseTask#to_}
+		 */
+		PhaseTask(boolean nets, int count, int from, int to) {
+			nets_ = nets;
+			count_ = count;
+			from_ = from;
+			to_ = to;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to_ - from_ > 1) {
+				int mid = (from_ + to_) >>> 1;
+				invokeAll(new PhaseTask(nets_, count_, from_, mid), new PhaseTask(nets_, count_, mid, to_));
+				return;
+			}
+			
+			LeafOutput leaf = leaves_[from_];
+			leaf.clear();
+			int start = from_ * LEAF_SIZE;
+			int end = Math.min(count_, start + LEAF_SIZE);
+			if(nets_)
+				propagateLeaf(start, end, leaf);
+			else
+				evaluateLeaf(start, end, leaf);
+		}
+	}
+	
+	/**
+	 * Sets an output pin and queues its Net if the state changed
+	 * @param pin The pin index
+	 * @param state The new state
+	 */
+	private void drive(int pin, boolean state) {
+		if(get(pin) != state) {
+			set(pin, state);
+			int n = pinNet_[pin];
+			if(n >= 0)
+				netQueue_.offer(n);
+		}
+	}
+	
+	/**
+	 * @param pin The pin index
+	 * @return The state of the pin
+	 */
+	private boolean get(int pin) {
+		return (state_[pin >>> 6] & (1L << pin)) != 0;
+	}
+	
+	/**
+	 * Sets the state of a pin, leaving its Pin object to be brought up to date later
+	 * @param pin The pin index
+	 * @param state The new state
+	 */
+	private void set(int pin, boolean state) {
+		if(state)
+			state_[pin >>> 6] |= 1L << pin;
+		else
+			state_[pin >>> 6] &= ~(1L << pin);
+		dirty_[pin >>> 12] |= 1L << (pin >>> 6);
+		if(hashing_)
+			hash_ ^= hashKeys_[pin];
+	}
+	
+	/**
+	 * Stops hashing pin changes
+	 * @return The hash keys of the pins changed since the last tick began, XORed together
+	 */
+	long takeHash() {
+		long hash = hash_;
+		hash_ = 0;
+		hashing_ = false;
+		return hash;
+	}
+	
+	/**
+	 * Gives a pin index its Pin object
+	 * @param p The pin index
+	 * @param pin The Pin
+	 */
+	private void bindPin(int p, Pin pin) {
+		pins_[p] = pin;
+		hashKeys_[p] = pin.hashKey_;
+		if(pin.isObserved())
+			observed_[p >>> 6] |= 1L << p;
+		else
+			observed_[p >>> 6] &= ~(1L << p);
+	}
+	
+	/**
+	 * Copies the pin states that changed since the last call into their Pin objects and reports each
+	 * changed Pin to the Simulation, comparing only the words that were written to
+	 * @param observedOnly True to only bring observed or traced Pins up to date, leaving the rest for later
+	 */
+	void syncPins(boolean observedOnly) {
+		long[] dirty = dirty_;
+		for(int i = 0; i < dirty.length; ++i) {
+			long words = dirty[i];
+			while(words != 0) {
+				int w = (i << 6) + Long.numberOfTrailingZeros(words);
+				words &= words - 1;
+				
+				long changed = state_[w] ^ mirror_[w];
+				if(observedOnly)
+					changed &= observed_[w];
+				mirror_[w] ^= changed;
+				if(mirror_[w] == state_[w])
+					dirty[i] &= ~(1L << w);
+				
+				while(changed != 0) {
+					int p = (w << 6) + Long.numberOfTrailingZeros(changed);
+					changed &= changed - 1;
+					Pin object = pins_[p];
+					if(object != null) {
+						object.refreshState((state_[w] & (1L << p)) != 0);
+						simulation_.pinReported(object);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Brings one Pin object up to date with the bitset if it belongs to this netlist
+	 * @param pin The Pin
+	 */
+	void syncPin(Pin pin) {
+		if(contains(pin)) {
+			refreshSkipped();
+			syncObject(pin.compiledIndex_);
+		}
+	}
+	
+	/**
+	 * Brings one Pin object up to date with the bitset
+	 * @param pin The pin index
+	 */
+	private void syncObject(int pin) {
+		Pin object = pins_[pin];
+		long bit = 1L << pin;
+		if(object == null || ((state_[pin >>> 6] ^ mirror_[pin >>> 6]) & bit) == 0)
+			return;
+		
+		mirror_[pin >>> 6] ^= bit;
+		object.refreshState((state_[pin >>> 6] & bit) != 0);
+		simulation_.pinReported(object);
+	}
+	
+	/**
+	 * Copies the state of a Pin object into the bitset, unless the bitset has changed since the
+	 * object was last brought up to date
+	 * @param pin The pin index
+	 */
+	private void syncPin(int pin) {
+		Pin object = pins_[pin];
+		long bit = 1L << pin;
+		if(object == null || ((state_[pin >>> 6] ^ mirror_[pin >>> 6]) & bit) != 0)
+			return;
+		if(object.getState()) {
+			state_[pin >>> 6] |= bit;
+			mirror_[pin >>> 6] |= bit;
+		}
+		else {
+			state_[pin >>> 6] &= ~bit;
+			mirror_[pin >>> 6] &= ~bit;
+		}
+	}
+	
+	/**
+	 * Copies the state of all of a gate's Pin objects into the bitset
+	 * @param g The gate index
+	 */
+	private void syncGate(int g) {
+		int base = pinBase_[g];
+		int end = base + gates_[g].getPins().length;
+		for(int p = base; p < end; ++p)
+			syncPin(p);
+	}
+	
+	/**
+	 * Copies the state of a flattened subcircuit instance's own Pin objects into the bitset
+	 * @param gate The instance
+	 */
+	private void syncPorts(Gate gate) {
+		for(Pin pin : gate.getPins())
+			syncPin(pin.compiledIndex_);
+	}
+}
@@ -1,8 +1,8 @@
-package common.sim;
-
-public class Constants {
-	/**
-	 * The spacing between grid points in the sim
-	 */
-	public static final int GRIDSIZE = 10;
-}
+package common.sim;
+
+public class Constants {
+	/**
+	 * The spacing between grid points in the sim
+	 */
+	public static final int GRIDSIZE = 10;
+}
@@ -0,0 +1,443 @@
+package common.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The undo and redo history of the edits made to a Simulation. Each edit is kept as a record of a
+ * few ints rather than a reference to the Gate or Wire, so nothing removed from the sim is held on
+ * to. Gates are found again by the position of their top left corner and Wires by the Pins they
+ * connect, which stays valid as long as the steps are undone and redone in order.
+ * <p>
+ * Records are grouped into steps that are undone or redone as a whole, such as removing a Gate
+ * together with its Wires. Once the records take up more than the byte budget the oldest steps are
+ * dropped.
+ */
+class EditJournal {
+	/**
+	 * The kinds of record, stored as the first int of each
+	 */
+	private static final int ADD_GATE = 0;
+	private static final int REMOVE_GATE = 1;
+	private static final int ADD_WIRE = 2;
+	private static final int REMOVE_WIRE = 3;
+	private static final int MOVE_GATE = 4;
+	
+	/**
+	 * The number of ints in a record
+	 */
+	private static final int RECORD_SIZE = 8;
+	
+	/**
+	 * The Simulation being edited
+	 */
+	private final Simulation simulation_;
+	
+	/**
+	 * The records, {@link EditJournal#RECORD_SIZE} ints each. A Gate record holds its component,
+	 * position, whether it is fixed and the states of its first 32 Pins, a Wire record the position
+	 * and Pin index of both ends and a move the old and new position.
+	 */
+	private int[] records_;
+	
+	/**
+	 * The number of records
+	 */
+	private int recordCount_;
+	
+	/**
+	 * The first record of each step
+	 */
+	private int[] stepStarts_;
+	
+	/**
+	 * The number of steps, including undone ones
+	 */
+	private int stepCount_;
+	
+	/**
+	 * The number of steps applied, the steps from here on have been undone and can be redone
+	 */
+	private int applied_;
+	
+	/**
+	 * The number of {@link EditJournal#begin()} calls not yet ended
+	 */
+	private int depth_;
+	
+	/**
+	 * Whether the outermost group has started its step yet
+	 */
+	private boolean stepOpen_;
+	
+	/**
+	 * Whether a step is being undone or redone, so the edits it makes aren't recorded
+	 */
+	private boolean applying_;
+	
+	/**
+	 * The GateComponents referred to by records, numbered in the order first seen
+	 */
+	private final List<GateComponent> components_;
+	private final IdentityHashMap<GateComponent, Integer> componentIds_;
+	
+	/**
+	 * The most bytes the records may take up, 0 to keep none
+	 */
+	private long budget_;
+	
+	/**
+	 * @param simulation {@link EditJournal#simulation_}
+	 * @param budget {@link EditJournal#budget_}
+	 */
+	EditJournal(Simulation simulation, long budget) {
+		simulation_ = simulation;
+		records_ = new int[RECORD_SIZE * 16];
+		recordCount_ = 0;
+		stepStarts_ = new int[16];
+		stepCount_ = 0;
+		applied_ = 0;
+		depth_ = 0;
+		stepOpen_ = false;
+		applying_ = false;
+		components_ = new ArrayList<>();
+		componentIds_ = new IdentityHashMap<>();
+		budget_ = budget;
+	}
+	
+	/**
+	 * @return {@link EditJournal#budget_}
+	 */
+	long getBudget() {
+		return budget_;
+	}
+	
+	/**
+	 * Changes the budget, dropping the oldest steps if they no longer fit
+	 * @param budget {@link EditJournal#budget_}
+	 */
+	void setBudget(long budget) {
+		if(budget < 0)
+			throw new IllegalArgumentException("Undo budget must not be negative: " + budget);
+		budget_ = budget;
+		trim();
+	}
+	
+	/**
+	 * @return The number of bytes the records take up
+	 */
+	long getBytesUsed() {
+		return recordCount_ * (RECORD_SIZE * 4L) + stepCount_ * 4L;
+	}
+	
+	/**
+	 * @return True if there is a step to undo
+	 */
+	boolean canUndo() {
+		return applied_ > 0;
+	}
+	
+	/**
+	 * @return True if there is a step to redo
+	 */
+	boolean canRedo() {
+		return applied_ < stepCount_;
+	}
+	
+	/**
+	 * Forgets every step
+	 */
+	void clear() {
+		recordCount_ = 0;
+		stepCount_ = 0;
+		applied_ = 0;
+		stepOpen_ = false;
+		components_.clear();
+		componentIds_.clear();
+	}
+	
+	/**
+	 * Starts a group of edits that are undone as one step, groups may be nested
+	 */
+	void begin() {
+		++depth_;
+	}
+	
+	/**
+	 * Ends a group started by {@link EditJournal#begin()}
+	 */
+	void end() {
+		if(depth_ == 0)
+			throw new IllegalStateException("No edit group to end");
+		if(--depth_ == 0) {
+			stepOpen_ = false;
+			trim();
+		}
+	}
+	
+	/**
+	 * Records a Gate being added or removed
+	 * @param gate The Gate
+	 * @param add True if it was added
+	 */
+	void recordGate(Gate gate, boolean add) {
+		if(applying_ || budget_ == 0)
+			return;
+		
+		int states = 0;
+		Pin[] pins = gate.getPins();
+		for(int i = 0; i < pins.length && i < 32; ++i) {
+			if(pins[i].getState())
+				states |= 1 << i;
+		}
+		append(add ? ADD_GATE : REMOVE_GATE, componentId(gate.getGateComponent()), gate.getX(), gate.getY(), gate.isFixed() ? 1 : 0, states, 0);
+	}
+	
+	/**
+	 * Records a Wire being added or removed, while it is connected
+	 * @param wire The Wire
+	 * @param add True if it was added
+	 */
+	void recordWire(Wire wire, boolean add) {
+		Pin output = wire.getOutputPin();
+		Pin input = wire.getInputPin();
+		if(applying_ || budget_ == 0 || output == null || input == null)
+			return;
+		
+		Gate from = output.getGate();
+		Gate to = input.getGate();
+		append(add ? ADD_WIRE : REMOVE_WIRE, from.getX(), from.getY(), indexOf(from, output), to.getX(), to.getY(), indexOf(to, input));
+	}
+	
+	/**
+	 * Records a Gate being moved
+	 * @param fromX The old x position
+	 * @param fromY The old y position
+	 * @param toX The new x position
+	 * @param toY The new y position
+	 */
+	void recordMove(int fromX, int fromY, int toX, int toY) {
+		if(applying_ || budget_ == 0)
+			return;
+		append(MOVE_GATE, fromX, fromY, toX, toY, 0, 0);
+	}
+	
+	/**
+	 * Undoes the latest applied step
+	 * @return False if there was nothing to undo
+	 */
+	boolean undo() {
+		if(applied_ == 0)
+			return false;
+		
+		--applied_;
+		applying_ = true;
+		try {
+			for(int r = stepEnd(applied_) - 1; r >= stepStarts_[applied_]; --r)
+				apply(r, true);
+		} finally {
+			applying_ = false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Redoes the earliest undone step
+	 * @return False if there was nothing to redo
+	 */
+	boolean redo() {
+		if(applied_ == stepCount_)
+			return false;
+		
+		applying_ = true;
+		try {
+			for(int r = stepStarts_[applied_]; r < stepEnd(applied_); ++r)
+				apply(r, false);
+		} finally {
+			applying_ = false;
+		}
+		++applied_;
+		return true;
+	}
+	
+	/**
+	 * @param step A step
+	 * @return The index one past its last record
+	 */
+	private int stepEnd(int step) {
+		return step + 1 < stepCount_ ? stepStarts_[step + 1] : recordCount_;
+	}
+	
+	/**
+	 * Appends a record, dropping the undone steps and starting a new step unless a group already has
+	 */
+	private void append(int kind, int a, int b, int c, int d, int e, int f) {
+		if(applied_ < stepCount_) {
+			recordCount_ = stepStarts_[applied_];
+			stepCount_ = applied_;
+			stepOpen_ = false;
+		}
+		
+		if(!stepOpen_) {
+			if(stepCount_ == stepStarts_.length)
+				stepStarts_ = Arrays.copyOf(stepStarts_, stepStarts_.length * 2);
+			stepStarts_[stepCount_++] = recordCount_;
+			applied_ = stepCount_;
+			stepOpen_ = depth_ > 0;
+		}
+		
+		int i = recordCount_ * RECORD_SIZE;
+		if(i == records_.length)
+			records_ = Arrays.copyOf(records_, records_.length * 2);
+		records_[i] = kind;
+		records_[i + 1] = a;
+		records_[i + 2] = b;
+		records_[i + 3] = c;
+		records_[i + 4] = d;
+		records_[i + 5] = e;
+		records_[i + 6] = f;
+		++recordCount_;
+		
+		if(depth_ == 0)
+			trim();
+	}
+	
+	/**
+	 * Drops the oldest steps once over budget, down to three quarters of it so a long run of edits
+	 * doesn't move the records on every one
+	 */
+	private void trim() {
+		if(getBytesUsed() <= budget_)
+			return;
+		
+		//The step of an open group can't be dropped since its later records would start a new one
+		int droppable = stepOpen_ ? applied_ - 1 : applied_;
+		long target = budget_ - budget_ / 4;
+		long bytes = getBytesUsed();
+		int drop = 0;
+		while(drop < droppable && bytes > target) {
+			bytes -= (stepEnd(drop) - stepStarts_[drop]) * (RECORD_SIZE * 4L) + 4;
+			++drop;
+		}
+		if(drop == 0)
+			return;
+		
+		int first = drop < stepCount_ ? stepStarts_[drop] : recordCount_;
+		System.arraycopy(records_, first * RECORD_SIZE, records_, 0, (recordCount_ - first) * RECORD_SIZE);
+		recordCount_ -= first;
+		for(int s = drop; s < stepCount_; ++s)
+			stepStarts_[s - drop] = stepStarts_[s] - first;
+		stepCount_ -= drop;
+		applied_ -= drop;
+		
+		//Let go of the space taken by a large bulk edit once it has been dropped, all the way down to
+		//what the remaining steps need rather than one halving at a time
+		if(records_.length > RECORD_SIZE * 16 && recordCount_ * RECORD_SIZE < records_.length / 4)
+			records_ = Arrays.copyOf(records_, Math.max(RECORD_SIZE * 16, Integer.highestOneBit(recordCount_ * RECORD_SIZE) * 2));
+		if(stepStarts_.length > 16 && stepCount_ < stepStarts_.length / 4)
+			stepStarts_ = Arrays.copyOf(stepStarts_, Math.max(16, Integer.highestOneBit(stepCount_) * 2));
+		if(stepCount_ == 0) {
+			components_.clear();
+			componentIds_.clear();
+		}
+	}
+	
+	/**
+	 * Applies a record or its inverse
+	 * @param r The record
+	 * @param inverse True to undo it
+	 */
+	private void apply(int r, boolean inverse) {
+		int i = r * RECORD_SIZE;
+		int kind = records_[i];
+		switch(kind) {
+		case ADD_GATE:
+		case REMOVE_GATE:
+			if((kind == ADD_GATE) != inverse) {
+				Gate gate = new Gate(simulation_, components_.get(records_[i + 1]), records_[i + 2], records_[i + 3]);
+				simulation_.addGate(gate);
+				if(gate.canBeFixed()) {
+					//Sources such as Switches run no logic, so their state has to be put back
+					Pin[] pins = gate.getPins();
+					for(int p = 0; p < pins.length && p < 32; ++p)
+						pins[p].setState((records_[i + 5] & (1 << p)) != 0);
+				}
+				if(records_[i + 4] != 0)
+					gate.setFixed(true);
+			}
+			else {
+				Gate gate = simulation_.findGateByOrigin(records_[i + 2], records_[i + 3]);
+				if(gate != null)
+					gate.remove();
+			}
+			break;
+		case ADD_WIRE:
+		case REMOVE_WIRE:
+			Pin output = pinAt(records_[i + 1], records_[i + 2], records_[i + 3]);
+			Pin input = pinAt(records_[i + 4], records_[i + 5], records_[i + 6]);
+			if(output == null || input == null)
+				break;
+			if((kind == ADD_WIRE) != inverse) {
+				Wire wire = new Wire(simulation_, output.getPosition());
+				if(wire.connect(output, input))
+					simulation_.addWire(wire);
+			}
+			else if(input.getWire() != null && input.getWire().getOutputPin() == output) {
+				input.getWire().remove();
+			}
+			break;
+		case MOVE_GATE:
+			int from = inverse ? 3 : 1;
+			int to = inverse ? 1 : 3;
+			Gate gate = simulation_.findGateByOrigin(records_[i + from], records_[i + from + 1]);
+			if(gate != null)
+				simulation_.moveGate(gate, records_[i + to], records_[i + to + 1]);
+			break;
+		default:
+			throw new IllegalStateException("Unknown edit record " + kind);
+		}
+	}
+	
+	/**
+	 * @param x The x position of a Gate
+	 * @param y The y position of a Gate
+	 * @param index The index of one of its Pins
+	 * @return The Pin, or null if there is no such Gate or Pin
+	 */
+	private Pin pinAt(int x, int y, int index) {
+		Gate gate = simulation_.findGateByOrigin(x, y);
+		if(gate == null || index >= gate.getPins().length)
+			return null;
+		return gate.getPins()[index];
+	}
+	
+	/**
+	 * @param gate A Gate
+	 * @param pin One of its Pins
+	 * @return The index of the Pin
+	 */
+	private static int indexOf(Gate gate, Pin pin) {
+		Pin[] pins = gate.getPins();
+		for(int i = 0; i < pins.length; ++i) {
+			if(pins[i] == pin)
+				return i;
+		}
+		throw new IllegalArgumentException("Pin does not belong to the Gate");
+	}
+	
+	/**
+	 * @param component A GateComponent
+	 * @return Its number in {@link EditJournal#components_}, assigned if it is new
+	 */
+	private int componentId(GateComponent component) {
+		Integer id = componentIds_.get(component);
+		if(id == null) {
+			id = components_.size();
+			components_.add(component);
+			componentIds_.put(component, id);
+		}
+		return id;
+	}
+}
@@ -1,116 +1,218 @@
-package common.sim;
-
-/**
- * A sim instance of a {@link GateComponent}
- */
-public class Gate
-{
-	/**
-	 * The GateComponent from which it will get its basic information
-	 */
-	private final GateComponent component_;
-	
-	/**
-	 * The Pins that belong to this Gate
-	 */
-	private final Pin[] pins_;
-	
-	/**
-	 * x position in the sim
-	 */
-	private int x_;
-	
-	/**
-	 * y position in the sim
-	 */
-	private int y_;
-	
-	/**
-	 * @param component {@link Gate#component_}
-	 * @param x {@link Gate#x_}
-	 * @param y {@link Gate#y_}
-	 */
-	public Gate(GateComponent component, int x, int y) {
-		component_ = component;
-		x_ = x;
-		y_ = y;
-		
-		PinComponent[] pinComps = component.getPins();
-		pins_ = new Pin[pinComps.length];
-		
-		for(int i = 0; i < pinComps.length; ++i) {
-			pins_[i] = new Pin(pinComps[i], this);
-		}
-		
-		update(); //force a logic update for inverted pins such as on the NOT
-	}
-	
-	/**
-	 * @return {@link Gate#component_}
-	 */
-	public GateComponent getGateComponent() {
-		return component_;
-	}
-
-	/**
-	 * @return {@link Gate#pins_}
-	 */
-	public Pin[] getPins() {
-		return pins_;
-	}
-	
-	/**
-	 * @return {@link Gate#x_}
-	 */
-	public int getX() {
-		return x_;
-	}
-	
-	/**
-	 * @return {@link Gate#y_}
-	 */
-	public int getY() {
-		return y_;
-	}
-	
-	/**
-	 * Causes the Gate to queue itself in the sim
-	 */
-	public void update() {
-		Simulation.queueGate(this);
-	}
-	
-	/**
-	 * @return The width of its GateComponent
-	 */
-	public int getWidth() {
-		return component_.getWidth();
-	}
-	
-	/**
-	 * @return The height of its GateComponent
-	 */
-	public int getHeight() {
-		return component_.getHeight();
-	}
-	
-	/**
-	 * Destroys all Wire connections and removes itself from the sim
-	 */
-	public void remove() {
-		for(Pin pin : pins_) {
-			if(pin.getWire() != null)
-				pin.getWire().remove();
-		}
-		
-		Simulation.removeGate(this);
-	}
-	
-	/**
-	 * Prints out current Pin states
-	 */
-	public void debug() {
-		for(Pin pin : pins_)
-			System.out.println(pin.getPinComponent().getLabel() + ": " + pin.getState());
-	}
-}
+package common.sim;
+
+/**
+ * A sim instance of a {@link GateComponent}
+ */
+public class Gate
+{
+	/**
+	 * The Simulation this Gate belongs to
+	 */
+	private final Simulation simulation_;
+	
+	/**
+	 * The GateComponent from which it will get its basic information
+	 */
+	private final GateComponent component_;
+	
+	/**
+	 * The Pins that belong to this Gate
+	 */
+	private final Pin[] pins_;
+	
+	/**
+	 * The position of the Gate's top left corner in the sim, packed by {@link GridKey}
+	 */
+	private long position_;
+	
+	/**
+	 * The index of this Gate in the active {@link CompiledNetlist}
+	 */
+	int compiledIndex_;
+	
+	/**
+	 * The index of this Gate in the Simulation's slot table, -1 until it is added or queued
+	 */
+	int index_;
+	
+	/**
+	 * The latest tick this Gate is scheduled to be evaluated at on the Simulation's timing wheel, or -1
+	 */
+	int dueTick_;
+	
+	/**
+	 * The nets of this Gate's body if it is a {@link SubcircuitComponent} with feedback, which has to
+	 * keep its own state between evaluations, otherwise null
+	 */
+	long[] bodyState_;
+	
+	/**
+	 * Whether this Gate's output Pins hold their state for good, letting the compiled engine fold
+	 * them into the gates they drive while {@link Simulation#isOptimizing()} is set
+	 */
+	private boolean fixed_;
+	
+	/**
+	 * @param simulation {@link Gate#simulation_}
+	 * @param component {@link Gate#component_}
+	 * @param x The x position of {@link Gate#position_}
+	 * @param y The y position of {@link Gate#position_}
+	 */
+	public Gate(Simulation simulation, GateComponent component, int x, int y) {
+		simulation_ = simulation;
+		component_ = component;
+		position_ = GridKey.pack(x, y);
+		compiledIndex_ = -1;
+		index_ = -1;
+		dueTick_ = -1;
+		bodyState_ = null;
+		fixed_ = false;
+		
+		PinComponent[] pinComps = component.getPins();
+		pins_ = new Pin[pinComps.length];
+		
+		for(int i = 0; i < pinComps.length; ++i) {
+			pins_[i] = new Pin(pinComps[i], this);
+		}
+		
+		update(); //force a logic update for inverted pins such as on the NOT
+	}
+	
+	/**
+	 * @return {@link Gate#simulation_}
+	 */
+	public Simulation getSimulation() {
+		return simulation_;
+	}
+	
+	/**
+	 * @return {@link Gate#component_}
+	 */
+	public GateComponent getGateComponent() {
+		return component_;
+	}
+
+	/**
+	 * @return {@link Gate#pins_}
+	 */
+	public Pin[] getPins() {
+		return pins_;
+	}
+	
+	/**
+	 * @return {@link Gate#position_}
+	 */
+	public long getPosition() {
+		return position_;
+	}
+	
+	/**
+	 * @return The x position of {@link Gate#position_}
+	 */
+	public int getX() {
+		return GridKey.x(position_);
+	}
+	
+	/**
+	 * @return The y position of {@link Gate#position_}
+	 */
+	public int getY() {
+		return GridKey.y(position_);
+	}
+	
+	/**
+	 * @return {@link Gate#fixed_}
+	 */
+	public boolean isFixed() {
+		return fixed_;
+	}
+	
+	/**
+	 * Marks the Gate as a constant source or lets its state change again. Only Gates that run no
+	 * logic and have no input Pins, such as Switches, can be fixed.
+	 * @param fixed {@link Gate#fixed_}
+	 */
+	public void setFixed(boolean fixed) {
+		if(fixed && !canBeFixed())
+			throw new IllegalStateException(component_.getName() + " has inputs or logic and can't be fixed");
+		if(fixed_ != fixed) {
+			fixed_ = fixed;
+			simulation_.invalidate();
+		}
+	}
+	
+	/**
+	 * @return True if {@link Gate#setFixed(boolean)} accepts this Gate
+	 */
+	public boolean canBeFixed() {
+		if(component_.getLogicOp() != LogicOp.NONE)
+			return false;
+		for(Pin pin : pins_) {
+			if(pin.getType() == PinType.INPUT)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Causes the Gate to queue itself in the sim
+	 */
+	public void update() {
+		simulation_.queueGate(this);
+	}
+	
+	/**
+	 * @return The width of its GateComponent
+	 */
+	public int getWidth() {
+		return component_.getWidth();
+	}
+	
+	/**
+	 * @return The height of its GateComponent
+	 */
+	public int getHeight() {
+		return component_.getHeight();
+	}
+	
+	/**
+	 * Destroys all Wire connections and removes itself from the sim, undone as one step
+	 */
+	public void remove() {
+		simulation_.beginEdit();
+		try {
+			for(Pin pin : pins_) {
+				if(pin.getWire() != null)
+					pin.getWire().remove();
+				
+				Net net = pin.getNet();
+				if(net != null) {
+					while(net.size() > 0)
+						net.getWire(net.size() - 1).remove();
+				}
+			}
+			
+			simulation_.removeGate(this);
+		} finally {
+			simulation_.endEdit();
+		}
+	}
+	
+	/**
+	 * Moves the Gate, its Pins follow since their positions are taken from it, called by
+	 * {@link Simulation#moveGate(Gate, int, int)}
+	 * @param x The new x position of {@link Gate#position_}
+	 * @param y The new y position of {@link Gate#position_}
+	 */
+	void moveTo(int x, int y) {
+		position_ = GridKey.pack(x, y);
+	}
+	
+	/**
+	 * Prints out current Pin states
+	 */
+	public void debug() {
+		for(Pin pin : pins_)
+			System.out.println(pin.getPinComponent().getLabel() + ": " + pin.getState());
+	}
+}
@@ -0,0 +1,55 @@
+package common.sim;
+
+/**
+ * Packs a position in the sim into a single long, x in the high and y in the low 32 bits, so positions
+ * can be stored and compared without allocating Points. Two positions are equal exactly when their
+ * keys are.
+ */
+public final class GridKey {
+	private GridKey() {
+	}
+	
+	/**
+	 * @param x The x position
+	 * @param y The y position
+	 * @return The key of the position
+	 */
+	public static long pack(int x, int y) {
+		return ((long)x << 32) | (y & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * @param key A key made by {@link GridKey#pack(int, int)}
+	 * @return The x position of the key
+	 */
+	public static int x(long key) {
+		return (int)(key >> 32);
+	}
+	
+	/**
+	 * @param key A key made by {@link GridKey#pack(int, int)}
+	 * @return The y position of the key
+	 */
+	public static int y(long key) {
+		return (int)key;
+	}
+	
+	/**
+	 * Rounds a position to the nearest grid line
+	 * @param position The x or y position
+	 * @return The position rounded to a multiple of {@link Constants#GRIDSIZE}
+	 */
+	public static int round(int position) {
+		final int size = Constants.GRIDSIZE;
+		return Math.round((float)position/(float)size) * size;
+	}
+	
+	/**
+	 * @param x The x position
+	 * @param y The y position
+	 * @return The key of the nearest grid position
+	 */
+	public static long snap(int x, int y) {
+		return pack(round(x), round(y));
+	}
+}
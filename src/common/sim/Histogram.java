@@ -0,0 +1,131 @@
+package common.sim;
+
+import java.util.Arrays;
+
+/**
+ * Counts non-negative values in fixed log-linear buckets so recording never allocates. Values below
+ * {@link Histogram#LINEAR} are counted exactly and larger ones in eight buckets per power of two, so
+ * a percentile is reported within 12.5% of the true value.
+ * <p>
+ * Only one thread may record. Other threads may read at any time and see counts that are at most a
+ * few recordings behind.
+ */
+class Histogram {
+	/**
+	 * Values below this get a bucket each
+	 */
+	private static final int LINEAR = 16;
+	
+	/**
+	 * log2 of the number of buckets per power of two above {@link Histogram#LINEAR}
+	 */
+	private static final int SUB_BITS = 3;
+	
+	/**
+	 * The number of buckets, enough for any positive long
+	 */
+	private static final int BUCKETS = LINEAR + (64 - 4) * (1 << SUB_BITS);
+	
+	/**
+	 * The number of values recorded into each bucket
+	 */
+	private final long[] counts_;
+	
+	/**
+	 * The number of values recorded
+	 */
+	private long total_;
+	
+	/**
+	 * The largest value recorded
+	 */
+	private long max_;
+	
+	Histogram() {
+		counts_ = new long[BUCKETS];
+		total_ = 0;
+		max_ = 0;
+	}
+	
+	/**
+	 * @param value The value to count, negative values are counted as 0
+	 */
+	void record(long value) {
+		if(value < 0)
+			value = 0;
+		++counts_[bucketOf(value)];
+		++total_;
+		if(value > max_)
+			max_ = value;
+	}
+	
+	/**
+	 * @param fraction The fraction of recorded values that are at most the result, from 0 to 1
+	 * @return The upper bound of the bucket holding that value, or 0 if nothing was recorded
+	 */
+	long percentile(double fraction) {
+		long total = total_;
+		if(total == 0)
+			return 0;
+		
+		long rank = Math.max(1, (long)Math.ceil(fraction * total));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; ++i) {
+			seen += counts_[i];
+			if(seen >= rank)
+				return Math.min(upperBound(i), max_);
+		}
+		return max_;
+	}
+	
+	/**
+	 * @return {@link Histogram#total_}
+	 */
+	long getCount() {
+		return total_;
+	}
+	
+	/**
+	 * @return {@link Histogram#max_}
+	 */
+	long getMax() {
+		return max_;
+	}
+	
+	/**
+	 * Forgets every recorded value
+	 */
+	void clear() {
+		Arrays.fill(counts_, 0);
+		total_ = 0;
+		max_ = 0;
+	}
+	
+	/**
+	 * @param value A non-negative value
+	 * @return The bucket counting it
+	 */
+	private static int bucketOf(long value) {
+		if(value < LINEAR)
+			return (int)value;
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int)(value >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+		return LINEAR + ((exponent - 4) << SUB_BITS) + sub;
+	}
+	
+	/**
+	 * @param bucket A bucket index
+	 * @return The largest value counted by the bucket
+	 */
+	private static long upperBound(int bucket) {
+		if(bucket < LINEAR)
+			return bucket;
+		
+		int exponent = ((bucket - LINEAR) >>> SUB_BITS) + 4;
+		long sub = (bucket - LINEAR) & ((1 << SUB_BITS) - 1);
+		long width = 1L << (exponent - SUB_BITS);
+		long upper = (1L << exponent) + (sub + 1) * width - 1;
+		return upper < 0 ? Long.MAX_VALUE : upper;
+	}
+}
@@ -0,0 +1,49 @@
+package common.sim;
+
+/**
+ * Enumeration of the built-in logic operations a GateComponent can declare so the compiled engine
+ * can evaluate it without calling {@link GateInterface#performLogic(Pin[])}
+ */
+public enum LogicOp
+{
+	/**
+	 * Logic is defined by {@link GateInterface#performLogic(Pin[])}
+	 */
+	CUSTOM,
+	
+	/**
+	 * The GateComponent has no logic (inputs and outputs such as switches and LEDs)
+	 */
+	NONE,
+	
+	/**
+	 * Pin 1 = Pin 0
+	 */
+	BUFFER,
+	
+	/**
+	 * Pin 1 = !Pin 0
+	 */
+	NOT,
+	
+	/**
+	 * Pin 2 = Pin 0 && Pin 1
+	 */
+	AND,
+	
+	/**
+	 * Pin 2 = Pin 0 || Pin 1
+	 */
+	OR,
+	
+	/**
+	 * Pin 2 = Pin 0 ^ Pin 1
+	 */
+	XOR,
+	
+	/**
+	 * Pin n = bit r of {@link GateComponent#getTruthTable()}, where the n input pins come first and
+	 * Pin i carries bit i of r
+	 */
+	LUT
+}
@@ -0,0 +1,106 @@
+package common.sim;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Point;
+
+/**
+ * A GateComponent whose output is looked up in a truth table of its inputs. Bit r of the table is
+ * the output when input i carries bit i of r, so any function of up to
+ * {@link LutComponent#MAX_INPUTS} inputs fits in a single long and is evaluated with one lookup.
+ */
+public class LutComponent extends GateComponent {
+	/**
+	 * The most inputs a truth table can cover
+	 */
+	public static final int MAX_INPUTS = 6;
+	
+	/**
+	 * The distance between two input pins
+	 */
+	private static final int PIN_SPACING = 2 * Constants.GRIDSIZE;
+	
+	/**
+	 * The width of every LutComponent
+	 */
+	private static final int WIDTH = 5 * Constants.GRIDSIZE;
+	
+	/**
+	 * The output for every combination of inputs, bits above 2^inputs are always clear
+	 */
+	private final long table_;
+	
+	/**
+	 * @param name The name shown in the UI
+	 * @param description The description of how the GateComponent works
+	 * @param inputs The number of input pins, from 1 to {@link LutComponent#MAX_INPUTS}
+	 * @param table {@link LutComponent#table_}, bits above 2^inputs are ignored
+	 */
+	public LutComponent(String name, String description, int inputs, long table) {
+		super(name, description, new Dimension(WIDTH, PIN_SPACING * Math.max(1, inputs)), createPins(inputs));
+		table_ = inputs == MAX_INPUTS ? table : table & ((1L << (1 << inputs)) - 1);
+	}
+	
+	/**
+	 * Lays the inputs out down the left edge, labelled from A, and the output halfway down the right
+	 * edge with the next label
+	 * @param inputs The number of input pins
+	 * @return The PinComponents of the LutComponent, inputs first
+	 */
+	private static PinComponent[] createPins(int inputs) {
+		if(inputs < 1 || inputs > MAX_INPUTS)
+			throw new IllegalArgumentException("A truth table needs 1 to " + MAX_INPUTS + " inputs, not " + inputs);
+		
+		PinComponent[] pins = new PinComponent[inputs + 1];
+		for(int i = 0; i < inputs; ++i)
+			pins[i] = new PinComponent(String.valueOf((char)('A' + i)), PinType.INPUT, true, new Point(0, PIN_SPACING / 2 + i * PIN_SPACING));
+		pins[inputs] = new PinComponent(String.valueOf((char)('A' + inputs)), PinType.OUTPUT, false, new Point(WIDTH, PIN_SPACING * inputs / 2));
+		return pins;
+	}
+	
+	/**
+	 * @return The number of input pins
+	 */
+	public int getInputCount() {
+		return getPins().length - 1;
+	}
+	
+	@Override
+	public LogicOp getLogicOp() {
+		return LogicOp.LUT;
+	}
+	
+	/**
+	 * @return {@link LutComponent#table_}
+	 */
+	@Override
+	public long getTruthTable() {
+		return table_;
+	}
+	
+	@Override
+	public void performLogic(Pin[] pins) {
+		int inputs = pins.length - 1;
+		int row = 0;
+		for(int i = 0; i < inputs; ++i) {
+			if(pins[i].getState())
+				row |= 1 << i;
+		}
+		pins[inputs].setState(((table_ >>> row) & 1) != 0);
+	}
+	
+	@Override
+	public void draw(Graphics g, boolean[] states) {
+		int width = getWidth();
+		int height = getHeight();
+		g.drawRect(Constants.GRIDSIZE, 0, width - 2 * Constants.GRIDSIZE, height);
+		for(PinComponent pin : getPins()) {
+			Point offset = pin.getOffset();
+			if(pin.getType() == PinType.INPUT)
+				g.drawLine(0, offset.y, Constants.GRIDSIZE, offset.y);
+			else
+				g.drawLine(width - Constants.GRIDSIZE, offset.y, width, offset.y);
+		}
+		g.drawString(getName(), Constants.GRIDSIZE + 3, height / 2 + 5);
+	}
+}
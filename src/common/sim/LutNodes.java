@@ -0,0 +1,471 @@
+package common.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The gates of a {@link CompiledNetlist} that are evaluated by looking their output up in a truth
+ * table: Gates whose GateComponent declares {@link LogicOp#LUT} and, while
+ * {@link Simulation#isCollapsingClusters()} is set, clusters of primitive gates collapsed into a
+ * single node. A cluster is grown backwards from the gate driving its output through gates whose
+ * output only feeds the cluster, for as long as it reads at most {@link LutComponent#MAX_INPUTS}
+ * distinct nets. Every other pin in a cluster gets a truth table of its own, so its Pin is set to the
+ * value it would have settled to without any gates being evaluated for it.
+ * <p>
+ * Node n reads the pins inputs_[inputStart_[n]] up to inputs_[inputStart_[n + 1]], input i supplying
+ * bit i of the row, and drives outputs_[n] with that bit of tables_[n]. The shadow pins and member
+ * gates of each node are laid out the same way.
+ */
+class LutNodes {
+	/**
+	 * The most gates collapsed into one node
+	 */
+	private static final int MAX_GATES = 16;
+	
+	/**
+	 * The node each gate evaluates, or -1 if the gate is not the root of one
+	 */
+	final int[] nodeOf_;
+	
+	/**
+	 * The root of the node each gate belongs to, or -1 if the gate is not part of one
+	 */
+	final int[] rootOf_;
+	
+	/**
+	 * The pins each node reads its row from, grouped by node
+	 */
+	final int[] inputStart_;
+	final int[] inputs_;
+	
+	/**
+	 * The truth table of each node's output
+	 */
+	final long[] tables_;
+	
+	/**
+	 * The pin each node drives
+	 */
+	final int[] outputs_;
+	
+	/**
+	 * The pins inside each cluster that are set from a truth table rather than driven, grouped by node
+	 */
+	final int[] shadowStart_;
+	final int[] shadowPins_;
+	final long[] shadowTables_;
+	
+	/**
+	 * The gates each node stands in for, in evaluation order, grouped by node
+	 */
+	final int[] memberStart_;
+	final int[] members_;
+	
+	/**
+	 * The structure of the netlist, see the fields of {@link CompiledNetlist} with the same names
+	 */
+	private final Gate[] gates_;
+	private final int[] pinBase_;
+	private final int[] pinGate_;
+	private final int[] pinNet_;
+	private final int[] sinkStart_;
+	private final int[] sinks_;
+	
+	/**
+	 * The pin driving each input pin, or -1 if it is not connected
+	 */
+	private final int[] driverOf_;
+	
+	/**
+	 * The cluster being grown is the gates whose mark equals its root plus one
+	 */
+	private final int[] mark_;
+	
+	/**
+	 * The value of every pin in each row of the truth table being worked out
+	 */
+	private final long[] rows_;
+	
+	/**
+	 * Finds the nodes of a netlist
+	 * @param gates The compiled Gates, indexed by gate index
+	 * @param lut Whether each gate is a {@link LogicOp#LUT} gate
+	 * @param collapsible Whether each gate may be collapsed into a cluster, or null to leave every
+	 * other gate alone
+	 * @param pinBase The index of each gate's first pin
+	 * @param pinGate The gate each pin belongs to
+	 * @param pinNet The net driven by each pin
+	 * @param netDriver The driving pin of each net
+	 * @param sinkStart Where each net's sinks start in sinks
+	 * @param sinks The pins driven by every net
+	 */
+	LutNodes(Gate[] gates, boolean[] lut, boolean[] collapsible, int[] pinBase, int[] pinGate, int[] pinNet, int[] netDriver, int[] sinkStart, int[] sinks) {
+		int gateCount = gates.length;
+		int pinCount = pinGate.length;
+		gates_ = gates;
+		pinBase_ = pinBase;
+		pinGate_ = pinGate;
+		pinNet_ = pinNet;
+		sinkStart_ = sinkStart;
+		sinks_ = sinks;
+		mark_ = new int[gateCount];
+		rows_ = new long[pinCount];
+		driverOf_ = new int[pinCount];
+		Arrays.fill(driverOf_, -1);
+		for(int n = 0; n < netDriver.length; ++n) {
+			for(int i = sinkStart[n]; i < sinkStart[n + 1]; ++i)
+				driverOf_[sinks[i]] = netDriver[n];
+		}
+		
+		nodeOf_ = new int[gateCount];
+		rootOf_ = new int[gateCount];
+		Arrays.fill(nodeOf_, -1);
+		Arrays.fill(rootOf_, -1);
+		
+		List<int[]> memberLists = new ArrayList<>();
+		int[] cluster = new int[MAX_GATES];
+		if(collapsible != null) {
+			//Grow clusters from the gates nearest the outputs first so each one takes in as much as it can
+			int[] order = topologicalOrder(collapsible);
+			for(int i = order.length - 1; i >= 0; --i) {
+				int root = order[i];
+				if(rootOf_[root] >= 0)
+					continue;
+				int count = grow(root, collapsible, cluster);
+				if(count > 1)
+					memberLists.add(Arrays.copyOf(cluster, count));
+			}
+		}
+		for(int g = 0; g < gateCount; ++g) {
+			if(lut[g] && rootOf_[g] < 0)
+				memberLists.add(new int[] { g });
+		}
+		
+		int nodeCount = memberLists.size();
+		inputStart_ = new int[nodeCount + 1];
+		shadowStart_ = new int[nodeCount + 1];
+		memberStart_ = new int[nodeCount + 1];
+		tables_ = new long[nodeCount];
+		outputs_ = new int[nodeCount];
+		int[] inputs = new int[nodeCount * LutComponent.MAX_INPUTS];
+		int[] shadowPins = new int[16];
+		long[] shadowTables = new long[16];
+		int[] members = new int[16];
+		
+		for(int n = 0; n < nodeCount; ++n) {
+			int[] list = memberLists.get(n);
+			int count = list.length;
+			int root = list[0];
+			int stamp = root + 1;
+			for(int k = 0; k < count; ++k) {
+				mark_[list[k]] = stamp;
+				rootOf_[list[k]] = root;
+			}
+			nodeOf_[root] = n;
+			order(list, count, stamp, cluster);
+			
+			//Each distinct net read from outside the cluster is one input of the table
+			int variableCount = 0;
+			for(int k = 0; k < count; ++k) {
+				int g = cluster[k];
+				for(int p = pinBase_[g]; p < outputOf(g); ++p) {
+					if(isInternal(p, stamp))
+						continue;
+					int v = variableOf(p, inputs, inputStart_[n], variableCount);
+					if(v == variableCount)
+						inputs[inputStart_[n] + variableCount++] = p;
+					rows_[p] = BitParallelSimulation.LANE_PATTERNS[v];
+				}
+			}
+			inputStart_[n + 1] = inputStart_[n] + variableCount;
+			
+			long mask = variableCount == LutComponent.MAX_INPUTS ? -1L : (1L << (1 << variableCount)) - 1;
+			for(int k = 0; k < count; ++k) {
+				int g = cluster[k];
+				int out = outputOf(g);
+				for(int p = pinBase_[g]; p < out; ++p) {
+					if(isInternal(p, stamp))
+						rows_[p] = rows_[driverOf_[p]];
+				}
+				rows_[out] = evaluate(g) & mask;
+			}
+			
+			tables_[n] = rows_[outputOf(root)];
+			outputs_[n] = outputOf(root);
+			shadowStart_[n + 1] = shadowStart_[n];
+			for(int k = 0; k < count; ++k) {
+				int g = cluster[k];
+				for(int p = pinBase_[g]; p <= outputOf(g); ++p) {
+					if(p == outputs_[n] || (p < outputOf(g) && !isInternal(p, stamp)))
+						continue;
+					int s = shadowStart_[n + 1]++;
+					if(s == shadowPins.length) {
+						shadowPins = Arrays.copyOf(shadowPins, s * 2);
+						shadowTables = Arrays.copyOf(shadowTables, s * 2);
+					}
+					shadowPins[s] = p;
+					shadowTables[s] = rows_[p] & mask;
+				}
+			}
+			
+			memberStart_[n + 1] = memberStart_[n] + count;
+			if(memberStart_[n + 1] > members.length)
+				members = Arrays.copyOf(members, Math.max(memberStart_[n + 1], members.length * 2));
+			System.arraycopy(cluster, 0, members, memberStart_[n], count);
+		}
+		
+		inputs_ = Arrays.copyOf(inputs, inputStart_[nodeCount]);
+		shadowPins_ = Arrays.copyOf(shadowPins, shadowStart_[nodeCount]);
+		shadowTables_ = Arrays.copyOf(shadowTables, shadowStart_[nodeCount]);
+		members_ = Arrays.copyOf(members, memberStart_[nodeCount]);
+	}
+	
+	/**
+	 * @return The number of nodes
+	 */
+	int getCount() {
+		return tables_.length;
+	}
+	
+	/**
+	 * @return The number of gates collapsed into a node whose root is another gate
+	 */
+	int getCollapsedCount() {
+		return members_.length - tables_.length;
+	}
+	
+	/**
+	 * @param g A gate index
+	 * @return The index of the gate's output pin, which always comes after its inputs
+	 */
+	private int outputOf(int g) {
+		return pinBase_[g] + gates_[g].getPins().length - 1;
+	}
+	
+	/**
+	 * @param pin An input pin of a gate in the cluster being grown
+	 * @param stamp The mark of the cluster
+	 * @return True if the pin is driven by another gate in the cluster
+	 */
+	private boolean isInternal(int pin, int stamp) {
+		int driver = driverOf_[pin];
+		return driver >= 0 && pinGate_[driver] >= 0 && mark_[pinGate_[driver]] == stamp;
+	}
+	
+	/**
+	 * @param pin An input pin read from outside a cluster
+	 * @param inputs The pins chosen as inputs of the cluster so far
+	 * @param start Where the cluster's inputs start
+	 * @param count The number of inputs chosen so far
+	 * @return The input reading the same net as pin, or count if there is none yet
+	 */
+	private int variableOf(int pin, int[] inputs, int start, int count) {
+		int driver = driverOf_[pin];
+		for(int v = 0; v < count; ++v) {
+			int other = inputs[start + v];
+			if(other == pin || (driver >= 0 && driverOf_[other] == driver))
+				return v;
+		}
+		return count;
+	}
+	
+	/**
+	 * Works out a gate's output in every row from the rows of its inputs
+	 * @param g The gate index
+	 * @return The output rows
+	 */
+	private long evaluate(int g) {
+		GateComponent component = gates_[g].getGateComponent();
+		int base = pinBase_[g];
+		switch(component.getLogicOp()) {
+			case BUFFER:
+				return rows_[base];
+			case NOT:
+				return ~rows_[base];
+			case AND:
+				return rows_[base] & rows_[base + 1];
+			case OR:
+				return rows_[base] | rows_[base + 1];
+			case XOR:
+				return rows_[base] ^ rows_[base + 1];
+			default:
+				int inputs = gates_[g].getPins().length - 1;
+				long table = component.getTruthTable();
+				long result = 0;
+				for(int row = 0; row < 1 << inputs; ++row) {
+					if(((table >>> row) & 1) == 0)
+						continue;
+					long term = -1L;
+					for(int i = 0; i < inputs; ++i)
+						term &= ((row >>> i) & 1) != 0 ? rows_[base + i] : ~rows_[base + i];
+					result |= term;
+				}
+				return result;
+		}
+	}
+	
+	/**
+	 * Collapses the gates driving a root into its cluster for as long as the cluster stays within
+	 * bounds and free of loops
+	 * @param root The gate whose output the cluster drives
+	 * @param collapsible Whether each gate may be collapsed
+	 * @param cluster Filled with the gates of the cluster, root first
+	 * @return The number of gates in the cluster
+	 */
+	private int grow(int root, boolean[] collapsible, int[] cluster) {
+		int stamp = root + 1;
+		int count = 1;
+		cluster[0] = root;
+		mark_[root] = stamp;
+		for(int k = 0; k < count; ++k) {
+			int g = cluster[k];
+			for(int p = pinBase_[g]; p < outputOf(g) && count < MAX_GATES; ++p) {
+				int driver = driverOf_[p];
+				int d = driver >= 0 ? pinGate_[driver] : -1;
+				if(d < 0 || !collapsible[d] || rootOf_[d] >= 0 || mark_[d] == stamp || driver != outputOf(d) || !feedsOnly(driver, stamp))
+					continue;
+				
+				mark_[d] = stamp;
+				cluster[count++] = d;
+				if(countInputs(cluster, count, stamp) > LutComponent.MAX_INPUTS || !order(cluster, count, stamp, null)) {
+					mark_[d] = 0;
+					--count;
+				}
+			}
+		}
+		
+		for(int k = 0; k < count; ++k) {
+			mark_[cluster[k]] = 0;
+			if(count > 1)
+				rootOf_[cluster[k]] = root;
+		}
+		return count;
+	}
+	
+	/**
+	 * @param driver An output pin
+	 * @param stamp The mark of the cluster being grown
+	 * @return True if every pin the output drives belongs to a gate in the cluster
+	 */
+	private boolean feedsOnly(int driver, int stamp) {
+		int n = pinNet_[driver];
+		for(int i = sinkStart_[n]; i < sinkStart_[n + 1]; ++i) {
+			int g = pinGate_[sinks_[i]];
+			if(g < 0 || mark_[g] != stamp)
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * @return The number of distinct nets the gates of a cluster read from outside it
+	 */
+	private int countInputs(int[] cluster, int count, int stamp) {
+		int[] inputs = new int[LutComponent.MAX_INPUTS + 1];
+		int inputCount = 0;
+		for(int k = 0; k < count; ++k) {
+			int g = cluster[k];
+			for(int p = pinBase_[g]; p < outputOf(g); ++p) {
+				if(isInternal(p, stamp) || variableOf(p, inputs, 0, inputCount) < inputCount)
+					continue;
+				if(inputCount == inputs.length)
+					return inputCount + 1;
+				inputs[inputCount++] = p;
+			}
+		}
+		return inputCount;
+	}
+	
+	/**
+	 * Sorts the gates of a cluster so each comes after the gates driving it
+	 * @param cluster The gates of the cluster
+	 * @param count The number of gates in the cluster
+	 * @param stamp The mark of the cluster
+	 * @param sorted Filled with the sorted gates, or null to only check for loops
+	 * @return False if the cluster has a loop
+	 */
+	private boolean order(int[] cluster, int count, int stamp, int[] sorted) {
+		boolean[] placed = new boolean[count];
+		for(int done = 0; done < count; ++done) {
+			int next = -1;
+			for(int k = 0; k < count && next < 0; ++k) {
+				if(placed[k])
+					continue;
+				next = k;
+				int g = cluster[k];
+				for(int p = pinBase_[g]; p < outputOf(g); ++p) {
+					if(isInternal(p, stamp) && !placed[indexOf(cluster, count, pinGate_[driverOf_[p]])]) {
+						next = -1;
+						break;
+					}
+				}
+			}
+			if(next < 0)
+				return false;
+			placed[next] = true;
+			if(sorted != null)
+				sorted[done] = cluster[next];
+		}
+		return true;
+	}
+	
+	/**
+	 * @return The position of g in the first count entries of cluster
+	 */
+	private static int indexOf(int[] cluster, int count, int g) {
+		for(int k = 0; k < count; ++k) {
+			if(cluster[k] == g)
+				return k;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Orders the collapsible gates so each comes after the collapsible gates driving it, gates in a
+	 * loop go last in no particular order
+	 * @param collapsible Whether each gate may be collapsed
+	 * @return The collapsible gate indices
+	 */
+	private int[] topologicalOrder(boolean[] collapsible) {
+		int gateCount = gates_.length;
+		int[] pending = new int[gateCount];
+		int total = 0;
+		for(int g = 0; g < gateCount; ++g) {
+			if(!collapsible[g])
+				continue;
+			++total;
+			for(int p = pinBase_[g]; p < outputOf(g); ++p) {
+				int driver = driverOf_[p];
+				if(driver >= 0 && pinGate_[driver] >= 0 && collapsible[pinGate_[driver]])
+					++pending[g];
+			}
+		}
+		
+		int[] order = new int[total];
+		boolean[] placed = new boolean[gateCount];
+		int head = 0;
+		int tail = 0;
+		for(int g = 0; g < gateCount; ++g) {
+			if(collapsible[g] && pending[g] == 0)
+				order[tail++] = g;
+		}
+		while(head < tail) {
+			int g = order[head++];
+			placed[g] = true;
+			int n = pinNet_[outputOf(g)];
+			if(n < 0)
+				continue;
+			for(int i = sinkStart_[n]; i < sinkStart_[n + 1]; ++i) {
+				int s = pinGate_[sinks_[i]];
+				if(s >= 0 && collapsible[s] && --pending[s] == 0)
+					order[tail++] = s;
+			}
+		}
+		for(int g = 0; g < gateCount && tail < total; ++g) {
+			if(collapsible[g] && !placed[g])
+				order[tail++] = g;
+		}
+		return order;
+	}
+}
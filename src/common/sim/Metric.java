@@ -0,0 +1,43 @@
+package common.sim;
+
+/**
+ * The measurements a {@link SimulationMetrics} can record, each can be switched on and off on its own
+ */
+public enum Metric {
+	/**
+	 * The number of Gates evaluated each tick
+	 */
+	GATES_EVALUATED,
+	
+	/**
+	 * The number of Nets propagated each tick
+	 */
+	NETS_PROPAGATED,
+	
+	/**
+	 * The deepest net or gate queue drained in a single tick
+	 */
+	QUEUE_DEPTH,
+	
+	/**
+	 * The wall time taken by each tick
+	 */
+	TICK_LATENCY,
+	
+	/**
+	 * The number of ticks run per second of wall time
+	 */
+	TICK_RATE,
+	
+	/**
+	 * The number of times the Simulation asked its listener to repaint
+	 */
+	REPAINTS;
+	
+	/**
+	 * @return The bit of this Metric in a mask of enabled Metrics
+	 */
+	int mask() {
+		return 1 << ordinal();
+	}
+}
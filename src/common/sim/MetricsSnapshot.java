@@ -0,0 +1,223 @@
+package common.sim;
+
+/**
+ * The values of a {@link SimulationMetrics} at one moment, taken with
+ * {@link SimulationMetrics#snapshot()}. Metrics that were never enabled read as 0.
+ */
+public class MetricsSnapshot {
+	/**
+	 * The System.nanoTime() the snapshot was taken at
+	 */
+	private final long timeNanos_;
+	
+	/**
+	 * The number of ticks recorded
+	 */
+	private final long ticks_;
+	
+	/**
+	 * The number of Gates evaluated over all recorded ticks
+	 */
+	private final long gatesEvaluated_;
+	
+	/**
+	 * The median number of Gates evaluated in a tick
+	 */
+	private final long gatesPerTickP50_;
+	
+	/**
+	 * The 99th percentile of Gates evaluated in a tick
+	 */
+	private final long gatesPerTickP99_;
+	
+	/**
+	 * The number of Nets propagated over all recorded ticks
+	 */
+	private final long netsPropagated_;
+	
+	/**
+	 * The median number of Nets propagated in a tick
+	 */
+	private final long netsPerTickP50_;
+	
+	/**
+	 * The 99th percentile of Nets propagated in a tick
+	 */
+	private final long netsPerTickP99_;
+	
+	/**
+	 * The deepest net or gate queue drained in a single tick
+	 */
+	private final long peakQueueDepth_;
+	
+	/**
+	 * The median wall time of a tick in nanoseconds
+	 */
+	private final long tickLatencyP50_;
+	
+	/**
+	 * The 99th percentile wall time of a tick in nanoseconds
+	 */
+	private final long tickLatencyP99_;
+	
+	/**
+	 * The longest wall time of a tick in nanoseconds
+	 */
+	private final long tickLatencyMax_;
+	
+	/**
+	 * The number of ticks run per second over the last measuring window
+	 */
+	private final double ticksPerSecond_;
+	
+	/**
+	 * The number of repaints the Simulation asked for
+	 */
+	private final long repaintRequests_;
+	
+	/**
+	 * @param metrics The metrics to copy
+	 * @param timeNanos {@link MetricsSnapshot#timeNanos_}
+	 */
+	MetricsSnapshot(SimulationMetrics metrics, long timeNanos) {
+		timeNanos_ = timeNanos;
+		ticks_ = metrics.getTicks();
+		gatesEvaluated_ = metrics.getGatesEvaluated();
+		gatesPerTickP50_ = metrics.getGatesPerTickP50();
+		gatesPerTickP99_ = metrics.getGatesPerTickP99();
+		netsPropagated_ = metrics.getNetsPropagated();
+		netsPerTickP50_ = metrics.getNetsPerTickP50();
+		netsPerTickP99_ = metrics.getNetsPerTickP99();
+		peakQueueDepth_ = metrics.getPeakQueueDepth();
+		tickLatencyP50_ = metrics.getTickLatencyP50Nanos();
+		tickLatencyP99_ = metrics.getTickLatencyP99Nanos();
+		tickLatencyMax_ = metrics.getTickLatencyMaxNanos();
+		ticksPerSecond_ = metrics.ticksPerSecond(timeNanos);
+		repaintRequests_ = metrics.getRepaintRequests();
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#timeNanos_}
+	 */
+	public long getTimeNanos() {
+		return timeNanos_;
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#ticks_}
+	 */
+	public long getTicks() {
+		return ticks_;
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#gatesEvaluated_}
+	 */
+	public long getGatesEvaluated() {
+		return gatesEvaluated_;
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#gatesPerTickP50_}
+	 */
+	public long getGatesPerTickP50() {
+		return gatesPerTickP50_;
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#gatesPerTickP99_}
+	 */
+	public long getGatesPerTickP99() {
+		return gatesPerTickP99_;
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#netsPropagated_}
+	 */
+	public long getNetsPropagated() {
+		return netsPropagated_;
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#netsPerTickP50_}
+	 */
+	public long getNetsPerTickP50() {
+		return netsPerTickP50_;
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#netsPerTickP99_}
+	 */
+	public long getNetsPerTickP99() {
+		return netsPerTickP99_;
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#peakQueueDepth_}
+	 */
+	public long getPeakQueueDepth() {
+		return peakQueueDepth_;
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#tickLatencyP50_}
+	 */
+	public long getTickLatencyP50Nanos() {
+		return tickLatencyP50_;
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#tickLatencyP99_}
+	 */
+	public long getTickLatencyP99Nanos() {
+		return tickLatencyP99_;
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#tickLatencyMax_}
+	 */
+	public long getTickLatencyMaxNanos() {
+		return tickLatencyMax_;
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#ticksPerSecond_}
+	 */
+	public double getTicksPerSecond() {
+		return ticksPerSecond_;
+	}
+	
+	/**
+	 * @return {@link MetricsSnapshot#repaintRequests_}
+	 */
+	public long getRepaintRequests() {
+		return repaintRequests_;
+	}
+	
+	/**
+	 * @param earlier A snapshot of the same metrics taken before this one
+	 * @return The average number of ticks per second between the two snapshots
+	 */
+	public double ticksPerSecondSince(MetricsSnapshot earlier) {
+		long elapsed = timeNanos_ - earlier.timeNanos_;
+		return elapsed > 0 ? (ticks_ - earlier.ticks_) * 1e9 / elapsed : 0.0;
+	}
+	
+	/**
+	 * @return A multi-line summary of every value
+	 */
+	public String toString() {
+		return String.format("ticks: %d (%.0f ticks/s)%n"
+				+ "gates evaluated: %d (p50 %d, p99 %d per tick)%n"
+				+ "nets propagated: %d (p50 %d, p99 %d per tick)%n"
+				+ "peak queue depth: %d%n"
+				+ "tick latency: p50 %.3f us, p99 %.3f us, max %.3f us%n"
+				+ "repaint requests: %d",
+				ticks_, ticksPerSecond_,
+				gatesEvaluated_, gatesPerTickP50_, gatesPerTickP99_,
+				netsPropagated_, netsPerTickP50_, netsPerTickP99_,
+				peakQueueDepth_,
+				tickLatencyP50_ / 1e3, tickLatencyP99_ / 1e3, tickLatencyMax_ / 1e3,
+				repaintRequests_);
+	}
+}
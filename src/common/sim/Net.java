@@ -0,0 +1,94 @@
+package common.sim;
+
+import java.util.Arrays;
+
+/**
+ * The connections made by one output Pin. The Pin drives every Wire attached to it and a change to
+ * its state reaches all of their input Pins in one pass.
+ */
+public class Net {
+	/**
+	 * The output Pin driving the Net
+	 */
+	private final Pin driver_;
+	
+	/**
+	 * The Wires attached to {@link Net#driver_}, only the first {@link Net#size_} are used
+	 */
+	private Wire[] wires_;
+	
+	/**
+	 * The number of Wires in {@link Net#wires_}
+	 */
+	private int size_;
+	
+	/**
+	 * The index of this Net in the Simulation's slot table, -1 until it is queued
+	 */
+	int index_;
+	
+	/**
+	 * @param driver {@link Net#driver_}
+	 */
+	Net(Pin driver) {
+		driver_ = driver;
+		wires_ = new Wire[2];
+		size_ = 0;
+		index_ = -1;
+	}
+	
+	/**
+	 * @return {@link Net#driver_}
+	 */
+	public Pin getDriver() {
+		return driver_;
+	}
+	
+	/**
+	 * @return The number of Wires driven
+	 */
+	public int size() {
+		return size_;
+	}
+	
+	/**
+	 * @param i The index of the Wire, less than {@link Net#size()}
+	 * @return The Wire
+	 */
+	public Wire getWire(int i) {
+		return wires_[i];
+	}
+	
+	/**
+	 * @param wire The Wire to drive
+	 */
+	void add(Wire wire) {
+		if(size_ == wires_.length)
+			wires_ = Arrays.copyOf(wires_, size_ * 2);
+		wires_[size_++] = wire;
+	}
+	
+	/**
+	 * Stops driving a Wire, the order of the remaining Wires is not kept
+	 * @param wire The Wire to remove
+	 */
+	void remove(Wire wire) {
+		for(int i = 0; i < size_; ++i) {
+			if(wires_[i] == wire) {
+				wires_[i] = wires_[--size_];
+				wires_[size_] = null;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Copies the state of {@link Net#driver_} to the input Pin of every Wire
+	 */
+	void propagate() {
+		boolean state = driver_.getState();
+		Wire[] wires = wires_;
+		for(int i = 0; i < size_; ++i)
+			wires[i].getInputPin().setInputState(state);
+	}
+}
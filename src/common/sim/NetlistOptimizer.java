@@ -0,0 +1,591 @@
+package common.sim;
+
+import java.util.Arrays;
+
+/**
+ * Simplifies the nets of a {@link CompiledNetlist} before it first ticks, while
+ * {@link Simulation#isOptimizing()} is set. Only the netlist's view of the circuit changes, the Gates,
+ * Wires and Pins on the canvas are left as they are.
+ * <ul>
+ * <li>The Pins of fixed Gates and unconnected inputs are constants, and a gate whose output they
+ * decide is folded into a constant that is set once</li>
+ * <li>A gate that passes one input through unchanged, such as a Diode, the second of two NOTs or an
+ * AND with one input held high, is bypassed by moving its sinks to the net it copies</li>
+ * <li>A gate whose output reaches no LED, custom gate, subcircuit or observed Pin is skipped</li>
+ * </ul>
+ * Bypassed and skipped gates are not evaluated by ticks. Their Pins are brought up to date by
+ * {@link CompiledNetlist#refreshSkipped()}, which evaluates them in {@link NetlistOptimizer#lazy_}
+ * order, where every gate comes after the gates it reads. Only gates with a delay of 1 and one
+ * output are simplified, and unobserved gates in a loop are kept since they can hold state.
+ */
+class NetlistOptimizer {
+	/**
+	 * What the output of a simplifiable gate is once its constant inputs are taken into account,
+	 * stored in {@link NetlistOptimizer#kind_}
+	 */
+	private static final byte KEEP = 0;
+	private static final byte CONSTANT = 1;
+	private static final byte COPY = 2;
+	private static final byte INVERT = 3;
+	
+	/**
+	 * Known pin states, stored in {@link NetlistOptimizer#constant_}
+	 */
+	private static final byte UNKNOWN = 0;
+	private static final byte LOW = 1;
+	private static final byte HIGH = 2;
+	
+	/**
+	 * The compiled Gates, indexed by gate index
+	 */
+	private final Gate[] gates_;
+	
+	/**
+	 * The compiled Pins, indexed by pin index
+	 */
+	private final Pin[] pins_;
+	
+	/**
+	 * The index of each gate's first pin
+	 */
+	private final int[] pinBase_;
+	
+	/**
+	 * The gate each pin belongs to, or -1
+	 */
+	private final int[] pinGate_;
+	
+	/**
+	 * Whether each gate may be folded, bypassed or skipped
+	 */
+	private final boolean[] simple_;
+	
+	/**
+	 * The pin driving each pin before optimizing, or -1 if it is undriven
+	 */
+	private final int[] driverOf_;
+	
+	/**
+	 * The known state of each pin
+	 */
+	private final byte[] constant_;
+	
+	/**
+	 * What each simple gate's output is
+	 */
+	private final byte[] kind_;
+	
+	/**
+	 * The input each {@link NetlistOptimizer#COPY} or {@link NetlistOptimizer#INVERT} gate follows
+	 */
+	private final int[] source_;
+	
+	/**
+	 * The pin each pin always equals or is the inverse of through copying gates, or -1 until
+	 * resolved
+	 */
+	private final int[] aliasOf_;
+	
+	/**
+	 * Whether each pin is the inverse of {@link NetlistOptimizer#aliasOf_}
+	 */
+	private final boolean[] aliasInverted_;
+	
+	/**
+	 * Whether each pin is on the chain {@link NetlistOptimizer#resolve(int)} is walking
+	 */
+	private final boolean[] visiting_;
+	
+	/**
+	 * The nets after optimizing, laid out like {@link CompiledNetlist#pinNet_} and its neighbours
+	 */
+	final int[] pinNet_;
+	final int[] netDriver_;
+	final int[] sinkStart_;
+	final int[] sinks_;
+	
+	/**
+	 * Whether each gate is left out of ticks
+	 */
+	final boolean[] skipped_;
+	
+	/**
+	 * The pins of fixed Gates and the outputs of folded gates, along with their states
+	 */
+	final int[] constantPins_;
+	final boolean[] constantStates_;
+	
+	/**
+	 * The bypassed and skipped gates in the order they are brought up to date
+	 */
+	final int[] lazy_;
+	
+	/**
+	 * The truth table of each gate in {@link NetlistOptimizer#lazy_}
+	 */
+	final long[] lazyTables_;
+	
+	/**
+	 * The number of folded gates
+	 */
+	private int foldedCount_;
+	
+	/**
+	 * The number of bypassed gates
+	 */
+	private int bypassedCount_;
+	
+	/**
+	 * @param gates {@link NetlistOptimizer#gates_}
+	 * @param pins {@link NetlistOptimizer#pins_}
+	 * @param simple {@link NetlistOptimizer#simple_}, only gates with a Pin object for every pin,
+	 * a delay of 1 and a single output as their last pin
+	 * @param pinBase {@link NetlistOptimizer#pinBase_}
+	 * @param pinGate {@link NetlistOptimizer#pinGate_}
+	 * @param pinNet The net driven by each pin before optimizing
+	 * @param netDriver The driver of each net before optimizing
+	 * @param sinkStart The start of each net's sinks before optimizing
+	 * @param sinks The sinks of every net before optimizing
+	 */
+	NetlistOptimizer(Gate[] gates, Pin[] pins, boolean[] simple, int[] pinBase, int[] pinGate, int[] pinNet, int[] netDriver, int[] sinkStart, int[] sinks) {
+		int gateCount = gates.length;
+		int pinCount = pins.length;
+		gates_ = gates;
+		pins_ = pins;
+		simple_ = simple;
+		pinBase_ = pinBase;
+		pinGate_ = pinGate;
+		
+		driverOf_ = new int[pinCount];
+		Arrays.fill(driverOf_, -1);
+		for(int n = 0; n < netDriver.length; ++n) {
+			for(int i = sinkStart[n]; i < sinkStart[n + 1]; ++i)
+				driverOf_[sinks[i]] = netDriver[n];
+		}
+		
+		constant_ = new byte[pinCount];
+		kind_ = new byte[gateCount];
+		source_ = new int[gateCount];
+		foldConstants(pinNet, sinkStart, sinks);
+		
+		aliasOf_ = new int[pinCount];
+		aliasInverted_ = new boolean[pinCount];
+		visiting_ = new boolean[pinCount];
+		Arrays.fill(aliasOf_, -1);
+		boolean[] bypassed = new boolean[gateCount];
+		for(int g = 0; g < gateCount; ++g) {
+			if(!simple_[g] || (kind_[g] != COPY && kind_[g] != INVERT))
+				continue;
+			
+			int out = outputOf(g);
+			resolve(out);
+			if(aliasOf_[out] != out && !aliasInverted_[out] && !pins_[out].isObserved()) {
+				bypassed[g] = true;
+				++bypassedCount_;
+			}
+		}
+		
+		//Lay the nets out again with the sinks of every bypassed output moved to the pin it copies,
+		//keeping the order of the sinks within each net
+		int[] cursor = new int[pinCount];
+		for(int n = 0; n < netDriver.length; ++n)
+			cursor[driverAfter(netDriver[n], bypassed)] += sinkStart[n + 1] - sinkStart[n];
+		
+		int netCount = 0;
+		pinNet_ = new int[pinCount];
+		for(int p = 0; p < pinCount; ++p)
+			pinNet_[p] = cursor[p] > 0 ? netCount++ : -1;
+		
+		netDriver_ = new int[netCount];
+		sinkStart_ = new int[netCount + 1];
+		for(int p = 0; p < pinCount; ++p) {
+			int n = pinNet_[p];
+			if(n >= 0) {
+				netDriver_[n] = p;
+				sinkStart_[n + 1] = sinkStart_[n] + cursor[p];
+				cursor[p] = sinkStart_[n];
+			}
+		}
+		
+		sinks_ = new int[sinkStart_[netCount]];
+		for(int n = 0; n < netDriver.length; ++n) {
+			int driver = driverAfter(netDriver[n], bypassed);
+			for(int i = sinkStart[n]; i < sinkStart[n + 1]; ++i) {
+				sinks_[cursor[driver]++] = sinks[i];
+				driverOf_[sinks[i]] = driver;
+			}
+		}
+		
+		boolean[] live = findLive();
+		lazy_ = orderLazy(live);
+		lazyTables_ = new long[lazy_.length];
+		for(int i = 0; i < lazy_.length; ++i)
+			lazyTables_[i] = tableOf(gates_[lazy_[i]].getGateComponent());
+		
+		skipped_ = new boolean[gateCount];
+		int constantCount = 0;
+		for(int g = 0; g < gateCount; ++g) {
+			skipped_[g] = simple_[g] && (kind_[g] == CONSTANT || !live[g]);
+			if(isFixed(g))
+				constantCount += gates_[g].getPins().length;
+			else if(simple_[g] && kind_[g] == CONSTANT)
+				++constantCount;
+		}
+		
+		constantPins_ = new int[constantCount];
+		constantStates_ = new boolean[constantCount];
+		constantCount = 0;
+		for(int g = 0; g < gateCount; ++g) {
+			if(isFixed(g)) {
+				for(int p = pinBase_[g]; p < pinBase_[g] + gates_[g].getPins().length; ++p) {
+					constantPins_[constantCount] = p;
+					constantStates_[constantCount++] = constant_[p] == HIGH;
+				}
+			}
+			else if(simple_[g] && kind_[g] == CONSTANT) {
+				constantPins_[constantCount] = outputOf(g);
+				constantStates_[constantCount++] = constant_[outputOf(g)] == HIGH;
+			}
+		}
+	}
+	
+	/**
+	 * @param g A gate index
+	 * @return True if the gate is a fixed Gate that was not expanded from a subcircuit
+	 */
+	private boolean isFixed(int g) {
+		return gates_[g].isFixed() && gates_[g].compiledIndex_ == g && pins_[pinBase_[g]] == gates_[g].getPins()[0];
+	}
+	
+	/**
+	 * @param g A simple gate index
+	 * @return The pin index of its output
+	 */
+	private int outputOf(int g) {
+		return pinBase_[g] + gates_[g].getPins().length - 1;
+	}
+	
+	/**
+	 * @param component The GateComponent of a simple gate
+	 * @return Its output for every combination of inputs, in the layout of {@link LutComponent}
+	 */
+	private static long tableOf(GateComponent component) {
+		switch(component.getLogicOp()) {
+			case BUFFER:
+				return 0x2;
+			case NOT:
+				return 0x1;
+			case AND:
+				return 0x8;
+			case OR:
+				return 0xE;
+			case XOR:
+				return 0x6;
+			default:
+				return component.getTruthTable();
+		}
+	}
+	
+	/**
+	 * @param pin An input pin of a simple gate
+	 * @return Its state if it is known to never change, otherwise {@link NetlistOptimizer#UNKNOWN}
+	 */
+	private byte constantOf(int pin) {
+		int driver = driverOf_[pin];
+		if(driver < 0)
+			return pins_[pin].getState() ? HIGH : LOW;
+		return constant_[driver];
+	}
+	
+	/**
+	 * Marks the Pins of fixed Gates as constant and then classifies every simple gate, going back to
+	 * the gates a newly constant output drives until nothing more is found
+	 */
+	private void foldConstants(int[] pinNet, int[] sinkStart, int[] sinks) {
+		int gateCount = gates_.length;
+		int[] queue = new int[Math.max(1, gateCount)];
+		boolean[] queued = new boolean[gateCount];
+		int head = 0;
+		int count = 0;
+		for(int g = 0; g < gateCount; ++g) {
+			if(isFixed(g)) {
+				Pin[] pins = gates_[g].getPins();
+				for(int i = 0; i < pins.length; ++i)
+					constant_[pinBase_[g] + i] = pins[i].getState() ? HIGH : LOW;
+			}
+			else if(simple_[g]) {
+				queue[count++] = g;
+				queued[g] = true;
+			}
+		}
+		
+		while(count > 0) {
+			int g = queue[head];
+			head = (head + 1) % queue.length;
+			--count;
+			queued[g] = false;
+			if(kind_[g] == CONSTANT)
+				continue;
+			
+			classify(g);
+			if(kind_[g] != CONSTANT)
+				continue;
+			
+			++foldedCount_;
+			int n = pinNet[outputOf(g)];
+			if(n < 0)
+				continue;
+			for(int i = sinkStart[n]; i < sinkStart[n + 1]; ++i) {
+				int reader = pinGate_[sinks[i]];
+				if(reader >= 0 && simple_[reader] && !queued[reader]) {
+					queue[(head + count++) % queue.length] = reader;
+					queued[reader] = true;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Works out how a simple gate's output depends on the inputs that aren't constant
+	 * @param g The gate index
+	 */
+	private void classify(int g) {
+		int base = pinBase_[g];
+		int inputs = gates_[g].getPins().length - 1;
+		long table = tableOf(gates_[g].getGateComponent());
+		int known = 0;
+		int values = 0;
+		for(int i = 0; i < inputs; ++i) {
+			byte state = constantOf(base + i);
+			if(state != UNKNOWN) {
+				known |= 1 << i;
+				if(state == HIGH)
+					values |= 1 << i;
+			}
+		}
+		
+		int depends = 0;
+		for(int row = 0; row < 1 << inputs; ++row) {
+			if((row & known) != values)
+				continue;
+			long out = (table >>> row) & 1;
+			for(int i = 0; i < inputs; ++i) {
+				if((known & (1 << i)) == 0 && out != ((table >>> (row ^ (1 << i))) & 1))
+					depends |= 1 << i;
+			}
+		}
+		
+		boolean first = ((table >>> values) & 1) != 0;
+		if(depends == 0) {
+			kind_[g] = CONSTANT;
+			constant_[base + inputs] = first ? HIGH : LOW;
+		}
+		else if(Integer.bitCount(depends) == 1) {
+			kind_[g] = first ? INVERT : COPY;
+			source_[g] = Integer.numberOfTrailingZeros(depends);
+		}
+		else {
+			kind_[g] = KEEP;
+		}
+	}
+	
+	/**
+	 * Follows a pin back through copying and inverting gates to the first pin that isn't the output
+	 * of one, filling in {@link NetlistOptimizer#aliasOf_} for every pin on the way. A loop of such
+	 * gates leaves each of its pins as its own alias.
+	 * @param pin The pin index
+	 */
+	private void resolve(int pin) {
+		int[] path = new int[16];
+		int length = 0;
+		int p = pin;
+		boolean loop = false;
+		while(aliasOf_[p] < 0) {
+			if(visiting_[p]) {
+				loop = true;
+				break;
+			}
+			
+			int g = pinGate_[p];
+			int driver = g >= 0 && simple_[g] && (kind_[g] == COPY || kind_[g] == INVERT) && p == outputOf(g) ? driverOf_[pinBase_[g] + source_[g]] : -1;
+			if(driver < 0) {
+				aliasOf_[p] = p;
+				aliasInverted_[p] = false;
+				break;
+			}
+			
+			if(length == path.length)
+				path = Arrays.copyOf(path, length * 2);
+			path[length++] = p;
+			visiting_[p] = true;
+			p = driver;
+		}
+		
+		int target = loop ? -1 : aliasOf_[p];
+		boolean inverted = !loop && aliasInverted_[p];
+		for(int i = length - 1; i >= 0; --i) {
+			int q = path[i];
+			visiting_[q] = false;
+			if(loop) {
+				aliasOf_[q] = q;
+				aliasInverted_[q] = false;
+			}
+			else {
+				inverted ^= kind_[pinGate_[q]] == INVERT;
+				aliasOf_[q] = target;
+				aliasInverted_[q] = inverted;
+			}
+		}
+	}
+	
+	/**
+	 * @param driver The driver of a net before optimizing
+	 * @param bypassed Whether each gate is bypassed
+	 * @return The pin driving the net's sinks after optimizing
+	 */
+	private int driverAfter(int driver, boolean[] bypassed) {
+		int g = pinGate_[driver];
+		return g >= 0 && bypassed[g] && driver == outputOf(g) ? aliasOf_[driver] : driver;
+	}
+	
+	/**
+	 * Finds the simple gates that have to be evaluated every tick, which are the ones whose output is
+	 * observed or reaches a gate that isn't simple through gates that aren't folded
+	 * @return Whether each gate is live
+	 */
+	private boolean[] findLive() {
+		boolean[] live = new boolean[gates_.length];
+		int[] stack = new int[Math.max(1, gates_.length)];
+		int top = 0;
+		for(int n = 0; n < netDriver_.length; ++n) {
+			for(int i = sinkStart_[n]; i < sinkStart_[n + 1]; ++i) {
+				int sink = sinks_[i];
+				int reader = pinGate_[sink];
+				if(reader < 0 || !simple_[reader] || pins_[sink].isObserved()) {
+					top = markLive(pinGate_[netDriver_[n]], live, stack, top);
+					break;
+				}
+			}
+		}
+		for(int g = 0; g < gates_.length; ++g) {
+			if(simple_[g] && pins_[outputOf(g)].isObserved())
+				top = markLive(g, live, stack, top);
+		}
+		spreadLive(live, stack, top);
+		return live;
+	}
+	
+	/**
+	 * @param g A gate index, or -1
+	 * @param live Whether each gate is live
+	 * @param stack The gates whose inputs are still to be visited
+	 * @param top The size of the stack
+	 * @return The new size of the stack
+	 */
+	private int markLive(int g, boolean[] live, int[] stack, int top) {
+		if(g >= 0 && simple_[g] && kind_[g] != CONSTANT && !live[g]) {
+			live[g] = true;
+			stack[top++] = g;
+		}
+		return top;
+	}
+	
+	/**
+	 * Marks the gates driving every live gate as live
+	 * @param live Whether each gate is live
+	 * @param stack The live gates whose inputs are still to be visited
+	 * @param top The size of the stack
+	 */
+	private void spreadLive(boolean[] live, int[] stack, int top) {
+		while(top > 0) {
+			int g = stack[--top];
+			int end = outputOf(g);
+			for(int p = pinBase_[g]; p < end; ++p) {
+				if(driverOf_[p] >= 0)
+					top = markLive(pinGate_[driverOf_[p]], live, stack, top);
+			}
+		}
+	}
+	
+	/**
+	 * Orders the simple gates that are neither live nor folded so each comes after the ones it reads,
+	 * making the gates of any loop live until none are left
+	 * @param live Whether each gate is live, updated with the gates of loops
+	 * @return The lazy gates in order
+	 */
+	private int[] orderLazy(boolean[] live) {
+		int gateCount = gates_.length;
+		int[] pending = new int[gateCount];
+		int[] stack = new int[Math.max(1, gateCount)];
+		while(true) {
+			int lazyCount = 0;
+			for(int g = 0; g < gateCount; ++g) {
+				pending[g] = 0;
+				if(!isLazy(g, live))
+					continue;
+				
+				++lazyCount;
+				for(int p = pinBase_[g]; p < outputOf(g); ++p) {
+					if(driverOf_[p] >= 0 && isLazy(pinGate_[driverOf_[p]], live) && driverOf_[p] == outputOf(pinGate_[driverOf_[p]]))
+						++pending[g];
+				}
+			}
+			
+			int[] order = new int[lazyCount];
+			int length = 0;
+			for(int g = 0; g < gateCount; ++g) {
+				if(isLazy(g, live) && pending[g] == 0)
+					order[length++] = g;
+			}
+			for(int i = 0; i < length; ++i) {
+				int n = pinNet_[outputOf(order[i])];
+				if(n < 0)
+					continue;
+				for(int j = sinkStart_[n]; j < sinkStart_[n + 1]; ++j) {
+					int reader = pinGate_[sinks_[j]];
+					if(reader >= 0 && isLazy(reader, live) && --pending[reader] == 0)
+						order[length++] = reader;
+				}
+			}
+			if(length == lazyCount)
+				return order;
+			
+			int top = 0;
+			for(int g = 0; g < gateCount; ++g) {
+				if(isLazy(g, live) && pending[g] > 0)
+					top = markLive(g, live, stack, top);
+			}
+			spreadLive(live, stack, top);
+		}
+	}
+	
+	/**
+	 * @param g A gate index, or -1
+	 * @param live Whether each gate is live
+	 * @return True if the gate is simple, not folded and not live
+	 */
+	private boolean isLazy(int g, boolean[] live) {
+		return g >= 0 && simple_[g] && kind_[g] != CONSTANT && !live[g];
+	}
+	
+	/**
+	 * @return The number of gates folded into constants
+	 */
+	int getFoldedCount() {
+		return foldedCount_;
+	}
+	
+	/**
+	 * @return The number of gates bypassed by moving their sinks
+	 */
+	int getBypassedCount() {
+		return bypassedCount_;
+	}
+	
+	/**
+	 * @return The number of gates left out of ticks, folded ones included
+	 */
+	int getSkippedCount() {
+		return foldedCount_ + lazy_.length;
+	}
+}
@@ -1,122 +1,245 @@
-package common.sim;
-
-import java.awt.Point;
-
-/**
- * A sim instance of a PinComponent
- */
-public class Pin {
-	/**
-	 * The PinComponent from which it will get its basic information
-	 */
-	private PinComponent component_;
-	
-	/**
-	 * The Gate this Pin belongs to
-	 */
-	private Gate gate_;
-	
-	/**
-	 * The Wire this pin is attached to
-	 */
-	private Wire wire_;
-	
-	/**
-	 * The current state of this Pin
-	 */
-	private boolean state_;
-	
-	/**
-	 * The Pin's position in the sim
-	 */
-	private Point point_;
-	
-	/**
-	 * @param component {@link Pin#component_}
-	 * @param gate {@link Pin#gate_}
-	 */
-	public Pin(PinComponent component, Gate gate) {
-		component_ = component;
-		gate_ = gate;
-		wire_ = null;
-		state_ = false;
-		
-		Point offset = component.getOffset();
-		point_ = new Point(gate.getX()+offset.x, gate.getY()+offset.y);
-	}
-	
-	/**
-	 * @return The PinType of this Pin's {@link Pin#component_}
-	 */
-	public PinType getType() {
-		return component_.getType();
-	}
-	
-	/**
-	 * @return {@link Pin#state_}
-	 */
-	public boolean getState() {
-		return state_;
-	}
-	
-	/**
-	 * Sets the state of this Pin if it differs and updates any attached Wire
-	 * @param state The state to change the Pin's {@link Pin#state_} to
-	 */
-	public void setState(boolean state) {
-		if(state_ != state) {
-			state_ = state;
-			if(wire_ != null)
-				wire_.update();
-		}
-	}
-	
-	/**
-	 * Sets the state of a Pin of type {@link PinType#INPUT}
-	 * @param state The state to change the Pin's {@link Pin#state_} to
-	 */
-	public void setInputState(boolean state) {
-		if(state_ != state) {
-			state_ = state;
-			
-			if(component_.doesCauseUpdate())
-				gate_.update();
-		}
-	}
-	
-	/**
-	 * @return {@link Pin#gate_}
-	 */
-	public Gate getGate() {
-		return gate_;
-	}
-
-	/**
-	 * @return {@link Pin#wire_}
-	 */
-	public Wire getWire() {
-		return wire_;
-	}
-	
-	/**
-	 * Sets the Pin's {@link Pin#wire_}
-	 * @param wire
-	 */
-	public void setWire(Wire wire) {
-		wire_ = wire;
-	}
-	
-	/**
-	 * @return {@link Pin#point_}
-	 */
-	public Point getPoint() {
-		return point_;
-	}
-	
-	/**
-	 * @return {@link Pin#component_}
-	 */
-	public PinComponent getPinComponent() {
-		return component_;
-	}
-}
+package common.sim;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A sim instance of a PinComponent
+ */
+public class Pin {
+	/**
+	 * Source of {@link Pin#hashKey_} values
+	 */
+	private static final AtomicLong HASH_SEED = new AtomicLong();
+	
+	/**
+	 * The PinComponent from which it will get its basic information
+	 */
+	private PinComponent component_;
+	
+	/**
+	 * The Gate this Pin belongs to
+	 */
+	private Gate gate_;
+	
+	/**
+	 * The Wire driving this Pin if it is an input
+	 */
+	private Wire wire_;
+	
+	/**
+	 * The Wires this Pin drives if it is an output, null until the first one is connected
+	 */
+	private Net net_;
+	
+	/**
+	 * The current state of this Pin
+	 */
+	private boolean state_;
+	
+	/**
+	 * The offset of this Pin from its Gate's top left corner, copied out of {@link Pin#component_}
+	 */
+	private final int offsetX_;
+	private final int offsetY_;
+	
+	/**
+	 * The index of this Pin in the active {@link CompiledNetlist}
+	 */
+	int compiledIndex_;
+	
+	/**
+	 * A random key that is XORed into a state hash whenever this Pin changes, used to spot repeated
+	 * circuit states by {@link Simulation#settle(int)}
+	 */
+	final long hashKey_;
+	
+	/**
+	 * The bit holding this Pin's state in published {@link StateSnapshot}s, or -1 if it isn't in one
+	 */
+	int snapshotIndex_;
+	
+	/**
+	 * The signal this Pin is recorded as by a {@link WaveformRecorder}, or -1 if it isn't traced
+	 */
+	int traceId_;
+	
+	/**
+	 * Whether this Pin's state is watched, which keeps the compiled engine's optimizer from
+	 * bypassing or skipping the gate it belongs to
+	 */
+	private boolean observed_;
+	
+	/**
+	 * @param component {@link Pin#component_}
+	 * @param gate {@link Pin#gate_}
+	 */
+	public Pin(PinComponent component, Gate gate) {
+		component_ = component;
+		gate_ = gate;
+		wire_ = null;
+		net_ = null;
+		state_ = false;
+		compiledIndex_ = -1;
+		snapshotIndex_ = -1;
+		traceId_ = -1;
+		observed_ = false;
+		
+		//SplitMix64 finalizer over a Weyl sequence so keys are well spread even for consecutive Pins
+		long key = HASH_SEED.addAndGet(0x9E3779B97F4A7C15L);
+		key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+		key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+		hashKey_ = key ^ (key >>> 31);
+		
+		offsetX_ = component.getOffset().x;
+		offsetY_ = component.getOffset().y;
+	}
+	
+	/**
+	 * @return The PinType of this Pin's {@link Pin#component_}
+	 */
+	public PinType getType() {
+		return component_.getType();
+	}
+	
+	/**
+	 * @return {@link Pin#state_}
+	 */
+	public boolean getState() {
+		Simulation simulation = gate_.getSimulation();
+		if(simulation.pinsStale_)
+			simulation.syncPin(this);
+		return state_;
+	}
+	
+	/**
+	 * Sets the state of this Pin if it differs and queues the Net it drives
+	 * @param state The state to change the Pin's {@link Pin#state_} to
+	 */
+	public void setState(boolean state) {
+		if(getState() != state) {
+			state_ = state;
+			gate_.getSimulation().pinSet(this, false);
+			if(net_ != null && net_.size() > 0)
+				gate_.getSimulation().queueNet(net_);
+		}
+	}
+	
+	/**
+	 * Sets the state of a Pin of type {@link PinType#INPUT}
+	 * @param state The state to change the Pin's {@link Pin#state_} to
+	 */
+	public void setInputState(boolean state) {
+		if(getState() != state) {
+			state_ = state;
+			gate_.getSimulation().pinSet(this, true);
+			
+			if(component_.doesCauseUpdate())
+				gate_.update();
+		}
+	}
+	
+	/**
+	 * Sets {@link Pin#state_} without updating any attached Wire or Gate, used when a
+	 * {@link TickHistory} puts back the states of a keyframe
+	 * @param state The state to change the Pin's {@link Pin#state_} to
+	 */
+	void mirrorState(boolean state) {
+		state_ = state;
+		gate_.getSimulation().pinChanged(this);
+	}
+	
+	/**
+	 * Sets {@link Pin#state_} without reporting it, used by the compiled engine to bring a Pin up to
+	 * date with a change it has already accounted for
+	 * @param state The state to change the Pin's {@link Pin#state_} to
+	 */
+	void refreshState(boolean state) {
+		state_ = state;
+	}
+	
+	/**
+	 * @return True if the Pin was marked as observed or is traced by a {@link WaveformRecorder}
+	 */
+	public boolean isObserved() {
+		return observed_ || traceId_ >= 0;
+	}
+	
+	/**
+	 * Marks the Pin as watched so the optimizer keeps its state up to date every tick
+	 * @param observed {@link Pin#observed_}
+	 */
+	public void setObserved(boolean observed) {
+		if(observed_ != observed) {
+			observed_ = observed;
+			gate_.getSimulation().invalidate();
+		}
+	}
+	
+	/**
+	 * @return {@link Pin#gate_}
+	 */
+	public Gate getGate() {
+		return gate_;
+	}
+
+	/**
+	 * @return {@link Pin#wire_}, always null for an output Pin
+	 */
+	public Wire getWire() {
+		return wire_;
+	}
+	
+	/**
+	 * Sets the Pin's {@link Pin#wire_}
+	 * @param wire
+	 */
+	public void setWire(Wire wire) {
+		wire_ = wire;
+	}
+	
+	/**
+	 * @return {@link Pin#net_}, null for an input Pin or an output Pin that has never been connected
+	 */
+	public Net getNet() {
+		return net_;
+	}
+	
+	/**
+	 * Adds a Wire to the Wires this output Pin drives
+	 * @param wire The Wire to drive
+	 */
+	void addWire(Wire wire) {
+		if(net_ == null)
+			net_ = new Net(this);
+		net_.add(wire);
+	}
+	
+	/**
+	 * @return The x position of this Pin in the sim
+	 */
+	public int getX() {
+		return gate_.getX() + offsetX_;
+	}
+	
+	/**
+	 * @return The y position of this Pin in the sim
+	 */
+	public int getY() {
+		return gate_.getY() + offsetY_;
+	}
+	
+	/**
+	 * @return The position of this Pin in the sim packed by {@link GridKey}, worked out from its Gate's
+	 * position so it follows the Gate when it moves
+	 */
+	public long getPosition() {
+		return GridKey.pack(getX(), getY());
+	}
+	
+	/**
+	 * @return {@link Pin#component_}
+	 */
+	public PinComponent getPinComponent() {
+		return component_;
+	}
+}
@@ -1,10 +1,10 @@
-package common.sim;
-
-/**
- * Enumeration of pin types
- */
-public enum PinType
-{
-	INPUT,
-	OUTPUT
-}
+package common.sim;
+
+/**
+ * Enumeration of pin types
+ */
+public enum PinType
+{
+	INPUT,
+	OUTPUT
+}
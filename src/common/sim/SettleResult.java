@@ -0,0 +1,71 @@
+package common.sim;
+
+/**
+ * The outcome of {@link Simulation#settle(int)}
+ */
+public class SettleResult {
+	/**
+	 * The number of ticks run
+	 */
+	private final int ticks_;
+	
+	/**
+	 * The number of ticks after which the circuit repeats a state, or 0 if no repeat was seen
+	 */
+	private final int period_;
+	
+	/**
+	 * Whether the circuit ended with nothing queued
+	 */
+	private final boolean stable_;
+	
+	/**
+	 * @param ticks {@link SettleResult#ticks_}
+	 * @param period {@link SettleResult#period_}
+	 * @param stable {@link SettleResult#stable_}
+	 */
+	SettleResult(int ticks, int period, boolean stable) {
+		ticks_ = ticks;
+		period_ = period;
+		stable_ = stable;
+	}
+	
+	/**
+	 * @return {@link SettleResult#ticks_}, the settle depth when {@link SettleResult#isStable()}
+	 */
+	public int getTicks() {
+		return ticks_;
+	}
+	
+	/**
+	 * @return {@link SettleResult#period_}
+	 */
+	public int getPeriod() {
+		return period_;
+	}
+	
+	/**
+	 * @return {@link SettleResult#stable_}
+	 */
+	public boolean isStable() {
+		return stable_;
+	}
+	
+	/**
+	 * @return True if the circuit was found to cycle through states forever
+	 */
+	public boolean isOscillating() {
+		return period_ > 0;
+	}
+	
+	/**
+	 * @return A short description such as "stable after 12 ticks"
+	 */
+	public String toString() {
+		if(stable_)
+			return "stable after " + ticks_ + " ticks";
+		if(period_ > 0)
+			return "oscillating with period " + period_ + " after " + ticks_ + " ticks";
+		return "not stable after " + ticks_ + " ticks";
+	}
+}
@@ -1,228 +1,1451 @@
-package common.sim;
-
-import java.awt.Point;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Stack;
-import java.util.Vector;
-
-import common.sim.events.SimulationListener;
-
-/**
- * Main container for Gates and Wires and handles the sim logic
- */
-public class Simulation {
-	/**
-	 * The current tick of the sim
-	 */
-	private static int currentTick_ = 0;
-	
-	/**
-	 * The Wires/Gates added by the user that can be undone
-	 */
-	private static Stack<Object> undoStack_ = new Stack<>();
-	
-	/**
-	 * A Vector that holds all Gates
-	 */
-	private static Vector<Gate> gates_ = new Vector<>();
-	
-	/**
-	 * A Vector that holds all Wires
-	 */
-	private static Vector<Wire> wires_ = new Vector<>();
-	
-	/**
-	 * A Queue that stores all Gates needed to be checked for the next tick
-	 */
-	private static Queue<Gate> gateQueue_ = new LinkedList<>();
-	
-	/**
-	 * A Queue that stores all Wires needed to be checked for the next tick
-	 */
-	private static Queue<Wire> wireQueue_ = new LinkedList<>();
-	
-	/**
-	 * Provides event-based callbacks when certain things occur
-	 */
-	private static SimulationListener listener_;
-	
-	/**
-	 * Removes all Gates and Wires from the sim and queues
-	 */
-	public static void clear() {
-		gates_.clear();
-		wires_.clear();
-		gateQueue_.clear();
-		wireQueue_.clear();
-	}
-	
-	/**
-	 * @return {@link Simulation#currentTick_}
-	 */
-	public static int getCurrentTick() {
-		return currentTick_;
-	}
-	
-	/**
-	 * Adds a Gate to the sim and the undo stack
-	 * @param gate The Gate to be added
-	 */
-	public static void addGate(Gate gate) {
-		gates_.add(gate);
-		undoStack_.push(gate);
-	}
-	
-	/**
-	 * Adds a Wire to the sim and the undo stack
-	 * @param wire The Wire to be added
-	 */
-	public static void addWire(Wire wire) {
-		wires_.add(wire);
-		undoStack_.push(wire);
-	}
-	
-	/**
-	 * Undoes the most recently added Wire/Gate
-	 */
-	public static void undo() {
-		if(!undoStack_.isEmpty()) {
-			Object obj = undoStack_.pop();
-			if(obj instanceof Gate)
-				((Gate)obj).remove();
-			else
-				((Wire)obj).remove();
-		}
-	}
-	
-	/**
-	 * Removes a Gate from the sim
-	 * @param gate The Gate to be removed
-	 */
-	public static void removeGate(Gate gate) {
-		gates_.remove(gate);
-	}
-	
-	/**
-	 * Removes a Wire from the sim
-	 * @param wire The Wire to be removed
-	 */
-	public static void removeWire(Wire wire) {
-		wires_.remove(wire);
-	}
-	
-	/**
-	 * @return {@link Simulation#gates_}
-	 */
-	public static Vector<Gate> getGates() {
-		return gates_;
-	}
-	
-	/**
-	 * @return {@link Simulation#wires_}
-	 */
-	public static Vector<Wire> getWires() {
-		return wires_;
-	}
-	
-	/**
-	 * Queues a Wire for the next tick
-	 * @param wire The Wire to queue
-	 */
-	public static void queueWire(Wire wire) {
-		wireQueue_.offer(wire);
-	}
-	
-	/**
-	 * Queues a Gate for the next tick
-	 * @param gate The Gate to queue
-	 */
-	public static void queueGate(Gate gate) {
-		gateQueue_.offer(gate);
-	}
-	
-	/**
-	 * Attempts to locate a Gate at Point p
-	 * @param p The Point to search for a Gate at
-	 * @return A Gate that exists at Point p, null otherwise
-	 */
-	public static Gate findGateAt(Point p) {
-		int x = p.x;
-		int y = p.y;
-		
-		int gx;
-		int gy;
-		int gxx;
-		int gyy;
-		for(Gate gate : gates_) {
-			gx = gate.getX();
-			gy = gate.getY();
-			gxx = gx+gate.getGateComponent().getWidth();
-			gyy = gy+gate.getGateComponent().getHeight();
-			
-			if(x >= gx && x <= gxx && y >= gy && y <= gyy)
-				return gate;
-		}
-		
-		return null;
-	}
-	
-	/**
-	 * Tries to find a Pin at Point p
-	 * @param p The Point to search for a Pin at
-	 * @return A Pin that exists at Point p, null otherwise
-	 */
-	public static Pin findPinAt(Point p) {
-		Pin fpin = null;
-		Gate gate = Simulation.findGateAt(p);
-		if(gate != null) {
-			for(Pin pin : gate.getPins()) {
-				if(pin.getPoint().equals(p)) {
-					fpin = pin;
-					break;
-				}
-			}
-		}
-		
-		return fpin;
-	}
-	
-	/**
-	 * Tries to find a Wire at Point p
-	 * @param p The Point to search for a Wire at
-	 * @return A Wire that exists at Point p, null otherwise
-	 */
-	public static Wire findWireAt(Point p) {
-		for(Wire wire : wires_) {
-			if(wire.getStartPoint().equals(p) || wire.getEndPoint().equals(p))
-				return wire;
-		}
-		return null;
-	}
-	
-	/**
-	 * Sets the SimulationListener
-	 * @param listener The listener to set as the active listener
-	 */
-	public static void setSimulationListener(SimulationListener listener) {
-		listener_ = listener;
-	}
-	
-	/**
-	 * Ticks the sim, causing Gates and Wires to update and render the canvas
-	 */
-	public static void tick() {
-		for(Wire wire : wireQueue_)
-			wire.getInputPin().setInputState(wire.getOutputPin().getState());
-		wireQueue_.clear();
-		
-		for(Gate gate : gateQueue_)
-			gate.getGateComponent().performLogic(gate.getPins());
-		gateQueue_.clear();
-		
-		if(listener_ != null)
-			listener_.onRequestRepaint();
-		
-		++currentTick_;
-	}
-}
+package common.sim;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+import common.sim.events.SimulationListener;
+
+/**
+ * Main container for Gates and Wires and handles the sim logic. Each instance is an independent
+ * circuit, Gates and Wires are bound to the Simulation they were created for.
+ */
+public class Simulation {
+	/**
+	 * The current tick of the sim
+	 */
+	private int currentTick_;
+	
+	/**
+	 * The number of bytes of edits kept for undo unless changed with
+	 * {@link Simulation#setUndoBudget(long)}
+	 */
+	public static final long DEFAULT_UNDO_BUDGET = 4L << 20;
+	
+	/**
+	 * The edits that can be undone and redone
+	 */
+	private final EditJournal journal_;
+	
+	/**
+	 * A Vector that holds all Gates
+	 */
+	private final Vector<Gate> gates_;
+	
+	/**
+	 * A Vector that holds all Wires
+	 */
+	private final Vector<Wire> wires_;
+	
+	/**
+	 * Buckets {@link Simulation#gates_} by the grid cells they cover for hit-testing
+	 */
+	private final SpatialIndex<Gate> gateIndex_;
+	
+	/**
+	 * Buckets {@link Simulation#wires_} by the grid cells of their end points for hit-testing
+	 */
+	private final SpatialIndex<Wire> wireIndex_;
+	
+	/**
+	 * Whether {@link Simulation#gateIndex_} and {@link Simulation#wireIndex_} are out of date after a
+	 * bulk add and must be rebuilt before the next hit-test
+	 */
+	private boolean indexStale_;
+	
+	/**
+	 * Assigns every queued or added Gate the index it is referred to by in {@link Simulation#gateQueue_}
+	 */
+	private final SlotTable<Gate> gateSlots_;
+	
+	/**
+	 * Assigns every queued Net the index it is referred to by in {@link Simulation#netQueue_}
+	 */
+	private final SlotTable<Net> netSlots_;
+	
+	/**
+	 * A queue of Gate indices needed to be checked for the next tick, each Gate is held at most once
+	 */
+	private final WorkQueue gateQueue_;
+	
+	/**
+	 * A queue of Net indices needed to be propagated next tick, each Net is held at most once
+	 */
+	private final WorkQueue netQueue_;
+	
+	/**
+	 * Gate indices waiting out a propagation delay longer than one tick
+	 */
+	private final TimingWheel gateWheel_;
+	
+	/**
+	 * Provides event-based callbacks when certain things occur
+	 */
+	private SimulationListener listener_;
+	
+	/**
+	 * Gate indices with a Pin that changed state since the last tick, only tracked while there is a
+	 * {@link Simulation#listener_} to report them to
+	 */
+	private final WorkQueue changedGates_;
+	
+	/**
+	 * Records the transitions of traced Pins, or null when tracing is off
+	 */
+	private volatile WaveformRecorder recorder_;
+	
+	/**
+	 * Counts the work done each tick, or null when metrics are off
+	 */
+	private volatile SimulationMetrics metrics_;
+	
+	/**
+	 * Whether {@link Simulation#settle(int)} is running and Pin changes should be hashed
+	 */
+	private boolean settling_;
+	
+	/**
+	 * XOR of the {@link Pin#hashKey_} of every Pin changed since settling began, identifying the
+	 * current Pin states
+	 */
+	private long stateHash_;
+	
+	/**
+	 * XOR of the {@link Pin#hashKey_} of every Pin changed during the current tick, which decides what
+	 * gets queued for the next one
+	 */
+	private long changedHash_;
+	
+	/**
+	 * The states seen during the current {@link Simulation#settle(int)}
+	 */
+	private final StateHistory stateHistory_;
+	
+	/**
+	 * Whether ticks run over a {@link CompiledNetlist} instead of the Gate/Wire objects
+	 */
+	private boolean compiled_;
+	
+	/**
+	 * The compiled form of {@link Simulation#gates_} and {@link Simulation#wires_} while
+	 * {@link Simulation#compiled_} is set. Edits are patched into it where possible, otherwise it is
+	 * rebuilt on the next tick.
+	 */
+	private CompiledNetlist netlist_;
+	
+	/**
+	 * Whether the compiled engine spreads large phases of a tick across {@link Simulation#forkJoinPool_}
+	 */
+	private boolean parallel_;
+	
+	/**
+	 * The number of queued Nets or Gates below which a phase of a parallel tick stays single-threaded
+	 */
+	private int parallelThreshold_;
+	
+	/**
+	 * Whether the compiled engine expands {@link SubcircuitComponent} instances into primitive gates
+	 * instead of evaluating them through their shared kernel
+	 */
+	private boolean flattenSubcircuits_;
+	
+	/**
+	 * Whether the compiled engine collapses small clusters of gates into truth tables
+	 */
+	private boolean collapseClusters_;
+	
+	/**
+	 * Whether the compiled engine folds constants, bypasses buffers and skips gates nothing observes
+	 */
+	private boolean optimize_;
+	
+	/**
+	 * The pool parallel ticks are evaluated on
+	 */
+	private ForkJoinPool forkJoinPool_;
+	
+	/**
+	 * Edits and input posted from other threads, run by the ticking thread between ticks
+	 */
+	private final CommandQueue commands_;
+	
+	/**
+	 * Called after a command is posted so a waiting {@link TickScheduler} runs it, or null
+	 */
+	private volatile Runnable commandWakeup_;
+	
+	/**
+	 * Hands the state at the end of each tick to the renderer
+	 */
+	private final SnapshotPublisher snapshots_;
+	
+	/**
+	 * Whether snapshots are published, set on the ticking thread once one has been asked for
+	 */
+	private boolean publishing_;
+	
+	/**
+	 * Set by the reader the first time it asks for a snapshot
+	 */
+	private volatile boolean snapshotRequested_;
+	
+	/**
+	 * Records past ticks so the sim can be rewound, or null if it isn't recorded
+	 */
+	private TickHistory history_;
+	
+	/**
+	 * Whether a tick is running, so Pins set now are the sim's own work rather than inputs
+	 */
+	private boolean ticking_;
+	
+	/**
+	 * Whether the compiled netlist may hold pin states its Pin objects haven't been given yet, checked
+	 * by Pins when they are read
+	 */
+	boolean pinsStale_;
+	
+	/**
+	 * The insides of flattened subcircuit instances restored by a rewind, put into the compiled
+	 * netlist once it is built at the next tick
+	 */
+	private TickHistory.FlatBody[] flatRestores_;
+	
+	public Simulation() {
+		currentTick_ = 0;
+		journal_ = new EditJournal(this, DEFAULT_UNDO_BUDGET);
+		gates_ = new Vector<>();
+		wires_ = new Vector<>();
+		gateIndex_ = new SpatialIndex<>();
+		wireIndex_ = new SpatialIndex<>();
+		indexStale_ = false;
+		gateSlots_ = new SlotTable<>();
+		netSlots_ = new SlotTable<>();
+		gateQueue_ = new WorkQueue();
+		netQueue_ = new WorkQueue();
+		gateWheel_ = new TimingWheel(0);
+		changedGates_ = new WorkQueue();
+		recorder_ = null;
+		metrics_ = null;
+		settling_ = false;
+		stateHistory_ = new StateHistory();
+		compiled_ = false;
+		netlist_ = null;
+		parallel_ = false;
+		parallelThreshold_ = 8192;
+		flattenSubcircuits_ = false;
+		collapseClusters_ = false;
+		optimize_ = false;
+		forkJoinPool_ = ForkJoinPool.commonPool();
+		commands_ = new CommandQueue();
+		commandWakeup_ = null;
+		snapshots_ = new SnapshotPublisher();
+		publishing_ = false;
+		snapshotRequested_ = false;
+		history_ = null;
+		ticking_ = false;
+		pinsStale_ = false;
+		flatRestores_ = null;
+	}
+	
+	/**
+	 * Removes all Gates and Wires from the sim and queues and forgets the edits made so far
+	 */
+	public void clear() {
+		for(Gate gate : gates_) {
+			gate.index_ = -1;
+			for(Pin pin : gate.getPins()) {
+				pin.snapshotIndex_ = -1;
+				if(pin.getNet() != null)
+					pin.getNet().index_ = -1;
+			}
+		}
+		
+		gates_.clear();
+		wires_.clear();
+		gateIndex_.clear();
+		wireIndex_.clear();
+		indexStale_ = false;
+		gateSlots_.clear();
+		netSlots_.clear();
+		gateQueue_.clear();
+		netQueue_.clear();
+		gateWheel_.clear(currentTick_);
+		changedGates_.clear();
+		netlist_ = null;
+		pinsStale_ = false;
+		flatRestores_ = null;
+		journal_.clear();
+		snapshots_.invalidateLayout();
+		if(history_ != null)
+			history_.invalidate();
+	}
+	
+	/**
+	 * @return {@link Simulation#currentTick_}
+	 */
+	public int getCurrentTick() {
+		return currentTick_;
+	}
+	
+	/**
+	 * @return {@link Simulation#compiled_}
+	 */
+	public boolean isCompiled() {
+		return compiled_;
+	}
+	
+	/**
+	 * Switches between the compiled and object-based engines, any pending work carries over
+	 * @param compiled {@link Simulation#compiled_}
+	 */
+	public void setCompiled(boolean compiled) {
+		compiled_ = compiled;
+		if(!compiled)
+			invalidate();
+	}
+	
+	/**
+	 * @return The active {@link CompiledNetlist}, or null if it has not been built since the last edit
+	 */
+	public CompiledNetlist getCompiledNetlist() {
+		return netlist_;
+	}
+	
+	/**
+	 * @return {@link Simulation#parallel_}
+	 */
+	public boolean isParallel() {
+		return parallel_;
+	}
+	
+	/**
+	 * Enables parallel ticks, which only take effect while the compiled engine is enabled. Results are
+	 * identical to single-threaded ticks.
+	 * @param parallel {@link Simulation#parallel_}
+	 */
+	public void setParallel(boolean parallel) {
+		parallel_ = parallel;
+	}
+	
+	/**
+	 * @return {@link Simulation#parallelThreshold_}
+	 */
+	public int getParallelThreshold() {
+		return parallelThreshold_;
+	}
+	
+	/**
+	 * @param threshold {@link Simulation#parallelThreshold_}
+	 */
+	public void setParallelThreshold(int threshold) {
+		parallelThreshold_ = threshold;
+	}
+	
+	/**
+	 * @return {@link Simulation#flattenSubcircuits_}
+	 */
+	public boolean isFlatteningSubcircuits() {
+		return flattenSubcircuits_;
+	}
+	
+	/**
+	 * Chooses how the compiled engine runs subcircuit instances. Flattened instances take a tick per
+	 * gate inside them like any other gates, while kernel instances settle their whole body in the
+	 * tick an input changes.
+	 * @param flatten {@link Simulation#flattenSubcircuits_}
+	 */
+	public void setFlattenSubcircuits(boolean flatten) {
+		flattenSubcircuits_ = flatten;
+		invalidate();
+	}
+	
+	/**
+	 * @return {@link Simulation#collapseClusters_}
+	 */
+	public boolean isCollapsingClusters() {
+		return collapseClusters_;
+	}
+	
+	/**
+	 * Chooses whether the compiled engine collapses clusters of gates with at most six inputs between
+	 * them into a single truth-table lookup. A collapsed cluster takes one tick from its inputs to its
+	 * output instead of one per gate, so circuits that rely on the delay through a chain of gates,
+	 * such as ring oscillators and pulse generators, run differently. The Pins inside a cluster
+	 * still show the values they settle to.
+	 * @param collapse {@link Simulation#collapseClusters_}
+	 */
+	public void setCollapseClusters(boolean collapse) {
+		collapseClusters_ = collapse;
+		invalidate();
+	}
+	
+	/**
+	 * @return {@link Simulation#optimize_}
+	 */
+	public boolean isOptimizing() {
+		return optimize_;
+	}
+	
+	/**
+	 * Chooses whether the compiled engine simplifies the netlist it runs, see {@link NetlistOptimizer}.
+	 * The canvas is unchanged, but bypassed gates no longer add a tick of delay and folded gates
+	 * never change, so circuits that rely on gate delays run differently. Skipped Pins are brought up
+	 * to date whenever the canvas is repainted and after {@link Simulation#settle(int)}.
+	 * @param optimize {@link Simulation#optimize_}
+	 */
+	public void setOptimizing(boolean optimize) {
+		optimize_ = optimize;
+		invalidate();
+	}
+	
+	/**
+	 * @param pool {@link Simulation#forkJoinPool_}
+	 */
+	public void setForkJoinPool(ForkJoinPool pool) {
+		forkJoinPool_ = pool;
+	}
+	
+	/**
+	 * Discards the compiled netlist after an edit, handing its pending work back to the queues
+	 */
+	void invalidate() {
+		CompiledNetlist netlist = netlist_;
+		if(netlist != null) {
+			netlist_ = null;
+			pinsStale_ = false;
+			netlist.drainInto();
+		}
+	}
+	
+	/**
+	 * Brings a Pin object up to date with the compiled netlist, called by a Pin that is read while
+	 * {@link Simulation#pinsStale_} is set. Nothing is done during a tick, where the netlist brings
+	 * the Pins it hands to performLogic up to date itself.
+	 * @param pin The Pin being read
+	 */
+	void syncPin(Pin pin) {
+		CompiledNetlist netlist = netlist_;
+		if(netlist != null && !ticking_)
+			netlist.syncPin(pin);
+	}
+	
+	/**
+	 * Adds a Gate to the sim and the undo journal
+	 * @param gate The Gate to be added
+	 */
+	public void addGate(Gate gate) {
+		slotOf(gate);
+		gates_.add(gate);
+		CompiledNetlist netlist = netlist_;
+		if(netlist != null && !netlist.addGate(gate))
+			invalidate();
+		if(!indexStale_)
+			indexGate(gate, true);
+		snapshots_.invalidateLayout();
+		if(history_ != null)
+			history_.invalidate();
+		journal_.recordGate(gate, true);
+	}
+	
+	/**
+	 * Adds a Wire to the sim and the undo journal
+	 * @param wire The Wire to be added, already connected
+	 */
+	public void addWire(Wire wire) {
+		wires_.add(wire);
+		CompiledNetlist netlist = netlist_;
+		if(netlist != null && !netlist.addWire(wire))
+			invalidate();
+		if(!indexStale_)
+			indexWire(wire, true);
+		snapshots_.invalidateLayout();
+		if(history_ != null)
+			history_.invalidate();
+		journal_.recordWire(wire, true);
+	}
+	
+	/**
+	 * Adds a whole circuit at once, such as one loaded from a file. It is undone as a single step and
+	 * the hit-testing index is rebuilt in one pass the next time it is needed, so a circuit that is
+	 * only simulated never pays for it.
+	 * @param gates The Gates to add
+	 * @param wires The Wires to add, already connected to Pins of the Gates
+	 */
+	public void addAll(Gate[] gates, Wire[] wires) {
+		invalidate();
+		gates_.ensureCapacity(gates_.size() + gates.length);
+		wires_.ensureCapacity(wires_.size() + wires.length);
+		for(Gate gate : gates) {
+			slotOf(gate);
+			gates_.add(gate);
+		}
+		for(Wire wire : wires)
+			wires_.add(wire);
+		
+		journal_.begin();
+		for(Gate gate : gates)
+			journal_.recordGate(gate, true);
+		for(Wire wire : wires)
+			journal_.recordWire(wire, true);
+		journal_.end();
+		
+		gateIndex_.clear();
+		wireIndex_.clear();
+		indexStale_ = true;
+		snapshots_.invalidateLayout();
+		if(history_ != null)
+			history_.invalidate();
+	}
+	
+	/**
+	 * Undoes the latest step of edits
+	 * @return False if there was nothing to undo
+	 */
+	public boolean undo() {
+		return journal_.undo();
+	}
+	
+	/**
+	 * Redoes the latest undone step, any other edit since the undo drops the steps that could be
+	 * redone
+	 * @return False if there was nothing to redo
+	 */
+	public boolean redo() {
+		return journal_.redo();
+	}
+	
+	/**
+	 * @return True if there is a step of edits to undo
+	 */
+	public boolean canUndo() {
+		return journal_.canUndo();
+	}
+	
+	/**
+	 * @return True if there is an undone step of edits to redo
+	 */
+	public boolean canRedo() {
+		return journal_.canRedo();
+	}
+	
+	/**
+	 * Starts a group of edits that are undone and redone as one step, such as a Gate removed along
+	 * with its Wires. Every call must be matched by {@link Simulation#endEdit()}, groups may be nested
+	 * and only the outermost one makes a step.
+	 */
+	public void beginEdit() {
+		journal_.begin();
+	}
+	
+	/**
+	 * Ends a group started by {@link Simulation#beginEdit()}
+	 */
+	public void endEdit() {
+		journal_.end();
+	}
+	
+	/**
+	 * @return The most bytes of edits kept for undo
+	 */
+	public long getUndoBudget() {
+		return journal_.getBudget();
+	}
+	
+	/**
+	 * Sets how many bytes of edits are kept for undo, once more are recorded the oldest steps are
+	 * dropped. Each Gate or Wire added or removed and each move takes 32 bytes.
+	 * @param budget The budget in bytes, 0 to keep no undo history
+	 */
+	public void setUndoBudget(long budget) {
+		journal_.setBudget(budget);
+	}
+	
+	/**
+	 * @return The number of bytes taken by the edits kept for undo
+	 */
+	public long getUndoMemoryUsed() {
+		return journal_.getBytesUsed();
+	}
+	
+	/**
+	 * Removes a Gate from the sim
+	 * @param gate The Gate to be removed
+	 */
+	public void removeGate(Gate gate) {
+		if(gates_.remove(gate)) {
+			journal_.recordGate(gate, false);
+			CompiledNetlist netlist = netlist_;
+			if(netlist != null && !netlist.removeGate(gate))
+				invalidate();
+			if(!indexStale_)
+				indexGate(gate, false);
+			gateSlots_.remove(gate.index_);
+			gate.index_ = -1;
+			snapshots_.invalidateLayout();
+			if(history_ != null)
+				history_.invalidate();
+			for(Pin pin : gate.getPins()) {
+				pin.snapshotIndex_ = -1;
+				Net net = pin.getNet();
+				if(net != null && net.index_ >= 0) {
+					netSlots_.remove(net.index_);
+					net.index_ = -1;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Removes a Wire from the sim, before it is disconnected from its Pins
+	 * @param wire The Wire to be removed
+	 */
+	public void removeWire(Wire wire) {
+		if(wires_.remove(wire)) {
+			journal_.recordWire(wire, false);
+			CompiledNetlist netlist = netlist_;
+			if(netlist != null && !netlist.removeWire(wire))
+				invalidate();
+			if(!indexStale_)
+				indexWire(wire, false);
+			snapshots_.invalidateLayout();
+			if(history_ != null)
+				history_.invalidate();
+		}
+	}
+	
+	/**
+	 * Moves a Gate in the sim, its Wires follow its Pins
+	 * @param gate The Gate to move
+	 * @param x The new x position
+	 * @param y The new y position
+	 */
+	public void moveGate(Gate gate, int x, int y) {
+		int fromX = gate.getX();
+		int fromY = gate.getY();
+		if(x == fromX && y == fromY)
+			return;
+		
+		List<Wire> wires = new ArrayList<>();
+		for(Pin pin : gate.getPins()) {
+			if(pin.getWire() != null && !wires.contains(pin.getWire()))
+				wires.add(pin.getWire());
+			Net net = pin.getNet();
+			if(net != null) {
+				for(int i = 0; i < net.size(); ++i) {
+					if(!wires.contains(net.getWire(i)))
+						wires.add(net.getWire(i));
+				}
+			}
+		}
+		
+		if(!indexStale_) {
+			indexGate(gate, false);
+			for(Wire wire : wires)
+				indexWire(wire, false);
+		}
+		gate.moveTo(x, y);
+		for(Wire wire : wires)
+			wire.followPins();
+		if(!indexStale_) {
+			indexGate(gate, true);
+			for(Wire wire : wires)
+				indexWire(wire, true);
+		}
+		snapshots_.invalidateLayout();
+		journal_.recordMove(fromX, fromY, x, y);
+	}
+	
+	/**
+	 * Adds or removes a Gate from {@link Simulation#gateIndex_} under every cell it covers
+	 * @param gate The Gate
+	 * @param add True to add, false to remove
+	 */
+	private void indexGate(Gate gate, boolean add) {
+		if(add)
+			gateIndex_.add(gate, gate.getX(), gate.getY(), gate.getX()+gate.getWidth(), gate.getY()+gate.getHeight());
+		else
+			gateIndex_.remove(gate, gate.getX(), gate.getY(), gate.getX()+gate.getWidth(), gate.getY()+gate.getHeight());
+	}
+	
+	/**
+	 * Rebuilds the hit-testing index if a bulk add left it out of date
+	 */
+	private void ensureIndexed() {
+		if(indexStale_) {
+			indexStale_ = false;
+			for(Gate gate : gates_)
+				indexGate(gate, true);
+			for(Wire wire : wires_)
+				indexWire(wire, true);
+		}
+	}
+	
+	/**
+	 * Adds or removes a Wire from {@link Simulation#wireIndex_} under the cells of both of its end points
+	 * @param wire The Wire
+	 * @param add True to add, false to remove
+	 */
+	private void indexWire(Wire wire, boolean add) {
+		int sx = GridKey.x(wire.getStart());
+		int sy = GridKey.y(wire.getStart());
+		int ex = GridKey.x(wire.getEnd());
+		int ey = GridKey.y(wire.getEnd());
+		boolean sameCell = SpatialIndex.cell(sx) == SpatialIndex.cell(ex) && SpatialIndex.cell(sy) == SpatialIndex.cell(ey);
+		
+		if(add) {
+			wireIndex_.add(wire, sx, sy, sx, sy);
+			if(!sameCell)
+				wireIndex_.add(wire, ex, ey, ex, ey);
+		}
+		else {
+			wireIndex_.remove(wire, sx, sy, sx, sy);
+			if(!sameCell)
+				wireIndex_.remove(wire, ex, ey, ex, ey);
+		}
+	}
+	
+	/**
+	 * @return {@link Simulation#gates_}
+	 */
+	public Vector<Gate> getGates() {
+		return gates_;
+	}
+	
+	/**
+	 * @return {@link Simulation#wires_}
+	 */
+	public Vector<Wire> getWires() {
+		return wires_;
+	}
+	
+	/**
+	 * Queues a Net to propagate its driver's state to every Wire next tick
+	 * @param net The Net to queue
+	 */
+	public void queueNet(Net net) {
+		CompiledNetlist netlist = netlist_;
+		if(netlist != null) {
+			if(netlist.queueNet(net))
+				return;
+			if(netlist.contains(net.getDriver()))
+				invalidate();
+		}
+		netQueue_.offer(slotOf(net));
+	}
+	
+	/**
+	 * Queues a Gate for the next tick
+	 * @param gate The Gate to queue
+	 */
+	public void queueGate(Gate gate) {
+		CompiledNetlist netlist = netlist_;
+		if(netlist != null) {
+			if(netlist.queueGate(gate))
+				return;
+			if(netlist.contains(gate))
+				invalidate();
+		}
+		
+		int delay = gate.getGateComponent().getDelay();
+		if(delay > 1)
+			scheduleGate(gate, currentTick_ + delay - 1);
+		else
+			gateQueue_.offer(slotOf(gate));
+	}
+	
+	/**
+	 * Puts a Gate on the timing wheel to be evaluated at a later tick, unless it is already due then
+	 * @param gate The Gate to schedule
+	 * @param due The tick to evaluate it at
+	 */
+	void scheduleGate(Gate gate, int due) {
+		CompiledNetlist netlist = netlist_;
+		if(netlist != null && netlist.scheduleGate(gate, due))
+			return;
+		
+		if(gate.dueTick_ != due) {
+			gate.dueTick_ = due;
+			gateWheel_.schedule(slotOf(gate), due);
+		}
+	}
+	
+	/**
+	 * Jumps over ticks in which nothing would happen because every pending Gate is waiting on its
+	 * propagation delay
+	 * @param maxTicks The most ticks to skip
+	 * @return The number of ticks skipped
+	 */
+	public int skipIdle(int maxTicks) {
+		if(!commands_.isEmpty())
+			return 0;
+		return skipWaiting(maxTicks);
+	}
+	
+	/**
+	 * Jumps over ticks in which only delayed Gates are pending, whether or not commands are posted
+	 * @param maxTicks The most ticks to skip
+	 * @return The number of ticks skipped
+	 */
+	private int skipWaiting(int maxTicks) {
+		if(maxTicks <= 0 || !gateQueue_.isEmpty() || !netQueue_.isEmpty() || flatRestores_ != null)
+			return 0;
+		
+		int due = gateWheel_.nextDue();
+		CompiledNetlist netlist = netlist_;
+		if(netlist != null) {
+			int compiledDue = netlist.nextDue();
+			if(due < 0 || (compiledDue >= 0 && compiledDue < due))
+				due = compiledDue;
+		}
+		if(due <= currentTick_)
+			return 0;
+		
+		int skipped = (int)Math.min(maxTicks, (long)due - currentTick_);
+		currentTick_ += skipped;
+		return skipped;
+	}
+	
+	/**
+	 * Records that a Pin changed state so it can be hashed while settling, traced, its Gate reported
+	 * to the listener at the end of the tick and its new state published
+	 * @param pin The Pin that changed
+	 */
+	void pinChanged(Pin pin) {
+		if(settling_) {
+			stateHash_ ^= pin.hashKey_;
+			changedHash_ ^= pin.hashKey_;
+		}
+		pinReported(pin);
+	}
+	
+	/**
+	 * Records that a Pin changed state so it can be traced, its Gate reported to the listener at the
+	 * end of the tick and its new state published. The compiled netlist calls this directly when it
+	 * brings a Pin up to date since it hashes the changes itself.
+	 * @param pin The Pin that changed
+	 */
+	void pinReported(Pin pin) {
+		WaveformRecorder recorder = recorder_;
+		if(recorder != null && pin.traceId_ >= 0)
+			recorder.record(currentTick_, pin.traceId_, pin.getState());
+		
+		if(listener_ != null) {
+			Gate gate = pin.getGate();
+			if(gate.index_ >= 0)
+				changedGates_.offer(gate.index_);
+		}
+		
+		if(publishing_)
+			snapshots_.pinChanged(pin);
+	}
+	
+	/**
+	 * Called when a Pin is set, records it as an input if it was set from outside a tick
+	 * @param pin The Pin that changed
+	 * @param input True if it was set with {@link Pin#setInputState(boolean)}
+	 */
+	void pinSet(Pin pin, boolean input) {
+		pinChanged(pin);
+		TickHistory history = history_;
+		if(history != null && !ticking_)
+			history.recordInput(currentTick_, pin, input);
+	}
+	
+	/**
+	 * Looks up the slot of a Gate, assigning one if it has not been added or queued yet
+	 * @param gate The Gate to look up
+	 * @return The Gate's index in {@link Simulation#gateSlots_}
+	 */
+	private int slotOf(Gate gate) {
+		if(gate.index_ < 0)
+			gate.index_ = gateSlots_.add(gate);
+		return gate.index_;
+	}
+	
+	/**
+	 * Looks up the slot of a Net, assigning one if it has not been queued yet
+	 * @param net The Net to look up
+	 * @return The Net's index in {@link Simulation#netSlots_}
+	 */
+	private int slotOf(Net net) {
+		if(net.index_ < 0)
+			net.index_ = netSlots_.add(net);
+		return net.index_;
+	}
+	
+	/**
+	 * Attempts to locate a Gate at position p. Only call this from the thread ticking the sim, other
+	 * threads should hit-test the latest {@link StateSnapshot} instead.
+	 * @param p The position to search for a Gate at, packed by {@link GridKey}
+	 * @return A Gate that exists at position p, null otherwise
+	 */
+	public Gate findGateAt(long p) {
+		ensureIndexed();
+		return findGateAt(gateIndex_, p);
+	}
+	
+	/**
+	 * Looks a Gate up in a hit-testing index
+	 * @param index The index to look in
+	 * @param p The position to search for a Gate at, packed by {@link GridKey}
+	 * @return A Gate in the index that exists at position p, null otherwise
+	 */
+	static Gate findGateAt(SpatialIndex<Gate> index, long p) {
+		int x = GridKey.x(p);
+		int y = GridKey.y(p);
+		
+		Object[] bucket = index.bucketAt(x, y);
+		if(bucket == null)
+			return null;
+		
+		Gate gate;
+		int gx;
+		int gy;
+		int gxx;
+		int gyy;
+		for(int i = 0; i < bucket.length && bucket[i] != null; ++i) {
+			gate = (Gate)bucket[i];
+			gx = gate.getX();
+			gy = gate.getY();
+			gxx = gx+gate.getGateComponent().getWidth();
+			gyy = gy+gate.getGateComponent().getHeight();
+			
+			if(x >= gx && x <= gxx && y >= gy && y <= gyy)
+				return gate;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Finds a Gate by the position of its top left corner, used to find Gates again from undo records
+	 * @param x The x position
+	 * @param y The y position
+	 * @return The Gate, or null if none is there
+	 */
+	Gate findGateByOrigin(int x, int y) {
+		ensureIndexed();
+		Object[] bucket = gateIndex_.bucketAt(x, y);
+		if(bucket == null)
+			return null;
+		
+		long origin = GridKey.pack(x, y);
+		Gate gate;
+		for(int i = 0; i < bucket.length && bucket[i] != null; ++i) {
+			gate = (Gate)bucket[i];
+			if(gate.getPosition() == origin)
+				return gate;
+		}
+		return null;
+	}
+	
+	/**
+	 * Tries to find a Pin at position p. Only call this from the thread ticking the sim, other threads
+	 * should hit-test the latest {@link StateSnapshot} instead.
+	 * @param p The position to search for a Pin at, packed by {@link GridKey}
+	 * @return A Pin that exists at position p, null otherwise
+	 */
+	public Pin findPinAt(long p) {
+		return findPinAt(findGateAt(p), p);
+	}
+	
+	/**
+	 * @param gate The Gate found at position p, or null
+	 * @param p The position to search for a Pin at, packed by {@link GridKey}
+	 * @return A Pin of the Gate that exists at position p, null otherwise
+	 */
+	static Pin findPinAt(Gate gate, long p) {
+		Pin fpin = null;
+		if(gate != null) {
+			for(Pin pin : gate.getPins()) {
+				if(pin.getPosition() == p) {
+					fpin = pin;
+					break;
+				}
+			}
+		}
+		
+		return fpin;
+	}
+	
+	/**
+	 * Tries to find a Wire at position p
+	 * @param p The position to search for a Wire at, packed by {@link GridKey}
+	 * @return A Wire that exists at position p, null otherwise
+	 */
+	public Wire findWireAt(long p) {
+		ensureIndexed();
+		Object[] bucket = wireIndex_.bucketAt(GridKey.x(p), GridKey.y(p));
+		if(bucket == null)
+			return null;
+		
+		Wire wire;
+		for(int i = 0; i < bucket.length && bucket[i] != null; ++i) {
+			wire = (Wire)bucket[i];
+			if(wire.getStart() == p || wire.getEnd() == p)
+				return wire;
+		}
+		return null;
+	}
+	
+	/**
+	 * Finds a Gate that overlaps a rectangle, Gates that only share an edge with it do not count
+	 * @param x The left edge of the rectangle
+	 * @param y The top edge of the rectangle
+	 * @param width The width of the rectangle
+	 * @param height The height of the rectangle
+	 * @return The first overlapping Gate found, or null if the area is free
+	 */
+	public Gate findGateOverlapping(int x, int y, int width, int height) {
+		return findGateOverlapping(x, y, width, height, null);
+	}
+	
+	/**
+	 * Finds a Gate other than one being moved that overlaps a rectangle
+	 * @param x The left edge of the rectangle
+	 * @param y The top edge of the rectangle
+	 * @param width The width of the rectangle
+	 * @param height The height of the rectangle
+	 * @param ignore A Gate to leave out, or null
+	 * @return The first overlapping Gate found, or null if the area is free
+	 */
+	public Gate findGateOverlapping(int x, int y, int width, int height, Gate ignore) {
+		ensureIndexed();
+		int xx = x+width;
+		int yy = y+height;
+		int size = SpatialIndex.CELL_SIZE;
+		
+		Object[] bucket;
+		Gate gate;
+		int gx;
+		int gy;
+		for(int cx = x; cx < xx + size; cx += size) {
+			for(int cy = y; cy < yy + size; cy += size) {
+				bucket = gateIndex_.bucketAt(Math.min(cx, xx), Math.min(cy, yy));
+				if(bucket == null)
+					continue;
+				
+				for(int i = 0; i < bucket.length && bucket[i] != null; ++i) {
+					gate = (Gate)bucket[i];
+					if(gate == ignore)
+						continue;
+					gx = gate.getX();
+					gy = gate.getY();
+					if(y < gy+gate.getHeight() && gy < yy && x < gx+gate.getWidth() && gx < xx)
+						return gate;
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Queues an edit or user input to run on the thread ticking the sim, before the next tick or
+	 * straight away if a {@link TickScheduler} is waiting. Safe to call from any thread and never
+	 * blocks. Everything else on the sim, its Gates, Wires and Pins may only be touched by the
+	 * ticking thread once ticks run on their own thread, so other threads such as the Swing EDT
+	 * must make their changes through here.
+	 * @param command The command to run
+	 */
+	public void post(Runnable command) {
+		commands_.post(command);
+		Runnable wakeup = commandWakeup_;
+		if(wakeup != null)
+			wakeup.run();
+	}
+	
+	/**
+	 * Runs the commands posted so far and publishes a snapshot if any ran,
+	 * {@link Simulation#tick()} does this first so it only needs calling between ticks
+	 * @return The number of commands run
+	 */
+	public int runCommands() {
+		int count = commands_.runAll();
+		if(count > 0 && publishing_) {
+			CompiledNetlist netlist = netlist_;
+			if(netlist != null)
+				netlist.refreshSkipped();
+			snapshots_.publish(currentTick_, gates_, wires_);
+		}
+		return count;
+	}
+	
+	/**
+	 * Takes the state published at the end of the latest tick, or after the latest edit. Safe to
+	 * call from one thread other than the ticking one, normally the EDT, and never blocks. Snapshots
+	 * are only published once this has been called, the first call returns an empty one and asks
+	 * for the current state to be published.
+	 * @return The latest snapshot, which the sim won't change until the next call
+	 */
+	public StateSnapshot getSnapshot() {
+		if(!snapshotRequested_) {
+			snapshotRequested_ = true;
+			post(new Runnable() {
+				@Override
+				public void run() {
+					publishing_ = true;
+				}
+			});
+		}
+		return snapshots_.take();
+	}
+	
+	/**
+	 * @return True if there are posted commands that haven't run yet
+	 */
+	public boolean hasCommands() {
+		return !commands_.isEmpty();
+	}
+	
+	/**
+	 * @param wakeup {@link Simulation#commandWakeup_}
+	 */
+	void setCommandWakeup(Runnable wakeup) {
+		commandWakeup_ = wakeup;
+	}
+	
+	/**
+	 * @return True if no Gates or Wires are waiting to be updated, so further ticks would change nothing
+	 */
+	public boolean isStable() {
+		CompiledNetlist netlist = netlist_;
+		return commands_.isEmpty() && gateQueue_.isEmpty() && netQueue_.isEmpty() && gateWheel_.isEmpty() && flatRestores_ == null && (netlist == null || netlist.isIdle());
+	}
+	
+	/**
+	 * Ticks until nothing is queued or the circuit is found to oscillate. A repeated state is spotted
+	 * by hashing the Pin states together with the set of Pins changed in the last tick, which is what
+	 * the next tick's queues are built from, and the Gates on the timing wheel relative to the current
+	 * tick. Ticks where only delayed Gates are pending are skipped.
+	 * @param maxTicks The most ticks to run
+	 * @return The settle depth, or the period of the cycle if it oscillates
+	 */
+	public SettleResult settle(int maxTicks) {
+		settling_ = true;
+		stateHash_ = 0;
+		changedHash_ = 0;
+		stateHistory_.clear();
+		try {
+			for(int ticks = 0; ; ++ticks) {
+				if(isStable())
+					return new SettleResult(ticks, 0, true);
+				
+				int seen = stateHistory_.record(stateHash_ ^ Long.rotateLeft(changedHash_, 1) ^ pendingHash(), ticks);
+				if(seen >= 0)
+					return new SettleResult(ticks, ticks - seen, false);
+				if(ticks >= maxTicks)
+					return new SettleResult(ticks, 0, false);
+				
+				changedHash_ = 0;
+				tick();
+				ticks += skipIdle(maxTicks - ticks - 1);
+			}
+		} finally {
+			settling_ = false;
+		}
+	}
+	
+	/**
+	 * @return A hash of the Gates on the timing wheels relative to the current tick
+	 */
+	private long pendingHash() {
+		CompiledNetlist netlist = netlist_;
+		long hash = gateWheel_.isEmpty() ? 0 : gateWheel_.relativeHash(currentTick_);
+		if(netlist != null)
+			hash += netlist.pendingHash(currentTick_);
+		return hash;
+	}
+	
+	/**
+	 * Starts or stops recording Pin transitions
+	 * @param recorder A started recorder, or null to stop recording
+	 */
+	public void setWaveformRecorder(WaveformRecorder recorder) {
+		//Without its writer thread nothing would empty the recorder's buffer, and the ticking thread
+		//would wait forever for room once it filled
+		if(recorder != null && !recorder.isStarted())
+			throw new IllegalStateException("Waveform recorder must be started before it is attached");
+		
+		recorder_ = recorder;
+		invalidate();
+	}
+	
+	/**
+	 * @return {@link Simulation#metrics_}
+	 */
+	public SimulationMetrics getMetrics() {
+		return metrics_;
+	}
+	
+	/**
+	 * Starts or stops counting the work done each tick
+	 * @param metrics The metrics to record into, or null to stop recording
+	 */
+	public void setMetrics(SimulationMetrics metrics) {
+		metrics_ = metrics;
+	}
+	
+	/**
+	 * @return {@link Simulation#history_}
+	 */
+	public TickHistory getHistory() {
+		return history_;
+	}
+	
+	/**
+	 * Starts or stops recording past ticks, only call from the ticking thread or a posted command.
+	 * Recording starts at the next tick.
+	 * @param history An empty history to record into, or null to stop recording
+	 */
+	public void setHistory(TickHistory history) {
+		if(history != null)
+			history.invalidate();
+		history_ = history;
+	}
+	
+	/**
+	 * Puts the sim back the way it was at the start of an earlier tick, after the inputs made before
+	 * it, and forgets the ticks after it. The state between keyframes is rebuilt by running the ticks
+	 * since the keyframe before it again. Only call from the ticking thread or a posted command.
+	 * @param tick The tick to go back to, no earlier than {@link TickHistory#getOldestTick()}
+	 */
+	public void rewind(int tick) {
+		TickHistory history = history_;
+		if(history == null)
+			throw new IllegalStateException("No history is being recorded");
+		if(recorder_ != null)
+			throw new IllegalStateException("Can't rewind while recording a waveform");
+		
+		invalidate();
+		history.restore(this, tick);
+		if(publishing_)
+			snapshots_.publish(currentTick_, gates_, wires_);
+	}
+	
+	/**
+	 * Hands the pending work to a keyframe being taken
+	 * @param history The history taking the keyframe
+	 */
+	void collectPending(TickHistory history) {
+		Gate gate;
+		for(int i = 0; i < gateQueue_.size(); ++i) {
+			gate = gateSlots_.get(gateQueue_.peek(i));
+			if(gate != null)
+				history.addPendingGate(gate);
+		}
+		
+		Net net;
+		for(int i = 0; i < netQueue_.size(); ++i) {
+			net = netSlots_.get(netQueue_.peek(i));
+			if(net != null)
+				history.addPendingNet(net);
+		}
+		
+		if(!gateWheel_.isEmpty()) {
+			for(long entry : gateWheel_.entries()) {
+				gate = gateSlots_.get((int)entry);
+				if(gate != null)
+					history.addDelayedGate(gate, (int)(entry >>> 32));
+			}
+		}
+		
+		CompiledNetlist netlist = netlist_;
+		if(netlist != null)
+			netlist.collectPending(history);
+	}
+	
+	/**
+	 * Replaces the pending work with that of a keyframe being restored, the Pin states have already
+	 * been put back
+	 * @param tick The tick of the keyframe
+	 * @param gates The queued Gates
+	 * @param nets The queued Nets
+	 * @param delayed The Gates on the timing wheel
+	 * @param dues The ticks they are due at
+	 * @param flatBodies The insides of flattened subcircuit instances, restored once the compiled
+	 * netlist is built at the next tick
+	 */
+	void restorePending(int tick, Gate[] gates, Net[] nets, Gate[] delayed, int[] dues, TickHistory.FlatBody[] flatBodies) {
+		gateQueue_.clear();
+		netQueue_.clear();
+		gateWheel_.clear(tick);
+		for(Gate gate : gates_)
+			gate.dueTick_ = -1;
+		currentTick_ = tick;
+		
+		for(Gate gate : gates)
+			gateQueue_.offer(slotOf(gate));
+		for(Net net : nets)
+			netQueue_.offer(slotOf(net));
+		for(int i = 0; i < delayed.length; ++i)
+			scheduleGate(delayed[i], dues[i]);
+		flatRestores_ = flatBodies.length > 0 ? flatBodies : null;
+	}
+	
+	/**
+	 * Puts the instances restored by a rewind into a netlist, queueing any it doesn't flatten
+	 * @param netlist The netlist, or null if ticking without one
+	 */
+	private void applyFlatRestores(CompiledNetlist netlist) {
+		TickHistory.FlatBody[] bodies = flatRestores_;
+		flatRestores_ = null;
+		for(TickHistory.FlatBody body : bodies) {
+			if(netlist != null && netlist.restoreFlat(body.gate_, body.pins_, body.gates_, body.nets_))
+				continue;
+			if(body.gate_.index_ >= 0)
+				queueGate(body.gate_);
+		}
+	}
+	
+	/**
+	 * Runs the sim forward for a rewind without taking posted commands or keyframes, either one
+	 * tick or as many as nothing would happen in
+	 * @param until The tick to stop at
+	 */
+	void replayTick(int until) {
+		CompiledNetlist netlist = netlist_;
+		if(gateQueue_.isEmpty() && netQueue_.isEmpty() && gateWheel_.isEmpty() && flatRestores_ == null && (netlist == null || netlist.isIdle()))
+			currentTick_ = until;
+		else if(skipWaiting(until - currentTick_) == 0)
+			advance();
+	}
+	
+	/**
+	 * Sets the SimulationListener
+	 * @param listener The listener to set as the active listener
+	 */
+	public void setSimulationListener(SimulationListener listener) {
+		listener_ = listener;
+	}
+	
+	/**
+	 * Moves work queued while the compiled netlist was being built or patched, such as updates from
+	 * Gates added since, into the netlist
+	 * @param netlist The netlist to queue the work in
+	 */
+	private void transferQueues(CompiledNetlist netlist) {
+		Gate gate;
+		for(int count = gateQueue_.beginDrain(); count > 0; --count) {
+			gate = gateSlots_.get(gateQueue_.poll());
+			if(gate != null)
+				netlist.queueGate(gate);
+		}
+		
+		Net net;
+		for(int count = netQueue_.beginDrain(); count > 0; --count) {
+			net = netSlots_.get(netQueue_.poll());
+			if(net != null)
+				netlist.queueNet(net);
+		}
+		
+		if(!gateWheel_.isEmpty()) {
+			for(long entry : gateWheel_.drain()) {
+				gate = gateSlots_.get((int)entry);
+				if(gate != null) {
+					gate.dueTick_ = -1;
+					netlist.scheduleGate(gate, (int)(entry >>> 32));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Runs any posted commands, then ticks the sim, causing Gates and Wires to update, and publishes
+	 * the resulting state for the renderer
+	 */
+	public void tick() {
+		commands_.runAll();
+		TickHistory history = history_;
+		if(history != null)
+			history.beforeTick(this, gates_);
+		advance();
+	}
+	
+	/**
+	 * Ticks the sim, causing Gates and Wires to update
+	 */
+	private void advance() {
+		ticking_ = true;
+		SimulationMetrics metrics = metrics_;
+		if(metrics != null)
+			metrics.beginTick();
+		
+		int nets;
+		int gates;
+		if(compiled_) {
+			CompiledNetlist netlist = netlist_;
+			if(netlist == null) {
+				netlist = new CompiledNetlist(this, gates_.toArray(new Gate[0]), wires_.toArray(new Wire[0]));
+				netlist_ = netlist;
+			}
+			if(flatRestores_ != null)
+				applyFlatRestores(netlist);
+			if(!gateQueue_.isEmpty() || !netQueue_.isEmpty() || !gateWheel_.isEmpty())
+				transferQueues(netlist);
+			netlist.tick(parallel_ ? forkJoinPool_ : null, parallelThreshold_, settling_);
+			nets = netlist.getLastNetCount();
+			gates = netlist.getLastGateCount();
+			
+			//Pins are only given their new states now, all of them if someone draws the circuit and
+			//just the watched ones while recording, the rest when they are next read
+			if(listener_ != null || publishing_) {
+				netlist.refreshSkipped();
+				netlist.syncPins(false);
+				pinsStale_ = false;
+			}
+			else {
+				if(recorder_ != null)
+					netlist.syncPins(true);
+				pinsStale_ = true;
+			}
+			if(settling_) {
+				long hash = netlist.takeHash();
+				stateHash_ ^= hash;
+				changedHash_ ^= hash;
+			}
+		}
+		else {
+			if(flatRestores_ != null)
+				applyFlatRestores(null);
+			Net net;
+			nets = netQueue_.beginDrain();
+			for(int count = nets; count > 0; --count) {
+				net = netSlots_.get(netQueue_.poll());
+				if(net != null)
+					net.propagate();
+			}
+			
+			if(!gateWheel_.isEmpty())
+				gateWheel_.pollDue(currentTick_, gateQueue_);
+			
+			Gate gate;
+			gates = gateQueue_.beginDrain();
+			for(int count = gates; count > 0; --count) {
+				gate = gateSlots_.get(gateQueue_.poll());
+				if(gate != null)
+					gate.getGateComponent().performLogic(gate.getPins());
+			}
+		}
+		
+		SimulationListener listener = listener_;
+		boolean repaint = listener != null && !changedGates_.isEmpty();
+		if(repaint) {
+			Gate gate;
+			for(int count = changedGates_.beginDrain(); count > 0; --count) {
+				gate = gateSlots_.get(changedGates_.poll());
+				if(gate != null)
+					listener.onGateChanged(gate);
+			}
+			listener.onRequestRepaint();
+		}
+		
+		ticking_ = false;
+		++currentTick_;
+		if(publishing_)
+			snapshots_.publish(currentTick_, gates_, wires_);
+		if(metrics != null)
+			metrics.endTick(nets, gates, repaint);
+	}
+}
@@ -0,0 +1,356 @@
+package common.sim;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counts what a Simulation does each tick. It is attached with
+ * {@link Simulation#setMetrics(SimulationMetrics)}, read with {@link SimulationMetrics#snapshot()}
+ * or over JMX after {@link SimulationMetrics#register(String)}, and each {@link Metric} can be
+ * switched off to skip its cost.
+ * <p>
+ * Recording happens on the ticking thread and only updates primitive fields and preallocated
+ * histograms, so a tick never allocates. Readers on other threads see the values as of a recent
+ * tick, and a snapshot taken during a tick may mix values from that tick and the one before.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+	/**
+	 * The JMX domain metrics are registered under
+	 */
+	public static final String DOMAIN = "JLogic";
+	
+	/**
+	 * How long {@link SimulationMetrics#tickRate_} is measured over
+	 */
+	private static final long RATE_WINDOW_NANOS = 1000000000L;
+	
+	/**
+	 * The Metrics that need the time at the start and end of every tick
+	 */
+	private static final int TIMED = Metric.TICK_LATENCY.mask() | Metric.TICK_RATE.mask();
+	
+	/**
+	 * A mask of the {@link Metric#mask()} of every enabled Metric
+	 */
+	private volatile int enabled_;
+	
+	/**
+	 * {@link SimulationMetrics#enabled_} as read at the start of the current tick
+	 */
+	private int tickEnabled_;
+	
+	/**
+	 * The System.nanoTime() the current tick started at, only set while a timed Metric is enabled
+	 */
+	private long tickStart_;
+	
+	/**
+	 * The number of ticks recorded, written last so that readers see the rest of a tick's values
+	 */
+	private volatile long ticks_;
+	
+	/**
+	 * The number of Gates evaluated over all recorded ticks
+	 */
+	private long gatesEvaluated_;
+	
+	/**
+	 * The number of Gates evaluated in each tick
+	 */
+	private final Histogram gatesPerTick_;
+	
+	/**
+	 * The number of Nets propagated over all recorded ticks
+	 */
+	private long netsPropagated_;
+	
+	/**
+	 * The number of Nets propagated in each tick
+	 */
+	private final Histogram netsPerTick_;
+	
+	/**
+	 * The deepest net or gate queue drained in a single tick
+	 */
+	private long peakQueueDepth_;
+	
+	/**
+	 * The wall time of each tick in nanoseconds
+	 */
+	private final Histogram latency_;
+	
+	/**
+	 * The System.nanoTime() the current rate window started at, or 0 before the first timed tick
+	 */
+	private volatile long windowStart_;
+	
+	/**
+	 * {@link SimulationMetrics#ticks_} when the current rate window started
+	 */
+	private volatile long windowTicks_;
+	
+	/**
+	 * The ticks per second measured over the last full window, or -1 before one has finished
+	 */
+	private volatile double tickRate_;
+	
+	/**
+	 * The number of repaints the Simulation asked for
+	 */
+	private long repaints_;
+	
+	/**
+	 * The name this was registered under, or null if it isn't registered
+	 */
+	private ObjectName objectName_;
+	
+	/**
+	 * Creates metrics with every {@link Metric} enabled
+	 */
+	public SimulationMetrics() {
+		gatesPerTick_ = new Histogram();
+		netsPerTick_ = new Histogram();
+		latency_ = new Histogram();
+		objectName_ = null;
+		for(Metric metric : Metric.values())
+			enabled_ |= metric.mask();
+		reset();
+	}
+	
+	/**
+	 * @param metric The Metric to check
+	 * @return True if it is being recorded
+	 */
+	public boolean isEnabled(Metric metric) {
+		return (enabled_ & metric.mask()) != 0;
+	}
+	
+	/**
+	 * Switches recording of a Metric, its values are kept while it is off
+	 * @param metric The Metric to switch
+	 * @param enabled True to record it
+	 */
+	public synchronized void setEnabled(Metric metric, boolean enabled) {
+		if(enabled) {
+			if(metric == Metric.TICK_RATE && !isEnabled(metric))
+				windowStart_ = 0;
+			enabled_ |= metric.mask();
+		}
+		else
+			enabled_ &= ~metric.mask();
+	}
+	
+	/**
+	 * Called by the Simulation before it runs a tick
+	 */
+	void beginTick() {
+		int enabled = enabled_;
+		tickEnabled_ = enabled;
+		if((enabled & TIMED) != 0)
+			tickStart_ = System.nanoTime();
+	}
+	
+	/**
+	 * Called by the Simulation after it runs a tick
+	 * @param nets The number of Nets propagated
+	 * @param gates The number of Gates evaluated
+	 * @param repainted Whether the tick asked for a repaint
+	 */
+	void endTick(int nets, int gates, boolean repainted) {
+		int enabled = tickEnabled_;
+		long ticks = ticks_ + 1;
+		
+		if((enabled & Metric.GATES_EVALUATED.mask()) != 0) {
+			gatesEvaluated_ += gates;
+			gatesPerTick_.record(gates);
+		}
+		if((enabled & Metric.NETS_PROPAGATED.mask()) != 0) {
+			netsPropagated_ += nets;
+			netsPerTick_.record(nets);
+		}
+		if((enabled & Metric.QUEUE_DEPTH.mask()) != 0)
+			peakQueueDepth_ = Math.max(peakQueueDepth_, Math.max(nets, gates));
+		if(repainted && (enabled & Metric.REPAINTS.mask()) != 0)
+			++repaints_;
+		
+		if((enabled & TIMED) != 0) {
+			long now = System.nanoTime();
+			if((enabled & Metric.TICK_LATENCY.mask()) != 0)
+				latency_.record(now - tickStart_);
+			if((enabled & Metric.TICK_RATE.mask()) != 0) {
+				long start = windowStart_;
+				if(start == 0) {
+					windowTicks_ = ticks - 1;
+					windowStart_ = tickStart_;
+				}
+				else if(now - start >= RATE_WINDOW_NANOS) {
+					tickRate_ = (ticks - windowTicks_) * 1e9 / (now - start);
+					windowTicks_ = ticks;
+					windowStart_ = now;
+				}
+			}
+		}
+		
+		ticks_ = ticks;
+	}
+	
+	/**
+	 * @return The current values of every Metric
+	 */
+	public MetricsSnapshot snapshot() {
+		return new MetricsSnapshot(this, System.nanoTime());
+	}
+	
+	/**
+	 * @param now The current System.nanoTime()
+	 * @return The rate over the last full window, or the rate so far in the current window if it has
+	 * run longer than a full one without a tick closing it, such as when the Simulation is stopped
+	 */
+	double ticksPerSecond(long now) {
+		long start = windowStart_;
+		if(start == 0)
+			return 0.0;
+		
+		double rate = tickRate_;
+		long elapsed = now - start;
+		if(rate < 0 || elapsed >= RATE_WINDOW_NANOS)
+			return elapsed > 0 ? (ticks_ - windowTicks_) * 1e9 / elapsed : 0.0;
+		return rate;
+	}
+	
+	/**
+	 * Registers these metrics with the platform MBean server so they can be read with tools such as
+	 * JConsole
+	 * @param name The name to register under, such as the name of the circuit
+	 * @return The ObjectName registered
+	 * @throws JMException If the name is invalid or already registered
+	 */
+	public synchronized ObjectName register(String name) throws JMException {
+		if(objectName_ != null)
+			throw new IllegalStateException("Metrics are already registered as " + objectName_);
+		
+		ObjectName objectName = new ObjectName(DOMAIN + ":type=Simulation,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		objectName_ = objectName;
+		return objectName;
+	}
+	
+	/**
+	 * Removes these metrics from the platform MBean server if they were registered
+	 * @throws JMException If the server refuses
+	 */
+	public synchronized void unregister() throws JMException {
+		if(objectName_ != null) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName_);
+			objectName_ = null;
+		}
+	}
+	
+	@Override
+	public long getTicks() {
+		return ticks_;
+	}
+	
+	@Override
+	public long getGatesEvaluated() {
+		return gatesEvaluated_;
+	}
+	
+	@Override
+	public long getGatesPerTickP50() {
+		return gatesPerTick_.percentile(0.5);
+	}
+	
+	@Override
+	public long getGatesPerTickP99() {
+		return gatesPerTick_.percentile(0.99);
+	}
+	
+	@Override
+	public long getNetsPropagated() {
+		return netsPropagated_;
+	}
+	
+	@Override
+	public long getNetsPerTickP50() {
+		return netsPerTick_.percentile(0.5);
+	}
+	
+	@Override
+	public long getNetsPerTickP99() {
+		return netsPerTick_.percentile(0.99);
+	}
+	
+	@Override
+	public long getPeakQueueDepth() {
+		return peakQueueDepth_;
+	}
+	
+	@Override
+	public long getTickLatencyP50Nanos() {
+		return latency_.percentile(0.5);
+	}
+	
+	@Override
+	public long getTickLatencyP99Nanos() {
+		return latency_.percentile(0.99);
+	}
+	
+	@Override
+	public long getTickLatencyMaxNanos() {
+		return latency_.getMax();
+	}
+	
+	@Override
+	public double getTicksPerSecond() {
+		return ticksPerSecond(System.nanoTime());
+	}
+	
+	@Override
+	public long getRepaintRequests() {
+		return repaints_;
+	}
+	
+	@Override
+	public String[] getEnabledMetrics() {
+		List<String> names = new ArrayList<>();
+		for(Metric metric : Metric.values()) {
+			if(isEnabled(metric))
+				names.add(metric.name());
+		}
+		return names.toArray(new String[0]);
+	}
+	
+	@Override
+	public void enable(String metric) {
+		setEnabled(Metric.valueOf(metric), true);
+	}
+	
+	@Override
+	public void disable(String metric) {
+		setEnabled(Metric.valueOf(metric), false);
+	}
+	
+	/**
+	 * Zeroes every counter and histogram. If called while the Simulation is ticking, that tick's
+	 * values may be only partly cleared.
+	 */
+	@Override
+	public synchronized void reset() {
+		ticks_ = 0;
+		gatesEvaluated_ = 0;
+		gatesPerTick_.clear();
+		netsPropagated_ = 0;
+		netsPerTick_.clear();
+		peakQueueDepth_ = 0;
+		latency_.clear();
+		windowStart_ = 0;
+		windowTicks_ = 0;
+		tickRate_ = -1;
+		repaints_ = 0;
+	}
+}
@@ -0,0 +1,93 @@
+package common.sim;
+
+/**
+ * The JMX view of a {@link SimulationMetrics}, every attribute is read from the live counters
+ */
+public interface SimulationMetricsMBean {
+	/**
+	 * @return The number of ticks recorded
+	 */
+	public long getTicks();
+	
+	/**
+	 * @return The number of Gates evaluated over all recorded ticks
+	 */
+	public long getGatesEvaluated();
+	
+	/**
+	 * @return The median number of Gates evaluated in a tick
+	 */
+	public long getGatesPerTickP50();
+	
+	/**
+	 * @return The 99th percentile of Gates evaluated in a tick
+	 */
+	public long getGatesPerTickP99();
+	
+	/**
+	 * @return The number of Nets propagated over all recorded ticks
+	 */
+	public long getNetsPropagated();
+	
+	/**
+	 * @return The median number of Nets propagated in a tick
+	 */
+	public long getNetsPerTickP50();
+	
+	/**
+	 * @return The 99th percentile of Nets propagated in a tick
+	 */
+	public long getNetsPerTickP99();
+	
+	/**
+	 * @return The deepest net or gate queue drained in a single tick
+	 */
+	public long getPeakQueueDepth();
+	
+	/**
+	 * @return The median wall time of a tick in nanoseconds
+	 */
+	public long getTickLatencyP50Nanos();
+	
+	/**
+	 * @return The 99th percentile wall time of a tick in nanoseconds
+	 */
+	public long getTickLatencyP99Nanos();
+	
+	/**
+	 * @return The longest wall time of a tick in nanoseconds
+	 */
+	public long getTickLatencyMaxNanos();
+	
+	/**
+	 * @return The number of ticks run per second over the last measuring window
+	 */
+	public double getTicksPerSecond();
+	
+	/**
+	 * @return The number of repaints the Simulation asked for
+	 */
+	public long getRepaintRequests();
+	
+	/**
+	 * @return The names of the {@link Metric}s being recorded
+	 */
+	public String[] getEnabledMetrics();
+	
+	/**
+	 * Starts recording a Metric
+	 * @param metric The name of a {@link Metric}
+	 */
+	public void enable(String metric);
+	
+	/**
+	 * Stops recording a Metric, its values are kept until {@link SimulationMetricsMBean#reset()}
+	 * @param metric The name of a {@link Metric}
+	 */
+	public void disable(String metric);
+	
+	/**
+	 * Zeroes every counter and histogram
+	 */
+	public void reset();
+}
@@ -0,0 +1,97 @@
+package common.sim;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many independent Simulations on a shared executor. A Simulation is only ever ticked by one
+ * task at a time, so each one should be submitted at most once until its Future completes.
+ */
+public class SimulationPool {
+	/**
+	 * The executor Simulations are run on
+	 */
+	private final ExecutorService executor_;
+	
+	/**
+	 * Whether {@link SimulationPool#executor_} was created by this pool and should be shut down by it
+	 */
+	private final boolean ownsExecutor_;
+	
+	/**
+	 * Creates a pool with one thread per available processor
+	 */
+	public SimulationPool() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Creates a pool with a fixed number of threads
+	 * @param threads The number of threads to run Simulations on
+	 */
+	public SimulationPool(int threads) {
+		executor_ = Executors.newFixedThreadPool(threads);
+		ownsExecutor_ = true;
+	}
+	
+	/**
+	 * Creates a pool that runs on an existing executor, which is left running by {@link SimulationPool#shutdown()}
+	 * @param executor {@link SimulationPool#executor_}
+	 */
+	public SimulationPool(ExecutorService executor) {
+		executor_ = executor;
+		ownsExecutor_ = false;
+	}
+	
+	/**
+	 * Ticks a Simulation a fixed number of times on the pool
+	 * @param simulation The Simulation to run
+	 * @param ticks The number of ticks to run
+	 * @return A Future that completes with simulation once it has been ticked
+	 */
+	public Future<Simulation> run(Simulation simulation, int ticks) {
+		return executor_.submit(new Callable<Simulation>() {
+			@Override
+			public Simulation call() {
+				for(int i = 0; i < ticks; ++i)
+					simulation.tick();
+				return simulation;
+			}
+		});
+	}
+	
+	/**
+	 * Ticks each Simulation a fixed number of times on the pool
+	 * @param simulations The Simulations to run
+	 * @param ticks The number of ticks to run each Simulation
+	 * @return One Future per Simulation, in iteration order
+	 */
+	public List<Future<Simulation>> runAll(Collection<Simulation> simulations, int ticks) {
+		List<Future<Simulation>> futures = new ArrayList<>(simulations.size());
+		for(Simulation simulation : simulations)
+			futures.add(run(simulation, ticks));
+		return futures;
+	}
+	
+	/**
+	 * Runs an arbitrary task on the pool, such as building a circuit, driving its inputs and checking its outputs
+	 * @param task The task to run
+	 * @return A Future for the task's result
+	 */
+	public <T> Future<T> submit(Callable<T> task) {
+		return executor_.submit(task);
+	}
+	
+	/**
+	 * Stops accepting new work and lets queued Simulations finish
+	 */
+	public void shutdown() {
+		if(ownsExecutor_)
+			executor_.shutdown();
+	}
+}
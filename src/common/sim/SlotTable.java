@@ -0,0 +1,90 @@
+package common.sim;
+
+import java.util.Arrays;
+
+/**
+ * Assigns objects small integer indices that are reused after removal so they can be referred to
+ * from primitive arrays
+ * @param <T> The type of object stored
+ */
+class SlotTable<T> {
+	/**
+	 * The object in each slot, or null if the slot is free
+	 */
+	private Object[] items_;
+	
+	/**
+	 * A stack of freed slots
+	 */
+	private int[] free_;
+	
+	/**
+	 * The number of slots in {@link SlotTable#free_}
+	 */
+	private int freeCount_;
+	
+	/**
+	 * One past the highest slot ever handed out
+	 */
+	private int limit_;
+	
+	SlotTable() {
+		items_ = new Object[16];
+		free_ = new int[16];
+	}
+	
+	/**
+	 * Puts an object into a free slot
+	 * @param item The object to store
+	 * @return The slot it was stored in
+	 */
+	int add(T item) {
+		int slot;
+		if(freeCount_ > 0)
+			slot = free_[--freeCount_];
+		else {
+			slot = limit_++;
+			if(slot == items_.length)
+				items_ = Arrays.copyOf(items_, items_.length * 2);
+		}
+		
+		items_[slot] = item;
+		return slot;
+	}
+	
+	/**
+	 * Frees a slot so it can be reused
+	 * @param slot The slot to free
+	 */
+	void remove(int slot) {
+		items_[slot] = null;
+		if(freeCount_ == free_.length)
+			free_ = Arrays.copyOf(free_, free_.length * 2);
+		free_[freeCount_++] = slot;
+	}
+	
+	/**
+	 * @param slot The slot to look up
+	 * @return The object in the slot, or null if it is free
+	 */
+	@SuppressWarnings("unchecked")
+	T get(int slot) {
+		return (T)items_[slot];
+	}
+	
+	/**
+	 * @return One past the highest slot in use, the size primitive arrays indexed by slot need
+	 */
+	int limit() {
+		return limit_;
+	}
+	
+	/**
+	 * Frees every slot
+	 */
+	void clear() {
+		Arrays.fill(items_, 0, limit_, null);
+		limit_ = 0;
+		freeCount_ = 0;
+	}
+}
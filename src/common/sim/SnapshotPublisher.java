@@ -0,0 +1,186 @@
+package common.sim;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes {@link StateSnapshot}s from the ticking thread to one reader thread through three
+ * buffers: the ticking thread fills the back one, the reader holds the front one and the middle one
+ * is the latest published. Publishing and taking both swap with the middle in one atomic step, so
+ * neither side waits on the other and nothing is allocated once the buffers have grown to fit.
+ * <p>
+ * Pin states are mirrored into a packed bitset as they change, so publishing copies words rather
+ * than visiting every Pin.
+ */
+class SnapshotPublisher {
+	/**
+	 * Set in {@link SnapshotPublisher#middle_} while it holds a snapshot the reader hasn't taken
+	 */
+	private static final int FRESH = 4;
+	
+	/**
+	 * The three buffers
+	 */
+	private final StateSnapshot[] buffers_;
+	
+	/**
+	 * The index of the middle buffer, with {@link SnapshotPublisher#FRESH} set if it is newer than
+	 * the front one
+	 */
+	private final AtomicInteger middle_;
+	
+	/**
+	 * The index of the buffer being filled, only touched by the ticking thread
+	 */
+	private int back_;
+	
+	/**
+	 * The index of the buffer held by the reader, only touched by the reader
+	 */
+	private int front_;
+	
+	/**
+	 * The current state of every Pin with a {@link Pin#snapshotIndex_}
+	 */
+	private long[] live_;
+	
+	/**
+	 * The Gates, first Pin indices, positions, Wires and hit-testing index put into every snapshot
+	 * until the next edit
+	 */
+	private Gate[] gates_;
+	private int[] pinStart_;
+	private long[] gatePositions_;
+	private Wire[] wires_;
+	private long[] wireStarts_;
+	private long[] wireEnds_;
+	private SpatialIndex<Gate> gateIndex_;
+	
+	/**
+	 * Whether Gates or Wires were added or removed since the layout was built
+	 */
+	private boolean layoutStale_;
+	
+	/**
+	 * Whether a Pin changed state since the last snapshot was published
+	 */
+	private boolean changed_;
+	
+	SnapshotPublisher() {
+		buffers_ = new StateSnapshot[] { new StateSnapshot(), new StateSnapshot(), new StateSnapshot() };
+		middle_ = new AtomicInteger(0);
+		back_ = 1;
+		front_ = 2;
+		live_ = new long[0];
+		layoutStale_ = true;
+		changed_ = false;
+	}
+	
+	/**
+	 * Records a Pin's new state
+	 * @param pin The Pin that changed
+	 */
+	void pinChanged(Pin pin) {
+		int p = pin.snapshotIndex_;
+		if(p >= 0) {
+			if(pin.getState())
+				live_[p >>> 6] |= 1L << p;
+			else
+				live_[p >>> 6] &= ~(1L << p);
+		}
+		changed_ = true;
+	}
+	
+	/**
+	 * Makes the next snapshot list the Gates and Wires again, called after they are added, removed
+	 * or moved
+	 */
+	void invalidateLayout() {
+		layoutStale_ = true;
+	}
+	
+	/**
+	 * Publishes the current state if anything changed since the last snapshot
+	 * @param tick The number of ticks run
+	 * @param gates Every Gate in the sim
+	 * @param wires Every Wire in the sim
+	 */
+	void publish(int tick, List<Gate> gates, List<Wire> wires) {
+		if(layoutStale_)
+			buildLayout(gates, wires);
+		else if(!changed_)
+			return;
+		changed_ = false;
+		
+		StateSnapshot back = buffers_[back_];
+		back.tick_ = tick;
+		back.gates_ = gates_;
+		back.pinStart_ = pinStart_;
+		back.gatePositions_ = gatePositions_;
+		back.wires_ = wires_;
+		back.wireStarts_ = wireStarts_;
+		back.wireEnds_ = wireEnds_;
+		back.gateIndex_ = gateIndex_;
+		if(back.states_.length < live_.length)
+			back.states_ = new long[live_.length];
+		System.arraycopy(live_, 0, back.states_, 0, live_.length);
+		
+		back_ = middle_.getAndSet(back_ | FRESH) & ~FRESH;
+	}
+	
+	/**
+	 * Lists the Gates and Wires for the coming snapshots with their positions, numbering their Pins
+	 * and reading in their states. The hit-testing index is built afresh rather than updated since the reader may still be
+	 * using the last one.
+	 */
+	private void buildLayout(List<Gate> gates, List<Wire> wires) {
+		layoutStale_ = false;
+		gates_ = gates.toArray(new Gate[gates.size()]);
+		wires_ = wires.toArray(new Wire[wires.size()]);
+		gateIndex_ = new SpatialIndex<>();
+		gatePositions_ = new long[gates_.length];
+		for(int g = 0; g < gates_.length; ++g) {
+			Gate gate = gates_[g];
+			gatePositions_[g] = gate.getPosition();
+			gateIndex_.add(gate, gate.getX(), gate.getY(), gate.getX()+gate.getWidth(), gate.getY()+gate.getHeight());
+		}
+		wireStarts_ = new long[wires_.length];
+		wireEnds_ = new long[wires_.length];
+		for(int w = 0; w < wires_.length; ++w) {
+			wireStarts_[w] = wires_[w].getStart();
+			wireEnds_[w] = wires_[w].getEnd();
+		}
+		pinStart_ = new int[gates_.length + 1];
+		int p = 0;
+		for(int g = 0; g < gates_.length; ++g) {
+			pinStart_[g] = p;
+			p += gates_[g].getPins().length;
+		}
+		pinStart_[gates_.length] = p;
+		
+		if(live_.length < (p + 63) >>> 6)
+			live_ = new long[(p + 63) >>> 6];
+		else
+			Arrays.fill(live_, 0);
+		p = 0;
+		for(Gate gate : gates_) {
+			for(Pin pin : gate.getPins()) {
+				pin.snapshotIndex_ = p;
+				if(pin.getState())
+					live_[p >>> 6] |= 1L << p;
+				++p;
+			}
+		}
+	}
+	
+	/**
+	 * Takes the latest published snapshot, only called from the reader thread
+	 * @return The snapshot, which stays the same until the next call
+	 */
+	StateSnapshot take() {
+		if((middle_.get() & FRESH) != 0)
+			front_ = middle_.getAndSet(front_) & ~FRESH;
+		return buffers_[front_];
+	}
+}
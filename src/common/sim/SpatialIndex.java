@@ -0,0 +1,204 @@
+package common.sim;
+
+import java.util.Arrays;
+
+/**
+ * Buckets objects by the {@link SpatialIndex#CELL_SIZE} cells their bounds cover so that looking up
+ * what is at a point only has to check the objects in one cell. Within a bucket objects are kept in the
+ * order they were added.
+ * @param <T> The type of object indexed
+ */
+class SpatialIndex<T> {
+	/**
+	 * Marks an unused entry in {@link SpatialIndex#keys_}, no cell within int range packs to it
+	 */
+	private static final long EMPTY = Long.MIN_VALUE;
+	
+	/**
+	 * The width and height of a cell, a few {@link Constants#GRIDSIZE} squares so that a Gate covers
+	 * at most four cells while a cell still only holds a handful of objects
+	 */
+	static final int CELL_SIZE = 8 * Constants.GRIDSIZE;
+	
+	/**
+	 * Packed cell coordinates of each hash table entry
+	 */
+	private long[] keys_;
+	
+	/**
+	 * The objects in each cell, packed at the front of the array and followed by nulls
+	 */
+	private Object[][] buckets_;
+	
+	/**
+	 * The number of entries in use in {@link SpatialIndex#keys_}
+	 */
+	private int used_;
+	
+	SpatialIndex() {
+		keys_ = emptyKeys(64);
+		buckets_ = new Object[64][];
+		used_ = 0;
+	}
+	
+	/**
+	 * Adds an object to every cell covered by a rectangle
+	 * @param item The object to add
+	 * @param minX The left edge of the rectangle
+	 * @param minY The top edge of the rectangle
+	 * @param maxX The right edge of the rectangle, inclusive
+	 * @param maxY The bottom edge of the rectangle, inclusive
+	 */
+	void add(T item, int minX, int minY, int maxX, int maxY) {
+		int maxCellX = cell(maxX);
+		int maxCellY = cell(maxY);
+		for(int cx = cell(minX); cx <= maxCellX; ++cx) {
+			for(int cy = cell(minY); cy <= maxCellY; ++cy)
+				addToCell(item, pack(cx, cy));
+		}
+	}
+	
+	/**
+	 * Removes an object from every cell covered by a rectangle
+	 * @param item The object to remove
+	 * @param minX The left edge of the rectangle
+	 * @param minY The top edge of the rectangle
+	 * @param maxX The right edge of the rectangle, inclusive
+	 * @param maxY The bottom edge of the rectangle, inclusive
+	 */
+	void remove(T item, int minX, int minY, int maxX, int maxY) {
+		int maxCellX = cell(maxX);
+		int maxCellY = cell(maxY);
+		for(int cx = cell(minX); cx <= maxCellX; ++cx) {
+			for(int cy = cell(minY); cy <= maxCellY; ++cy)
+				removeFromCell(item, pack(cx, cy));
+		}
+	}
+	
+	/**
+	 * Looks up the objects whose bounds may contain a point
+	 * @param x The x position
+	 * @param y The y position
+	 * @return The bucket of the cell containing the point, read until the first null, or null if the
+	 * cell is empty. It must not be modified and is only valid until the next change to the index.
+	 */
+	Object[] bucketAt(int x, int y) {
+		int slot = find(pack(cell(x), cell(y)));
+		return slot < 0 ? null : buckets_[slot];
+	}
+	
+	/**
+	 * Removes everything from the index
+	 */
+	void clear() {
+		buckets_ = new Object[64][];
+		keys_ = emptyKeys(64);
+		used_ = 0;
+	}
+	
+	/**
+	 * @param position A position in the sim
+	 * @return The cell the position falls in
+	 */
+	static int cell(int position) {
+		return Math.floorDiv(position, CELL_SIZE);
+	}
+	
+	/**
+	 * @param capacity The number of entries
+	 * @return A key table with every entry {@link SpatialIndex#EMPTY}, filled before it is stored so
+	 * the index never holds a table of zeros
+	 */
+	private static long[] emptyKeys(int capacity) {
+		long[] keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		return keys;
+	}
+	
+	private static long pack(int cx, int cy) {
+		return ((long)cx << 32) | (cy & 0xFFFFFFFFL);
+	}
+	
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= key >>> 33;
+		return (int)key;
+	}
+	
+	/**
+	 * @return The table entry holding key, or -1
+	 */
+	private int find(long key) {
+		int mask = keys_.length - 1;
+		for(int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+			if(keys_[slot] == key)
+				return slot;
+			if(keys_[slot] == EMPTY)
+				return -1;
+		}
+	}
+	
+	private void addToCell(T item, long key) {
+		int slot = find(key);
+		if(slot < 0) {
+			if((used_ + 1) * 2 > keys_.length)
+				rehash(keys_.length * 2);
+			
+			int mask = keys_.length - 1;
+			slot = hash(key) & mask;
+			while(keys_[slot] != EMPTY)
+				slot = (slot + 1) & mask;
+			keys_[slot] = key;
+			buckets_[slot] = new Object[2];
+			++used_;
+		}
+		
+		Object[] bucket = buckets_[slot];
+		int count = 0;
+		while(count < bucket.length && bucket[count] != null)
+			++count;
+		if(count == bucket.length) {
+			bucket = Arrays.copyOf(bucket, bucket.length * 2);
+			buckets_[slot] = bucket;
+		}
+		bucket[count] = item;
+	}
+	
+	private void removeFromCell(T item, long key) {
+		int slot = find(key);
+		if(slot < 0)
+			return;
+		
+		//Emptied buckets stay in the table so there is no need for tombstones
+		Object[] bucket = buckets_[slot];
+		for(int i = 0; i < bucket.length && bucket[i] != null; ++i) {
+			if(bucket[i] == item) {
+				System.arraycopy(bucket, i + 1, bucket, i, bucket.length - i - 1);
+				bucket[bucket.length - 1] = null;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Moves the entries into a larger table, which is only stored once it is complete
+	 */
+	private void rehash(int capacity) {
+		long[] keys = emptyKeys(capacity);
+		Object[][] buckets = new Object[capacity][];
+		
+		int mask = capacity - 1;
+		for(int i = 0; i < keys_.length; ++i) {
+			if(keys_[i] != EMPTY) {
+				int slot = hash(keys_[i]) & mask;
+				while(keys[slot] != EMPTY)
+					slot = (slot + 1) & mask;
+				keys[slot] = keys_[i];
+				buckets[slot] = buckets_[i];
+			}
+		}
+		buckets_ = buckets;
+		keys_ = keys;
+	}
+}
@@ -0,0 +1,80 @@
+package common.sim;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the tick at which each state hash was first seen, using open addressing on primitive
+ * arrays so recording a tick doesn't allocate
+ */
+class StateHistory {
+	/**
+	 * The state hashes, a slot is empty when its {@link StateHistory#ticks_} entry is -1
+	 */
+	private long[] hashes_;
+	
+	/**
+	 * The tick each hash in {@link StateHistory#hashes_} was seen at
+	 */
+	private int[] ticks_;
+	
+	/**
+	 * The number of hashes stored
+	 */
+	private int size_;
+	
+	StateHistory() {
+		hashes_ = new long[64];
+		ticks_ = new int[64];
+		Arrays.fill(ticks_, -1);
+	}
+	
+	/**
+	 * Records a hash unless it has been seen before
+	 * @param hash The state hash
+	 * @param tick The tick the state was reached at
+	 * @return The tick the hash was first seen at, or -1 if it is new
+	 */
+	int record(long hash, int tick) {
+		if(size_ * 2 >= hashes_.length)
+			grow();
+		
+		int mask = hashes_.length - 1;
+		int i = mix(hash) & mask;
+		while(ticks_[i] >= 0) {
+			if(hashes_[i] == hash)
+				return ticks_[i];
+			i = (i + 1) & mask;
+		}
+		hashes_[i] = hash;
+		ticks_[i] = tick;
+		++size_;
+		return -1;
+	}
+	
+	/**
+	 * Forgets all recorded hashes
+	 */
+	void clear() {
+		if(size_ > 0) {
+			Arrays.fill(ticks_, -1);
+			size_ = 0;
+		}
+	}
+	
+	private void grow() {
+		long[] hashes = hashes_;
+		int[] ticks = ticks_;
+		hashes_ = new long[hashes.length * 2];
+		ticks_ = new int[ticks.length * 2];
+		Arrays.fill(ticks_, -1);
+		size_ = 0;
+		for(int i = 0; i < hashes.length; ++i) {
+			if(ticks[i] >= 0)
+				record(hashes[i], ticks[i]);
+		}
+	}
+	
+	private static int mix(long hash) {
+		return (int)(hash ^ (hash >>> 32));
+	}
+}
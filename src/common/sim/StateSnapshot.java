@@ -0,0 +1,168 @@
+package common.sim;
+
+/**
+ * The Gates, Wires and packed Pin states of a Simulation as of the end of one tick, published by
+ * the ticking thread for the renderer. A snapshot handed out by {@link Simulation#getSnapshot()}
+ * doesn't change until the reader asks for a newer one, so everything drawn from it belongs to the
+ * same tick.
+ */
+public final class StateSnapshot {
+	/**
+	 * The number of ticks run when the snapshot was taken
+	 */
+	int tick_;
+	
+	/**
+	 * The Gates of the sim, shared between snapshots until the circuit is edited
+	 */
+	Gate[] gates_;
+	
+	/**
+	 * The index into {@link StateSnapshot#states_} of each Gate's first Pin, with one extra entry at
+	 * the end
+	 */
+	int[] pinStart_;
+	
+	/**
+	 * The positions of {@link StateSnapshot#gates_} packed by {@link GridKey}, copied when the
+	 * layout was built so a Gate moved since is drawn where its states belong
+	 */
+	long[] gatePositions_;
+	
+	/**
+	 * The Wires of the sim, shared between snapshots until the circuit is edited
+	 */
+	Wire[] wires_;
+	
+	/**
+	 * The end points of {@link StateSnapshot#wires_} packed by {@link GridKey}, copied with the layout
+	 */
+	long[] wireStarts_;
+	long[] wireEnds_;
+	
+	/**
+	 * Buckets {@link StateSnapshot#gates_} by the grid cells they cover, built with the layout and
+	 * never changed afterwards so it can be hit-tested while the sim is edited
+	 */
+	SpatialIndex<Gate> gateIndex_;
+	
+	/**
+	 * The state of every Pin, one bit each in the order of {@link StateSnapshot#gates_}
+	 */
+	long[] states_;
+	
+	StateSnapshot() {
+		tick_ = 0;
+		gates_ = new Gate[0];
+		pinStart_ = new int[1];
+		gatePositions_ = new long[0];
+		wires_ = new Wire[0];
+		wireStarts_ = new long[0];
+		wireEnds_ = new long[0];
+		gateIndex_ = new SpatialIndex<>();
+		states_ = new long[0];
+	}
+	
+	/**
+	 * @return {@link StateSnapshot#tick_}
+	 */
+	public int getTick() {
+		return tick_;
+	}
+	
+	/**
+	 * @return The number of Gates
+	 */
+	public int getGateCount() {
+		return gates_.length;
+	}
+	
+	/**
+	 * @param index A Gate index, from 0 to {@link StateSnapshot#getGateCount()}
+	 * @return The Gate
+	 */
+	public Gate getGate(int index) {
+		return gates_[index];
+	}
+	
+	/**
+	 * @param index A Gate index
+	 * @return The position of the Gate's top left corner as of this snapshot, packed by {@link GridKey}
+	 */
+	public long getGatePosition(int index) {
+		return gatePositions_[index];
+	}
+	
+	/**
+	 * @param gate A Gate index
+	 * @param pin The index of one of the Gate's Pins
+	 * @return The state of the Pin
+	 */
+	public boolean getPinState(int gate, int pin) {
+		int p = pinStart_[gate] + pin;
+		return (states_[p >>> 6] & (1L << p)) != 0;
+	}
+	
+	/**
+	 * Copies the states of all of a Gate's Pins out
+	 * @param gate A Gate index
+	 * @param states The array to fill, at least as long as the Gate has Pins
+	 */
+	public void getPinStates(int gate, boolean[] states) {
+		int start = pinStart_[gate];
+		int count = pinStart_[gate + 1] - start;
+		for(int i = 0; i < count; ++i) {
+			int p = start + i;
+			states[i] = (states_[p >>> 6] & (1L << p)) != 0;
+		}
+	}
+	
+	/**
+	 * Attempts to locate a Gate at position p as of this snapshot
+	 * @param p The position to search for a Gate at, packed by {@link GridKey}
+	 * @return A Gate that exists at position p, null otherwise
+	 */
+	public Gate findGateAt(long p) {
+		return Simulation.findGateAt(gateIndex_, p);
+	}
+	
+	/**
+	 * Tries to find a Pin at position p as of this snapshot
+	 * @param p The position to search for a Pin at, packed by {@link GridKey}
+	 * @return A Pin that exists at position p, null otherwise
+	 */
+	public Pin findPinAt(long p) {
+		return Simulation.findPinAt(findGateAt(p), p);
+	}
+	
+	/**
+	 * @return The number of Wires
+	 */
+	public int getWireCount() {
+		return wires_.length;
+	}
+	
+	/**
+	 * @param index A Wire index, from 0 to {@link StateSnapshot#getWireCount()}
+	 * @return The Wire
+	 */
+	public Wire getWire(int index) {
+		return wires_[index];
+	}
+	
+	/**
+	 * @param index A Wire index
+	 * @return The start of the Wire as of this snapshot, packed by {@link GridKey}
+	 */
+	public long getWireStart(int index) {
+		return wireStarts_[index];
+	}
+	
+	/**
+	 * @param index A Wire index
+	 * @return The end of the Wire as of this snapshot, packed by {@link GridKey}
+	 */
+	public long getWireEnd(int index) {
+		return wireEnds_[index];
+	}
+}
@@ -0,0 +1,476 @@
+package common.sim;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.util.Arrays;
+
+/**
+ * A GateComponent whose behavior is another circuit. The body is compiled once into a
+ * {@link BitParallelSimulation} that every instance shares, the Gate/Wire objects of the body are
+ * never duplicated. Instances either run through that shared kernel, which settles the body to a
+ * steady state whenever an input changes so an instance behaves like a single Gate, or, while
+ * {@link Simulation#isFlatteningSubcircuits()} is set, are expanded into primitive gates by the
+ * compiled engine so every gate inside the body keeps a delay of one tick.
+ */
+public class SubcircuitComponent extends GateComponent {
+	/**
+	 * The most passes the kernel makes over a body with feedback before giving up on it settling
+	 */
+	private static final int MAX_PASSES = 64;
+	
+	/**
+	 * The distance between two pins on the same side
+	 */
+	private static final int PIN_SPACING = 2 * Constants.GRIDSIZE;
+	
+	/**
+	 * The width of every subcircuit
+	 */
+	private static final int WIDTH = 6 * Constants.GRIDSIZE;
+	
+	/**
+	 * The compiled body, shared by all instances
+	 */
+	private final BitParallelSimulation kernel_;
+	
+	/**
+	 * The kernel slot driven by each input port
+	 */
+	private final int[] inputSlots_;
+	
+	/**
+	 * The kernel slot read by each output port
+	 */
+	private final int[] outputSlots_;
+	
+	/**
+	 * Per-thread nets used to evaluate bodies without feedback, whose nets can be recomputed from the inputs
+	 */
+	private final ThreadLocal<long[]> scratch_;
+	
+	/**
+	 * The operations the body expands to when flattened, the kernel's operations followed by a
+	 * BUFFER for every output port that can't be driven straight from one of them
+	 */
+	private final LogicOp[] flatOps_;
+	
+	/**
+	 * The first pin of each flattened operation, relative to the instance's first pin
+	 */
+	private final int[] flatPinBase_;
+	
+	/**
+	 * The kernel slot each flattened pin carries, used to carry state in and out of the expansion
+	 */
+	private final int[] flatPinSlot_;
+	
+	/**
+	 * The flattened pin that stands in for each of the instance's own Pins
+	 */
+	private final int[] flatPortPins_;
+	
+	/**
+	 * The pins inside the body each input port reaches, input port i owns the range starting at
+	 * flatPortSinkStart_[i] and ending at flatPortSinkStart_[i + 1]
+	 */
+	private final int[] flatPortSinkStart_;
+	private final int[] flatPortSinks_;
+	
+	/**
+	 * The driver of each net inside the body and the pins it reaches, net n owns the range starting
+	 * at flatNetStart_[n] and ending at flatNetStart_[n + 1]
+	 */
+	private final int[] flatNetDriver_;
+	private final int[] flatNetStart_;
+	private final int[] flatNetSinks_;
+	
+	/**
+	 * Compiles a circuit into a subcircuit. Later edits to body are not seen.
+	 * @param name The name shown in the UI
+	 * @param description The description of how the subcircuit works
+	 * @param body The circuit to compile, every Gate in it needs a built-in {@link LogicOp}
+	 * @param inputs The output pins of the Switches or Buttons that become the input ports, in pin order
+	 * @param outputs The Pins whose state becomes the output ports, in pin order
+	 * @throws IllegalArgumentException If the body has custom logic or a port is unusable
+	 */
+	public SubcircuitComponent(String name, String description, Simulation body, Pin[] inputs, Pin[] outputs) {
+		super(name, description, new Dimension(WIDTH, PIN_SPACING * Math.max(1, Math.max(inputs.length, outputs.length))), createPins(inputs.length, outputs.length));
+		if(outputs.length == 0)
+			throw new IllegalArgumentException("A subcircuit needs at least one output");
+		
+		kernel_ = new BitParallelSimulation(body);
+		inputSlots_ = new int[inputs.length];
+		outputSlots_ = new int[outputs.length];
+		for(int i = 0; i < inputs.length; ++i) {
+			Pin pin = inputs[i];
+			if(pin.getType() != PinType.OUTPUT || pin.getGate().getGateComponent().getLogicOp() != LogicOp.NONE)
+				throw new IllegalArgumentException("Input " + i + " is not the output of a Switch or Button");
+			inputSlots_[i] = kernel_.slotOf(pin);
+			for(int j = 0; j < i; ++j) {
+				if(inputSlots_[j] == inputSlots_[i])
+					throw new IllegalArgumentException("Input " + i + " is already input " + j);
+			}
+		}
+		for(int o = 0; o < outputs.length; ++o)
+			outputSlots_[o] = kernel_.slotOf(outputs[o]);
+		
+		scratch_ = new ThreadLocal<long[]>() {
+			@Override
+			protected long[] initialValue() {
+				return kernel_.createValues();
+			}
+		};
+		
+		//Work out the flattened form once, every instance expands to the same gates and nets
+		int opCount = kernel_.getOpCount();
+		int slotCount = kernel_.getSlotCount();
+		int[] driverPin = new int[slotCount];
+		Arrays.fill(driverPin, -1);
+		
+		//An output port drives its Wires straight from the gate driving it unless that gate's output is
+		//already another port or there is no such gate, then a BUFFER stands in
+		boolean[] aliased = new boolean[opCount];
+		int[] outputOp = new int[outputs.length];
+		int[] driverOp = new int[slotCount];
+		Arrays.fill(driverOp, -1);
+		for(int k = 0; k < opCount; ++k)
+			driverOp[kernel_.getOutput(k)] = k;
+		
+		int bufferCount = 0;
+		for(int o = 0; o < outputs.length; ++o) {
+			int k = driverOp[outputSlots_[o]];
+			if(k >= 0 && !aliased[k]) {
+				aliased[k] = true;
+				outputOp[o] = k;
+			}
+			else {
+				outputOp[o] = opCount + bufferCount++;
+			}
+		}
+		
+		flatOps_ = new LogicOp[opCount + bufferCount];
+		flatPinBase_ = new int[opCount + bufferCount];
+		int pinCount = 0;
+		for(int k = 0; k < flatOps_.length; ++k) {
+			LogicOp op = k < opCount ? kernel_.getOp(k) : LogicOp.BUFFER;
+			flatOps_[k] = op;
+			flatPinBase_[k] = pinCount;
+			pinCount += op == LogicOp.BUFFER || op == LogicOp.NOT ? 2 : 3;
+		}
+		
+		//Each input port gets a pin of its own that only mirrors the instance's Pin, the Wires driving
+		//the port reach the gates inside directly
+		flatPinSlot_ = new int[pinCount + inputs.length];
+		int[] readerCount = new int[slotCount + 1];
+		for(int k = 0; k < flatOps_.length; ++k) {
+			int base = flatPinBase_[k];
+			if(k < opCount) {
+				boolean unary = flatOps_[k] == LogicOp.BUFFER || flatOps_[k] == LogicOp.NOT;
+				flatPinSlot_[base] = kernel_.getInputA(k);
+				if(!unary)
+					flatPinSlot_[base + 1] = kernel_.getInputB(k);
+				flatPinSlot_[base + (unary ? 1 : 2)] = kernel_.getOutput(k);
+				driverPin[kernel_.getOutput(k)] = base + (unary ? 1 : 2);
+			}
+		}
+		for(int o = 0; o < outputs.length; ++o) {
+			int k = outputOp[o];
+			if(k >= opCount) {
+				flatPinSlot_[flatPinBase_[k]] = outputSlots_[o];
+				flatPinSlot_[flatPinBase_[k] + 1] = outputSlots_[o];
+			}
+		}
+		
+		for(int k = 0; k < flatOps_.length; ++k) {
+			int base = flatPinBase_[k];
+			int last = base + (flatOps_[k] == LogicOp.BUFFER || flatOps_[k] == LogicOp.NOT ? 1 : 2);
+			for(int p = base; p < last; ++p) {
+				if(flatPinSlot_[p] != BitParallelSimulation.ZERO)
+					++readerCount[flatPinSlot_[p] + 1];
+			}
+		}
+		for(int slot = 0; slot < slotCount; ++slot)
+			readerCount[slot + 1] += readerCount[slot];
+		
+		int[] readers = new int[readerCount[slotCount]];
+		int[] cursor = Arrays.copyOf(readerCount, slotCount);
+		for(int k = 0; k < flatOps_.length; ++k) {
+			int base = flatPinBase_[k];
+			int last = base + (flatOps_[k] == LogicOp.BUFFER || flatOps_[k] == LogicOp.NOT ? 1 : 2);
+			for(int p = base; p < last; ++p) {
+				if(flatPinSlot_[p] != BitParallelSimulation.ZERO)
+					readers[cursor[flatPinSlot_[p]]++] = p;
+			}
+		}
+		
+		flatPortPins_ = new int[inputs.length + outputs.length];
+		flatPortSinkStart_ = new int[inputs.length + 1];
+		for(int i = 0; i < inputs.length; ++i) {
+			int slot = inputSlots_[i];
+			flatPortPins_[i] = pinCount + i;
+			flatPinSlot_[pinCount + i] = slot;
+			flatPortSinkStart_[i + 1] = flatPortSinkStart_[i] + readerCount[slot + 1] - readerCount[slot];
+		}
+		flatPortSinks_ = new int[flatPortSinkStart_[inputs.length]];
+		for(int i = 0; i < inputs.length; ++i) {
+			int slot = inputSlots_[i];
+			System.arraycopy(readers, readerCount[slot], flatPortSinks_, flatPortSinkStart_[i], readerCount[slot + 1] - readerCount[slot]);
+		}
+		for(int o = 0; o < outputs.length; ++o) {
+			int k = outputOp[o];
+			flatPortPins_[inputs.length + o] = flatPinBase_[k] + (flatOps_[k] == LogicOp.BUFFER || flatOps_[k] == LogicOp.NOT ? 1 : 2);
+		}
+		
+		//Nets driven by a gate inside the body, nets that are constant or driven by an input port have no driver here
+		int netCount = 0;
+		for(int slot = 0; slot < slotCount; ++slot) {
+			if(driverPin[slot] >= 0 && readerCount[slot + 1] > readerCount[slot])
+				++netCount;
+		}
+		flatNetDriver_ = new int[netCount];
+		flatNetStart_ = new int[netCount + 1];
+		int n = 0;
+		for(int slot = 0; slot < slotCount; ++slot) {
+			if(driverPin[slot] >= 0 && readerCount[slot + 1] > readerCount[slot]) {
+				flatNetDriver_[n] = driverPin[slot];
+				flatNetStart_[n + 1] = flatNetStart_[n] + readerCount[slot + 1] - readerCount[slot];
+				++n;
+			}
+		}
+		flatNetSinks_ = new int[flatNetStart_[netCount]];
+		n = 0;
+		for(int slot = 0; slot < slotCount; ++slot) {
+			if(driverPin[slot] >= 0 && readerCount[slot + 1] > readerCount[slot]) {
+				System.arraycopy(readers, readerCount[slot], flatNetSinks_, flatNetStart_[n], readerCount[slot + 1] - readerCount[slot]);
+				++n;
+			}
+		}
+	}
+	
+	/**
+	 * Lays the input ports out down the left edge and the output ports down the right edge
+	 * @param inputs The number of input ports
+	 * @param outputs The number of output ports
+	 * @return The PinComponents of the subcircuit, inputs first
+	 */
+	private static PinComponent[] createPins(int inputs, int outputs) {
+		PinComponent[] pins = new PinComponent[inputs + outputs];
+		for(int i = 0; i < inputs; ++i)
+			pins[i] = new PinComponent("I" + i, PinType.INPUT, true, new Point(0, PIN_SPACING / 2 + i * PIN_SPACING));
+		for(int o = 0; o < outputs; ++o)
+			pins[inputs + o] = new PinComponent("O" + o, PinType.OUTPUT, false, new Point(WIDTH, PIN_SPACING / 2 + o * PIN_SPACING));
+		return pins;
+	}
+	
+	/**
+	 * @return The number of input ports
+	 */
+	public int getInputCount() {
+		return inputSlots_.length;
+	}
+	
+	/**
+	 * @return The number of output ports
+	 */
+	public int getOutputCount() {
+		return outputSlots_.length;
+	}
+	
+	/**
+	 * @return True if the body has no feedback, so instances have no state of their own and many of
+	 * them can be evaluated by one pass of the kernel
+	 */
+	public boolean isCombinational() {
+		return kernel_.isAcyclic();
+	}
+	
+	/**
+	 * @return {@link SubcircuitComponent#kernel_}
+	 */
+	BitParallelSimulation getKernel() {
+		return kernel_;
+	}
+	
+	/**
+	 * @param i The input port
+	 * @return The kernel slot it drives
+	 */
+	int getInputSlot(int i) {
+		return inputSlots_[i];
+	}
+	
+	/**
+	 * @param o The output port
+	 * @return The kernel slot it reads
+	 */
+	int getOutputSlot(int o) {
+		return outputSlots_[o];
+	}
+	
+	/**
+	 * Evaluates the body for one instance. Bodies with feedback keep their nets in the Gate between
+	 * evaluations, the rest share per-thread scratch nets.
+	 */
+	@Override
+	public void performLogic(Pin[] pins) {
+		long[] values = getValues(pins[0].getGate());
+		for(int i = 0; i < inputSlots_.length; ++i)
+			values[inputSlots_[i]] = pins[i].getState() ? -1L : 0L;
+		kernel_.settle(values, MAX_PASSES);
+		
+		for(int o = 0; o < outputSlots_.length; ++o)
+			pins[inputSlots_.length + o].setState((values[outputSlots_[o]] & 1) != 0);
+	}
+	
+	/**
+	 * Evaluates the body for up to 64 instances at once, only valid if {@link SubcircuitComponent#isCombinational()}
+	 * @param inputs For each input port, bit l is its state in instance l
+	 * @param outputs Filled with, for each output port, bit l is its state in instance l
+	 */
+	void evaluate(long[] inputs, long[] outputs) {
+		long[] values = scratch_.get();
+		for(int i = 0; i < inputSlots_.length; ++i)
+			values[inputSlots_[i]] = inputs[i];
+		kernel_.settle(values, 1);
+		
+		for(int o = 0; o < outputSlots_.length; ++o)
+			outputs[o] = values[outputSlots_[o]];
+	}
+	
+	/**
+	 * @param gate An instance of this subcircuit
+	 * @return The nets of the instance's body, settled for its current inputs if the body has no feedback
+	 */
+	long[] getValues(Gate gate) {
+		if(kernel_.isAcyclic()) {
+			long[] values = scratch_.get();
+			Pin[] pins = gate.getPins();
+			for(int i = 0; i < inputSlots_.length; ++i)
+				values[inputSlots_[i]] = pins[i].getState() ? -1L : 0L;
+			kernel_.settle(values, 1);
+			return values;
+		}
+		
+		if(gate.bodyState_ == null)
+			gate.bodyState_ = kernel_.createValues();
+		return gate.bodyState_;
+	}
+	
+	/**
+	 * @return The number of primitive gates an instance expands to
+	 */
+	int getFlatGateCount() {
+		return flatOps_.length;
+	}
+	
+	/**
+	 * @return The number of pins an instance expands to
+	 */
+	int getFlatPinCount() {
+		return flatPinSlot_.length;
+	}
+	
+	/**
+	 * @return The number of nets inside the body of an instance
+	 */
+	int getFlatNetCount() {
+		return flatNetDriver_.length;
+	}
+	
+	/**
+	 * @param k The flattened gate
+	 * @return Its LogicOp
+	 */
+	LogicOp getFlatOp(int k) {
+		return flatOps_[k];
+	}
+	
+	/**
+	 * @param k The flattened gate
+	 * @return Its first pin, relative to the instance's first pin
+	 */
+	int getFlatPinBase(int k) {
+		return flatPinBase_[k];
+	}
+	
+	/**
+	 * @param p The flattened pin
+	 * @return The kernel slot it carries
+	 */
+	int getFlatPinSlot(int p) {
+		return flatPinSlot_[p];
+	}
+	
+	/**
+	 * @param n The net inside the body
+	 * @return The flattened pin driving it
+	 */
+	int getFlatNetDriver(int n) {
+		return flatNetDriver_[n];
+	}
+	
+	/**
+	 * @param n The net inside the body
+	 * @return The first of its sinks in {@link SubcircuitComponent#getFlatSink(int)}
+	 */
+	int getFlatNetStart(int n) {
+		return flatNetStart_[n];
+	}
+	
+	/**
+	 * @param n The net inside the body
+	 * @return One past the last of its sinks
+	 */
+	int getFlatNetEnd(int n) {
+		return flatNetStart_[n + 1];
+	}
+	
+	/**
+	 * @param i The sink
+	 * @return The flattened pin it reaches
+	 */
+	int getFlatSink(int i) {
+		return flatNetSinks_[i];
+	}
+	
+	/**
+	 * @param i The input port
+	 * @return The number of pins inside the body it reaches
+	 */
+	int getFlatPortSinkCount(int i) {
+		return flatPortSinkStart_[i + 1] - flatPortSinkStart_[i];
+	}
+	
+	/**
+	 * @param i The input port
+	 * @param j Which of the pins it reaches
+	 * @return The flattened pin
+	 */
+	int getFlatPortSink(int i, int j) {
+		return flatPortSinks_[flatPortSinkStart_[i] + j];
+	}
+	
+	/**
+	 * @param pin The index of one of the instance's own Pins
+	 * @return The flattened pin that stands in for it
+	 */
+	int getFlatPortPin(int pin) {
+		return flatPortPins_[pin];
+	}
+	
+	@Override
+	public void draw(Graphics g, boolean[] states) {
+		int width = getWidth();
+		int height = getHeight();
+		g.drawRect(Constants.GRIDSIZE, 0, width - 2 * Constants.GRIDSIZE, height);
+		for(PinComponent pin : getPins()) {
+			Point offset = pin.getOffset();
+			if(pin.getType() == PinType.INPUT)
+				g.drawLine(0, offset.y, Constants.GRIDSIZE, offset.y);
+			else
+				g.drawLine(width - Constants.GRIDSIZE, offset.y, width, offset.y);
+		}
+		g.drawString(getName(), Constants.GRIDSIZE + 3, height / 2 + 5);
+	}
+}
@@ -0,0 +1,603 @@
+package common.sim;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Records enough of a Simulation's past to rewind it to any tick since the last edit, see
+ * {@link Simulation#rewind(int)}. Every few ticks a keyframe is taken of the state of every Pin,
+ * the queued Gates and Nets, the Gates waiting on the timing wheel, the bodies of subcircuits
+ * with feedback and the insides of flattened subcircuits. In between, only the Pin changes made from outside a tick are recorded, such as
+ * a Switch being clicked or a scripted input. Since ticks are deterministic, rewinding restores the
+ * keyframe at or before the tick and replays those inputs up to it, which brings back the Pin
+ * states and queue contents exactly.
+ * <p>
+ * Keyframes only store the words of the packed Pin states that differ from the previous keyframe,
+ * with a full keyframe starting each group of {@link TickHistory#GROUP_SIZE}. When the recorded
+ * history grows past its memory budget the oldest group is dropped.
+ * <p>
+ * Adding or removing Gates or Wires starts the history over from the current tick. State held by
+ * custom GateComponents outside their Pins isn't recorded.
+ */
+public class TickHistory {
+	/**
+	 * The number of keyframes in each group, the first of which stores every Pin state
+	 */
+	private static final int GROUP_SIZE = 16;
+	
+	/**
+	 * The rough size of an object header and reference, used to estimate memory use
+	 */
+	private static final int OBJECT_BYTES = 16;
+	private static final int REFERENCE_BYTES = 8;
+	
+	/**
+	 * The inside of a flattened subcircuit instance: every pin in it and the work queued there
+	 */
+	static final class FlatBody {
+		/**
+		 * The instance
+		 */
+		final Gate gate_;
+		
+		/**
+		 * The state of every pin inside the instance
+		 */
+		long[] pins_;
+		
+		/**
+		 * The queued gates inside the instance, relative to its first gate
+		 */
+		int[] gates_;
+		int gateCount_;
+		
+		/**
+		 * The pins inside the instance driving queued nets, relative to its first pin
+		 */
+		int[] nets_;
+		int netCount_;
+		
+		FlatBody(Gate gate) {
+			gate_ = gate;
+			pins_ = new long[0];
+			gates_ = new int[4];
+			gateCount_ = 0;
+			nets_ = new int[4];
+			netCount_ = 0;
+		}
+		
+		/**
+		 * Trims the work arrays to their counts once the keyframe is taken
+		 */
+		void trim() {
+			gates_ = Arrays.copyOf(gates_, gateCount_);
+			nets_ = Arrays.copyOf(nets_, netCount_);
+		}
+		
+		/**
+		 * @return The rough number of bytes the body takes up
+		 */
+		long bytes() {
+			return OBJECT_BYTES * 4 + pins_.length * 8L + (gates_.length + nets_.length) * 4L;
+		}
+	}
+	
+	/**
+	 * The state of the sim at the start of one tick, after the inputs made before it
+	 */
+	private static final class Keyframe {
+		/**
+		 * The tick the keyframe was taken at
+		 */
+		final int tick_;
+		
+		/**
+		 * The number of inputs recorded before the keyframe was taken, counted since the history
+		 * started
+		 */
+		final long inputMark_;
+		
+		/**
+		 * Whether {@link Keyframe#words_} holds every nonzero word rather than the words that changed
+		 * since the previous keyframe
+		 */
+		final boolean full_;
+		
+		/**
+		 * The indices and values of the stored words of the packed Pin states
+		 */
+		int[] wordIndices_;
+		long[] words_;
+		
+		/**
+		 * The queued Gates and Nets
+		 */
+		Gate[] gates_;
+		Net[] nets_;
+		
+		/**
+		 * The Gates on the timing wheel and the ticks they are due at
+		 */
+		Gate[] delayed_;
+		int[] dues_;
+		
+		/**
+		 * The subcircuit instances holding body state and a copy of it
+		 */
+		Gate[] bodyGates_;
+		long[][] bodies_;
+		
+		/**
+		 * The insides of flattened subcircuit instances
+		 */
+		FlatBody[] flatBodies_;
+		
+		Keyframe(int tick, long inputMark, boolean full) {
+			tick_ = tick;
+			inputMark_ = inputMark;
+			full_ = full;
+		}
+		
+		/**
+		 * @return The rough number of bytes the keyframe takes up
+		 */
+		long bytes() {
+			long bytes = OBJECT_BYTES * 8 + wordIndices_.length * 12L;
+			bytes += (gates_.length + nets_.length + delayed_.length + bodyGates_.length) * (long)REFERENCE_BYTES + dues_.length * 4L;
+			for(long[] body : bodies_)
+				bytes += OBJECT_BYTES + body.length * 8L;
+			for(FlatBody body : flatBodies_)
+				bytes += REFERENCE_BYTES + body.bytes();
+			return bytes;
+		}
+	}
+	
+	/**
+	 * The number of ticks between keyframes
+	 */
+	private final int interval_;
+	
+	/**
+	 * The most bytes the history may hold before its oldest keyframes are dropped
+	 */
+	private final long budget_;
+	
+	/**
+	 * The Gates whose Pins the packed states cover, in order, fixed until the next edit
+	 */
+	private Gate[] layout_;
+	
+	/**
+	 * The number of Pins in {@link TickHistory#layout_}
+	 */
+	private int pinCount_;
+	
+	/**
+	 * Whether Gates or Wires were added or removed, so the history must start over
+	 */
+	private boolean stale_;
+	
+	/**
+	 * The keyframes, oldest first
+	 */
+	private final ArrayDeque<Keyframe> keyframes_;
+	
+	/**
+	 * The packed Pin states of the newest keyframe
+	 */
+	private long[] lastStates_;
+	
+	/**
+	 * The packed Pin states being put together for a keyframe or restored from one
+	 */
+	private long[] scratch_;
+	
+	/**
+	 * The Pins set from outside a tick, oldest first
+	 */
+	private Pin[] inputPins_;
+	
+	/**
+	 * The tick each input was made before, packed as tick << 2 | setInputState << 1 | state
+	 */
+	private long[] inputs_;
+	
+	/**
+	 * The number of inputs in {@link TickHistory#inputs_}
+	 */
+	private int inputCount_;
+	
+	/**
+	 * The number of inputs dropped from the front of {@link TickHistory#inputs_}
+	 */
+	private long inputBase_;
+	
+	/**
+	 * The estimated bytes held by the keyframes
+	 */
+	private long keyframeBytes_;
+	
+	/**
+	 * The pending work of the keyframe being taken
+	 */
+	private final List<Gate> pendingGates_;
+	private final List<Net> pendingNets_;
+	private final List<Gate> delayedGates_;
+	private int[] delayedDues_;
+	private final IdentityHashMap<Gate, FlatBody> flatBodies_;
+	
+	/**
+	 * Whether inputs are being replayed, which mustn't be recorded again
+	 */
+	private boolean replaying_;
+	
+	/**
+	 * @param interval {@link TickHistory#interval_}
+	 * @param budget {@link TickHistory#budget_}
+	 */
+	public TickHistory(int interval, long budget) {
+		if(interval <= 0)
+			throw new IllegalArgumentException("Keyframe interval must be positive: " + interval);
+		if(budget <= 0)
+			throw new IllegalArgumentException("Memory budget must be positive: " + budget);
+		
+		interval_ = interval;
+		budget_ = budget;
+		layout_ = new Gate[0];
+		pinCount_ = 0;
+		stale_ = true;
+		keyframes_ = new ArrayDeque<>();
+		lastStates_ = new long[0];
+		scratch_ = new long[0];
+		inputPins_ = new Pin[16];
+		inputs_ = new long[16];
+		inputCount_ = 0;
+		inputBase_ = 0;
+		keyframeBytes_ = 0;
+		pendingGates_ = new ArrayList<>();
+		pendingNets_ = new ArrayList<>();
+		delayedGates_ = new ArrayList<>();
+		delayedDues_ = new int[16];
+		flatBodies_ = new IdentityHashMap<>();
+		replaying_ = false;
+	}
+	
+	/**
+	 * @return {@link TickHistory#interval_}
+	 */
+	public int getKeyframeInterval() {
+		return interval_;
+	}
+	
+	/**
+	 * @return {@link TickHistory#budget_}
+	 */
+	public long getMemoryBudget() {
+		return budget_;
+	}
+	
+	/**
+	 * @return The estimated number of bytes the history holds
+	 */
+	public long getMemoryUsed() {
+		return keyframeBytes_ + inputs_.length * (8L + REFERENCE_BYTES) + lastStates_.length * 8L;
+	}
+	
+	/**
+	 * @return The earliest tick that can be rewound to, or -1 if nothing has been recorded yet
+	 */
+	public int getOldestTick() {
+		Keyframe oldest = keyframes_.peekFirst();
+		return oldest == null ? -1 : oldest.tick_;
+	}
+	
+	/**
+	 * @return The number of keyframes held
+	 */
+	public int getKeyframeCount() {
+		return keyframes_.size();
+	}
+	
+	/**
+	 * Makes the history start over at the next tick, called after Gates or Wires are added or removed
+	 */
+	void invalidate() {
+		stale_ = true;
+	}
+	
+	/**
+	 * Records a Pin set from outside a tick
+	 * @param tick The tick the input was made before
+	 * @param pin The Pin
+	 * @param input True if the Pin was set with {@link Pin#setInputState(boolean)}
+	 */
+	void recordInput(int tick, Pin pin, boolean input) {
+		if(stale_ || replaying_)
+			return;
+		
+		if(inputCount_ == inputs_.length) {
+			inputs_ = Arrays.copyOf(inputs_, inputs_.length * 2);
+			inputPins_ = Arrays.copyOf(inputPins_, inputPins_.length * 2);
+		}
+		inputPins_[inputCount_] = pin;
+		inputs_[inputCount_] = (long)tick << 2 | (input ? 2 : 0) | (pin.getState() ? 1 : 0);
+		++inputCount_;
+	}
+	
+	/**
+	 * Called at the start of each tick, after the inputs made before it, to start over after an edit
+	 * or take a keyframe once enough ticks have passed
+	 * @param simulation The Simulation being recorded
+	 * @param gates Every Gate in the sim
+	 */
+	void beforeTick(Simulation simulation, List<Gate> gates) {
+		int tick = simulation.getCurrentTick();
+		if(stale_) {
+			stale_ = false;
+			layout_ = gates.toArray(new Gate[gates.size()]);
+			pinCount_ = 0;
+			for(Gate gate : layout_)
+				pinCount_ += gate.getPins().length;
+			keyframes_.clear();
+			keyframeBytes_ = 0;
+			lastStates_ = new long[(pinCount_ + 63) >>> 6];
+			scratch_ = new long[lastStates_.length];
+			inputBase_ += inputCount_;
+			inputCount_ = 0;
+			Arrays.fill(inputPins_, null);
+		}
+		else {
+			Keyframe newest = keyframes_.peekLast();
+			if(newest != null && tick - newest.tick_ < interval_ && tick >= newest.tick_)
+				return;
+		}
+		
+		takeKeyframe(simulation, tick);
+		trim();
+	}
+	
+	/**
+	 * Adds a queued Gate to the keyframe being taken
+	 * @param gate The Gate
+	 */
+	void addPendingGate(Gate gate) {
+		pendingGates_.add(gate);
+	}
+	
+	/**
+	 * Adds a queued Net to the keyframe being taken
+	 * @param net The Net
+	 */
+	void addPendingNet(Net net) {
+		pendingNets_.add(net);
+	}
+	
+	/**
+	 * Adds a Gate on the timing wheel to the keyframe being taken
+	 * @param gate The Gate
+	 * @param due The tick it is due at
+	 */
+	void addDelayedGate(Gate gate, int due) {
+		if(delayedGates_.size() == delayedDues_.length)
+			delayedDues_ = Arrays.copyOf(delayedDues_, delayedDues_.length * 2);
+		delayedDues_[delayedGates_.size()] = due;
+		delayedGates_.add(gate);
+	}
+	
+	/**
+	 * Adds a queued gate inside a flattened subcircuit instance to the keyframe being taken
+	 * @param gate The instance
+	 * @param k The gate, relative to the instance's first gate
+	 */
+	void addPendingFlatGate(Gate gate, int k) {
+		FlatBody body = flatBodyOf(gate);
+		if(body.gateCount_ == body.gates_.length)
+			body.gates_ = Arrays.copyOf(body.gates_, body.gates_.length * 2);
+		body.gates_[body.gateCount_++] = k;
+	}
+	
+	/**
+	 * Adds a queued net inside a flattened subcircuit instance to the keyframe being taken
+	 * @param gate The instance
+	 * @param pin The pin driving the net, relative to the instance's first pin
+	 */
+	void addPendingFlatNet(Gate gate, int pin) {
+		FlatBody body = flatBodyOf(gate);
+		if(body.netCount_ == body.nets_.length)
+			body.nets_ = Arrays.copyOf(body.nets_, body.nets_.length * 2);
+		body.nets_[body.netCount_++] = pin;
+	}
+	
+	/**
+	 * Adds the state of every pin inside a flattened subcircuit instance to the keyframe being taken
+	 * @param gate The instance
+	 * @param pins The pin states
+	 */
+	void addFlatPins(Gate gate, long[] pins) {
+		flatBodyOf(gate).pins_ = pins;
+	}
+	
+	/**
+	 * @param gate A flattened subcircuit instance
+	 * @return Its body in the keyframe being taken, added if it isn't there yet
+	 */
+	private FlatBody flatBodyOf(Gate gate) {
+		FlatBody body = flatBodies_.get(gate);
+		if(body == null) {
+			body = new FlatBody(gate);
+			flatBodies_.put(gate, body);
+		}
+		return body;
+	}
+	
+	/**
+	 * Takes a keyframe of the current state, the Simulation hands over its pending work through
+	 * {@link TickHistory#addPendingGate(Gate)} and the like
+	 */
+	private void takeKeyframe(Simulation simulation, int tick) {
+		pendingGates_.clear();
+		pendingNets_.clear();
+		delayedGates_.clear();
+		flatBodies_.clear();
+		simulation.collectPending(this);
+		
+		boolean full = keyframes_.size() % GROUP_SIZE == 0;
+		Keyframe keyframe = new Keyframe(tick, inputBase_ + inputCount_, full);
+		keyframe.gates_ = pendingGates_.toArray(new Gate[pendingGates_.size()]);
+		keyframe.nets_ = pendingNets_.toArray(new Net[pendingNets_.size()]);
+		keyframe.delayed_ = delayedGates_.toArray(new Gate[delayedGates_.size()]);
+		keyframe.dues_ = Arrays.copyOf(delayedDues_, delayedGates_.size());
+		keyframe.flatBodies_ = flatBodies_.values().toArray(new FlatBody[flatBodies_.size()]);
+		for(FlatBody body : keyframe.flatBodies_)
+			body.trim();
+		flatBodies_.clear();
+		
+		List<Gate> bodyGates = new ArrayList<>();
+		List<long[]> bodies = new ArrayList<>();
+		long[] states = scratch_;
+		Arrays.fill(states, 0);
+		int p = 0;
+		for(Gate gate : layout_) {
+			for(Pin pin : gate.getPins()) {
+				if(pin.getState())
+					states[p >>> 6] |= 1L << p;
+				++p;
+			}
+			if(gate.bodyState_ != null) {
+				bodyGates.add(gate);
+				bodies.add(gate.bodyState_.clone());
+			}
+		}
+		keyframe.bodyGates_ = bodyGates.toArray(new Gate[bodyGates.size()]);
+		keyframe.bodies_ = bodies.toArray(new long[bodies.size()][]);
+		
+		int count = 0;
+		for(int i = 0; i < states.length; ++i) {
+			if((full ? states[i] : states[i] ^ lastStates_[i]) != 0)
+				++count;
+		}
+		keyframe.wordIndices_ = new int[count];
+		keyframe.words_ = new long[count];
+		count = 0;
+		for(int i = 0; i < states.length; ++i) {
+			long word = full ? states[i] : states[i] ^ lastStates_[i];
+			if(word != 0) {
+				keyframe.wordIndices_[count] = i;
+				keyframe.words_[count++] = word;
+			}
+		}
+		
+		scratch_ = lastStates_;
+		lastStates_ = states;
+		keyframes_.addLast(keyframe);
+		keyframeBytes_ += keyframe.bytes();
+	}
+	
+	/**
+	 * Drops the oldest groups of keyframes and the inputs before them while over budget, always
+	 * keeping the newest group
+	 */
+	private void trim() {
+		while(getMemoryUsed() > budget_ && keyframes_.size() > GROUP_SIZE) {
+			for(int i = 0; i < GROUP_SIZE; ++i)
+				keyframeBytes_ -= keyframes_.removeFirst().bytes();
+		}
+		
+		Keyframe oldest = keyframes_.peekFirst();
+		int drop = (int)(oldest.inputMark_ - inputBase_);
+		if(drop > 0) {
+			System.arraycopy(inputs_, drop, inputs_, 0, inputCount_ - drop);
+			System.arraycopy(inputPins_, drop, inputPins_, 0, inputCount_ - drop);
+			Arrays.fill(inputPins_, inputCount_ - drop, inputCount_, null);
+			inputCount_ -= drop;
+			inputBase_ += drop;
+		}
+	}
+	
+	/**
+	 * Puts the sim back the way it was at the start of a tick, after the inputs made before it, and
+	 * forgets everything recorded after that
+	 * @param simulation The Simulation being recorded, whose queues have been emptied
+	 * @param tick The tick to go back to
+	 */
+	void restore(Simulation simulation, int tick) {
+		if(stale_)
+			throw new IllegalStateException("The history starts over at the next tick after an edit");
+		if(keyframes_.isEmpty() || tick < keyframes_.peekFirst().tick_ || tick > simulation.getCurrentTick())
+			throw new IllegalArgumentException("Tick " + tick + " is not between " + getOldestTick() + " and " + simulation.getCurrentTick());
+		
+		//Find the keyframe to start from and the full keyframe its group starts with
+		List<Keyframe> group = new ArrayList<>();
+		Keyframe start = null;
+		Iterator<Keyframe> it = keyframes_.iterator();
+		while(it.hasNext()) {
+			Keyframe keyframe = it.next();
+			if(keyframe.tick_ > tick)
+				break;
+			if(keyframe.full_)
+				group.clear();
+			group.add(keyframe);
+			start = keyframe;
+		}
+		
+		long[] states = lastStates_;
+		Arrays.fill(states, 0);
+		for(Keyframe keyframe : group) {
+			for(int i = 0; i < keyframe.wordIndices_.length; ++i)
+				states[keyframe.wordIndices_[i]] ^= keyframe.words_[i];
+		}
+		
+		int p = 0;
+		for(Gate gate : layout_) {
+			for(Pin pin : gate.getPins()) {
+				boolean state = (states[p >>> 6] & (1L << p)) != 0;
+				if(pin.getState() != state)
+					pin.mirrorState(state);
+				++p;
+			}
+			gate.bodyState_ = null;
+		}
+		for(int i = 0; i < start.bodyGates_.length; ++i)
+			start.bodyGates_[i].bodyState_ = start.bodies_[i].clone();
+		
+		simulation.restorePending(start.tick_, start.gates_, start.nets_, start.delayed_, start.dues_, start.flatBodies_);
+		
+		//Forget the keyframes after the one restored, the inputs after it are replayed and then kept
+		while(keyframes_.peekLast() != start)
+			keyframeBytes_ -= keyframes_.removeLast().bytes();
+		
+		int next = (int)(start.inputMark_ - inputBase_);
+		replaying_ = true;
+		try {
+			while(true) {
+				while(next < inputCount_ && (int)(inputs_[next] >>> 2) <= simulation.getCurrentTick()) {
+					Pin pin = inputPins_[next];
+					boolean state = (inputs_[next] & 1) != 0;
+					if((inputs_[next] & 2) != 0)
+						pin.setInputState(state);
+					else
+						pin.setState(state);
+					++next;
+				}
+				if(simulation.getCurrentTick() >= tick)
+					break;
+				
+				int until = next < inputCount_ ? Math.min(tick, (int)(inputs_[next] >>> 2)) : tick;
+				simulation.replayTick(until);
+			}
+		} finally {
+			replaying_ = false;
+		}
+		
+		//Inputs made before later ticks never happened now
+		int keep = next;
+		while(keep < inputCount_ && (int)(inputs_[keep] >>> 2) <= tick)
+			++keep;
+		Arrays.fill(inputPins_, keep, inputCount_, null);
+		inputCount_ = keep;
+	}
+}
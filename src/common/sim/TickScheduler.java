@@ -0,0 +1,319 @@
+package common.sim;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ticks a Simulation on a dedicated thread. How it ticks can be switched while it is running:
+ * as fast as possible, at a fixed frequency, in batches of ticks at a fixed frequency, or not at
+ * all except when single-stepped. Other threads make their edits through
+ * {@link Simulation#post(Runnable)}, which wakes the thread to run them between ticks.
+ */
+public class TickScheduler {
+	/**
+	 * The ways the scheduler can tick
+	 */
+	public enum Mode
+	{
+		/**
+		 * Tick back to back as fast as the CPU allows
+		 */
+		FREE_RUN,
+		
+		/**
+		 * Tick once every 1/frequency seconds
+		 */
+		FIXED_RATE,
+		
+		/**
+		 * Run a batch of ticks every 1/frequency seconds
+		 */
+		BATCHED,
+		
+		/**
+		 * Only tick when {@link TickScheduler#step()} is called
+		 */
+		PAUSED
+	}
+	
+	/**
+	 * How far behind schedule a fixed rate may fall before the missed ticks are dropped instead of
+	 * being caught up
+	 */
+	private static final long MAX_LAG_NANOS = 1000000000L;
+	
+	/**
+	 * How often {@link TickScheduler#ticksPerSecond_} is recalculated
+	 */
+	private static final long RATE_WINDOW_NANOS = 500000000L;
+	
+	/**
+	 * The Simulation being ticked
+	 */
+	private final Simulation simulation_;
+	
+	/**
+	 * The current mode
+	 */
+	private volatile Mode mode_;
+	
+	/**
+	 * Wakeups per second in {@link Mode#FIXED_RATE} and {@link Mode#BATCHED}
+	 */
+	private volatile double frequency_;
+	
+	/**
+	 * Ticks per wakeup in {@link Mode#BATCHED}
+	 */
+	private volatile int batchSize_;
+	
+	/**
+	 * Set when the frequency changes so the ticking thread drops the deadline it was waiting for,
+	 * which was worked out from the old period
+	 */
+	private volatile boolean rescheduled_;
+	
+	/**
+	 * Ticks requested by {@link TickScheduler#step()} that have not run yet, guarded by this
+	 */
+	private int pendingSteps_;
+	
+	/**
+	 * The thread ticks run on, null while stopped
+	 */
+	private volatile Thread thread_;
+	
+	/**
+	 * The number of ticks per second achieved over the last measurement window
+	 */
+	private volatile double ticksPerSecond_;
+	
+	/**
+	 * Creates a stopped scheduler ticking at 1 kHz
+	 * @param simulation {@link TickScheduler#simulation_}
+	 */
+	public TickScheduler(Simulation simulation) {
+		simulation_ = simulation;
+		mode_ = Mode.FIXED_RATE;
+		frequency_ = 1000;
+		batchSize_ = 100;
+		pendingSteps_ = 0;
+		rescheduled_ = false;
+		ticksPerSecond_ = 0;
+	}
+	
+	/**
+	 * @return {@link TickScheduler#mode_}
+	 */
+	public Mode getMode() {
+		return mode_;
+	}
+	
+	/**
+	 * Switches mode, taking effect immediately
+	 * @param mode {@link TickScheduler#mode_}
+	 */
+	public void setMode(Mode mode) {
+		mode_ = mode;
+		wake();
+	}
+	
+	/**
+	 * @return {@link TickScheduler#frequency_}
+	 */
+	public double getFrequency() {
+		return frequency_;
+	}
+	
+	/**
+	 * Changes the frequency, taking effect immediately rather than after the wait already scheduled
+	 * at the old one
+	 * @param frequency {@link TickScheduler#frequency_}
+	 */
+	public void setFrequency(double frequency) {
+		if(frequency <= 0)
+			throw new IllegalArgumentException("Frequency must be positive: " + frequency);
+		if(frequency == frequency_)
+			return;
+		
+		frequency_ = frequency;
+		rescheduled_ = true;
+		wake();
+	}
+	
+	/**
+	 * @return {@link TickScheduler#batchSize_}
+	 */
+	public int getBatchSize() {
+		return batchSize_;
+	}
+	
+	/**
+	 * @param batchSize {@link TickScheduler#batchSize_}
+	 */
+	public void setBatchSize(int batchSize) {
+		if(batchSize <= 0)
+			throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+		batchSize_ = batchSize;
+	}
+	
+	/**
+	 * @return {@link TickScheduler#ticksPerSecond_}
+	 */
+	public double getTicksPerSecond() {
+		return ticksPerSecond_;
+	}
+	
+	/**
+	 * Runs a single tick on the scheduler's thread, normally used while {@link Mode#PAUSED}
+	 */
+	public void step() {
+		synchronized(this) {
+			++pendingSteps_;
+		}
+		wake();
+	}
+	
+	/**
+	 * Starts the ticking thread if it isn't already running
+	 */
+	public synchronized void start() {
+		if(thread_ != null)
+			return;
+		
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				runLoop();
+			}
+		}, "Simulation ticks");
+		thread.setDaemon(true);
+		thread_ = thread;
+		simulation_.setCommandWakeup(new Runnable() {
+			@Override
+			public void run() {
+				wake();
+			}
+		});
+		thread.start();
+	}
+	
+	/**
+	 * Stops the ticking thread, waiting for the current tick to finish
+	 */
+	public void stop() {
+		Thread thread;
+		synchronized(this) {
+			thread = thread_;
+			thread_ = null;
+			simulation_.setCommandWakeup(null);
+			notifyAll();
+		}
+		
+		if(thread != null) {
+			LockSupport.unpark(thread);
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Wakes the ticking thread so it notices a change of settings or a posted command
+	 */
+	private void wake() {
+		synchronized(this) {
+			notifyAll();
+		}
+		Thread thread = thread_;
+		if(thread != null)
+			LockSupport.unpark(thread);
+	}
+	
+	/**
+	 * Ticks until stopped. Commands posted to the Simulation run at the top of every pass, so edits
+	 * show up while paused or waiting for the next tick, and nothing is locked while ticking.
+	 */
+	private void runLoop() {
+		Thread self = Thread.currentThread();
+		long deadline = System.nanoTime();
+		long windowStart = deadline;
+		long windowTicks = 0;
+		
+		while(thread_ == self) {
+			simulation_.runCommands();
+			Mode mode = mode_;
+			int ticks = takeSteps();
+			
+			switch(mode) {
+				case FREE_RUN:
+					++ticks;
+					break;
+				case FIXED_RATE:
+				case BATCHED:
+					long period = (long)(1e9 / frequency_);
+					long now = System.nanoTime();
+					//A period just changed, so restart the schedule from now instead of sleeping out the
+					//old one, which at a low frequency could be many seconds
+					if(rescheduled_) {
+						rescheduled_ = false;
+						deadline = now;
+					}
+					if(now < deadline) {
+						if(ticks == 0) {
+							LockSupport.parkNanos(this, deadline - now);
+							continue;
+						}
+						break;
+					}
+					
+					ticks += mode == Mode.BATCHED ? batchSize_ : 1;
+					//Schedule from the previous deadline rather than now so the rate doesn't drift
+					deadline += period;
+					if(now - deadline > MAX_LAG_NANOS)
+						deadline = now + period;
+					break;
+				default:
+					if(ticks == 0) {
+						synchronized(this) {
+							while(thread_ == self && mode_ == Mode.PAUSED && pendingSteps_ == 0 && !simulation_.hasCommands()) {
+								try {
+									wait();
+								} catch (InterruptedException e) {
+									return;
+								}
+							}
+						}
+						deadline = System.nanoTime();
+						continue;
+					}
+					break;
+			}
+			
+			for(int i = 0; i < ticks; ++i)
+				simulation_.tick();
+			
+			//Free running has no wall-clock meaning to keep, so ticks spent waiting on delays are skipped
+			if(mode == Mode.FREE_RUN)
+				ticks += simulation_.skipIdle(Integer.MAX_VALUE);
+			
+			windowTicks += ticks;
+			long now = System.nanoTime();
+			if(now - windowStart >= RATE_WINDOW_NANOS) {
+				ticksPerSecond_ = windowTicks * 1e9 / (now - windowStart);
+				windowStart = now;
+				windowTicks = 0;
+			}
+		}
+	}
+	
+	/**
+	 * @return The number of pending single steps, which are cleared
+	 */
+	private synchronized int takeSteps() {
+		int steps = pendingSteps_;
+		pendingSteps_ = 0;
+		return steps;
+	}
+}
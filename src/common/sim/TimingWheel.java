@@ -0,0 +1,313 @@
+package common.sim;
+
+import java.util.Arrays;
+
+/**
+ * A hierarchical timing wheel of primitive indices, each due at a future tick. Level 0 has a slot
+ * per tick of the current 64-tick block, each higher level has a slot per block of the level below,
+ * and entries cascade down a level as the wheel reaches their block. Scheduling and polling are O(1)
+ * and ticks with nothing due can be skipped with {@link TimingWheel#nextDue()}.
+ */
+class TimingWheel {
+	/**
+	 * The number of tick bits each level covers
+	 */
+	private static final int BITS = 6;
+	
+	/**
+	 * The number of slots in each level
+	 */
+	private static final int SLOTS = 1 << BITS;
+	
+	/**
+	 * The number of levels, entries further out than they cover go in {@link TimingWheel#OVERFLOW}
+	 */
+	private static final int LEVELS = 4;
+	
+	/**
+	 * The slot holding entries beyond the last level
+	 */
+	private static final int OVERFLOW = LEVELS * SLOTS;
+	
+	/**
+	 * The odd multiplier raised to an entry's due tick in {@link TimingWheel#hash_}
+	 */
+	private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+	
+	/**
+	 * POWERS[k][b] is {@link TimingWheel#MULTIPLIER} raised to b * 256^k, so any power is the product
+	 * of one entry per byte of the exponent
+	 */
+	private static final long[][] POWERS = createPowers();
+	
+	/**
+	 * The indices in each slot
+	 */
+	private final int[][] items_;
+	
+	/**
+	 * The due tick of each entry in {@link TimingWheel#items_}
+	 */
+	private final int[][] dues_;
+	
+	/**
+	 * The number of entries in each slot
+	 */
+	private final int[] sizes_;
+	
+	/**
+	 * The tick the wheel was last advanced to, no entry is due before it
+	 */
+	private int now_;
+	
+	/**
+	 * The number of entries in the wheel
+	 */
+	private int size_;
+	
+	/**
+	 * The sum of key(index) * MULTIPLIER^due over every entry, which can be shifted to be relative to
+	 * any tick by {@link TimingWheel#relativeHash(int)}
+	 */
+	private long hash_;
+	
+	/**
+	 * @param now {@link TimingWheel#now_}
+	 */
+	TimingWheel(int now) {
+		items_ = new int[OVERFLOW + 1][];
+		dues_ = new int[OVERFLOW + 1][];
+		sizes_ = new int[OVERFLOW + 1];
+		now_ = now;
+	}
+	
+	/**
+	 * @return {@link TimingWheel#size_}
+	 */
+	int size() {
+		return size_;
+	}
+	
+	/**
+	 * @return True if nothing is scheduled
+	 */
+	boolean isEmpty() {
+		return size_ == 0;
+	}
+	
+	/**
+	 * Schedules an index, which is not deduplicated
+	 * @param item The index
+	 * @param due The tick the index is due at, no earlier than the last polled tick
+	 */
+	void schedule(int item, int due) {
+		if(due < now_)
+			throw new IllegalArgumentException("Tick " + due + " has already passed");
+		
+		place(item, due);
+		++size_;
+		hash_ += keyOf(item) * power(due);
+	}
+	
+	/**
+	 * Advances the wheel to a tick and offers every index due at it to a queue. No entry may be due
+	 * before the tick, which holds as long as ticks are polled in order or only skipped up to
+	 * {@link TimingWheel#nextDue()}.
+	 * @param tick The tick to advance to
+	 * @param queue The queue to offer due indices to
+	 */
+	void pollDue(int tick, WorkQueue queue) {
+		advanceTo(tick);
+		
+		int slot = tick & (SLOTS - 1);
+		int count = sizes_[slot];
+		if(count == 0)
+			return;
+		
+		int[] items = items_[slot];
+		long power = power(tick);
+		for(int i = 0; i < count; ++i) {
+			queue.offer(items[i]);
+			hash_ -= keyOf(items[i]) * power;
+		}
+		sizes_[slot] = 0;
+		size_ -= count;
+	}
+	
+	/**
+	 * @return The earliest tick anything is due at, or -1 if the wheel is empty
+	 */
+	int nextDue() {
+		if(size_ == 0)
+			return -1;
+		
+		for(int level = 0; level < LEVELS; ++level) {
+			for(int i = (now_ >>> (BITS * level)) & (SLOTS - 1); i < SLOTS; ++i) {
+				int slot = level * SLOTS + i;
+				if(sizes_[slot] > 0)
+					return earliest(slot);
+			}
+		}
+		return earliest(OVERFLOW);
+	}
+	
+	/**
+	 * Shifts {@link TimingWheel#hash_} so that two wheels holding the same indices the same number
+	 * of ticks ahead of their reference tick hash equally
+	 * @param tick The reference tick
+	 * @return The hash of the pending entries relative to tick
+	 */
+	long relativeHash(int tick) {
+		long power = power(tick);
+		//Newton's iteration for the inverse of an odd number mod 2^64, each step doubles the correct bits
+		long inverse = power;
+		for(int i = 0; i < 5; ++i)
+			inverse *= 2 - power * inverse;
+		return hash_ * inverse;
+	}
+	
+	/**
+	 * Removes every entry
+	 * @return The removed entries packed as due << 32 | index
+	 */
+	long[] drain() {
+		long[] entries = entries();
+		Arrays.fill(sizes_, 0);
+		size_ = 0;
+		hash_ = 0;
+		return entries;
+	}
+	
+	/**
+	 * @return Every entry packed as due << 32 | index, leaving the wheel as it is
+	 */
+	long[] entries() {
+		long[] entries = new long[size_];
+		int n = 0;
+		for(int slot = 0; slot <= OVERFLOW; ++slot) {
+			for(int i = 0; i < sizes_[slot]; ++i)
+				entries[n++] = (long)dues_[slot][i] << 32 | items_[slot][i];
+		}
+		return entries;
+	}
+	
+	/**
+	 * Removes every entry and restarts the wheel at a tick
+	 * @param now {@link TimingWheel#now_}
+	 */
+	void clear(int now) {
+		Arrays.fill(sizes_, 0);
+		size_ = 0;
+		hash_ = 0;
+		now_ = now;
+	}
+	
+	/**
+	 * Moves {@link TimingWheel#now_} forward, cascading the slots of any block it enters
+	 * @param tick The new current tick
+	 */
+	private void advanceTo(int tick) {
+		int old = now_;
+		if(tick == old)
+			return;
+		
+		now_ = tick;
+		if((tick >>> (BITS * LEVELS)) != (old >>> (BITS * LEVELS)))
+			cascade(OVERFLOW);
+		for(int level = LEVELS - 1; level > 0; --level) {
+			int shift = BITS * level;
+			if((tick >>> shift) != (old >>> shift))
+				cascade(level * SLOTS + ((tick >>> shift) & (SLOTS - 1)));
+		}
+	}
+	
+	/**
+	 * Re-places the entries of a slot relative to {@link TimingWheel#now_}
+	 * @param slot The slot to empty
+	 */
+	private void cascade(int slot) {
+		int count = sizes_[slot];
+		if(count == 0)
+			return;
+		
+		int[] items = items_[slot];
+		int[] dues = dues_[slot];
+		items_[slot] = null;
+		dues_[slot] = null;
+		sizes_[slot] = 0;
+		for(int i = 0; i < count; ++i)
+			place(items[i], dues[i]);
+		
+		if(items_[slot] == null) {
+			items_[slot] = items;
+			dues_[slot] = dues;
+		}
+	}
+	
+	/**
+	 * Adds an entry to the slot for its due tick relative to {@link TimingWheel#now_}
+	 */
+	private void place(int item, int due) {
+		int slot = OVERFLOW;
+		for(int level = 0; level < LEVELS; ++level) {
+			int shift = BITS * (level + 1);
+			if((due >>> shift) == (now_ >>> shift)) {
+				slot = level * SLOTS + ((due >>> (BITS * level)) & (SLOTS - 1));
+				break;
+			}
+		}
+		
+		int count = sizes_[slot];
+		if(items_[slot] == null) {
+			items_[slot] = new int[8];
+			dues_[slot] = new int[8];
+		}
+		else if(count == items_[slot].length) {
+			items_[slot] = Arrays.copyOf(items_[slot], count * 2);
+			dues_[slot] = Arrays.copyOf(dues_[slot], count * 2);
+		}
+		items_[slot][count] = item;
+		dues_[slot][count] = due;
+		sizes_[slot] = count + 1;
+	}
+	
+	/**
+	 * @return The earliest due tick in a non-empty slot
+	 */
+	private int earliest(int slot) {
+		int[] dues = dues_[slot];
+		int min = dues[0];
+		for(int i = 1; i < sizes_[slot]; ++i)
+			min = Math.min(min, dues[i]);
+		return min;
+	}
+	
+	/**
+	 * @return {@link TimingWheel#MULTIPLIER} raised to a tick
+	 */
+	private static long power(int tick) {
+		return POWERS[0][tick & 0xFF] * POWERS[1][(tick >>> 8) & 0xFF] * POWERS[2][(tick >>> 16) & 0xFF] * POWERS[3][tick >>> 24];
+	}
+	
+	/**
+	 * @return A well spread key for an index
+	 */
+	private static long keyOf(int item) {
+		long key = (item + 1) * 0x9E3779B97F4A7C15L;
+		key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+		key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+		return key ^ (key >>> 31);
+	}
+	
+	private static long[][] createPowers() {
+		long[][] powers = new long[4][256];
+		long base = MULTIPLIER;
+		for(int k = 0; k < 4; ++k) {
+			powers[k][0] = 1;
+			for(int b = 1; b < 256; ++b)
+				powers[k][b] = powers[k][b - 1] * base;
+			base = powers[k][255] * base;
+		}
+		return powers;
+	}
+}
@@ -0,0 +1,317 @@
+package common.sim;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records the transitions of a chosen set of Pins into a preallocated off-heap ring buffer and
+ * streams them to a Value Change Dump on a background thread. Each transition is packed into one
+ * long of tick, signal and value, so recording never allocates. If the writer falls behind the
+ * Simulation waits for space rather than losing transitions.
+ * <p>
+ * Pins are chosen with {@link WaveformRecorder#trace(Pin, String, String)} before
+ * {@link WaveformRecorder#start(Writer, int)}, then the recorder is attached with
+ * {@link Simulation#setWaveformRecorder(WaveformRecorder)}. A Pin can only be traced by one
+ * recorder at a time.
+ */
+public class WaveformRecorder {
+	/**
+	 * How long the writer thread sleeps when the buffer is empty
+	 */
+	private static final long IDLE_NANOS = 1000000L;
+	
+	/**
+	 * The ring buffer of packed transitions, tick << 32 | signal << 1 | value
+	 */
+	private final ByteBuffer buffer_;
+	
+	/**
+	 * The number of transitions {@link WaveformRecorder#buffer_} holds minus one, its capacity is a power of two
+	 */
+	private final int mask_;
+	
+	/**
+	 * The traced Pins, indexed by signal id
+	 */
+	private final List<Pin> pins_;
+	
+	/**
+	 * The VCD scope of each traced Pin
+	 */
+	private final List<String> scopes_;
+	
+	/**
+	 * The VCD variable name of each traced Pin
+	 */
+	private final List<String> names_;
+	
+	/**
+	 * The number of transitions ever written into the buffer, only advanced by the recording thread.
+	 * Being volatile, storing it publishes the entries written before it to the writer thread.
+	 */
+	private volatile long tail_;
+	
+	/**
+	 * The number of transitions ever taken out of the buffer, only advanced by the writer thread
+	 */
+	private volatile long head_;
+	
+	/**
+	 * The last value of {@link WaveformRecorder#head_} seen by the recording thread, re-read only
+	 * when the buffer looks full
+	 */
+	private long cachedHead_;
+	
+	/**
+	 * The thread writing the dump, null until started
+	 */
+	private volatile Thread thread_;
+	
+	/**
+	 * Set to make the writer thread drain the buffer and finish
+	 */
+	private volatile boolean closing_;
+	
+	/**
+	 * The first error the writer thread hit, rethrown by {@link WaveformRecorder#close()}
+	 */
+	private volatile IOException error_;
+	
+	/**
+	 * @param capacity The number of transitions the buffer holds, rounded up to a power of two
+	 */
+	public WaveformRecorder(int capacity) {
+		if(capacity <= 0 || capacity > (1 << 27))
+			throw new IllegalArgumentException("Capacity out of range: " + capacity);
+		
+		int size = Integer.highestOneBit(capacity);
+		if(size < capacity)
+			size <<= 1;
+		buffer_ = ByteBuffer.allocateDirect(size * 8).order(ByteOrder.nativeOrder());
+		mask_ = size - 1;
+		pins_ = new ArrayList<>();
+		scopes_ = new ArrayList<>();
+		names_ = new ArrayList<>();
+	}
+	
+	/**
+	 * Adds a Pin to the set being recorded
+	 * @param pin The Pin to record
+	 * @param scope The VCD module the signal is listed under, such as the Gate's name
+	 * @param name The VCD name of the signal, such as the Pin's label
+	 */
+	public void trace(Pin pin, String scope, String name) {
+		if(thread_ != null)
+			throw new IllegalStateException("Pins must be traced before the recorder is started");
+		if(pin.traceId_ >= 0)
+			throw new IllegalArgumentException("Pin is already traced");
+		
+		pin.traceId_ = pins_.size();
+		pins_.add(pin);
+		scopes_.add(sanitize(scope));
+		names_.add(sanitize(name));
+	}
+	
+	/**
+	 * Writes the VCD header and the current value of every traced Pin, then starts the writer thread
+	 * @param out Where the dump is written, closed by {@link WaveformRecorder#close()}
+	 * @param tick The tick the dump starts at
+	 * @throws IOException If the header can't be written
+	 */
+	public synchronized void start(Writer out, int tick) throws IOException {
+		if(thread_ != null)
+			throw new IllegalStateException("Recorder already started");
+		
+		writeHeader(out, tick);
+		thread_ = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain(out, tick);
+			}
+		}, "Waveform writer");
+		thread_.setDaemon(true);
+		thread_.start();
+	}
+	
+	/**
+	 * Records a transition of a traced Pin, waiting if the buffer is full. Only called from the
+	 * ticking thread, the one producer, so it takes no lock.
+	 * @param tick The tick the transition happened in
+	 * @param signal The Pin's {@link Pin#traceId_}
+	 * @param state The Pin's new state
+	 */
+	void record(int tick, int signal, boolean state) {
+		long tail = tail_;
+		if(tail - cachedHead_ > mask_) {
+			Thread writer = thread_;
+			while(tail - (cachedHead_ = head_) > mask_ && error_ == null) {
+				LockSupport.unpark(writer);
+				LockSupport.parkNanos(10000);
+			}
+			if(error_ != null)
+				return;
+		}
+		
+		buffer_.putLong((int)(tail & mask_) << 3, (long)tick << 32 | (long)signal << 1 | (state ? 1 : 0));
+		tail_ = tail + 1;
+	}
+	
+	/**
+	 * @return True once {@link WaveformRecorder#start(Writer, int)} has been called, so there is a
+	 * writer thread to empty the buffer
+	 */
+	boolean isStarted() {
+		return thread_ != null;
+	}
+	
+	/**
+	 * @return The number of transitions recorded so far
+	 */
+	public long getRecordedCount() {
+		return tail_;
+	}
+	
+	/**
+	 * Waits for every recorded transition to be written, closes the output and stops tracing the Pins.
+	 * Detach the recorder from its Simulation first.
+	 * @throws IOException If writing the dump failed
+	 */
+	public void close() throws IOException {
+		Thread thread;
+		synchronized(this) {
+			thread = thread_;
+			closing_ = true;
+		}
+		
+		if(thread != null) {
+			LockSupport.unpark(thread);
+			boolean interrupted = false;
+			while(thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if(interrupted)
+				Thread.currentThread().interrupt();
+		}
+		
+		for(Pin pin : pins_)
+			pin.traceId_ = -1;
+		
+		if(error_ != null)
+			throw error_;
+	}
+	
+	/**
+	 * Body of the writer thread, copies transitions out of the buffer until closed
+	 */
+	private void drain(Writer out, int tick) {
+		StringBuilder line = new StringBuilder(32);
+		int lastTick = tick;
+		try {
+			while(true) {
+				boolean closing = closing_;
+				long head = head_;
+				long tail = tail_;
+				if(head == tail) {
+					if(closing)
+						break;
+					LockSupport.parkNanos(IDLE_NANOS);
+					continue;
+				}
+				
+				for(; head < tail; ++head) {
+					long entry = buffer_.getLong((int)(head & mask_) << 3);
+					int entryTick = (int)(entry >>> 32);
+					line.setLength(0);
+					if(entryTick != lastTick) {
+						lastTick = entryTick;
+						line.append('#').append(entryTick).append('\n');
+					}
+					line.append((entry & 1) != 0 ? '1' : '0');
+					appendCode(line, (int)entry >>> 1);
+					line.append('\n');
+					out.append(line);
+				}
+				head_ = tail;
+			}
+			out.flush();
+		} catch (IOException e) {
+			error_ = e;
+			head_ = Long.MAX_VALUE;
+		} finally {
+			try {
+				out.close();
+			} catch (IOException e) {
+				if(error_ == null)
+					error_ = e;
+			}
+		}
+	}
+	
+	private void writeHeader(Writer out, int tick) throws IOException {
+		out.write("$version JLogic $end\n");
+		out.write("$comment one time unit is one Simulation tick $end\n");
+		out.write("$timescale 1 ns $end\n");
+		
+		Map<String, List<Integer>> scopes = new LinkedHashMap<>();
+		for(int i = 0; i < pins_.size(); ++i) {
+			List<Integer> signals = scopes.get(scopes_.get(i));
+			if(signals == null) {
+				signals = new ArrayList<>();
+				scopes.put(scopes_.get(i), signals);
+			}
+			signals.add(i);
+		}
+		
+		StringBuilder line = new StringBuilder();
+		for(Map.Entry<String, List<Integer>> scope : scopes.entrySet()) {
+			out.write("$scope module " + scope.getKey() + " $end\n");
+			for(int signal : scope.getValue()) {
+				line.setLength(0);
+				line.append("$var wire 1 ");
+				appendCode(line, signal);
+				line.append(' ').append(names_.get(signal)).append(" $end\n");
+				out.append(line);
+			}
+			out.write("$upscope $end\n");
+		}
+		out.write("$enddefinitions $end\n");
+		
+		out.write("#" + tick + "\n$dumpvars\n");
+		for(int signal = 0; signal < pins_.size(); ++signal) {
+			line.setLength(0);
+			line.append(pins_.get(signal).getState() ? '1' : '0');
+			appendCode(line, signal);
+			line.append('\n');
+			out.append(line);
+		}
+		out.write("$end\n");
+	}
+	
+	/**
+	 * Appends the VCD identifier code of a signal, written in base 94 with the printable ASCII characters
+	 */
+	private static void appendCode(StringBuilder out, int signal) {
+		do {
+			out.append((char)('!' + signal % 94));
+			signal /= 94;
+		} while(signal > 0);
+	}
+	
+	/**
+	 * @return name with whitespace, which VCD uses as a separator, replaced by underscores
+	 */
+	private static String sanitize(String name) {
+		return name.isEmpty() ? "_" : name.replaceAll("\\s", "_");
+	}
+}
@@ -1,140 +1,199 @@
-package common.sim;
-
-import java.awt.Point;
-
-/**
- * Allows connecting Pins together
- */
-public class Wire {
-	/**
-	 * The start Point of a Wire
-	 */
-	private Point start_;
-	
-	/**
-	 * The end Point of a Wire
-	 */
-	private Point end_;
-	
-	/**
-	 * The input Pin connected to the Wire
-	 */
-	private Pin input_;
-	
-	/**
-	 * The output Pin connected to the WIre
-	 */
-	private Pin output_;
-	
-	/**
-	 * @param start {@link Wire#start_}
-	 * @param end {@link Wire#end_}
-	 */
-	public Wire(Point start, Point end) {
-		start_ = start;
-		end_ = end;
-		input_ = null;
-		output_ = null;
-	}
-	
-	/**
-	 * Sets both {@link Wire#start_} and {@link Wire#end_} to p
-	 * @param p
-	 */
-	public Wire(Point p) {
-		this(p, p);
-	}
-	
-	/**
-	 * @return {@link Wire#end_}
-	 */
-	public Point getEndPoint() {
-		return end_;
-	}
-	
-	/**
-	 * Sets the {@link Wire#end_} Point
-	 * @param p
-	 */
-	public void setEndPoint(Point p) {
-		end_ = p;
-	}
-	
-	/**
-	 * @return {@link Wire#start_}
-	 */
-	public Point getStartPoint() {
-		return start_;
-	}
-	
-	/**
-	 * @return {@link Wire#input_}
-	 */
-	public Pin getInputPin() {
-		return input_;
-	}
-
-	/**
-	 * @return {@link Wire#output_}
-	 */
-	public Pin getOutputPin() {
-		return output_;
-	}
-	
-	/**
-	 * Causes the Wire to queue itself in the sim
-	 */
-	public void update() {
-		Simulation.queueWire(this);
-	}
-	
-	/**
-	 * Destroys all Pin connections and removes itself from the sim
-	 */
-	public void remove() {
-		if(input_ != null) {
-			input_.setWire(null);
-			input_.setInputState(false);
-		}
-		if(output_ != null) {
-			output_.setWire(null);
-			output_.setState(false);
-		}
-		
-		input_ = null;
-		output_ = null;
-		Simulation.removeWire(this);
-	}
-	
-	/**
-	 * Tries to connect two Pins of differing types to itself
-	 * @return True if successful, false otherwise
-	 */
-	public boolean tryConnection() {
-		Pin spin = Simulation.findPinAt(getStartPoint());
-		Pin epin = Simulation.findPinAt(getEndPoint());
-		
-		if(spin != null && epin != null && spin.getType() != epin.getType()) {
-			if(epin.getWire() != null)
-				epin.getWire().remove();
-			if(spin.getWire() != null)
-				spin.getWire().remove();
-			
-			spin.setWire(this);
-			epin.setWire(this);
-			if(spin.getType() == PinType.INPUT) {
-				input_ = spin;
-				output_ = epin;
-			}
-			else {
-				input_ = epin;
-				output_ = spin;
-			}
-			
-			update();
-			return true;
-		}
-		
-		return false;
-	}
-}
+package common.sim;
+
+/**
+ * Allows connecting Pins together, an output Pin may drive any number of Wires through its
+ * {@link Net} while an input Pin is driven by at most one
+ */
+public class Wire {
+	/**
+	 * The Simulation this Wire belongs to
+	 */
+	private final Simulation simulation_;
+	
+	/**
+	 * The start position of a Wire, packed by {@link GridKey}
+	 */
+	private long start_;
+	
+	/**
+	 * The end position of a Wire, packed by {@link GridKey}
+	 */
+	private long end_;
+	
+	/**
+	 * Whether {@link Wire#start_} is on the input Pin once connected, so the ends can follow their Pins
+	 */
+	private boolean startsAtInput_;
+	
+	/**
+	 * The input Pin connected to the Wire
+	 */
+	private Pin input_;
+	
+	/**
+	 * The output Pin connected to the WIre
+	 */
+	private Pin output_;
+	
+	/**
+	 * @param simulation {@link Wire#simulation_}
+	 * @param start {@link Wire#start_}
+	 * @param end {@link Wire#end_}
+	 */
+	public Wire(Simulation simulation, long start, long end) {
+		simulation_ = simulation;
+		start_ = start;
+		end_ = end;
+		startsAtInput_ = false;
+		input_ = null;
+		output_ = null;
+	}
+	
+	/**
+	 * Sets both {@link Wire#start_} and {@link Wire#end_} to p
+	 * @param simulation {@link Wire#simulation_}
+	 * @param p A position packed by {@link GridKey}
+	 */
+	public Wire(Simulation simulation, long p) {
+		this(simulation, p, p);
+	}
+	
+	/**
+	 * @return {@link Wire#simulation_}
+	 */
+	public Simulation getSimulation() {
+		return simulation_;
+	}
+	
+	/**
+	 * @return {@link Wire#end_}
+	 */
+	public long getEnd() {
+		return end_;
+	}
+	
+	/**
+	 * Sets the {@link Wire#end_} position
+	 * @param p A position packed by {@link GridKey}
+	 */
+	public void setEnd(long p) {
+		end_ = p;
+	}
+	
+	/**
+	 * @return {@link Wire#start_}
+	 */
+	public long getStart() {
+		return start_;
+	}
+	
+	/**
+	 * @return {@link Wire#input_}
+	 */
+	public Pin getInputPin() {
+		return input_;
+	}
+
+	/**
+	 * @return {@link Wire#output_}
+	 */
+	public Pin getOutputPin() {
+		return output_;
+	}
+	
+	/**
+	 * Queues the Net this Wire belongs to in the sim
+	 */
+	public void update() {
+		if(output_ != null)
+			simulation_.queueNet(output_.getNet());
+	}
+	
+	/**
+	 * Destroys all Pin connections and removes itself from the sim
+	 */
+	public void remove() {
+		simulation_.removeWire(this);
+		if(input_ != null) {
+			input_.setWire(null);
+			input_.setInputState(false);
+		}
+		if(output_ != null)
+			output_.getNet().remove(this);
+		
+		input_ = null;
+		output_ = null;
+	}
+	
+	/**
+	 * Tries to connect the two Pins found at {@link Wire#start_} and {@link Wire#end_} to itself.
+	 * Nothing is done if a Wire already joins them, since replacing it would change nothing but
+	 * still be recorded as an edit.
+	 * @return True if successful, false otherwise
+	 */
+	public boolean tryConnection() {
+		Pin spin = simulation_.findPinAt(start_);
+		Pin epin = simulation_.findPinAt(end_);
+		if(spin != null && epin != null && (isJoinedTo(spin, epin) || isJoinedTo(epin, spin)))
+			return false;
+		
+		return connect(spin, epin);
+	}
+	
+	/**
+	 * @param input A Pin that may be an input
+	 * @param output Another Pin
+	 * @return True if input is driven by a Wire from output
+	 */
+	private static boolean isJoinedTo(Pin input, Pin output) {
+		return input.getWire() != null && input.getWire().getOutputPin() == output;
+	}
+	
+	/**
+	 * Tries to connect two Pins of differing types to itself without searching the sim for them,
+	 * {@link Wire#start_} and {@link Wire#end_} are moved onto the Pins
+	 * @param spin The Pin at the start of the Wire
+	 * @param epin The Pin at the end of the Wire
+	 * @return True if successful, false otherwise
+	 */
+	public boolean connect(Pin spin, Pin epin) {
+		if(spin != null && epin != null && spin.getType() != epin.getType()) {
+			start_ = spin.getPosition();
+			end_ = epin.getPosition();
+			startsAtInput_ = spin.getType() == PinType.INPUT;
+			
+			if(spin.getType() == PinType.INPUT) {
+				input_ = spin;
+				output_ = epin;
+			}
+			else {
+				input_ = epin;
+				output_ = spin;
+			}
+			
+			if(input_.getWire() != null)
+				input_.getWire().remove();
+			input_.setWire(this);
+			output_.addWire(this);
+			
+			update();
+			return true;
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Moves {@link Wire#start_} and {@link Wire#end_} back onto the Pins the Wire connects after one
+	 * of their Gates has moved
+	 */
+	void followPins() {
+		if(input_ == null)
+			return;
+		
+		long in = input_.getPosition();
+		long out = output_.getPosition();
+		start_ = startsAtInput_ ? in : out;
+		end_ = startsAtInput_ ? out : in;
+	}
+}
@@ -0,0 +1,125 @@
+package common.sim;
+
+import java.util.Arrays;
+
+/**
+ * A FIFO ring queue of primitive indices that holds each index at most once per epoch and does not
+ * allocate once it has grown to fit the working set
+ */
+class WorkQueue {
+	/**
+	 * The ring buffer of queued indices, its length is always a power of two
+	 */
+	private int[] items_;
+	
+	/**
+	 * The position of the oldest queued index in {@link WorkQueue#items_}
+	 */
+	private int head_;
+	
+	/**
+	 * The number of queued indices
+	 */
+	private int size_;
+	
+	/**
+	 * The epoch each index was last queued in
+	 */
+	private int[] stamps_;
+	
+	/**
+	 * The current epoch, an index is only queued if its stamp differs from this
+	 */
+	private int epoch_;
+	
+	WorkQueue() {
+		items_ = new int[16];
+		stamps_ = new int[16];
+		epoch_ = 1;
+	}
+	
+	/**
+	 * Queues an index unless it has already been queued this epoch
+	 * @param index The index to queue
+	 * @return True if the index was added
+	 */
+	boolean offer(int index) {
+		if(index >= stamps_.length)
+			stamps_ = Arrays.copyOf(stamps_, Math.max(stamps_.length * 2, index + 1));
+		if(stamps_[index] == epoch_)
+			return false;
+		
+		stamps_[index] = epoch_;
+		if(size_ == items_.length)
+			grow();
+		items_[(head_ + size_) & (items_.length - 1)] = index;
+		++size_;
+		return true;
+	}
+	
+	/**
+	 * Starts a new epoch so the indices currently queued can be polled while new ones are offered
+	 * @return The number of indices queued before the new epoch, which should be polled
+	 */
+	int beginDrain() {
+		if(++epoch_ == 0) {
+			Arrays.fill(stamps_, 0);
+			epoch_ = 1;
+		}
+		return size_;
+	}
+	
+	/**
+	 * Removes the oldest queued index, {@link WorkQueue#isEmpty()} must be false
+	 * @return The removed index
+	 */
+	int poll() {
+		int index = items_[head_];
+		head_ = (head_ + 1) & (items_.length - 1);
+		--size_;
+		return index;
+	}
+	
+	/**
+	 * @param i A position in the queue, from 0 for the oldest to {@link WorkQueue#size()} - 1
+	 * @return The index queued at that position, which stays queued
+	 */
+	int peek(int i) {
+		return items_[(head_ + i) & (items_.length - 1)];
+	}
+	
+	/**
+	 * @return {@link WorkQueue#size_}
+	 */
+	int size() {
+		return size_;
+	}
+	
+	/**
+	 * @return True if nothing is queued
+	 */
+	boolean isEmpty() {
+		return size_ == 0;
+	}
+	
+	/**
+	 * Removes all queued indices
+	 */
+	void clear() {
+		head_ = 0;
+		size_ = 0;
+		beginDrain();
+	}
+	
+	/**
+	 * Doubles {@link WorkQueue#items_}, unwrapping the ring so it starts at 0
+	 */
+	private void grow() {
+		int[] grown = new int[items_.length * 2];
+		int first = items_.length - head_;
+		System.arraycopy(items_, head_, grown, 0, first);
+		System.arraycopy(items_, 0, grown, first, head_);
+		items_ = grown;
+		head_ = 0;
+	}
+}
@@ -1,6 +1,11 @@
-package common.sim.events;
-
-public class SimulationListener implements SimulationListenerInterface {
-	@Override
-	public void onRequestRepaint(){}
-}
+package common.sim.events;
+
+import common.sim.Gate;
+
+public class SimulationListener implements SimulationListenerInterface {
+	@Override
+	public void onRequestRepaint(){}
+	
+	@Override
+	public void onGateChanged(Gate gate){}
+}
@@ -1,5 +1,16 @@
-package common.sim.events;
-
-public interface SimulationListenerInterface {
-	public void onRequestRepaint();
-}
+package common.sim.events;
+
+import common.sim.Gate;
+
+public interface SimulationListenerInterface {
+	/**
+	 * Called at the end of a tick in which any Gate changed, after {@link SimulationListenerInterface#onGateChanged(Gate)}
+	 */
+	public void onRequestRepaint();
+	
+	/**
+	 * Called at the end of a tick once for each Gate with a Pin that changed state since the last tick
+	 * @param gate The Gate that changed
+	 */
+	public void onGateChanged(Gate gate);
+}
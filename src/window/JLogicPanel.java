@@ -1,248 +1,435 @@
-package window;
-
-import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Point;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
-import java.awt.image.BufferedImage;
-
-import javax.swing.JPanel;
-
-import common.sim.Constants;
-import common.sim.Gate;
-import common.sim.GateComponent;
-import common.sim.Pin;
-import common.sim.PinComponent;
-import common.sim.PinType;
-import common.sim.Simulation;
-import common.sim.Wire;
-import common.sim.events.SimulationListener;
-
-/**
- * Handles user interactivity and rendering
- */
-@SuppressWarnings("serial")
-public class JLogicPanel extends JPanel {
-	/**
-	 * The current GateComponent being added by the user
-	 */
-	private GateComponent userGateComponent_;
-	
-	/**
-	 * The grid-locked mouse position of the user
-	 */
-	private Point userPoint_;
-	
-	/**
-	 * The currently selected Gate
-	 */
-	private Gate selectedGate_;
-	
-	/**
-	 * The Pin currently being hovered over by the mouse
-	 */
-	private Pin highlightedPin_;
-	
-	/**
-	 * The Wire currently being added by the user
-	 */
-	private Wire userWire_;
-	
-	public JLogicPanel() {
-		super();
-		
-		userPoint_ = new Point(0, 0);
-		
-		MouseAdapter adapter = new MouseAdapter() {
-			public void mouseMoved(MouseEvent e) {
-				userPoint_.setLocation(roundToGrid(e.getPoint()));
-				
-				if(userGateComponent_ == null)
-					highlightedPin_ = Simulation.findPinAt(userPoint_);
-				
-				repaint();
-			}
-			
-			public void mousePressed(MouseEvent e) {
-				if(userGateComponent_ == null) {
-					if(highlightedPin_ != null)
-						userWire_ = new Wire(highlightedPin_.getPoint());
-					else {
-						selectedGate_ = Simulation.findGateAt(userPoint_);
-						if(selectedGate_ != null) {
-							selectedGate_.getGateComponent().onMousePressed(e, selectedGate_.getPins());
-							selectedGate_.getGateComponent().onMouseClicked(e, selectedGate_.getPins());
-						}
-					}
-					
-					repaint();
-				}
-			}
-			
-			public void mouseReleased(MouseEvent e) {
-				if(userGateComponent_ != null) {
-					int x = userPoint_.x;
-					int y = userPoint_.y;
-					int xx = x+userGateComponent_.getWidth();
-					int yy = y+userGateComponent_.getHeight();
-					
-					GateComponent comp;
-					int gx;
-					int gy;
-					int gxx;
-					int gyy;
-					
-					for(Gate gate : Simulation.getGates()) {
-						comp = gate.getGateComponent();
-						gx = gate.getX();
-						gy = gate.getY();
-						gxx = gx+comp.getWidth();
-						gyy = gy+comp.getHeight();
-						
-						if(y < gyy && gy < yy && x < gxx && gx < xx)
-							return;
-					}
-					
-					Simulation.addGate(new Gate(userGateComponent_, userPoint_.x, userPoint_.y));
-					//userGateComponent_ = null;
-				}
-				else {
-					if(userWire_ != null && userWire_.tryConnection())
-						Simulation.addWire(userWire_);
-					
-					userWire_ = null;
-					
-					if(selectedGate_ != null)
-						selectedGate_.getGateComponent().onMouseReleased(e, selectedGate_.getPins());
-					
-					repaint();
-				}
-			}
-			
-			public void mouseDragged(MouseEvent e) {
-				userPoint_.setLocation(roundToGrid(e.getPoint()));
-				
-				if(userWire_ != null) {
-					highlightedPin_ = Simulation.findPinAt(userPoint_);
-					if(highlightedPin_ != null)
-						userWire_.setEndPoint(highlightedPin_.getPoint());
-					else
-						userWire_.setEndPoint(e.getPoint());
-					
-					repaint();
-				}
-			}
-		};
-		
-		addMouseListener(adapter);
-		addMouseMotionListener(adapter);
-		
-		Simulation.setSimulationListener(new SimulationListener() {
-			@Override
-			public void onRequestRepaint() {
-				repaint();
-			}
-		});
-	}
-	
-	/**
-	 * @param component {@link GateComponent}
-	 */
-	public void setUserGateComponent(GateComponent component) {
-		userGateComponent_ = component;
-		selectedGate_ = null;
-		highlightedPin_ = null;
-	}
-	
-	/**
-	 * Rounds p to the nearest grid position
-	 * @param p The Point to be rounded
-	 * @return a new Point that has been rounded to the grid
-	 */
-	private Point roundToGrid(Point p) {
-		final int size = Constants.GRIDSIZE;
-		int x = Math.round((float)p.x/(float)size) * size;
-		int y = Math.round((float)p.y/(float)size) * size;
-		return new Point(x, y);
-	}
-	
-	/**
-	 * Draws a GateComponent
-	 * @param g The Graphics context
-	 * @param component The GateComponent to be drawn
-	 * @param x The x-position to draw it at
-	 * @param y The y-position to draw it at
-	 * @param gate A Gate that references component
-	 */
-	private void drawGateComponent(Graphics g, GateComponent component, int x, int y, Gate gate) {
-		g.translate(x, y);
-		
-		BufferedImage img = component.getImage();
-		if(img != null)
-			g.drawImage(img, 0, 0, null);
-			
-		PinComponent[] pins = component.getPins();
-		Point p;
-		for(PinComponent pin : pins) {
-			p = pin.getOffset();
-			
-			g.setColor(pin.getType() == PinType.INPUT ? Color.BLUE : Color.RED);
-			g.fillRect(p.x-2, p.y-2, 4, 4);
-		}
-		
-		g.setColor(Color.BLACK);
-		if(gate == null)
-			component.draw(g, null);
-		else
-			component.draw(g, gate.getPins());
-		
-		g.translate(-x, -y);
-	}
-	
-	/**
-	 * Draws a Wire
-	 * @param g The Graphics context
-	 * @param wire The Wire to be drawn
-	 */
-	private void drawWire(Graphics g, Wire wire) {
-		Point start = wire.getStartPoint();
-		Point end = wire.getEndPoint();
-		g.setColor(Color.GREEN);
-		g.drawLine(start.x, start.y, end.x, end.y);
-		g.setColor(Color.BLACK);
-	}
-	
-	@Override
-	protected void paintComponent(Graphics g) {
-		super.paintComponent(g);
-		
-		int size = Constants.GRIDSIZE;
-		for(int x = 0; x <= getWidth(); x += size) {
-			for(int y = 0; y <= getHeight(); y += size)
-				g.drawLine(x, y, x, y);
-		}
-		
-		GateComponent gateComponent;
-		
-		for(Gate gate : Simulation.getGates()) {
-			gateComponent = gate.getGateComponent();
-			drawGateComponent(g, gateComponent, gate.getX(), gate.getY(), gate);
-		}
-		
-		for(Wire wire : Simulation.getWires())
-			drawWire(g, wire);
-		
-		if(userGateComponent_ != null)
-			drawGateComponent(g, userGateComponent_, userPoint_.x, userPoint_.y, null);
-		
-		if(selectedGate_ != null)
-			g.drawRect(selectedGate_.getX()-2, selectedGate_.getY()-2, selectedGate_.getWidth()+4, selectedGate_.getHeight()+4);
-		
-		if(userWire_ != null)
-			drawWire(g, userWire_);
-		
-		if(highlightedPin_ != null)
-			g.drawOval(userPoint_.x-5, userPoint_.y-5, 10, 10);
-	}
-}
+package window;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import common.sim.Constants;
+import common.sim.Gate;
+import common.sim.GateComponent;
+import common.sim.GridKey;
+import common.sim.Pin;
+import common.sim.PinComponent;
+import common.sim.PinType;
+import common.sim.Simulation;
+import common.sim.StateSnapshot;
+import common.sim.Wire;
+import common.sim.events.SimulationListener;
+
+/**
+ * Handles user interactivity and rendering. Edits and clicks on Gates are posted to the Simulation
+ * so they run on the thread ticking it, and frames are drawn and hit-tested from its latest
+ * published snapshot.
+ * Gates are moved by dragging them with Ctrl held and removed by right-clicking them.
+ */
+@SuppressWarnings("serial")
+public class JLogicPanel extends JPanel {
+	/**
+	 * The Simulation being edited and rendered
+	 */
+	private final Simulation simulation_;
+	
+	/**
+	 * The current GateComponent being added by the user
+	 */
+	private GateComponent userGateComponent_;
+	
+	/**
+	 * The grid-locked mouse position of the user, packed by {@link GridKey} so following the mouse
+	 * allocates nothing
+	 */
+	private long userPosition_;
+	
+	/**
+	 * The currently selected Gate
+	 */
+	private Gate selectedGate_;
+	
+	/**
+	 * The Pin currently being hovered over by the mouse
+	 */
+	private Pin highlightedPin_;
+	
+	/**
+	 * The Wire currently being added by the user
+	 */
+	private Wire userWire_;
+	
+	/**
+	 * The Gate being dragged to a new position with Ctrl held, or null
+	 */
+	private Gate movingGate_;
+	
+	/**
+	 * The grid position grabbed on {@link JLogicPanel#movingGate_}, relative to its top left corner
+	 */
+	private int grabX_;
+	private int grabY_;
+	
+	/**
+	 * The background grid of dots, rendered once and reused until the panel is resized
+	 */
+	private BufferedImage gridImage_;
+	
+	/**
+	 * Flushes the region changed by the sim to the screen at a fixed frame rate
+	 */
+	private final Timer frameTimer_;
+	
+	/**
+	 * Holds the Pin states of the Gate being drawn, copied out of the snapshot being painted
+	 */
+	private boolean[] pinStates_;
+	
+	/**
+	 * Guards the dirty region, which is grown on the sim thread and flushed on the EDT
+	 */
+	private final Object dirtyLock_;
+	
+	/**
+	 * The bounds of all Gates changed by the sim since the last frame, empty while dirtyMaxX_ < dirtyMinX_
+	 */
+	private int dirtyMinX_;
+	private int dirtyMinY_;
+	private int dirtyMaxX_;
+	private int dirtyMaxY_;
+	
+	/**
+	 * @param simulation {@link JLogicPanel#simulation_}
+	 */
+	public JLogicPanel(Simulation simulation) {
+		super();
+		
+		simulation_ = simulation;
+		userPosition_ = GridKey.pack(0, 0);
+		pinStates_ = new boolean[8];
+		
+		MouseAdapter adapter = new MouseAdapter() {
+			public void mouseMoved(MouseEvent e) {
+				userPosition_ = GridKey.snap(e.getX(), e.getY());
+				
+				if(userGateComponent_ == null)
+					highlightedPin_ = simulation_.getSnapshot().findPinAt(userPosition_);
+				
+				repaint();
+			}
+			
+			public void mousePressed(MouseEvent e) {
+				if(userGateComponent_ == null) {
+					if(highlightedPin_ != null)
+						userWire_ = new Wire(simulation_, highlightedPin_.getPosition());
+					else {
+						selectedGate_ = simulation_.getSnapshot().findGateAt(userPosition_);
+						Gate gate = selectedGate_;
+						//Right-clicking a Gate removes it along with its Wires, as one step that Undo puts back
+						if(gate != null && SwingUtilities.isRightMouseButton(e)) {
+							selectedGate_ = null;
+							simulation_.post(new Runnable() {
+								@Override
+								public void run() {
+									gate.remove();
+									repaint();
+								}
+							});
+						}
+						//Dragging a Gate with Ctrl held moves it, keeping the offset to the point it was grabbed at.
+						//The move is made on release and journalled so Undo puts it back
+						else if(gate != null && e.isControlDown()) {
+							selectedGate_ = null;
+							movingGate_ = gate;
+							grabX_ = GridKey.x(userPosition_) - gate.getX();
+							grabY_ = GridKey.y(userPosition_) - gate.getY();
+						}
+						else if(gate != null) {
+							simulation_.post(new Runnable() {
+								@Override
+								public void run() {
+									if(e.isShiftDown() && gate.canBeFixed()) {
+										gate.setFixed(!gate.isFixed());
+									}
+									else if(!gate.isFixed()) {
+										gate.getGateComponent().onMousePressed(e, gate.getPins());
+										gate.getGateComponent().onMouseClicked(e, gate.getPins());
+									}
+									repaint();
+								}
+							});
+						}
+					}
+					
+					repaint();
+				}
+			}
+			
+			public void mouseReleased(MouseEvent e) {
+				if(userGateComponent_ != null) {
+					GateComponent component = userGateComponent_;
+					int x = GridKey.x(userPosition_);
+					int y = GridKey.y(userPosition_);
+					simulation_.post(new Runnable() {
+						@Override
+						public void run() {
+							if(simulation_.findGateOverlapping(x, y, component.getWidth(), component.getHeight()) != null)
+								return;
+							
+							simulation_.addGate(new Gate(simulation_, component, x, y));
+							repaint();
+						}
+					});
+					//userGateComponent_ = null;
+				}
+				//Drop a Ctrl-dragged Gate where it was released, unless it would land on top of another Gate
+				else if(movingGate_ != null) {
+					Gate gate = movingGate_;
+					int x = GridKey.x(userPosition_) - grabX_;
+					int y = GridKey.y(userPosition_) - grabY_;
+					movingGate_ = null;
+					simulation_.post(new Runnable() {
+						@Override
+						public void run() {
+							if(simulation_.findGateOverlapping(x, y, gate.getWidth(), gate.getHeight(), gate) != null)
+								return;
+							
+							simulation_.moveGate(gate, x, y);
+							repaint();
+						}
+					});
+					
+					repaint();
+				}
+				else {
+					Wire wire = userWire_;
+					Gate gate = selectedGate_;
+					userWire_ = null;
+					simulation_.post(new Runnable() {
+						@Override
+						public void run() {
+							//A Wire already driving the input is removed, so undo puts it back along with this one
+							simulation_.beginEdit();
+							try {
+								if(wire != null && wire.tryConnection())
+									simulation_.addWire(wire);
+							} finally {
+								simulation_.endEdit();
+							}
+							
+							if(gate != null && !gate.isFixed())
+								gate.getGateComponent().onMouseReleased(e, gate.getPins());
+							
+							repaint();
+						}
+					});
+					
+					repaint();
+				}
+			}
+			
+			public void mouseDragged(MouseEvent e) {
+				userPosition_ = GridKey.snap(e.getX(), e.getY());
+				
+				if(movingGate_ != null)
+					repaint();
+				
+				if(userWire_ != null) {
+					highlightedPin_ = simulation_.getSnapshot().findPinAt(userPosition_);
+					if(highlightedPin_ != null)
+						userWire_.setEnd(highlightedPin_.getPosition());
+					else
+						userWire_.setEnd(GridKey.pack(e.getX(), e.getY()));
+					
+					repaint();
+				}
+			}
+		};
+		
+		addMouseListener(adapter);
+		addMouseMotionListener(adapter);
+		
+		dirtyLock_ = new Object();
+		clearDirtyRegion();
+		
+		frameTimer_ = new Timer(1000 / 60, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				flushDirtyRegion();
+			}
+		});
+		frameTimer_.start();
+		
+		simulation_.setSimulationListener(new SimulationListener() {
+			@Override
+			public void onGateChanged(Gate gate) {
+				synchronized(dirtyLock_) {
+					dirtyMinX_ = Math.min(dirtyMinX_, gate.getX());
+					dirtyMinY_ = Math.min(dirtyMinY_, gate.getY());
+					dirtyMaxX_ = Math.max(dirtyMaxX_, gate.getX()+gate.getWidth());
+					dirtyMaxY_ = Math.max(dirtyMaxY_, gate.getY()+gate.getHeight());
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Sets how often changes made by the sim are drawn, independent of how fast it ticks
+	 * @param framesPerSecond The number of frames to draw per second
+	 */
+	public void setFrameRate(int framesPerSecond) {
+		frameTimer_.setDelay(Math.max(1, 1000 / framesPerSecond));
+	}
+	
+	/**
+	 * Repaints the region changed by the sim since the last frame, if any
+	 */
+	private void flushDirtyRegion() {
+		int x;
+		int y;
+		int xx;
+		int yy;
+		synchronized(dirtyLock_) {
+			if(dirtyMaxX_ < dirtyMinX_)
+				return;
+			
+			x = dirtyMinX_;
+			y = dirtyMinY_;
+			xx = dirtyMaxX_;
+			yy = dirtyMaxY_;
+			clearDirtyRegion();
+		}
+		
+		//Pad for the Pin markers and the selection rectangle drawn around Gates
+		repaint(x-3, y-3, xx-x+7, yy-y+7);
+	}
+	
+	/**
+	 * Empties the dirty region, callers must hold {@link JLogicPanel#dirtyLock_}
+	 */
+	private void clearDirtyRegion() {
+		dirtyMinX_ = Integer.MAX_VALUE;
+		dirtyMinY_ = Integer.MAX_VALUE;
+		dirtyMaxX_ = Integer.MIN_VALUE;
+		dirtyMaxY_ = Integer.MIN_VALUE;
+	}
+	
+	/**
+	 * @param component {@link GateComponent}
+	 */
+	public void setUserGateComponent(GateComponent component) {
+		userGateComponent_ = component;
+		selectedGate_ = null;
+		highlightedPin_ = null;
+	}
+	
+	/**
+	 * Draws a GateComponent
+	 * @param g The Graphics context
+	 * @param component The GateComponent to be drawn
+	 * @param x The x-position to draw it at
+	 * @param y The y-position to draw it at
+	 * @param gate A Gate that references component
+	 * @param states The states of the Gate's Pins, null if gate is null
+	 */
+	private void drawGateComponent(Graphics g, GateComponent component, int x, int y, Gate gate, boolean[] states) {
+		g.translate(x, y);
+		
+		BufferedImage img = component.getImage();
+		if(img != null)
+			g.drawImage(img, 0, 0, null);
+		
+		PinComponent[] pins = component.getPins();
+		for(PinComponent pin : pins) {
+			g.setColor(pin.getType() == PinType.INPUT ? Color.BLUE : Color.RED);
+			g.fillRect(pin.getOffset().x-2, pin.getOffset().y-2, 4, 4);
+		}
+		
+		g.setColor(Color.BLACK);
+		component.draw(g, states);
+		
+		//Fixed gates get a grey frame since clicking them no longer changes anything
+		if(gate != null && gate.isFixed()) {
+			g.setColor(Color.GRAY);
+			g.drawRect(-3, -3, component.getWidth()+6, component.getHeight()+6);
+			g.setColor(Color.BLACK);
+		}
+		
+		g.translate(-x, -y);
+	}
+	
+	/**
+	 * Draws a Wire
+	 * @param g The Graphics context
+	 * @param start The start of the Wire, packed by {@link GridKey}
+	 * @param end The end of the Wire, packed by {@link GridKey}
+	 */
+	private void drawWire(Graphics g, long start, long end) {
+		g.setColor(Color.GREEN);
+		g.drawLine(GridKey.x(start), GridKey.y(start), GridKey.x(end), GridKey.y(end));
+		g.setColor(Color.BLACK);
+	}
+	
+	@Override
+	protected void paintComponent(Graphics g) {
+		super.paintComponent(g);
+		
+		if(gridImage_ == null || gridImage_.getWidth() != getWidth()+1 || gridImage_.getHeight() != getHeight()+1) {
+			gridImage_ = new BufferedImage(getWidth()+1, getHeight()+1, BufferedImage.TYPE_INT_ARGB);
+			Graphics gridGraphics = gridImage_.getGraphics();
+			gridGraphics.setColor(getForeground());
+			
+			int size = Constants.GRIDSIZE;
+			for(int x = 0; x <= getWidth(); x += size) {
+				for(int y = 0; y <= getHeight(); y += size)
+					gridGraphics.drawLine(x, y, x, y);
+			}
+			gridGraphics.dispose();
+		}
+		g.drawImage(gridImage_, 0, 0, null);
+		
+		//Positions and states all come from one snapshot so the frame shows a single tick even while
+		//the sim runs on and Gates are moved
+		StateSnapshot snapshot = simulation_.getSnapshot();
+		Rectangle clip = g.getClipBounds();
+		Gate gate;
+		int x;
+		int y;
+		for(int i = 0; i < snapshot.getGateCount(); ++i) {
+			gate = snapshot.getGate(i);
+			x = GridKey.x(snapshot.getGatePosition(i));
+			y = GridKey.y(snapshot.getGatePosition(i));
+			if(clip != null && !clip.intersects(x-3, y-3, gate.getWidth()+7, gate.getHeight()+7))
+				continue;
+			
+			if(pinStates_.length < gate.getPins().length)
+				pinStates_ = new boolean[gate.getPins().length];
+			snapshot.getPinStates(i, pinStates_);
+			drawGateComponent(g, gate.getGateComponent(), x, y, gate, pinStates_);
+		}
+		
+		for(int i = 0; i < snapshot.getWireCount(); ++i)
+			drawWire(g, snapshot.getWireStart(i), snapshot.getWireEnd(i));
+		
+		if(userGateComponent_ != null)
+			drawGateComponent(g, userGateComponent_, GridKey.x(userPosition_), GridKey.y(userPosition_), null, null);
+		
+		Gate moving = movingGate_;
+		if(moving != null)
+			g.drawRect(GridKey.x(userPosition_)-grabX_, GridKey.y(userPosition_)-grabY_, moving.getWidth(), moving.getHeight());
+		
+		if(selectedGate_ != null)
+			g.drawRect(selectedGate_.getX()-2, selectedGate_.getY()-2, selectedGate_.getWidth()+4, selectedGate_.getHeight()+4);
+		
+		if(userWire_ != null)
+			drawWire(g, userWire_.getStart(), userWire_.getEnd());
+		
+		if(highlightedPin_ != null)
+			g.drawOval(GridKey.x(userPosition_)-5, GridKey.y(userPosition_)-5, 10, 10);
+	}
+}
@@ -1,324 +1,620 @@
-package window;
-
-import java.awt.Color;
-import java.awt.Dimension;
-import java.awt.EventQueue;
-import java.awt.Graphics;
-import java.awt.GridLayout;
-import java.awt.Image;
-import java.awt.Point;
-import java.awt.Toolkit;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.awt.event.InputEvent;
-import java.awt.event.KeyEvent;
-import java.awt.event.MouseEvent;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
-
-import javax.swing.JFrame;
-import javax.swing.JMenu;
-import javax.swing.JMenuBar;
-import javax.swing.JMenuItem;
-import javax.swing.JPanel;
-import javax.swing.JScrollPane;
-import javax.swing.JSplitPane;
-import javax.swing.JTree;
-import javax.swing.KeyStroke;
-import javax.swing.UIManager;
-import javax.swing.border.EmptyBorder;
-import javax.swing.event.TreeSelectionEvent;
-import javax.swing.event.TreeSelectionListener;
-import javax.swing.tree.DefaultMutableTreeNode;
-import javax.swing.tree.DefaultTreeModel;
-
-import common.GateManager;
-import common.sim.GateComponent;
-import common.sim.Pin;
-import common.sim.PinComponent;
-import common.sim.PinType;
-import common.sim.Simulation;
-
-/**
- * The Main class of the program
- */
-@SuppressWarnings("serial")
-public class MainWindow extends JFrame
-{
-	/**
-	 * Container for GateComponents
-	 */
-	private GateManager gateManager;
-	
-	/**
-	 * The JPanel the window draws its components to
-	 */
-	private JPanel contentPane;
-
-	/**
-	 * Entry point
-	 * @param args Command-line arguments
-	 */
-	public static void main(String[] args)
-	{
-		//Try to make the window match the theme of the OS it is on
-		try {
-			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-		} catch (Throwable e) {
-			e.printStackTrace();
-		}
-		
-		//Wait for the theme to properly set and then show the frame and start the sim
-		EventQueue.invokeLater(new Runnable()
-		{
-			public void run()
-			{
-				try
-				{
-					MainWindow frame = new MainWindow();
-					frame.setVisible(true);
-				} catch (Exception e) {
-					e.printStackTrace();
-				}
-				
-				//Ticks the sim every 1ms
-				Timer timer = new Timer();
-				timer.schedule(new TimerTask() {
-					public void run() {
-						Simulation.tick();
-					}
-				}, 0, 1);
-			}
-		});
-	}
-
-	public MainWindow()
-	{
-		initGateComponents();
-		initComponents();
-	}
-	
-	/**
-	 * Creates all of the GateComponents and adds them to {@link MainWindow#gateManager}
-	 */
-	private void initGateComponents()
-	{
-		gateManager = new GateManager();
-		gateManager.addContainer("Inputs");
-		gateManager.addContainer("Outputs");
-		gateManager.addContainer("Gates");
-		
-		PinComponent[] inputGates = { new PinComponent("A", PinType.OUTPUT, false, new Point(20, 10)) };
-		PinComponent[] outputGates = { new PinComponent("A", PinType.INPUT, true, new Point(10, 20)) };
-		
-		PinComponent[] threePinGates = {
-				new PinComponent("A", PinType.INPUT, true, new Point(0, 30)),
-				new PinComponent("B", PinType.INPUT, true, new Point(0, 10)),
-				new PinComponent("C", PinType.OUTPUT, false, new Point(50, 20))
-		};
-		
-		PinComponent[] twoPinGates = {
-				new PinComponent("A", PinType.INPUT, true, new Point(0, 20)),
-				new PinComponent("B", PinType.OUTPUT, false, new Point(40, 20))
-		};
-		
-		PinComponent[] twoPinNOTGates = {
-				new PinComponent("A", PinType.INPUT, true, new Point(0, 20)),
-				new PinComponent("B", PinType.OUTPUT, false, new Point(50, 20))
-		};
-		
-		gateManager.add("Inputs", new GateComponent("Switch", null, new Dimension(20, 20), inputGates) {
-			@Override
-			public void draw(Graphics g, Pin[] pins) {
-				g.drawRect(0, 0, 20, 20);
-				
-				if(pins != null && pins[0].getState())
-					g.setColor(Color.GREEN);
-				g.fillRect(3, 3, 17, 17);
-				g.setColor(Color.BLACK);
-			}
-			
-			@Override
-			public void onMouseClicked(MouseEvent e, Pin[] pins) {
-				pins[0].setState(!pins[0].getState());
-			}
-		});
-		
-		gateManager.add("Inputs", new GateComponent("Button", null, new Dimension(20, 20), inputGates) {
-			@Override
-			public void draw(Graphics g, Pin[] pins) {
-				if(pins != null)
-					g.setColor(pins[0].getState() ? Color.GREEN : Color.BLACK);
-				g.fillRect(0, 0, 20, 20);
-				g.setColor(Color.BLACK);
-			}
-			
-			@Override
-			public void onMousePressed(MouseEvent e, Pin[] pins) {
-				pins[0].setState(true);
-			}
-			
-			@Override
-			public void onMouseReleased(MouseEvent e, Pin[] pins) {
-				pins[0].setState(false);
-			}
-		});
-		
-		gateManager.add("Outputs", new GateComponent("LED", null, new Dimension(20, 20), outputGates) {
-			@Override
-			public void draw(Graphics g, Pin[] pins) {
-				if(pins != null && pins[0].getState())
-					g.setColor(Color.RED);
-				g.fillOval(0, 0, 20, 20);
-				
-				g.setColor(Color.BLACK);
-				g.drawRect(0, 0, 20, 20);
-			}
-		});
-
-		gateManager.add("Gates", new GateComponent("Diode", null, "/resources/gates/Diode.png", twoPinGates) {
-			@Override
-			public void performLogic(Pin[] pins) {
-				pins[1].setState(pins[0].getState());
-			}
-		});
-		
-		gateManager.add("Gates", new GateComponent("NOT", null, "/resources/gates/NOT.png", twoPinNOTGates) {
-			@Override
-			public void performLogic(Pin[] pins) {
-				pins[1].setState(!pins[0].getState());
-			}
-		});
-		
-		gateManager.add("Gates", new GateComponent("AND", null, "/resources/gates/AND.png", threePinGates) {
-			@Override
-			public void performLogic(Pin[] pins) {
-				pins[2].setState(pins[0].getState() && pins[1].getState());
-			}
-		});
-		
-		gateManager.add("Gates", new GateComponent("OR", null, "/resources/gates/OR.png", threePinGates) {
-			@Override
-			public void performLogic(Pin[] pins) {
-				pins[2].setState(pins[0].getState() || pins[1].getState());
-			}
-		});
-		
-		gateManager.add("Gates", new GateComponent("XOR", null, "/resources/gates/XOR.png", threePinGates) {
-			@Override
-			public void performLogic(Pin[] pins) {
-				pins[2].setState(pins[0].getState() ^ pins[1].getState());
-			}
-		});
-	}
-	
-	/**
-	 * Initializes all of the UI components
-	 */
-	private void initComponents()
-	{
-		ArrayList<Image> icons = new ArrayList<Image>();
-		icons.add(Toolkit.getDefaultToolkit().getImage(MainWindow.class.getResource("/resources/icon_16.png")));
-		icons.add(Toolkit.getDefaultToolkit().getImage(MainWindow.class.getResource("/resources/icon_32.png")));
-		icons.add(Toolkit.getDefaultToolkit().getImage(MainWindow.class.getResource("/resources/icon_48.png")));
-		icons.add(Toolkit.getDefaultToolkit().getImage(MainWindow.class.getResource("/resources/icon_64.png")));
-		icons.add(Toolkit.getDefaultToolkit().getImage(MainWindow.class.getResource("/resources/icon_256.png")));
-		setIconImages(icons);
-		
-		setPreferredSize(new Dimension(800, 600));
-		setTitle("JLogic");
-		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-		setBounds(100, 100, 665, 490);
-		
-		JMenuBar menuBar = new JMenuBar();
-		setJMenuBar(menuBar);
-		
-		JMenu mnFile = new JMenu("File");
-		menuBar.add(mnFile);
-		
-		JMenuItem mntmNew = new JMenuItem("New");
-		mntmNew.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_N, InputEvent.CTRL_MASK));
-		mntmNew.addActionListener(new ActionListener() {
-			@Override
-			public void actionPerformed(ActionEvent e) {
-				Simulation.clear();
-			}
-		});
-		mnFile.add(mntmNew);
-		
-		JMenu mnEdit = new JMenu("Edit");
-		menuBar.add(mnEdit);
-		
-		JMenuItem mntmUndo = new JMenuItem("Undo");
-		mntmUndo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_MASK));
-		mntmUndo.addActionListener(new ActionListener() {
-			@Override
-			public void actionPerformed(ActionEvent e) {
-				Simulation.undo();
-			}
-		});
-		mnFile.add(mntmNew);
-		mnEdit.add(mntmUndo);
-		
-		contentPane = new JPanel();
-		contentPane.setPreferredSize(new Dimension(800, 600));
-		contentPane.setForeground(Color.WHITE);
-		contentPane.setBackground(UIManager.getColor("SplitPane.background"));
-		contentPane.setBorder(new EmptyBorder(5, 5, 5, 5));
-		setContentPane(contentPane);
-		contentPane.setLayout(new GridLayout(0, 1, 0, 0));
-		
-		JSplitPane splitPane = new JSplitPane();
-		contentPane.add(splitPane);
-		
-		JLogicPanel jsim_simPanel = new JLogicPanel();
-		splitPane.setRightComponent(jsim_simPanel);
-		
-		JScrollPane jsim_itemClassListScrollPane = new JScrollPane();
-		jsim_itemClassListScrollPane.setPreferredSize(new Dimension(140, 200));
-		
-		JTree jsim_itemClassTree = new JTree();
-		jsim_itemClassTree.setModel(new DefaultTreeModel(
-			new DefaultMutableTreeNode("Components") {
-				{
-					Set<String> keys = gateManager.getContainers();
-					Iterator<String> it = keys.iterator();
-					String key;
-					ArrayList<GateComponent> components;
-					
-					while(it.hasNext()) {
-						key = it.next();
-						components = gateManager.getContainer(key);
-						
-						if(components != null && !components.isEmpty()) {
-							DefaultMutableTreeNode node = new DefaultMutableTreeNode(key);
-							
-							for(GateComponent component : components) {
-								DefaultMutableTreeNode leaf = new DefaultMutableTreeNode(component);
-								node.add(leaf);
-							}
-							
-							add(node);
-						}
-					}
-				}
-			}
-		));
-		jsim_itemClassTree.addTreeSelectionListener(new TreeSelectionListener() {
-			@Override
-			public void valueChanged(TreeSelectionEvent e) {
-				Object obj = ((DefaultMutableTreeNode)e.getNewLeadSelectionPath().getLastPathComponent()).getUserObject();
-				if(obj instanceof GateComponent)
-					jsim_simPanel.setUserGateComponent((GateComponent)obj);
-				else
-					jsim_simPanel.setUserGateComponent(null);
-			}
-		});
-		jsim_itemClassTree.setRootVisible(false);
-		jsim_itemClassListScrollPane.setViewportView(jsim_itemClassTree);
-		splitPane.setLeftComponent(jsim_itemClassListScrollPane);
-	}
-}
+package window;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.GridLayout;
+import java.awt.Image;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.swing.ButtonGroup;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTree;
+import javax.swing.KeyStroke;
+import javax.swing.Timer;
+import javax.swing.UIManager;
+import javax.swing.border.EmptyBorder;
+import javax.swing.event.TreeSelectionEvent;
+import javax.swing.event.TreeSelectionListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.tree.DefaultTreeModel;
+
+import common.CircuitFile;
+import common.DefaultGates;
+import common.GateManager;
+import common.sim.GateComponent;
+import common.sim.Simulation;
+import common.sim.SimulationMetrics;
+import common.sim.TickHistory;
+import common.sim.TickScheduler;
+
+/**
+ * The Main class of the program
+ */
+@SuppressWarnings("serial")
+public class MainWindow extends JFrame
+{
+	/**
+	 * Container for GateComponents
+	 */
+	private GateManager gateManager;
+	
+	/**
+	 * The Simulation shown in the window
+	 */
+	private Simulation simulation;
+	
+	/**
+	 * Ticks {@link MainWindow#simulation}
+	 */
+	private TickScheduler scheduler;
+	
+	/**
+	 * The JPanel the window draws its components to
+	 */
+	private JPanel contentPane;
+
+	/**
+	 * Entry point
+	 * @param args Command-line arguments
+	 */
+	public static void main(String[] args)
+	{
+		//Try to make the window match the theme of the OS it is on
+		try {
+			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+		} catch (Throwable e) {
+			e.printStackTrace();
+		}
+		
+		//Wait for the theme to properly set and then show the frame and start the sim
+		EventQueue.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				Simulation simulation = new Simulation();
+				TickScheduler scheduler = new TickScheduler(simulation);
+				
+				//Metrics add timing to every tick, so they are only collected with -Djlogic.metrics or
+				//once turned on from the Simulation menu
+				if(Boolean.getBoolean("jlogic.metrics"))
+					setMetricsEnabled(simulation, true);
+				
+				//Keeping past ticks for rewinding is a debugging aid with a cost every tick, so it is off
+				//unless asked for with -Djlogic.history or from the Simulation menu
+				if(Boolean.getBoolean("jlogic.history"))
+					simulation.setHistory(createHistory());
+				
+				try
+				{
+					MainWindow frame = new MainWindow(simulation, scheduler);
+					frame.setVisible(true);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				
+				//Ticks the sim at 1 kHz until changed from the Simulation menu
+				scheduler.start();
+			}
+		});
+	}
+
+	/**
+	 * @param simulation {@link MainWindow#simulation}
+	 * @param scheduler {@link MainWindow#scheduler}
+	 */
+	public MainWindow(Simulation simulation, TickScheduler scheduler)
+	{
+		this.simulation = simulation;
+		this.scheduler = scheduler;
+		gateManager = DefaultGates.createGateManager();
+		initComponents();
+	}
+	
+	/**
+	 * Initializes all of the UI components
+	 */
+	private void initComponents()
+	{
+		ArrayList<Image> icons = new ArrayList<Image>();
+		icons.add(Toolkit.getDefaultToolkit().getImage(MainWindow.class.getResource("/resources/icon_16.png")));
+		icons.add(Toolkit.getDefaultToolkit().getImage(MainWindow.class.getResource("/resources/icon_32.png")));
+		icons.add(Toolkit.getDefaultToolkit().getImage(MainWindow.class.getResource("/resources/icon_48.png")));
+		icons.add(Toolkit.getDefaultToolkit().getImage(MainWindow.class.getResource("/resources/icon_64.png")));
+		icons.add(Toolkit.getDefaultToolkit().getImage(MainWindow.class.getResource("/resources/icon_256.png")));
+		setIconImages(icons);
+		
+		setPreferredSize(new Dimension(800, 600));
+		setTitle("JLogic");
+		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		setBounds(100, 100, 665, 490);
+		
+		JMenuBar menuBar = new JMenuBar();
+		setJMenuBar(menuBar);
+		
+		JMenu mnFile = new JMenu("File");
+		menuBar.add(mnFile);
+		
+		JMenuItem mntmNew = new JMenuItem("New");
+		mntmNew.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_N, InputEvent.CTRL_MASK));
+		mntmNew.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				simulation.post(new Runnable() {
+					@Override
+					public void run() {
+						simulation.clear();
+						contentPane.repaint();
+					}
+				});
+			}
+		});
+		mnFile.add(mntmNew);
+		
+		JMenuItem mntmOpen = new JMenuItem("Open...");
+		mntmOpen.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O, InputEvent.CTRL_DOWN_MASK));
+		mntmOpen.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser chooser = createFileChooser();
+				if(chooser.showOpenDialog(MainWindow.this) != JFileChooser.APPROVE_OPTION)
+					return;
+				
+				File file = chooser.getSelectedFile();
+				simulation.post(new Runnable() {
+					@Override
+					public void run() {
+						simulation.clear();
+						try {
+							CircuitFile.load(file.toPath(), gateManager, simulation);
+						} catch (IOException ex) {
+							simulation.clear();
+							showError("Couldn't open " + file.getName() + ": " + ex.getMessage());
+						}
+						contentPane.repaint();
+					}
+				});
+			}
+		});
+		mnFile.add(mntmOpen);
+		
+		JMenuItem mntmSave = new JMenuItem("Save As...");
+		mntmSave.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_DOWN_MASK));
+		mntmSave.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser chooser = createFileChooser();
+				if(chooser.showSaveDialog(MainWindow.this) != JFileChooser.APPROVE_OPTION)
+					return;
+				
+				File chosen = chooser.getSelectedFile();
+				File file = chosen.getName().contains(".") ? chosen : new File(chosen.getPath() + "." + CircuitFile.EXTENSION);
+				simulation.post(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							CircuitFile.save(simulation, file.toPath());
+						} catch (IOException ex) {
+							showError("Couldn't save " + file.getName() + ": " + ex.getMessage());
+						}
+					}
+				});
+			}
+		});
+		mnFile.add(mntmSave);
+		
+		JMenu mnEdit = new JMenu("Edit");
+		menuBar.add(mnEdit);
+		
+		JMenuItem mntmUndo = new JMenuItem("Undo");
+		mntmUndo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_MASK));
+		mntmUndo.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				simulation.post(new Runnable() {
+					@Override
+					public void run() {
+						simulation.undo();
+						contentPane.repaint();
+					}
+				});
+			}
+		});
+		mnEdit.add(mntmUndo);
+		
+		JMenuItem mntmRedo = new JMenuItem("Redo");
+		mntmRedo.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+		mntmRedo.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				simulation.post(new Runnable() {
+					@Override
+					public void run() {
+						simulation.redo();
+						contentPane.repaint();
+					}
+				});
+			}
+		});
+		mnEdit.add(mntmRedo);
+		
+		JMenu mnSimulation = new JMenu("Simulation");
+		menuBar.add(mnSimulation);
+		
+		JCheckBoxMenuItem chckbxmntmCompiled = new JCheckBoxMenuItem("Compiled Engine");
+		chckbxmntmCompiled.setSelected(simulation.isCompiled());
+		chckbxmntmCompiled.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				boolean selected = chckbxmntmCompiled.isSelected();
+				simulation.post(new Runnable() {
+					@Override
+					public void run() {
+						simulation.setCompiled(selected);
+					}
+				});
+			}
+		});
+		mnSimulation.add(chckbxmntmCompiled);
+		
+		JCheckBoxMenuItem chckbxmntmParallel = new JCheckBoxMenuItem("Parallel Ticks");
+		chckbxmntmParallel.setSelected(simulation.isParallel());
+		chckbxmntmParallel.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				boolean selected = chckbxmntmParallel.isSelected();
+				simulation.post(new Runnable() {
+					@Override
+					public void run() {
+						simulation.setParallel(selected);
+					}
+				});
+			}
+		});
+		mnSimulation.add(chckbxmntmParallel);
+		
+		JCheckBoxMenuItem chckbxmntmFlatten = new JCheckBoxMenuItem("Flatten Subcircuits");
+		chckbxmntmFlatten.setSelected(simulation.isFlatteningSubcircuits());
+		chckbxmntmFlatten.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				boolean selected = chckbxmntmFlatten.isSelected();
+				simulation.post(new Runnable() {
+					@Override
+					public void run() {
+						simulation.setFlattenSubcircuits(selected);
+					}
+				});
+			}
+		});
+		mnSimulation.add(chckbxmntmFlatten);
+		
+		JCheckBoxMenuItem chckbxmntmCollapse = new JCheckBoxMenuItem("Collapse Gate Clusters");
+		chckbxmntmCollapse.setSelected(simulation.isCollapsingClusters());
+		chckbxmntmCollapse.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				boolean selected = chckbxmntmCollapse.isSelected();
+				simulation.post(new Runnable() {
+					@Override
+					public void run() {
+						simulation.setCollapseClusters(selected);
+					}
+				});
+			}
+		});
+		mnSimulation.add(chckbxmntmCollapse);
+		
+		JCheckBoxMenuItem chckbxmntmOptimize = new JCheckBoxMenuItem("Optimize Netlist");
+		chckbxmntmOptimize.setSelected(simulation.isOptimizing());
+		chckbxmntmOptimize.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				boolean selected = chckbxmntmOptimize.isSelected();
+				simulation.post(new Runnable() {
+					@Override
+					public void run() {
+						simulation.setOptimizing(selected);
+					}
+				});
+			}
+		});
+		mnSimulation.add(chckbxmntmOptimize);
+		mnSimulation.addSeparator();
+		
+		ButtonGroup modeGroup = new ButtonGroup();
+		addModeItem(mnSimulation, modeGroup, "Free Run", TickScheduler.Mode.FREE_RUN);
+		addModeItem(mnSimulation, modeGroup, "Fixed Rate", TickScheduler.Mode.FIXED_RATE);
+		addModeItem(mnSimulation, modeGroup, "Batched", TickScheduler.Mode.BATCHED);
+		addModeItem(mnSimulation, modeGroup, "Paused", TickScheduler.Mode.PAUSED);
+		
+		JMenuItem mntmStep = new JMenuItem("Step");
+		mntmStep.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F10, 0));
+		mntmStep.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				scheduler.step();
+			}
+		});
+		mnSimulation.add(mntmStep);
+		
+		JCheckBoxMenuItem chckbxmntmHistory = new JCheckBoxMenuItem("Record History");
+		chckbxmntmHistory.setSelected(simulation.getHistory() != null);
+		chckbxmntmHistory.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				boolean selected = chckbxmntmHistory.isSelected();
+				simulation.post(new Runnable() {
+					@Override
+					public void run() {
+						simulation.setHistory(selected ? createHistory() : null);
+					}
+				});
+			}
+		});
+		mnSimulation.add(chckbxmntmHistory);
+		
+		JMenuItem mntmRewind = new JMenuItem("Rewind To Tick...");
+		mntmRewind.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if(simulation.getHistory() == null) {
+					JOptionPane.showMessageDialog(MainWindow.this, "Turn on Record History to rewind", "JLogic", JOptionPane.INFORMATION_MESSAGE);
+					return;
+				}
+				String value = JOptionPane.showInputDialog(MainWindow.this, "Rewind to tick:", simulation.getCurrentTick());
+				if(value == null)
+					return;
+				int tick;
+				try {
+					tick = Integer.parseInt(value.trim());
+				} catch (NumberFormatException ex) {
+					JOptionPane.showMessageDialog(MainWindow.this, "Invalid tick: " + value, "JLogic", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				simulation.post(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							simulation.rewind(tick);
+						} catch (IllegalArgumentException | IllegalStateException ex) {
+							showError("Couldn't rewind: " + ex.getMessage());
+						}
+					}
+				});
+			}
+		});
+		mnSimulation.add(mntmRewind);
+		mnSimulation.addSeparator();
+		
+		JMenuItem mntmFrequency = new JMenuItem("Set Frequency...");
+		mntmFrequency.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				String value = JOptionPane.showInputDialog(MainWindow.this, "Wakeups per second:", scheduler.getFrequency());
+				if(value == null)
+					return;
+				try {
+					scheduler.setFrequency(Double.parseDouble(value.trim()));
+				} catch (IllegalArgumentException ex) {
+					JOptionPane.showMessageDialog(MainWindow.this, "Invalid frequency: " + value, "JLogic", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		});
+		mnSimulation.add(mntmFrequency);
+		
+		JMenuItem mntmBatchSize = new JMenuItem("Set Batch Size...");
+		mntmBatchSize.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				String value = JOptionPane.showInputDialog(MainWindow.this, "Ticks per wakeup:", scheduler.getBatchSize());
+				if(value == null)
+					return;
+				try {
+					scheduler.setBatchSize(Integer.parseInt(value.trim()));
+				} catch (IllegalArgumentException ex) {
+					JOptionPane.showMessageDialog(MainWindow.this, "Invalid batch size: " + value, "JLogic", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		});
+		mnSimulation.add(mntmBatchSize);
+		
+		JCheckBoxMenuItem chckbxmntmCollectMetrics = new JCheckBoxMenuItem("Collect Metrics");
+		chckbxmntmCollectMetrics.setSelected(simulation.getMetrics() != null);
+		chckbxmntmCollectMetrics.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				boolean selected = chckbxmntmCollectMetrics.isSelected();
+				simulation.post(new Runnable() {
+					@Override
+					public void run() {
+						setMetricsEnabled(simulation, selected);
+					}
+				});
+			}
+		});
+		mnSimulation.add(chckbxmntmCollectMetrics);
+		
+		JMenuItem mntmMetrics = new JMenuItem("Show Metrics...");
+		mntmMetrics.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				SimulationMetrics metrics = simulation.getMetrics();
+				if(metrics != null)
+					JOptionPane.showMessageDialog(MainWindow.this, metrics.snapshot().toString(), "Metrics", JOptionPane.INFORMATION_MESSAGE);
+				else
+					JOptionPane.showMessageDialog(MainWindow.this, "Turn on Collect Metrics to see metrics", "Metrics", JOptionPane.INFORMATION_MESSAGE);
+			}
+		});
+		mnSimulation.add(mntmMetrics);
+		
+		//Shows the achieved tick rate in the title bar
+		Timer rateTimer = new Timer(500, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				setTitle(String.format("JLogic - %.0f ticks/s", scheduler.getTicksPerSecond()));
+			}
+		});
+		rateTimer.start();
+		
+		contentPane = new JPanel();
+		contentPane.setPreferredSize(new Dimension(800, 600));
+		contentPane.setForeground(Color.WHITE);
+		contentPane.setBackground(UIManager.getColor("SplitPane.background"));
+		contentPane.setBorder(new EmptyBorder(5, 5, 5, 5));
+		setContentPane(contentPane);
+		contentPane.setLayout(new GridLayout(0, 1, 0, 0));
+		
+		JSplitPane splitPane = new JSplitPane();
+		contentPane.add(splitPane);
+		
+		JLogicPanel jsim_simPanel = new JLogicPanel(simulation);
+		splitPane.setRightComponent(jsim_simPanel);
+		
+		JScrollPane jsim_itemClassListScrollPane = new JScrollPane();
+		jsim_itemClassListScrollPane.setPreferredSize(new Dimension(140, 200));
+		
+		JTree jsim_itemClassTree = new JTree();
+		jsim_itemClassTree.setModel(new DefaultTreeModel(
+			new DefaultMutableTreeNode("Components") {
+				{
+					Set<String> keys = gateManager.getContainers();
+					Iterator<String> it = keys.iterator();
+					String key;
+					ArrayList<GateComponent> components;
+					
+					while(it.hasNext()) {
+						key = it.next();
+						components = gateManager.getContainer(key);
+						
+						if(components != null && !components.isEmpty()) {
+							DefaultMutableTreeNode node = new DefaultMutableTreeNode(key);
+							
+							for(GateComponent component : components) {
+								DefaultMutableTreeNode leaf = new DefaultMutableTreeNode(component);
+								node.add(leaf);
+							}
+							
+							add(node);
+						}
+					}
+				}
+			}
+		));
+		jsim_itemClassTree.addTreeSelectionListener(new TreeSelectionListener() {
+			@Override
+			public void valueChanged(TreeSelectionEvent e) {
+				Object obj = ((DefaultMutableTreeNode)e.getNewLeadSelectionPath().getLastPathComponent()).getUserObject();
+				if(obj instanceof GateComponent)
+					jsim_simPanel.setUserGateComponent((GateComponent)obj);
+				else
+					jsim_simPanel.setUserGateComponent(null);
+			}
+		});
+		jsim_itemClassTree.setRootVisible(false);
+		jsim_itemClassListScrollPane.setViewportView(jsim_itemClassTree);
+		splitPane.setLeftComponent(jsim_itemClassListScrollPane);
+	}
+	
+	/**
+	 * Starts or stops counting the work done each tick, publishing the metrics over JMX while they
+	 * are collected so a slow circuit can be looked into from outside
+	 * @param simulation The Simulation to measure
+	 * @param enabled True to collect metrics, false to stop
+	 */
+	private static void setMetricsEnabled(Simulation simulation, boolean enabled)
+	{
+		SimulationMetrics metrics = simulation.getMetrics();
+		if(enabled == (metrics != null))
+			return;
+		
+		try {
+			if(enabled) {
+				metrics = new SimulationMetrics();
+				simulation.setMetrics(metrics);
+				metrics.register("main");
+			}
+			else {
+				simulation.setMetrics(null);
+				metrics.unregister();
+			}
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * @return An empty history keeping a keyframe every 1024 ticks in up to 64 MB
+	 */
+	private static TickHistory createHistory()
+	{
+		return new TickHistory(1024, 64L << 20);
+	}
+	
+	/**
+	 * Shows an error dialog on the EDT, used by commands running on the sim thread
+	 * @param message The message to show
+	 */
+	private void showError(String message)
+	{
+		EventQueue.invokeLater(new Runnable()
+		{
+			public void run()
+			{
+				JOptionPane.showMessageDialog(MainWindow.this, message, "JLogic", JOptionPane.ERROR_MESSAGE);
+			}
+		});
+	}
+	
+	/**
+	 * @return A file chooser showing circuit files
+	 */
+	private JFileChooser createFileChooser()
+	{
+		JFileChooser chooser = new JFileChooser();
+		chooser.setFileFilter(new FileNameExtensionFilter("JLogic circuits (*." + CircuitFile.EXTENSION + ")", CircuitFile.EXTENSION));
+		return chooser;
+	}
+	
+	/**
+	 * Adds a radio menu item that switches {@link MainWindow#scheduler} to a mode
+	 * @param menu The menu to add the item to
+	 * @param group The group of mode items
+	 * @param text The item's label
+	 * @param mode The mode the item selects
+	 */
+	private void addModeItem(JMenu menu, ButtonGroup group, String text, TickScheduler.Mode mode)
+	{
+		JRadioButtonMenuItem item = new JRadioButtonMenuItem(text);
+		item.setSelected(scheduler.getMode() == mode);
+		item.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				scheduler.setMode(mode);
+			}
+		});
+		group.add(item);
+		menu.add(item);
+	}
+}